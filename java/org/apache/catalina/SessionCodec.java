@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Interface for the encoding used when sessions are persisted or transferred between cluster nodes. A codec provides
+ * the object streams that sessions are written to and read from so the session implementation determines what is
+ * written while the codec determines how it is encoded.
+ * <p>
+ * Implementations must be thread safe as a single instance may be used concurrently to encode and decode many
+ * sessions.
+ */
+public interface SessionCodec {
+
+    /**
+     * Create the stream to use to write one or more sessions.
+     *
+     * @param os The stream to which the encoded sessions will be written
+     *
+     * @return The stream to which the sessions should be written
+     *
+     * @throws IOException if the stream cannot be created
+     */
+    ObjectOutputStream getObjectOutputStream(OutputStream os) throws IOException;
+
+    /**
+     * Create the stream to use to read one or more sessions.
+     *
+     * @param is                The stream from which the encoded sessions will be read
+     * @param javaSerialization Creates the stream to use for any data that was written using Java serialization. The
+     *                              stream it creates is configured with the class loader and deserialization filter
+     *                              appropriate for the component reading the sessions.
+     *
+     * @return The stream from which the sessions should be read
+     *
+     * @throws IOException if the stream cannot be created
+     */
+    ObjectInputStream getObjectInputStream(InputStream is, ObjectInputStreamFactory javaSerialization)
+            throws IOException;
+
+
+    /**
+     * Creates a configured {@link ObjectInputStream} for data written using Java serialization.
+     */
+    @FunctionalInterface
+    interface ObjectInputStreamFactory {
+
+        /**
+         * Create a stream to read data written using Java serialization.
+         *
+         * @param is The stream containing the data
+         *
+         * @return The stream from which the data should be read
+         *
+         * @throws IOException if the stream cannot be created
+         */
+        ObjectInputStream create(InputStream is) throws IOException;
+    }
+}
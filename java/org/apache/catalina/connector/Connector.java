@@ -250,6 +250,12 @@ public class Connector extends LifecycleMBeanBase {
      */
     protected int maxParameterCount = 1000;
 
+    /**
+     * Should request parameters be indexed when the query string and request body are parsed and only decoded when
+     * they are accessed?
+     */
+    private boolean lazyParameterDecoding = false;
+
     private int maxPartCount = 50;
 
     private int maxPartHeaderSize = 512;
@@ -540,6 +546,29 @@ public class Connector extends LifecycleMBeanBase {
     }
 
 
+    /**
+     * Returns whether request parameters are only decoded when they are accessed.
+     *
+     * @return {@code true} if request parameters are decoded lazily
+     */
+    public boolean getLazyParameterDecoding() {
+        return lazyParameterDecoding;
+    }
+
+
+    /**
+     * Configure whether request parameters from the query string and {@code application/x-www-form-urlencoded}
+     * request bodies are decoded when the parameters are parsed or only when they are accessed. Lazy decoding benefits
+     * applications that only read a few of the parameters in requests that contain many. Decoding errors for
+     * parameters that are never accessed are not reported.
+     *
+     * @param lazyParameterDecoding {@code true} to decode request parameters lazily
+     */
+    public void setLazyParameterDecoding(boolean lazyParameterDecoding) {
+        this.lazyParameterDecoding = lazyParameterDecoding;
+    }
+
+
     /**
      * Returns the maximum number of parts that will be accepted in a multipart request.
      * @return the maximum part count
@@ -101,6 +101,28 @@ public class CoyoteInputStream extends ServletInputStream {
     }
 
 
+    /**
+     * Reads the next bytes of the request body without copying them from the buffer into which the connector read
+     * them. This avoids a copy compared to {@link #read(ByteBuffer)} and {@link #read(byte[], int, int)} for
+     * applications that process large request bodies.
+     * <p>
+     * The returned buffer is a read-only view of memory owned by the connector. It is only valid until the next read
+     * from this stream, after which the connector may re-use the memory, so its content must be consumed or copied
+     * before then.
+     *
+     * @param maxLength the maximum number of bytes to return
+     *
+     * @return a read-only buffer containing between one and {@code maxLength} bytes, or {@code null} if the end of
+     *             the stream is reached
+     *
+     * @throws IOException if an input or output exception has occurred
+     */
+    public ByteBuffer readBuffer(int maxLength) throws IOException {
+        checkNonBlockingRead();
+        return ib.readBuffer(maxLength);
+    }
+
+
     /**
      * Close the stream Since we re-cycle, we can't allow the call to super.close() which would permanently disable us.
      */
@@ -435,6 +435,36 @@ public class InputBuffer extends Reader implements ByteChunk.ByteInputChannel, A
     }
 
 
+    /**
+     * Provides the next bytes of the request body without copying them. The returned buffer is a read-only view of the
+     * buffer that the connector read the data into. It is only valid until the next read from this buffer, after which
+     * the connector may re-use the underlying memory.
+     *
+     * @param maxLength the maximum number of bytes to return
+     *
+     * @return a read-only buffer containing between one and {@code maxLength} bytes, or {@code null} if the end of
+     *             the stream is reached
+     *
+     * @throws IOException if an input or output exception has occurred
+     */
+    public ByteBuffer readBuffer(int maxLength) throws IOException {
+        throwIfClosed();
+
+        if (maxLength < 1) {
+            throw new IllegalArgumentException(sm.getString("inputBuffer.invalidMaxLength", Integer.valueOf(maxLength)));
+        }
+
+        if (checkByteBufferEof()) {
+            return null;
+        }
+        int n = Math.min(maxLength, bb.remaining());
+        ByteBuffer result = bb.asReadOnlyBuffer();
+        result.limit(result.position() + n);
+        bb.position(bb.position() + n);
+        return result;
+    }
+
+
     // ------------------------------------------------- Chars Handling Methods
 
     /**
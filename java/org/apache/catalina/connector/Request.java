@@ -101,6 +101,7 @@ import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.buf.StringUtils;
 import org.apache.tomcat.util.http.CookieProcessor;
 import org.apache.tomcat.util.http.FastHttpDateFormat;
+import org.apache.tomcat.util.http.HttpHeader;
 import org.apache.tomcat.util.http.InvalidParameterException;
 import org.apache.tomcat.util.http.Parameters;
 import org.apache.tomcat.util.http.Rfc6265CookieProcessor;
@@ -2862,6 +2863,11 @@ public class Request implements HttpServletRequest {
     protected void parseParameters() {
         doParseParameters();
 
+        if (parametersParseException == null) {
+            // When decoding lazily, failures are only found as parameters are accessed
+            parametersParseException = coyoteRequest.getParameters().getDecodeFailure();
+        }
+
         if (parametersParseException != null) {
             Context context = getContext();
             if (context != null && context.getLogger().isDebugEnabled()) {
@@ -2904,6 +2910,7 @@ public class Request implements HttpServletRequest {
          */
         Parameters parameters = coyoteRequest.getParameters();
         parameters.setLimit(maxParameterCount);
+        parameters.setLazyDecoding(connector.getLazyParameterDecoding());
 
         // getCharacterEncoding() may have been overridden to search for
         // hidden form field containing request encoding
@@ -2987,7 +2994,7 @@ public class Request implements HttpServletRequest {
             }
             parameters.processParameters(formData, 0, len);
         } else if (coyoteRequest.protocol().equals("HTTP/2.0")
-                || "chunked".equalsIgnoreCase(coyoteRequest.getHeader("transfer-encoding"))) {
+                || "chunked".equalsIgnoreCase(coyoteRequest.getMimeHeaders().getHeader(HttpHeader.TRANSFER_ENCODING))) {
             byte[] formData = null;
             try {
                 formData = readChunkedPostBody();
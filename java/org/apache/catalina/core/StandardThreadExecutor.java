@@ -31,6 +31,7 @@ import org.apache.catalina.LifecycleState;
 import org.apache.catalina.util.LifecycleMBeanBase;
 import org.apache.tomcat.util.res.StringManager;
 import org.apache.tomcat.util.threads.ResizableExecutor;
+import org.apache.tomcat.util.threads.PriorityTaskQueue;
 import org.apache.tomcat.util.threads.TaskQueue;
 import org.apache.tomcat.util.threads.TaskThreadFactory;
 import org.apache.tomcat.util.threads.ThreadPoolExecutor;
@@ -97,6 +98,16 @@ public class StandardThreadExecutor extends LifecycleMBeanBase implements Execut
      */
     protected long threadRenewalDelay = org.apache.tomcat.util.threads.Constants.DEFAULT_THREAD_RENEWAL_DELAY;
 
+    /**
+     * The weights of the priority classes. If set, a {@link PriorityTaskQueue} is used.
+     */
+    protected String priorityWeights = null;
+
+    /**
+     * The limits on the number of queued tasks for each priority class
+     */
+    protected String priorityQueueLimits = null;
+
     private TaskQueue taskqueue = null;
 
     // ---------------------------------------------- Constructors
@@ -120,12 +131,20 @@ public class StandardThreadExecutor extends LifecycleMBeanBase implements Execut
     @Override
     protected void startInternal() throws LifecycleException {
 
-        taskqueue = new TaskQueue(maxQueueSize);
         TaskThreadFactory tf = new TaskThreadFactory(namePrefix, daemon, getThreadPriority());
-        executor = new ThreadPoolExecutor(getMinSpareThreads(), getMaxThreads(), maxIdleTime, TimeUnit.MILLISECONDS,
-                taskqueue, tf);
+        if (priorityWeights != null) {
+            PriorityTaskQueue priorityTaskQueue = new PriorityTaskQueue(maxQueueSize,
+                    PriorityTaskQueue.parseValues(priorityWeights), PriorityTaskQueue.parseValues(priorityQueueLimits));
+            executor = new ThreadPoolExecutor(getMinSpareThreads(), getMaxThreads(), maxIdleTime,
+                    TimeUnit.MILLISECONDS, priorityTaskQueue, tf);
+            priorityTaskQueue.setParent(executor);
+        } else {
+            taskqueue = new TaskQueue(maxQueueSize);
+            executor = new ThreadPoolExecutor(getMinSpareThreads(), getMaxThreads(), maxIdleTime,
+                    TimeUnit.MILLISECONDS, taskqueue, tf);
+            taskqueue.setParent(executor);
+        }
         executor.setThreadRenewalDelay(threadRenewalDelay);
-        taskqueue.setParent(executor);
 
         setState(LifecycleState.STARTING);
     }
@@ -315,6 +334,44 @@ public class StandardThreadExecutor extends LifecycleMBeanBase implements Execut
         return maxQueueSize;
     }
 
+    /**
+     * Set the weights of the priority classes as a comma separated list. If set, tasks are queued using a
+     * {@link PriorityTaskQueue}.
+     *
+     * @param priorityWeights the weights or {@code null} to use a single FIFO queue
+     */
+    public void setPriorityWeights(String priorityWeights) {
+        this.priorityWeights = priorityWeights;
+    }
+
+    /**
+     * Return the weights of the priority classes.
+     *
+     * @return the weights as a comma separated list
+     */
+    public String getPriorityWeights() {
+        return priorityWeights;
+    }
+
+    /**
+     * Set the maximum number of tasks that may be queued for each priority class as a comma separated list. A negative
+     * value means no limit other than the maximum queue size.
+     *
+     * @param priorityQueueLimits the limits
+     */
+    public void setPriorityQueueLimits(String priorityQueueLimits) {
+        this.priorityQueueLimits = priorityQueueLimits;
+    }
+
+    /**
+     * Return the maximum number of tasks that may be queued for each priority class.
+     *
+     * @return the limits as a comma separated list
+     */
+    public String getPriorityQueueLimits() {
+        return priorityQueueLimits;
+    }
+
     /**
      * Return the thread renewal delay in milliseconds.
      *
@@ -31,6 +31,7 @@ import org.apache.catalina.Container;
 import org.apache.catalina.Context;
 import org.apache.catalina.Globals;
 import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Connector;
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
 import org.apache.catalina.valves.ValveBase;
@@ -41,6 +42,7 @@ import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.http.InvalidParameterException;
 import org.apache.tomcat.util.log.SystemLogHandler;
 import org.apache.tomcat.util.res.StringManager;
+import org.apache.tomcat.util.threads.HybridThreadExecutor;
 
 /**
  * Valve that implements the default basic behavior for the <code>StandardWrapper</code> container implementation.
@@ -162,7 +164,7 @@ final class StandardWrapperValve extends ValveBase {
                     if (request.isAsyncDispatching()) {
                         request.getAsyncContextInternal().doInternalDispatch();
                     } else {
-                        filterChain.doFilter(request.getRequest(), response.getResponse());
+                        doFilter(request, response, filterChain, context);
                     }
                 }
 
@@ -275,6 +277,51 @@ final class StandardWrapperValve extends ValveBase {
 
     // -------------------------------------------------------- Private Methods
 
+    /**
+     * Call the filter chain for the specified request. If the connector is using a {@link HybridThreadExecutor}, the
+     * executor decides, based on the servlet mapping, whether the filter chain is called on the current virtual
+     * thread or on a platform thread. If a platform thread is used, it is bound to the context for the duration of the
+     * call so the context class loader and JNDI follow the request. Swallowed output is captured per thread so this is
+     * not used when the output is being swallowed.
+     *
+     * @param request     The request being processed
+     * @param response    The response being generated
+     * @param filterChain The filter chain for the request
+     * @param context     The context processing the request
+     */
+    private void doFilter(Request request, Response response, ApplicationFilterChain filterChain, Context context)
+            throws IOException, ServletException {
+        Connector connector = request.getConnector();
+        if (connector != null &&
+                connector.getProtocolHandler().getExecutor() instanceof HybridThreadExecutor hybridExecutor) {
+            String key = context.getName() + ':' + request.getHttpServletMapping().getPattern();
+            Thread requestThread = Thread.currentThread();
+            try {
+                hybridExecutor.call(key, () -> {
+                    // The request thread is already bound to the context
+                    ClassLoader original = Thread.currentThread() == requestThread ? null : context.bind(null);
+                    try {
+                        // Async processing needs to know which thread is processing the request
+                        request.getCoyoteRequest().setRequestThread();
+                        filterChain.doFilter(request.getRequest(), response.getResponse());
+                    } finally {
+                        context.unbind(original);
+                    }
+                    return null;
+                });
+            } catch (IOException | ServletException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ServletException(e);
+            } finally {
+                request.getCoyoteRequest().setRequestThread();
+            }
+        } else {
+            filterChain.doFilter(request.getRequest(), response.getResponse());
+        }
+    }
+
+
     /**
      * Handle the specified ServletException encountered while processing the specified Request to produce the specified
      * Response. Any exceptions that occur during generation of the exception report are logged and swallowed.
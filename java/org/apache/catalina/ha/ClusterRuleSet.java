@@ -70,6 +70,10 @@ public class ClusterRuleSet implements RuleSet {
         digester.addSetProperties(prefix + "Manager/SessionIdGenerator");
         digester.addSetNext(prefix + "Manager/SessionIdGenerator", "setSessionIdGenerator",
                 "org.apache.catalina.SessionIdGenerator");
+        digester.addObjectCreate(prefix + "Manager/SessionCodec", null, // MUST be specified in the element
+                "className");
+        digester.addSetProperties(prefix + "Manager/SessionCodec");
+        digester.addSetNext(prefix + "Manager/SessionCodec", "setSessionCodec", "org.apache.catalina.SessionCodec");
 
         digester.addObjectCreate(prefix + "Channel", null, // MUST be specified in the element
                 "className");
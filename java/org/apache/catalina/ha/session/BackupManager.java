@@ -316,4 +316,15 @@ public class BackupManager extends ClusterManagerBase implements MapOwner, Distr
         return new HashSet<>(map.keySetFull());
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Sessions are added to the replicated map by other nodes without calling {@link #add(Session)} so every session
+     * is checked for expiry.
+     */
+    @Override
+    protected boolean isExpiryIndexed() {
+        return false;
+    }
+
 }
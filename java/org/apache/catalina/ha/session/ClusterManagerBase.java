@@ -222,6 +222,7 @@ public abstract class ClusterManagerBase extends ManagerBase implements ClusterM
                 // Ignore
             }
         }
+        copy.setSessionCodec(getSessionCodec());
         copy.setRecordAllActions(isRecordAllActions());
     }
 
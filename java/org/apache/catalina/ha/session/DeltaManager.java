@@ -17,6 +17,7 @@
 package org.apache.catalina.ha.session;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -708,7 +709,8 @@ public class DeltaManager extends ClusterManagerBase {
 
         // Open an input stream to the specified pathname, if any
         // Load the previously unloaded active sessions
-        try (ObjectInputStream ois = getReplicationStream(data)) {
+        try (ObjectInputStream ois = getSessionCodec().getObjectInputStream(new ByteArrayInputStream(data),
+                is -> new ReplicationStream(is, getClassLoaders()))) {
             Integer count = (Integer) ois.readObject();
             int n = count.intValue();
             for (int i = 0; i < n; i++) {
@@ -765,7 +767,7 @@ public class DeltaManager extends ClusterManagerBase {
 
         // Open an output stream to the specified pathname, if any
         ByteArrayOutputStream fos = new ByteArrayOutputStream();
-        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(fos))) {
+        try (ObjectOutputStream oos = getSessionCodec().getObjectOutputStream(new BufferedOutputStream(fos))) {
             oos.writeObject(Integer.valueOf(currentSessions.length));
             for (Session currentSession : currentSessions) {
                 ((DeltaSession) currentSession).writeObjectData(oos);
@@ -316,6 +316,7 @@ public class DeltaSession extends StandardSession implements Externalizable, Clu
      */
     public void setMaxInactiveInterval(int interval, boolean addDeltaRequest) {
         super.maxInactiveInterval = interval;
+        expiryChanged();
         if (addDeltaRequest) {
             lockInternal();
             try {
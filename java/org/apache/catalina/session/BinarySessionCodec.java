@@ -0,0 +1,614 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamConstants;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.io.WriteAbortedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.catalina.SessionCodec;
+import org.apache.catalina.util.CustomObjectInputStream;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * A {@link SessionCodec} that uses a compact binary encoding for the types most commonly found in session state:
+ * {@code null}, {@link String}, the boxed primitive types, {@code byte[]} and {@link ArrayList}, {@link HashMap} and
+ * {@link LinkedHashMap} instances containing them. Values of any other type are encoded using Java serialization and
+ * embedded in the binary stream. Unlike Java serialization, object identity is not preserved across values so two
+ * attributes that refer to the same object will refer to equal but different objects once the session has been read.
+ * <p>
+ * The codec can read sessions written using Java serialization so it may be enabled for existing persisted sessions.
+ * {@link JavaSerializationSessionCodec} only reads Java serialization so sessions written by this codec can only be
+ * read when this codec is configured.
+ */
+public class BinarySessionCodec implements SessionCodec {
+
+    private static final StringManager sm = StringManager.getManager(BinarySessionCodec.class);
+
+    /*
+     * The first two bytes of the stream. Chosen so they can never be confused with the start of a Java serialization
+     * stream.
+     */
+    static final short MAGIC = (short) 0x5443;
+    static final byte VERSION = 1;
+
+    /*
+     * Collections nested more deeply than this are encoded using Java serialization. This limits the recursion when
+     * a collection contains itself.
+     */
+    private static final int MAX_DEPTH = 16;
+
+    // Longest String that can always be written with writeUTF()
+    private static final int MAX_UTF_LENGTH = 0xFFFF / 3;
+
+    // Largest array allocated before the data to fill it has been read
+    private static final int MAX_INITIAL_ARRAY_LENGTH = 8192;
+
+    // A Java serialization stream that contains no objects
+    private static final byte[] EMPTY_JAVA_STREAM = new byte[] { (byte) (ObjectStreamConstants.STREAM_MAGIC >> 8),
+            (byte) ObjectStreamConstants.STREAM_MAGIC, (byte) (ObjectStreamConstants.STREAM_VERSION >> 8),
+            (byte) ObjectStreamConstants.STREAM_VERSION };
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_LONG_STRING = 2;
+    private static final byte TAG_TRUE = 3;
+    private static final byte TAG_FALSE = 4;
+    private static final byte TAG_BYTE = 5;
+    private static final byte TAG_SHORT = 6;
+    private static final byte TAG_CHAR = 7;
+    private static final byte TAG_INT = 8;
+    private static final byte TAG_LONG = 9;
+    private static final byte TAG_FLOAT = 10;
+    private static final byte TAG_DOUBLE = 11;
+    private static final byte TAG_BYTE_ARRAY = 12;
+    private static final byte TAG_ARRAY_LIST = 13;
+    private static final byte TAG_HASH_MAP = 14;
+    private static final byte TAG_LINKED_HASH_MAP = 15;
+    private static final byte TAG_SERIALIZED = 16;
+    private static final byte TAG_NOT_SERIALIZABLE = 17;
+
+
+    @Override
+    public ObjectOutputStream getObjectOutputStream(OutputStream os) throws IOException {
+        return new BinaryObjectOutputStream(os);
+    }
+
+
+    @Override
+    public ObjectInputStream getObjectInputStream(InputStream is, ObjectInputStreamFactory javaSerialization)
+            throws IOException {
+        return createObjectInputStream(is, javaSerialization);
+    }
+
+
+    /**
+     * Create a stream to read sessions written either by this codec or using Java serialization.
+     *
+     * @param is                The stream containing the encoded sessions
+     * @param javaSerialization Creates the stream to use for data written using Java serialization
+     *
+     * @return The stream from which the sessions should be read
+     *
+     * @throws IOException if the stream cannot be created
+     */
+    static ObjectInputStream createObjectInputStream(InputStream is, ObjectInputStreamFactory javaSerialization)
+            throws IOException {
+        if (!is.markSupported()) {
+            is = new BufferedInputStream(is);
+        }
+        is.mark(2);
+        int b1 = is.read();
+        int b2 = is.read();
+        is.reset();
+        if (b1 != -1 && b2 != -1 && (short) ((b1 << 8) | b2) == MAGIC) {
+            return new BinaryObjectInputStream(is, javaSerialization);
+        }
+        // Java serialization or invalid. The stream created by the factory will report any error.
+        return javaSerialization.create(is);
+    }
+
+
+    private static class BinaryObjectOutputStream extends ObjectOutputStream {
+
+        private final DataOutputStream out;
+
+        BinaryObjectOutputStream(OutputStream os) throws IOException {
+            super();
+            out = new DataOutputStream(os);
+            out.writeShort(MAGIC);
+            out.writeByte(VERSION);
+        }
+
+        @Override
+        protected void writeObjectOverride(Object obj) throws IOException {
+            try {
+                if (obj != null && isCollection(obj)) {
+                    /*
+                     * Buffer collections so nothing is written if an element is not serializable. Other values are
+                     * either written completely or not at all.
+                     */
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                    writeValue(new DataOutputStream(baos), obj, 0);
+                    baos.writeTo(out);
+                } else {
+                    writeValue(out, obj, 0);
+                }
+            } catch (NotSerializableException e) {
+                // Equivalent to Java serialization so the reader can skip the value and continue
+                out.writeByte(TAG_NOT_SERIALIZABLE);
+                out.writeUTF(String.valueOf(e.getMessage()));
+                throw e;
+            }
+        }
+
+        @Override
+        public void writeUnshared(Object obj) throws IOException {
+            writeObjectOverride(obj);
+        }
+
+        private static void writeValue(DataOutputStream out, Object obj, int depth) throws IOException {
+            if (obj == null) {
+                out.writeByte(TAG_NULL);
+            } else if (obj instanceof String s) {
+                if (s.length() <= MAX_UTF_LENGTH) {
+                    out.writeByte(TAG_STRING);
+                    out.writeUTF(s);
+                } else {
+                    // Written in parts that are short enough for writeUTF()
+                    out.writeByte(TAG_LONG_STRING);
+                    out.writeInt(s.length());
+                    for (int start = 0; start < s.length(); start += MAX_UTF_LENGTH) {
+                        out.writeUTF(s.substring(start, Math.min(start + MAX_UTF_LENGTH, s.length())));
+                    }
+                }
+            } else if (obj instanceof Boolean b) {
+                out.writeByte(b.booleanValue() ? TAG_TRUE : TAG_FALSE);
+            } else if (obj instanceof Integer i) {
+                out.writeByte(TAG_INT);
+                out.writeInt(i.intValue());
+            } else if (obj instanceof Long l) {
+                out.writeByte(TAG_LONG);
+                out.writeLong(l.longValue());
+            } else if (obj instanceof Byte b) {
+                out.writeByte(TAG_BYTE);
+                out.writeByte(b.byteValue());
+            } else if (obj instanceof Short s) {
+                out.writeByte(TAG_SHORT);
+                out.writeShort(s.shortValue());
+            } else if (obj instanceof Character c) {
+                out.writeByte(TAG_CHAR);
+                out.writeChar(c.charValue());
+            } else if (obj instanceof Float f) {
+                out.writeByte(TAG_FLOAT);
+                out.writeFloat(f.floatValue());
+            } else if (obj instanceof Double d) {
+                out.writeByte(TAG_DOUBLE);
+                out.writeDouble(d.doubleValue());
+            } else if (obj instanceof byte[] bytes) {
+                out.writeByte(TAG_BYTE_ARRAY);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } else if (depth < MAX_DEPTH && obj.getClass() == ArrayList.class) {
+                // Copy so the size written matches the number of elements written
+                Object[] elements = ((List<?>) obj).toArray();
+                out.writeByte(TAG_ARRAY_LIST);
+                out.writeInt(elements.length);
+                for (Object element : elements) {
+                    writeValue(out, element, depth + 1);
+                }
+            } else if (depth < MAX_DEPTH && isCollection(obj)) {
+                // HashMap or LinkedHashMap
+                Object[] entries = ((Map<?,?>) obj).entrySet().toArray();
+                out.writeByte(obj.getClass() == HashMap.class ? TAG_HASH_MAP : TAG_LINKED_HASH_MAP);
+                out.writeInt(entries.length);
+                for (Object entry : entries) {
+                    writeValue(out, ((Map.Entry<?,?>) entry).getKey(), depth + 1);
+                    writeValue(out, ((Map.Entry<?,?>) entry).getValue(), depth + 1);
+                }
+            } else {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+                    oos.writeObject(obj);
+                }
+                out.writeByte(TAG_SERIALIZED);
+                out.writeInt(baos.size());
+                baos.writeTo(out);
+            }
+        }
+
+        /*
+         * Only these exact types are encoded as collections so the type is unchanged when the value is read.
+         */
+        private static boolean isCollection(Object obj) {
+            Class<?> clazz = obj.getClass();
+            return clazz == ArrayList.class || clazz == HashMap.class || clazz == LinkedHashMap.class;
+        }
+
+        @Override
+        public void write(int val) throws IOException {
+            out.write(val);
+        }
+
+        @Override
+        public void write(byte[] buf) throws IOException {
+            out.write(buf);
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) throws IOException {
+            out.write(buf, off, len);
+        }
+
+        @Override
+        public void writeBoolean(boolean val) throws IOException {
+            out.writeBoolean(val);
+        }
+
+        @Override
+        public void writeByte(int val) throws IOException {
+            out.writeByte(val);
+        }
+
+        @Override
+        public void writeShort(int val) throws IOException {
+            out.writeShort(val);
+        }
+
+        @Override
+        public void writeChar(int val) throws IOException {
+            out.writeChar(val);
+        }
+
+        @Override
+        public void writeInt(int val) throws IOException {
+            out.writeInt(val);
+        }
+
+        @Override
+        public void writeLong(long val) throws IOException {
+            out.writeLong(val);
+        }
+
+        @Override
+        public void writeFloat(float val) throws IOException {
+            out.writeFloat(val);
+        }
+
+        @Override
+        public void writeDouble(double val) throws IOException {
+            out.writeDouble(val);
+        }
+
+        @Override
+        public void writeBytes(String str) throws IOException {
+            out.writeBytes(str);
+        }
+
+        @Override
+        public void writeChars(String str) throws IOException {
+            out.writeChars(str);
+        }
+
+        @Override
+        public void writeUTF(String str) throws IOException {
+            out.writeUTF(str);
+        }
+
+        @Override
+        public void reset() throws IOException {
+            // NO-OP. There is no state to reset.
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+
+    private static class BinaryObjectInputStream extends ObjectInputStream {
+
+        private final DataInputStream in;
+        private final ObjectInputStreamFactory javaSerialization;
+        /*
+         * Used to apply the class name filter, if any, of the Java serialization stream to the types decoded by this
+         * stream. Each type is only checked once.
+         */
+        private ObjectInputStream classNameFilter = null;
+        private final boolean[] checkedTags = new boolean[TAG_NOT_SERIALIZABLE + 1];
+
+        BinaryObjectInputStream(InputStream is, ObjectInputStreamFactory javaSerialization) throws IOException {
+            super();
+            in = new DataInputStream(is);
+            this.javaSerialization = javaSerialization;
+            in.readShort();
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new StreamCorruptedException(
+                        sm.getString("binarySessionCodec.unsupportedVersion", Byte.toString(version)));
+            }
+        }
+
+        @Override
+        protected Object readObjectOverride() throws IOException, ClassNotFoundException {
+            return readValue(in.readByte(), 0);
+        }
+
+        @Override
+        public Object readUnshared() throws IOException, ClassNotFoundException {
+            return readValue(in.readByte(), 0);
+        }
+
+        private Object readValue(byte tag, int depth) throws IOException, ClassNotFoundException {
+            Object value = decodeValue(tag, depth);
+            /*
+             * Strings, like null, are not subject to the class name filter when using Java serialization. Values that
+             * were written using Java serialization have already been filtered by the Java serialization stream.
+             */
+            if (value != null && !(value instanceof String) && tag != TAG_SERIALIZED && !checkedTags[tag]) {
+                checkAllowed(value.getClass());
+                checkedTags[tag] = true;
+            }
+            return value;
+        }
+
+        /*
+         * Check the class of a decoded value, and any serializable super classes, against the class name filter as if
+         * the value had been read using Java serialization.
+         */
+        private void checkAllowed(Class<?> clazz) throws IOException, ClassNotFoundException {
+            if (classNameFilter == null) {
+                classNameFilter = javaSerialization.create(new ByteArrayInputStream(EMPTY_JAVA_STREAM));
+            }
+            if (classNameFilter instanceof CustomObjectInputStream cois) {
+                while (clazz != null && Serializable.class.isAssignableFrom(clazz)) {
+                    cois.resolveClass(ObjectStreamClass.lookup(clazz));
+                    clazz = clazz.getSuperclass();
+                }
+            }
+        }
+
+        private Object decodeValue(byte tag, int depth) throws IOException, ClassNotFoundException {
+            if (depth >= MAX_DEPTH && (tag == TAG_ARRAY_LIST || tag == TAG_HASH_MAP || tag == TAG_LINKED_HASH_MAP)) {
+                // Not written by this codec as collections nested this deeply are written using Java serialization
+                throw new StreamCorruptedException(
+                        sm.getString("binarySessionCodec.invalidDepth", Integer.toString(MAX_DEPTH)));
+            }
+            switch (tag) {
+                case TAG_NULL:
+                    return null;
+                case TAG_STRING:
+                    return in.readUTF();
+                case TAG_LONG_STRING: {
+                    int length = readLength();
+                    StringBuilder sb = new StringBuilder(Math.min(length, MAX_UTF_LENGTH));
+                    while (sb.length() < length) {
+                        String part = in.readUTF();
+                        if (part.isEmpty()) {
+                            throw new StreamCorruptedException(
+                                    sm.getString("binarySessionCodec.invalidLength", Integer.toString(length)));
+                        }
+                        sb.append(part);
+                    }
+                    return sb.toString();
+                }
+                case TAG_TRUE:
+                    return Boolean.TRUE;
+                case TAG_FALSE:
+                    return Boolean.FALSE;
+                case TAG_BYTE:
+                    return Byte.valueOf(in.readByte());
+                case TAG_SHORT:
+                    return Short.valueOf(in.readShort());
+                case TAG_CHAR:
+                    return Character.valueOf(in.readChar());
+                case TAG_INT:
+                    return Integer.valueOf(in.readInt());
+                case TAG_LONG:
+                    return Long.valueOf(in.readLong());
+                case TAG_FLOAT:
+                    return Float.valueOf(in.readFloat());
+                case TAG_DOUBLE:
+                    return Double.valueOf(in.readDouble());
+                case TAG_BYTE_ARRAY:
+                    return readBytes(readLength());
+                case TAG_ARRAY_LIST: {
+                    int size = readLength();
+                    // Don't trust the size for the initial capacity
+                    List<Object> list = new ArrayList<>(Math.min(size, 1024));
+                    for (int i = 0; i < size; i++) {
+                        list.add(readValue(in.readByte(), depth + 1));
+                    }
+                    return list;
+                }
+                case TAG_HASH_MAP:
+                case TAG_LINKED_HASH_MAP: {
+                    int size = readLength();
+                    Map<Object,Object> map = tag == TAG_HASH_MAP ? new HashMap<>() : new LinkedHashMap<>();
+                    for (int i = 0; i < size; i++) {
+                        Object key = readValue(in.readByte(), depth + 1);
+                        map.put(key, readValue(in.readByte(), depth + 1));
+                    }
+                    return map;
+                }
+                case TAG_SERIALIZED: {
+                    byte[] bytes = readBytes(readLength());
+                    try (ObjectInputStream ois = javaSerialization.create(new ByteArrayInputStream(bytes))) {
+                        return ois.readObject();
+                    }
+                }
+                case TAG_NOT_SERIALIZABLE: {
+                    String className = in.readUTF();
+                    throw new WriteAbortedException(sm.getString("binarySessionCodec.writeAborted", className),
+                            new NotSerializableException(className));
+                }
+                default:
+                    throw new StreamCorruptedException(
+                            sm.getString("binarySessionCodec.invalidTag", Byte.toString(tag)));
+            }
+        }
+
+        private int readLength() throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                throw new StreamCorruptedException(
+                        sm.getString("binarySessionCodec.invalidLength", Integer.toString(length)));
+            }
+            return length;
+        }
+
+        private byte[] readBytes(int length) throws IOException {
+            // Don't trust the length. Grow the array as the data is read so a corrupt length fails at the end of the
+            // stream rather than triggering a large allocation.
+            byte[] bytes = new byte[Math.min(length, MAX_INITIAL_ARRAY_LENGTH)];
+            int read = 0;
+            while (true) {
+                in.readFully(bytes, read, bytes.length - read);
+                read = bytes.length;
+                if (read == length) {
+                    return bytes;
+                }
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, read * 2L));
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            return in.read(buf, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public boolean readBoolean() throws IOException {
+            return in.readBoolean();
+        }
+
+        @Override
+        public byte readByte() throws IOException {
+            return in.readByte();
+        }
+
+        @Override
+        public int readUnsignedByte() throws IOException {
+            return in.readUnsignedByte();
+        }
+
+        @Override
+        public char readChar() throws IOException {
+            return in.readChar();
+        }
+
+        @Override
+        public short readShort() throws IOException {
+            return in.readShort();
+        }
+
+        @Override
+        public int readUnsignedShort() throws IOException {
+            return in.readUnsignedShort();
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            return in.readInt();
+        }
+
+        @Override
+        public long readLong() throws IOException {
+            return in.readLong();
+        }
+
+        @Override
+        public float readFloat() throws IOException {
+            return in.readFloat();
+        }
+
+        @Override
+        public double readDouble() throws IOException {
+            return in.readDouble();
+        }
+
+        @Override
+        public void readFully(byte[] buf) throws IOException {
+            in.readFully(buf);
+        }
+
+        @Override
+        public void readFully(byte[] buf, int off, int len) throws IOException {
+            in.readFully(buf, off, len);
+        }
+
+        @Override
+        public int skipBytes(int len) throws IOException {
+            return in.skipBytes(len);
+        }
+
+        @Deprecated
+        @Override
+        @SuppressWarnings("deprecation")
+        public String readLine() throws IOException {
+            return in.readLine();
+        }
+
+        @Override
+        public String readUTF() throws IOException {
+            return in.readUTF();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (classNameFilter != null) {
+                classNameFilter.close();
+            }
+            in.close();
+        }
+    }
+}
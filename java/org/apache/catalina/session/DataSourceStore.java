@@ -16,8 +16,6 @@
  */
 package org.apache.catalina.session;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -29,7 +27,18 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -37,6 +46,7 @@ import javax.naming.NamingException;
 import javax.sql.DataSource;
 
 import org.apache.catalina.Container;
+import org.apache.catalina.LifecycleException;
 import org.apache.catalina.Server;
 import org.apache.catalina.Service;
 import org.apache.catalina.Session;
@@ -45,6 +55,15 @@ import org.apache.juli.logging.Log;
 /**
  * Implementation of the {@link org.apache.catalina.Store Store} interface that stores serialized session objects in a
  * database. Sessions that are saved are still subject to being expired based on inactivity.
+ * <p>
+ * If {@link #setBatchSize(int) batchSize} is greater than one, saves are written behind. A saved session is serialized
+ * immediately and queued. A later save of the same session replaces the queued one. Queued saves are written to the
+ * database in JDBC batches when the queue reaches the batch size, every {@link #setFlushInterval(int) flushInterval}
+ * and when the Store is stopped. Batches triggered by the queue reaching the batch size are written by the utility
+ * executor rather than the thread that saved the session. If the queue holds {@link #setMaxPendingSaves(int)
+ * maxPendingSaves} sessions, a save of a session that is not already queued is written immediately. Queued saves are
+ * visible to {@link #load(String)}, {@link #keys()} and {@link #getSize()} so the Manager sees the same sessions as
+ * it would if each save had been written immediately.
  */
 public class DataSourceStore extends StoreBase {
 
@@ -117,6 +136,60 @@ public class DataSourceStore extends StoreBase {
      */
     protected String sessionLastAccessedCol = "lastaccess";
 
+
+    // ------------------------------------------------------------ Write-behind
+
+    /*
+     * The number of rows to request at a time when loading all sessions.
+     */
+    private static final int LOAD_ALL_FETCH_SIZE = 1000;
+
+    /**
+     * The maximum number of sessions written to the database in a single batch. Saves are only queued if this is
+     * greater than one.
+     */
+    private int batchSize = 1;
+
+    /**
+     * The interval in milliseconds at which queued saves are written to the database.
+     */
+    private int flushInterval = 1000;
+
+    /**
+     * The maximum number of saves that may be queued. Once reached, saves of sessions that are not already queued are
+     * written immediately.
+     */
+    private int maxPendingSaves = 10000;
+
+    /*
+     * Saves that have not yet been written to the database, in the order they were first queued. Guarded by itself.
+     */
+    private final Map<String,PendingSave> pendingSaves = new LinkedHashMap<>();
+
+    /*
+     * The IDs of the sessions in the batch currently being written. Guarded by pendingSaves.
+     */
+    private final Set<String> flushingIds = new HashSet<>();
+
+    /*
+     * Held while a batch is written so that batches are written one at a time.
+     */
+    private final Object flushLock = new Object();
+
+    private volatile ScheduledFuture<?> flushFuture = null;
+
+    /*
+     * Used to write the queued saves when the queue reaches the batch size. Null if the Store is not running or has
+     * no access to the utility executor, in which case the saving thread writes them.
+     */
+    private volatile ScheduledExecutorService utilityExecutor = null;
+
+    /*
+     * Set while a flush triggered by the queue reaching the batch size is waiting for, or running on, the utility
+     * executor.
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
     // -------------------------------------------------------------- Properties
 
     /**
@@ -291,6 +364,71 @@ public class DataSourceStore extends StoreBase {
         return this.sessionLastAccessedCol;
     }
 
+    /**
+     * Set the maximum number of sessions written to the database in a single batch. If greater than one, saved
+     * sessions are queued and written in batches rather than being written immediately.
+     *
+     * @param batchSize The maximum number of sessions per batch
+     */
+    public void setBatchSize(int batchSize) {
+        int oldBatchSize = this.batchSize;
+        this.batchSize = batchSize;
+        support.firePropertyChange("batchSize", Integer.valueOf(oldBatchSize), Integer.valueOf(this.batchSize));
+    }
+
+    /**
+     * Return the maximum number of sessions written to the database in a single batch.
+     *
+     * @return the batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set the interval at which queued saves are written to the database. If zero or less, queued saves are written
+     * when the queue is full, when the Manager checks for expired sessions and when the Store is stopped.
+     *
+     * @param flushInterval The interval in milliseconds
+     */
+    public void setFlushInterval(int flushInterval) {
+        int oldFlushInterval = this.flushInterval;
+        this.flushInterval = flushInterval;
+        support.firePropertyChange("flushInterval", Integer.valueOf(oldFlushInterval),
+                Integer.valueOf(this.flushInterval));
+    }
+
+    /**
+     * Return the interval at which queued saves are written to the database.
+     *
+     * @return the interval in milliseconds
+     */
+    public int getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Set the maximum number of saved sessions that may be queued waiting to be written to the database. Once the
+     * queue is full, saves of sessions that are not already queued are written immediately.
+     *
+     * @param maxPendingSaves The maximum number of queued saves
+     */
+    public void setMaxPendingSaves(int maxPendingSaves) {
+        int oldMaxPendingSaves = this.maxPendingSaves;
+        this.maxPendingSaves = maxPendingSaves;
+        support.firePropertyChange("maxPendingSaves", Integer.valueOf(oldMaxPendingSaves),
+                Integer.valueOf(this.maxPendingSaves));
+    }
+
+    /**
+     * Return the maximum number of saved sessions that may be queued waiting to be written to the database.
+     *
+     * @return the maximum number of queued saves
+     */
+    public int getMaxPendingSaves() {
+        return maxPendingSaves;
+    }
+
     /**
      * Set the JNDI name of a DataSource-factory to use for db access
      *
@@ -359,6 +497,12 @@ public class DataSourceStore extends StoreBase {
         }
         final String keysSql = sqlTmp;
 
+        // Copy the queued saves first so any that are written while the database is queried are in at least one
+        List<PendingSave> pending;
+        synchronized (pendingSaves) {
+            pending = new ArrayList<>(pendingSaves.values());
+        }
+
         String[] keys = withRetry((ConnectionOperation<String[],IOException>) conn -> {
             try (PreparedStatement preparedKeysSql = conn.prepareStatement(keysSql)) {
                 preparedKeysSql.setString(1, getName());
@@ -377,11 +521,37 @@ public class DataSourceStore extends StoreBase {
             }
         });
 
-        return keys == null ? new String[0] : keys;
+        if (keys == null) {
+            keys = new String[0];
+        }
+
+        if (pending.isEmpty()) {
+            return keys;
+        }
+        // Queued saves replace the state in the database
+        Set<String> result = new LinkedHashSet<>(Arrays.asList(keys));
+        long timeNow = System.currentTimeMillis();
+        for (PendingSave pendingSave : pending) {
+            if (!expiredOnly || pendingSave.lastAccessedTime + pendingSave.maxInactiveInterval * 1000L < timeNow) {
+                result.add(pendingSave.id);
+            } else {
+                result.remove(pendingSave.id);
+            }
+        }
+        return result.toArray(new String[0]);
     }
 
     @Override
     public int getSize() throws IOException {
+        boolean pending;
+        synchronized (pendingSaves) {
+            pending = !pendingSaves.isEmpty();
+        }
+        if (pending) {
+            // Some queued saves may already be in the database
+            return keys().length;
+        }
+
         String sizeSql = "SELECT COUNT(" + sessionIdCol + ") FROM " + sessionTable + " WHERE " + sessionAppCol + " = ?";
 
         Integer size = withRetry((ConnectionOperation<Integer,IOException>) conn -> {
@@ -407,6 +577,22 @@ public class DataSourceStore extends StoreBase {
         String loadSql = "SELECT " + sessionIdCol + ", " + sessionDataCol + " FROM " + sessionTable + " WHERE " +
                 sessionIdCol + " = ? AND " + sessionAppCol + " = ?";
 
+        PendingSave pendingSave;
+        synchronized (pendingSaves) {
+            pendingSave = pendingSaves.get(id);
+        }
+        if (pendingSave != null) {
+            ClassLoader oldThreadContextCL = context.bind(null);
+            try {
+                if (contextLog.isTraceEnabled()) {
+                    contextLog.trace(sm.getString("dataSourceStore.loading", id, sessionTable));
+                }
+                return readSession(new ByteArrayInputStream(pendingSave.data));
+            } finally {
+                context.unbind(oldThreadContextCL);
+            }
+        }
+
         Session session = withRetry((ConnectionOperation<StandardSession,ClassNotFoundException>) conn -> {
             ClassLoader oldThreadContextCL = context.bind(null);
 
@@ -415,16 +601,10 @@ public class DataSourceStore extends StoreBase {
                 preparedLoadSql.setString(2, getName());
                 try (ResultSet rst = preparedLoadSql.executeQuery()) {
                     if (rst.next()) {
-                        try (ObjectInputStream ois = getObjectInputStream(rst.getBinaryStream(2))) {
-                            if (contextLog.isTraceEnabled()) {
-                                contextLog.trace(sm.getString("dataSourceStore.loading", id, sessionTable));
-                            }
-
-                            StandardSession _session = (StandardSession) manager.createEmptySession();
-                            _session.readObjectData(ois);
-                            _session.setManager(manager);
-                            return _session;
+                        if (contextLog.isTraceEnabled()) {
+                            contextLog.trace(sm.getString("dataSourceStore.loading", id, sessionTable));
                         }
+                        return readSession(rst.getBinaryStream(2));
                     } else if (context.getLogger().isDebugEnabled()) {
                         contextLog.debug(sm.getString("dataSourceStore.noObject", id));
                     }
@@ -437,12 +617,84 @@ public class DataSourceStore extends StoreBase {
         return session;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation reads all the sessions with a single query.
+     */
+    @Override
+    public void loadAll(Consumer<Session> consumer) throws IOException {
+        org.apache.catalina.Context context = getManager().getContext();
+        Log contextLog = context.getLogger();
+        String loadAllSql = "SELECT " + sessionIdCol + ", " + sessionDataCol + " FROM " + sessionTable + " WHERE " +
+                sessionAppCol + " = ?";
+
+        Map<String,PendingSave> pending;
+        synchronized (pendingSaves) {
+            pending = new LinkedHashMap<>(pendingSaves);
+        }
+        // Sessions already passed to the consumer if the query has to be retried
+        Set<String> loaded = new HashSet<>();
+
+        ClassLoader oldThreadContextCL = context.bind(null);
+        try {
+            withRetry((ConnectionOperation<Void,IOException>) conn -> {
+                try (PreparedStatement preparedLoadAllSql = conn.prepareStatement(loadAllSql)) {
+                    preparedLoadAllSql.setFetchSize(LOAD_ALL_FETCH_SIZE);
+                    preparedLoadAllSql.setString(1, getName());
+                    try (ResultSet rst = preparedLoadAllSql.executeQuery()) {
+                        while (rst.next()) {
+                            String id = rst.getString(1);
+                            if (pending.containsKey(id) || !loaded.add(id)) {
+                                continue;
+                            }
+                            if (contextLog.isTraceEnabled()) {
+                                contextLog.trace(sm.getString("dataSourceStore.loading", id, sessionTable));
+                            }
+                            try {
+                                consumer.accept(readSession(rst.getBinaryStream(2)));
+                            } catch (ClassNotFoundException | IOException e) {
+                                contextLog.error(sm.getString("store.loadFail", id), e);
+                            }
+                        }
+                    }
+                }
+                return null;
+            });
+
+            for (PendingSave pendingSave : pending.values()) {
+                try {
+                    consumer.accept(readSession(new ByteArrayInputStream(pendingSave.data)));
+                } catch (ClassNotFoundException | IOException e) {
+                    contextLog.error(sm.getString("store.loadFail", pendingSave.id), e);
+                }
+            }
+        } finally {
+            context.unbind(oldThreadContextCL);
+        }
+    }
+
     @Override
     public void remove(String id) throws IOException {
-        withRetry(conn -> {
-            remove(id, conn);
-            return null;
-        });
+        boolean flushing;
+        synchronized (pendingSaves) {
+            pendingSaves.remove(id);
+            flushing = flushingIds.contains(id);
+        }
+        if (flushing) {
+            // Wait for the batch to be written so the session is not written again after it has been removed
+            synchronized (flushLock) {
+                withRetry(conn -> {
+                    remove(id, conn);
+                    return null;
+                });
+            }
+        } else {
+            withRetry(conn -> {
+                remove(id, conn);
+                return null;
+            });
+        }
 
         if (manager.getContext().getLogger().isTraceEnabled()) {
             manager.getContext().getLogger().trace(sm.getString("dataSourceStore.removing", id, sessionTable));
@@ -472,44 +724,56 @@ public class DataSourceStore extends StoreBase {
     public void clear() throws IOException {
         String clearSql = "DELETE FROM " + sessionTable + " WHERE " + sessionAppCol + " = ?";
 
-        withRetry(conn -> {
-            try (PreparedStatement preparedClearSql = conn.prepareStatement(clearSql)) {
-                preparedClearSql.setString(1, getName());
-                preparedClearSql.execute();
+        synchronized (flushLock) {
+            synchronized (pendingSaves) {
+                pendingSaves.clear();
             }
-            return null;
-        });
+            withRetry(conn -> {
+                try (PreparedStatement preparedClearSql = conn.prepareStatement(clearSql)) {
+                    preparedClearSql.setString(1, getName());
+                    preparedClearSql.execute();
+                }
+                return null;
+            });
+        }
     }
 
     @Override
     public void save(Session session) throws IOException {
-        String saveSql = "INSERT INTO " + sessionTable + " (" + sessionIdCol + ", " + sessionAppCol + ", " +
-                sessionDataCol + ", " + sessionValidCol + ", " + sessionMaxInactiveCol + ", " + sessionLastAccessedCol +
-                ") VALUES (?, ?, ?, ?, ?, ?)";
-
+        PendingSave pendingSave;
         synchronized (session) {
-
             // First serialize session
             ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(bos))) {
+            try (ObjectOutputStream oos = getObjectOutputStream(bos)) {
                 ((StandardSession) session).writeObjectData(oos);
             }
-            byte[] obs = bos.toByteArray();
+            pendingSave = new PendingSave(session.getIdInternal(), bos.toByteArray(), session.isValid(),
+                    session.getMaxInactiveInterval(), session.getLastAccessedTime());
+        }
 
+        boolean queued = false;
+        if (batchSize > 1) {
+            boolean flush;
+            synchronized (pendingSaves) {
+                // A session that is queued or being written is always queued so it can't be written out of order
+                if (pendingSaves.size() < maxPendingSaves || pendingSaves.containsKey(pendingSave.id) ||
+                        flushingIds.contains(pendingSave.id)) {
+                    pendingSaves.put(pendingSave.id, pendingSave);
+                    queued = true;
+                }
+                flush = pendingSaves.size() >= batchSize;
+            }
+            if (flush) {
+                scheduleFlush();
+            }
+        }
+        if (!queued) {
             withRetry(conn -> {
                 // Remove session if it exists and insert again.
-                remove(session.getIdInternal(), conn);
-
-                int size = obs.length;
-                try (ByteArrayInputStream bis = new ByteArrayInputStream(obs, 0, size);
-                        InputStream in = new BufferedInputStream(bis, size);
-                        PreparedStatement preparedSaveSql = conn.prepareStatement(saveSql)) {
-                    preparedSaveSql.setString(1, session.getIdInternal());
-                    preparedSaveSql.setString(2, getName());
-                    preparedSaveSql.setBinaryStream(3, in, size);
-                    preparedSaveSql.setString(4, session.isValid() ? "1" : "0");
-                    preparedSaveSql.setInt(5, session.getMaxInactiveInterval());
-                    preparedSaveSql.setLong(6, session.getLastAccessedTime());
+                remove(pendingSave.id, conn);
+
+                try (PreparedStatement preparedSaveSql = conn.prepareStatement(getSaveSql())) {
+                    setSaveParameters(preparedSaveSql, pendingSave);
                     preparedSaveSql.execute();
                 }
                 return null;
@@ -523,6 +787,73 @@ public class DataSourceStore extends StoreBase {
     }
 
 
+    /**
+     * Write any queued saves to the database.
+     *
+     * @throws IOException if a batch could not be written. Saves that have not been written remain queued.
+     */
+    public void flush() throws IOException {
+        while (flushBatch()) {
+            // Continue until the queue is empty
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If saves are queued and are not written at a fixed interval, they are written before checking for expired
+     * sessions.
+     */
+    @Override
+    public void processExpires() {
+        if (batchSize > 1 && flushFuture == null && getState().isAvailable()) {
+            flushQueued();
+        }
+        super.processExpires();
+    }
+
+
+    /*
+     * Write the queued saves using the utility executor, if available, once the queue has reached the batch size.
+     */
+    private void scheduleFlush() {
+        ScheduledExecutorService utilityExecutor = this.utilityExecutor;
+        if (utilityExecutor == null) {
+            flushQueued();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            utilityExecutor.execute(() -> {
+                try {
+                    flushQueued();
+                } finally {
+                    flushScheduled.set(false);
+                }
+                // Saves queued after the last batch was written but before the flag was cleared did not schedule a
+                // flush
+                boolean flush;
+                synchronized (pendingSaves) {
+                    flush = pendingSaves.size() >= batchSize;
+                }
+                if (flush) {
+                    scheduleFlush();
+                }
+            });
+        }
+    }
+
+
+    /*
+     * Write the queued saves, logging rather than throwing any failure. Saves that are not written remain queued.
+     */
+    private void flushQueued() {
+        try {
+            flush();
+        } catch (IOException ioe) {
+            manager.getContext().getLogger().error(sm.getString("dataSourceStore.flushFail"), ioe);
+        }
+    }
+
+
     // --------------------------------------------------------- Protected Methods
 
     /**
@@ -644,6 +975,146 @@ public class DataSourceStore extends StoreBase {
     }
 
 
+    @Override
+    protected void startInternal() throws LifecycleException {
+        super.startInternal();
+
+        if (batchSize > 1) {
+            Service service = Container.getService(manager.getContext());
+            if (service != null && service.getServer() != null) {
+                utilityExecutor = service.getServer().getUtilityExecutor();
+                if (flushInterval > 0) {
+                    flushFuture = utilityExecutor.scheduleWithFixedDelay(this::flushQueued, flushInterval,
+                            flushInterval, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+
+    @Override
+    protected void stopInternal() throws LifecycleException {
+        ScheduledFuture<?> flushFuture = this.flushFuture;
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+            this.flushFuture = null;
+        }
+        utilityExecutor = null;
+        flushQueued();
+
+        super.stopInternal();
+    }
+
+
+    /*
+     * Write the next batch of queued saves. Returns false if there were no queued saves.
+     */
+    private boolean flushBatch() throws IOException {
+        synchronized (flushLock) {
+            List<PendingSave> batch = new ArrayList<>();
+            synchronized (pendingSaves) {
+                for (PendingSave pendingSave : pendingSaves.values()) {
+                    if (batch.size() >= batchSize) {
+                        break;
+                    }
+                    batch.add(pendingSave);
+                    flushingIds.add(pendingSave.id);
+                }
+            }
+            if (batch.isEmpty()) {
+                return false;
+            }
+
+            try {
+                Boolean written = withRetry((ConnectionOperation<Boolean,IOException>) conn -> {
+                    writeBatch(conn, batch);
+                    return Boolean.TRUE;
+                });
+                if (written == null) {
+                    throw new IOException(sm.getString("dataSourceStore.noConnection"));
+                }
+            } finally {
+                synchronized (pendingSaves) {
+                    flushingIds.clear();
+                }
+            }
+
+            synchronized (pendingSaves) {
+                for (PendingSave pendingSave : batch) {
+                    // Retain any save that was queued while the batch was being written
+                    pendingSaves.remove(pendingSave.id, pendingSave);
+                }
+            }
+            if (manager.getContext().getLogger().isDebugEnabled()) {
+                manager.getContext().getLogger().debug(
+                        sm.getString("dataSourceStore.flushed", Integer.toString(batch.size()), sessionTable));
+            }
+            return true;
+        }
+    }
+
+
+    /*
+     * Write a batch of sessions in a single transaction. Each session is replaced by deleting any existing row and then
+     * inserting a new one as there is no portable SQL for an upsert.
+     */
+    private void writeBatch(Connection conn, List<PendingSave> batch) throws SQLException {
+        String removeSql =
+                "DELETE FROM " + sessionTable + " WHERE " + sessionIdCol + " = ?  AND " + sessionAppCol + " = ?";
+        boolean autoCommit = conn.getAutoCommit();
+        if (autoCommit) {
+            conn.setAutoCommit(false);
+        }
+        try (PreparedStatement preparedRemoveSql = conn.prepareStatement(removeSql);
+                PreparedStatement preparedSaveSql = conn.prepareStatement(getSaveSql())) {
+            for (PendingSave pendingSave : batch) {
+                preparedRemoveSql.setString(1, pendingSave.id);
+                preparedRemoveSql.setString(2, getName());
+                preparedRemoveSql.addBatch();
+                setSaveParameters(preparedSaveSql, pendingSave);
+                preparedSaveSql.addBatch();
+            }
+            preparedRemoveSql.executeBatch();
+            preparedSaveSql.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            if (autoCommit) {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+
+    private String getSaveSql() {
+        return "INSERT INTO " + sessionTable + " (" + sessionIdCol + ", " + sessionAppCol + ", " + sessionDataCol +
+                ", " + sessionValidCol + ", " + sessionMaxInactiveCol + ", " + sessionLastAccessedCol +
+                ") VALUES (?, ?, ?, ?, ?, ?)";
+    }
+
+
+    private void setSaveParameters(PreparedStatement preparedSaveSql, PendingSave pendingSave) throws SQLException {
+        preparedSaveSql.setString(1, pendingSave.id);
+        preparedSaveSql.setString(2, getName());
+        preparedSaveSql.setBinaryStream(3, new ByteArrayInputStream(pendingSave.data), pendingSave.data.length);
+        preparedSaveSql.setString(4, pendingSave.valid ? "1" : "0");
+        preparedSaveSql.setInt(5, pendingSave.maxInactiveInterval);
+        preparedSaveSql.setLong(6, pendingSave.lastAccessedTime);
+    }
+
+
+    private StandardSession readSession(InputStream is) throws ClassNotFoundException, IOException {
+        try (ObjectInputStream ois = getObjectInputStream(is)) {
+            StandardSession session = (StandardSession) manager.createEmptySession();
+            session.readObjectData(ois);
+            session.setManager(manager);
+            return session;
+        }
+    }
+
+
     private <T, E extends Exception> T withRetry(ConnectionOperation<T,E> operation) throws IOException, E {
         SQLException sqlException = null;
 
@@ -688,4 +1159,25 @@ public class DataSourceStore extends StoreBase {
     private interface ConnectionOperation<T, E extends Exception> {
         T execute(Connection connection) throws IOException, SQLException, E;
     }
+
+
+    /*
+     * A serialized session that has been saved but not yet written to the database. Instances are compared by
+     * identity so that a save queued while a batch is being written is not mistaken for the save that was written.
+     */
+    private static final class PendingSave {
+        private final String id;
+        private final byte[] data;
+        private final boolean valid;
+        private final int maxInactiveInterval;
+        private final long lastAccessedTime;
+
+        PendingSave(String id, byte[] data, boolean valid, int maxInactiveInterval, long lastAccessedTime) {
+            this.id = id;
+            this.data = data;
+            this.valid = valid;
+            this.maxInactiveInterval = maxInactiveInterval;
+            this.lastAccessedTime = lastAccessedTime;
+        }
+    }
 }
@@ -16,7 +16,6 @@
  */
 package org.apache.catalina.session;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -279,7 +278,7 @@ public final class FileStore extends StoreBase {
         writeLock.lock();
         try {
             try (FileOutputStream fos = new FileOutputStream(tempFile);
-                    ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(fos))) {
+                    ObjectOutputStream oos = getObjectOutputStream(fos)) {
                 ((StandardSession) session).writeObjectData(oos);
             }
             /*
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import org.apache.catalina.SessionCodec;
+
+/**
+ * The default {@link SessionCodec} that uses Java serialization. Only Java serialization is accepted when reading
+ * sessions. Sessions written by {@link BinarySessionCodec} can only be read when that codec is configured.
+ */
+public class JavaSerializationSessionCodec implements SessionCodec {
+
+    @Override
+    public ObjectOutputStream getObjectOutputStream(OutputStream os) throws IOException {
+        return new ObjectOutputStream(os);
+    }
+
+
+    @Override
+    public ObjectInputStream getObjectInputStream(InputStream is, ObjectInputStreamFactory javaSerialization)
+            throws IOException {
+        return javaSerialization.create(is);
+    }
+}
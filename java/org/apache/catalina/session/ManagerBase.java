@@ -28,6 +28,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
@@ -42,6 +43,7 @@ import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleState;
 import org.apache.catalina.Manager;
 import org.apache.catalina.Session;
+import org.apache.catalina.SessionCodec;
 import org.apache.catalina.SessionIdGenerator;
 import org.apache.catalina.util.LifecycleMBeanBase;
 import org.apache.catalina.util.SessionIdGeneratorBase;
@@ -113,6 +115,11 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
      */
     protected Class<? extends SessionIdGenerator> sessionIdGeneratorClass = null;
 
+    /**
+     * The codec used to encode sessions when they are persisted or replicated.
+     */
+    private SessionCodec sessionCodec = new JavaSerializationSessionCodec();
+
     /**
      * The longest time (in seconds) that an expired session had been alive.
      */
@@ -198,6 +205,14 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
 
     private boolean notifyBindingListenerOnUnchangedValue;
 
+    /*
+     * Indexes StandardSession instances by expected expiry time so processExpires() does not need to check every
+     * session. Sessions of other types are checked on every call to processExpires().
+     */
+    private final SessionExpiryWheel expiryWheel = new SessionExpiryWheel(System.currentTimeMillis());
+
+    private final Set<Session> unindexedSessions = ConcurrentHashMap.newKeySet();
+
     private boolean notifyAttributeListenerOnUnchangedValue = true;
 
     /**
@@ -429,6 +444,27 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
     }
 
 
+    /**
+     * Obtain the codec used to encode sessions when they are persisted or replicated.
+     *
+     * @return The session codec
+     */
+    public SessionCodec getSessionCodec() {
+        return sessionCodec;
+    }
+
+
+    /**
+     * Configure the codec used to encode sessions when they are persisted or replicated. The default uses Java
+     * serialization.
+     *
+     * @param sessionCodec The session codec
+     */
+    public void setSessionCodec(SessionCodec sessionCodec) {
+        this.sessionCodec = sessionCodec;
+    }
+
+
     /**
      * Returns the descriptive short name of this Manager implementation.
      *
@@ -608,17 +644,11 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
     public void processExpires() {
 
         long timeNow = System.currentTimeMillis();
-        Session[] sessions = findSessions();
-        int expireHere = 0;
 
         if (log.isTraceEnabled()) {
-            log.trace("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.length);
-        }
-        for (Session session : sessions) {
-            if (session != null && !session.isValid()) {
-                expireHere++;
-            }
+            log.trace("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + getActiveSessions());
         }
+        int expireHere = processExpiredSessions(timeNow);
         long timeEnd = System.currentTimeMillis();
         if (log.isTraceEnabled()) {
             log.trace("End expire sessions " + getName() + " processingTime " + (timeEnd - timeNow) +
@@ -629,6 +659,112 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
     }
 
 
+    /**
+     * Check the validity of the sessions that may have expired by the given time, triggering their expiration if
+     * required. If {@link #isExpiryIndexed()} returns {@code false} then every session is checked.
+     *
+     * @param timeNow The current time
+     *
+     * @return the number of sessions that were found to have expired
+     */
+    protected int processExpiredSessions(long timeNow) {
+        int expireHere = 0;
+        if (!isExpiryIndexed()) {
+            for (Session session : findSessions()) {
+                if (session != null && !session.isValid()) {
+                    expireHere++;
+                }
+            }
+            return expireHere;
+        }
+
+        for (StandardSession session : expiryWheel.advance(timeNow)) {
+            String id = session.getIdInternal();
+            if (id == null || sessions.get(id) != session) {
+                // No longer managed by this manager
+                expiryWheel.remove(session);
+                continue;
+            }
+            // isValid() will call expire() (and hence remove()) if the session has expired
+            if (!session.isValid()) {
+                expireHere++;
+            } else {
+                // Still in use, accessed since it was scheduled or the expiry rules of the session differ
+                expiryWheel.reschedule(session);
+            }
+        }
+        for (Session session : unindexedSessions) {
+            if (!session.isValid()) {
+                expireHere++;
+            }
+        }
+        return expireHere;
+    }
+
+
+    /**
+     * Should this manager use an index of the expected expiry times of its sessions to avoid checking every session
+     * when processing expired sessions? Sub-classes that add sessions to {@link #sessions} without calling
+     * {@link #add(Session)} must return {@code false}.
+     *
+     * @return {@code true} if the index is used. The default implementation always returns {@code true}.
+     */
+    protected boolean isExpiryIndexed() {
+        return true;
+    }
+
+
+    /**
+     * Add the given session to the expiry index.
+     *
+     * @param session The session to index
+     */
+    protected void indexExpiry(Session session) {
+        if (!isExpiryIndexed()) {
+            return;
+        }
+        if (session instanceof StandardSession standardSession) {
+            expiryWheel.add(standardSession);
+        } else {
+            unindexedSessions.add(session);
+        }
+    }
+
+
+    /**
+     * Remove the given session from the expiry index.
+     *
+     * @param session The session to remove
+     */
+    protected void unindexExpiry(Session session) {
+        if (session instanceof StandardSession standardSession) {
+            expiryWheel.remove(standardSession);
+        } else {
+            unindexedSessions.remove(session);
+        }
+    }
+
+
+    /**
+     * Remove all sessions from the expiry index.
+     */
+    protected void clearExpiryIndex() {
+        for (Session session : sessions.values()) {
+            unindexExpiry(session);
+        }
+        expiryWheel.clear();
+        unindexedSessions.clear();
+    }
+
+
+    /*
+     * Called when the expiry time of a session may have changed other than due to the session being accessed.
+     */
+    void rescheduleExpiry(StandardSession session) {
+        expiryWheel.reschedule(session);
+    }
+
+
     @Override
     protected void initInternal() throws LifecycleException {
         super.initInternal();
@@ -695,6 +831,7 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
     @Override
     public void add(Session session) {
         sessions.put(session.getIdInternal(), session);
+        indexExpiry(session);
         int size = getActiveSessions();
         if (size > maxActive) {
             synchronized (maxActiveUpdateLock) {
@@ -789,6 +926,7 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
         if (session.getIdInternal() != null) {
             sessions.remove(session.getIdInternal());
         }
+        unindexExpiry(session);
     }
 
 
@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Loader;
+import org.apache.catalina.util.CustomObjectInputStream;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * The attributes of an {@link OffHeapSession}. The values of serializable attributes are stored in serialized form in
+ * the {@link OffHeapAttributeStore} of the {@link OffHeapManager} and only a small index entry per attribute is held on
+ * the heap. Values that are not serializable, or that cannot be stored because the store is full, are held on the heap.
+ * <p>
+ * Values are deserialized when they are read. While the session is being accessed by at least one request, the
+ * deserialized values are cached so repeated reads return the same object. When the last request ends, any cached
+ * value that may have been modified is serialized again and, if it has changed, written back to the store before the
+ * cache is cleared. Values read while the session is not being accessed by a request are not cached and changes made
+ * to them are not retained.
+ * <p>
+ * All methods are synchronized. The lock is only contended by concurrent requests for the same session.
+ */
+final class OffHeapAttributeMap extends AbstractMap<String,Object> implements ConcurrentMap<String,Object> {
+
+    private static final Log log = LogFactory.getLog(OffHeapAttributeMap.class);
+    private static final StringManager sm = StringManager.getManager(OffHeapAttributeMap.class);
+
+    private final OffHeapManager manager;
+    private final Map<String,Entry> index = new HashMap<>();
+
+    // The number of requests currently accessing the session
+    private int accessCount = 0;
+
+
+    OffHeapAttributeMap(OffHeapManager manager) {
+        this.manager = manager;
+    }
+
+
+    /**
+     * Called when a request starts to access the session.
+     */
+    synchronized void beginAccess() {
+        accessCount++;
+    }
+
+
+    /**
+     * Called when a request finishes accessing the session. When no requests are accessing the session, any cached
+     * values that have changed are written to the store and the cache is cleared.
+     */
+    synchronized void endAccess() {
+        if (accessCount > 1) {
+            accessCount--;
+            return;
+        }
+        accessCount = 0;
+        for (Map.Entry<String,Entry> mapEntry : index.entrySet()) {
+            Entry entry = mapEntry.getValue();
+            if (entry.handle == OffHeapAttributeStore.NO_HANDLE || entry.value == null) {
+                continue;
+            }
+            if (!isImmutable(entry.value)) {
+                OffHeapAttributeStore store = manager.getAttributeStore();
+                byte[] data = serialize(mapEntry.getKey(), entry.value);
+                if (store == null || data != null && store.matches(entry.handle, entry.length, data)) {
+                    // Unchanged
+                    entry.value = null;
+                    continue;
+                }
+                store.free(entry.handle, entry.length);
+                entry.handle = data == null ? OffHeapAttributeStore.NO_HANDLE : store.store(data);
+                if (entry.handle == OffHeapAttributeStore.NO_HANDLE) {
+                    // No longer serializable or the store is full. Retain the current value on the heap.
+                    entry.length = 0;
+                    continue;
+                }
+                entry.length = data.length;
+            }
+            entry.value = null;
+        }
+    }
+
+
+    @Override
+    public synchronized Object get(Object key) {
+        Entry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+        return getValue((String) key, entry);
+    }
+
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return index.containsKey(key);
+    }
+
+
+    @Override
+    public synchronized int size() {
+        return index.size();
+    }
+
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+
+    @Override
+    public synchronized Object put(String key, Object value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+
+        Entry entry = new Entry();
+        byte[] data = null;
+        OffHeapAttributeStore store = manager.getAttributeStore();
+        if (store != null && value instanceof Serializable) {
+            data = serialize(key, value);
+        }
+        if (data != null) {
+            entry.handle = store.store(data);
+            if (entry.handle != OffHeapAttributeStore.NO_HANDLE) {
+                entry.length = data.length;
+            } else if (log.isDebugEnabled()) {
+                log.debug(sm.getString("offHeapAttributeMap.storeFull", key));
+            }
+        }
+        if (entry.handle == OffHeapAttributeStore.NO_HANDLE || accessCount > 0) {
+            // Held on the heap or cached for the current request(s)
+            entry.value = value;
+        }
+
+        Entry old = index.put(key, entry);
+        if (old == null) {
+            return null;
+        }
+        Object oldValue = getValue(key, old);
+        release(old);
+        return oldValue;
+    }
+
+
+    @Override
+    public synchronized Object remove(Object key) {
+        Entry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+        Object value = getValue((String) key, entry);
+        index.remove(key);
+        release(entry);
+        return value;
+    }
+
+
+    @Override
+    public synchronized void clear() {
+        for (Entry entry : index.values()) {
+            release(entry);
+        }
+        index.clear();
+    }
+
+
+    @Override
+    public synchronized Set<String> keySet() {
+        return Collections.unmodifiableSet(new HashSet<>(index.keySet()));
+    }
+
+
+    @Override
+    public synchronized Set<Map.Entry<String,Object>> entrySet() {
+        Set<Map.Entry<String,Object>> result = new HashSet<>();
+        for (Map.Entry<String,Entry> mapEntry : index.entrySet()) {
+            result.add(new SimpleImmutableEntry<>(mapEntry.getKey(), getValue(mapEntry.getKey(), mapEntry.getValue())));
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+
+    @Override
+    public synchronized Object putIfAbsent(String key, Object value) {
+        Object current = get(key);
+        if (current == null) {
+            put(key, value);
+        }
+        return current;
+    }
+
+
+    @Override
+    public synchronized boolean remove(Object key, Object value) {
+        Object current = get(key);
+        if (current != null && current.equals(value)) {
+            remove(key);
+            return true;
+        }
+        return false;
+    }
+
+
+    @Override
+    public synchronized boolean replace(String key, Object oldValue, Object newValue) {
+        Object current = get(key);
+        if (current != null && current.equals(oldValue)) {
+            put(key, newValue);
+            return true;
+        }
+        return false;
+    }
+
+
+    @Override
+    public synchronized Object replace(String key, Object value) {
+        if (containsKey(key)) {
+            return put(key, value);
+        }
+        return null;
+    }
+
+
+    private Object getValue(String key, Entry entry) {
+        if (entry.value != null) {
+            return entry.value;
+        }
+        OffHeapAttributeStore store = manager.getAttributeStore();
+        if (store == null) {
+            throw new IllegalStateException(sm.getString("offHeapAttributeMap.noStore", key));
+        }
+        Object value = deserialize(key, store.read(entry.handle, entry.length));
+        if (accessCount > 0) {
+            entry.value = value;
+        }
+        return value;
+    }
+
+
+    private void release(Entry entry) {
+        if (entry.handle != OffHeapAttributeStore.NO_HANDLE) {
+            OffHeapAttributeStore store = manager.getAttributeStore();
+            if (store != null) {
+                store.free(entry.handle, entry.length);
+            }
+            entry.handle = OffHeapAttributeStore.NO_HANDLE;
+        }
+        entry.value = null;
+    }
+
+
+    private byte[] serialize(String key, Object value) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(OffHeapAttributeStore.MIN_CHUNK_SIZE);
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(value);
+        } catch (IOException ioe) {
+            // Includes NotSerializableException for objects within the value
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("offHeapAttributeMap.serializeFail", key), ioe);
+            }
+            return null;
+        }
+        return baos.toByteArray();
+    }
+
+
+    private Object deserialize(String key, byte[] data) {
+        Context context = manager.getContext();
+        ClassLoader classLoader = null;
+        Loader loader = context.getLoader();
+        if (loader != null) {
+            classLoader = loader.getClassLoader();
+        }
+        if (classLoader == null) {
+            classLoader = getClass().getClassLoader();
+        }
+        try (ObjectInputStream ois = new CustomObjectInputStream(new ByteArrayInputStream(data), classLoader,
+                context.getLogger(), manager.getSessionAttributeValueClassNamePattern(),
+                manager.getWarnOnSessionAttributeFilterFailure())) {
+            return ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException(sm.getString("offHeapAttributeMap.deserializeFail", key), e);
+        }
+    }
+
+
+    /*
+     * Values of these types cannot be modified so never need to be written back to the store.
+     */
+    private static boolean isImmutable(Object value) {
+        return value instanceof String || value instanceof Integer || value instanceof Long ||
+                value instanceof Boolean || value instanceof Double || value instanceof Float ||
+                value instanceof Short || value instanceof Byte || value instanceof Character ||
+                value instanceof Enum<?>;
+    }
+
+
+    private static final class Entry {
+        // The handle of the serialized value in the store or NO_HANDLE if the value is held on the heap
+        private long handle = OffHeapAttributeStore.NO_HANDLE;
+        private int length;
+        // The value if held on the heap, otherwise the cached value or null if not cached
+        private Object value;
+    }
+}
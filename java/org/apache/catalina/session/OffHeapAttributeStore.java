@@ -0,0 +1,316 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stores serialized session attribute values outside of the Java heap.
+ * <p>
+ * Memory is reserved from the operating system in slabs of direct memory of a fixed size. Each slab is divided into
+ * chunks of a single size and values are stored in the smallest chunk size that will hold them. Chunk sizes are powers
+ * of two from {@link #MIN_CHUNK_SIZE} up to the slab size. Values larger than a slab are stored in a dedicated slab of
+ * the required size that is released when the value is freed. Freed chunks are re-used for values of the same chunk
+ * size. Other slabs are retained until the store is released.
+ * <p>
+ * A stored value is identified by a handle that combines the index of the slab and the offset of the chunk within it.
+ * The length of the value is not stored so must be retained by the caller. Methods that modify the store are
+ * synchronized. Reads are not so concurrent requests for different sessions do not contend. The caller must ensure
+ * that a value is not freed while it is being read.
+ */
+final class OffHeapAttributeStore {
+
+    /**
+     * Handle returned by {@link #store(byte[])} if the value could not be stored.
+     */
+    static final long NO_HANDLE = -1;
+
+    static final int MIN_CHUNK_SIZE = 64;
+    private static final int MIN_CHUNK_SIZE_BITS = Integer.numberOfTrailingZeros(MIN_CHUNK_SIZE);
+
+    private final int slabSize;
+    private final long maxSize;
+
+    // Replaced rather than modified when more space is required so that reads do not need to synchronize
+    private volatile Slab[] slabs = new Slab[16];
+    private int slabCount = 0;
+    // Indexes in slabs of entries released by freeing dedicated slabs
+    private final List<Integer> freeSlabIndexes = new ArrayList<>();
+    private final SizeClass[] sizeClasses;
+
+    private long capacity = 0;
+    private long used = 0;
+    private volatile boolean released = false;
+
+
+    /**
+     * Create a store.
+     *
+     * @param slabSize The size in bytes of each slab. Rounded up to the nearest power of two that is at least
+     *                     {@link #MIN_CHUNK_SIZE}.
+     * @param maxSize  The maximum number of bytes of direct memory to reserve, or -1 for no limit
+     */
+    OffHeapAttributeStore(int slabSize, long maxSize) {
+        this.slabSize = Math.max(MIN_CHUNK_SIZE, Integer.highestOneBit(slabSize - 1) << 1);
+        this.maxSize = maxSize;
+        sizeClasses = new SizeClass[sizeClass(this.slabSize) + 1];
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new SizeClass(MIN_CHUNK_SIZE << i);
+        }
+    }
+
+
+    /**
+     * Store a value.
+     *
+     * @param data The value to store
+     *
+     * @return the handle for the stored value or {@link #NO_HANDLE} if storing the value would exceed the configured
+     *             maximum size or there is insufficient direct memory
+     */
+    synchronized long store(byte[] data) {
+        if (released) {
+            return NO_HANDLE;
+        }
+        long handle;
+        int chunkSize;
+        if (data.length > slabSize) {
+            chunkSize = data.length;
+            ByteBuffer buffer = allocateDirect(chunkSize);
+            if (buffer == null) {
+                return NO_HANDLE;
+            }
+            handle = handle(addSlab(new Slab(buffer, -1)), 0);
+        } else {
+            SizeClass sizeClass = sizeClasses[sizeClass(data.length)];
+            chunkSize = sizeClass.chunkSize;
+            handle = sizeClass.allocate();
+            if (handle == NO_HANDLE) {
+                return NO_HANDLE;
+            }
+        }
+        used += chunkSize;
+        slabs[slabIndex(handle)].buffer.put(offset(handle), data);
+        return handle;
+    }
+
+
+    /**
+     * Read a stored value.
+     *
+     * @param handle The handle of the value
+     * @param length The length of the value
+     *
+     * @return a copy of the value
+     */
+    byte[] read(long handle, int length) {
+        Slab[] slabs = this.slabs;
+        if (released) {
+            throw new IllegalStateException();
+        }
+        byte[] result = new byte[length];
+        slabs[slabIndex(handle)].buffer.get(offset(handle), result);
+        return result;
+    }
+
+
+    /**
+     * Compare a stored value with the given value.
+     *
+     * @param handle The handle of the stored value
+     * @param length The length of the stored value
+     * @param data   The value to compare
+     *
+     * @return {@code true} if the values are equal, otherwise {@code false}
+     */
+    boolean matches(long handle, int length, byte[] data) {
+        Slab[] slabs = this.slabs;
+        if (released || length != data.length) {
+            return false;
+        }
+        ByteBuffer buffer = slabs[slabIndex(handle)].buffer;
+        int offset = offset(handle);
+        return buffer.slice(offset, length).equals(ByteBuffer.wrap(data));
+    }
+
+
+    /**
+     * Free a stored value.
+     *
+     * @param handle The handle of the value
+     * @param length The length of the value
+     */
+    synchronized void free(long handle, int length) {
+        if (released) {
+            return;
+        }
+        int slabIndex = slabIndex(handle);
+        Slab slab = slabs[slabIndex];
+        if (slab.sizeClass < 0) {
+            // Dedicated slab
+            slabs[slabIndex] = null;
+            freeSlabIndexes.add(Integer.valueOf(slabIndex));
+            capacity -= length;
+            used -= length;
+        } else {
+            SizeClass sizeClass = sizeClasses[slab.sizeClass];
+            sizeClass.free(handle);
+            used -= sizeClass.chunkSize;
+        }
+    }
+
+
+    /**
+     * Release all the memory reserved by this store. Subsequent attempts to store values will fail.
+     */
+    synchronized void release() {
+        released = true;
+        slabs = new Slab[0];
+        slabCount = 0;
+        freeSlabIndexes.clear();
+        capacity = 0;
+        used = 0;
+    }
+
+
+    /**
+     * @return the number of bytes of direct memory reserved by this store
+     */
+    synchronized long getCapacity() {
+        return capacity;
+    }
+
+
+    /**
+     * @return the number of bytes of reserved direct memory that are in use. This includes the unused part of each
+     *             chunk.
+     */
+    synchronized long getUsed() {
+        return used;
+    }
+
+
+    /*
+     * Allocate a block of direct memory. Returns null if the block would exceed the configured maximum size or if the
+     * JVM limit on direct memory has been reached, in which case the caller holds the value on the heap instead.
+     */
+    private ByteBuffer allocateDirect(int size) {
+        if (maxSize >= 0 && capacity + size > maxSize) {
+            return null;
+        }
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.allocateDirect(size);
+        } catch (OutOfMemoryError oome) {
+            return null;
+        }
+        capacity += size;
+        return buffer;
+    }
+
+
+    private int addSlab(Slab slab) {
+        if (freeSlabIndexes.isEmpty()) {
+            if (slabCount == slabs.length) {
+                slabs = Arrays.copyOf(slabs, slabCount * 2);
+            }
+            slabs[slabCount] = slab;
+            return slabCount++;
+        }
+        int index = freeSlabIndexes.remove(freeSlabIndexes.size() - 1).intValue();
+        slabs[index] = slab;
+        return index;
+    }
+
+
+    private static int sizeClass(int length) {
+        if (length <= MIN_CHUNK_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(length - 1) - MIN_CHUNK_SIZE_BITS;
+    }
+
+
+    private static long handle(int slabIndex, int offset) {
+        return ((long) slabIndex << 32) | offset;
+    }
+
+
+    private static int slabIndex(long handle) {
+        return (int) (handle >>> 32);
+    }
+
+
+    private static int offset(long handle) {
+        return (int) handle;
+    }
+
+
+    private static final class Slab {
+        private final ByteBuffer buffer;
+        // Index of the size class of the chunks in this slab or -1 for a dedicated slab
+        private final int sizeClass;
+
+        Slab(ByteBuffer buffer, int sizeClass) {
+            this.buffer = buffer;
+            this.sizeClass = sizeClass;
+        }
+    }
+
+
+    private final class SizeClass {
+        private final int chunkSize;
+
+        private long[] freeChunks = new long[16];
+        private int freeCount = 0;
+
+        // The slab currently being divided into chunks and the offset of the next unused chunk
+        private int currentSlab = -1;
+        private int nextOffset = 0;
+
+        SizeClass(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        long allocate() {
+            if (freeCount > 0) {
+                return freeChunks[--freeCount];
+            }
+            if (currentSlab == -1 || nextOffset + chunkSize > slabSize) {
+                ByteBuffer buffer = allocateDirect(slabSize);
+                if (buffer == null) {
+                    return NO_HANDLE;
+                }
+                currentSlab = addSlab(new Slab(buffer, sizeClass(chunkSize)));
+                nextOffset = 0;
+            }
+            long handle = handle(currentSlab, nextOffset);
+            nextOffset += chunkSize;
+            return handle;
+        }
+
+        void free(long handle) {
+            if (freeCount == freeChunks.length) {
+                freeChunks = Arrays.copyOf(freeChunks, freeCount * 2);
+            }
+            freeChunks[freeCount++] = handle;
+        }
+    }
+}
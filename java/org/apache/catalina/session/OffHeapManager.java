@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import org.apache.catalina.LifecycleException;
+
+/**
+ * An extension of {@link StandardManager} that stores the values of session attributes outside of the Java heap so
+ * that the heap used by sessions does not grow with the number and size of session attributes. This reduces the
+ * garbage collection cost of large numbers of long-lived sessions.
+ * <p>
+ * Serializable attribute values are serialized when they are set and stored in slabs of direct memory. Only the
+ * attribute names and a small index entry per attribute are held on the heap. Values are deserialized when they are
+ * read and are cached until the end of the request(s) accessing the session. At the end of the request(s), any value
+ * that was read and may have been modified is compared with the stored value and the stored value is updated if
+ * required. Values that are not serializable, and values that cannot be stored because {@link #getMaxOffHeapSize()}
+ * has been reached, are held on the heap.
+ * <p>
+ * Applications should be aware that:
+ * <ul>
+ * <li>A different instance of an attribute value is returned in each request.</li>
+ * <li>Changes to an attribute value made outside of a request, for example from a background thread, are not
+ * retained.</li>
+ * <li>Listeners called when an attribute is replaced or removed receive a deserialized copy of the previous
+ * value.</li>
+ * </ul>
+ */
+public class OffHeapManager extends StandardManager {
+
+    /**
+     * Construct a new {@code OffHeapManager} instance.
+     */
+    public OffHeapManager() {
+        // NO-OP
+    }
+
+    /**
+     * The descriptive name of this Manager implementation (for logging).
+     */
+    private static final String name = "OffHeapManager";
+
+    private static final int MAX_SLAB_SIZE = 1 << 30;
+
+    private int slabSize = 1024 * 1024;
+
+    private long maxOffHeapSize = 64 * 1024 * 1024;
+
+    private volatile OffHeapAttributeStore attributeStore = null;
+
+
+    // ------------------------------------------------------------- Properties
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+
+    /**
+     * @return the size in bytes of each slab of direct memory used to store attribute values
+     */
+    public int getSlabSize() {
+        return slabSize;
+    }
+
+
+    /**
+     * Set the size in bytes of each slab of direct memory used to store attribute values. The size will be rounded up
+     * to the nearest power of two. Values larger than a slab are stored in a dedicated block of direct memory. Changes
+     * take effect the next time this manager is started.
+     *
+     * @param slabSize The slab size in bytes
+     */
+    public void setSlabSize(int slabSize) {
+        this.slabSize = Math.min(MAX_SLAB_SIZE, Math.max(OffHeapAttributeStore.MIN_CHUNK_SIZE, slabSize));
+    }
+
+
+    /**
+     * @return the maximum number of bytes of direct memory that will be used to store attribute values or -1 for no
+     *             limit
+     */
+    public long getMaxOffHeapSize() {
+        return maxOffHeapSize;
+    }
+
+
+    /**
+     * Set the maximum number of bytes of direct memory that will be used to store attribute values. Once this limit
+     * is reached, new attribute values are held on the heap. Changes take effect the next time this manager is
+     * started.
+     *
+     * @param maxOffHeapSize The maximum size in bytes or -1 for no limit
+     */
+    public void setMaxOffHeapSize(long maxOffHeapSize) {
+        this.maxOffHeapSize = maxOffHeapSize;
+    }
+
+
+    /**
+     * @return the number of bytes of direct memory reserved for storing attribute values
+     */
+    public long getOffHeapCapacity() {
+        OffHeapAttributeStore attributeStore = this.attributeStore;
+        return attributeStore == null ? 0 : attributeStore.getCapacity();
+    }
+
+
+    /**
+     * @return the number of bytes of reserved direct memory that are currently used to store attribute values
+     */
+    public long getOffHeapUsed() {
+        OffHeapAttributeStore attributeStore = this.attributeStore;
+        return attributeStore == null ? 0 : attributeStore.getUsed();
+    }
+
+
+    OffHeapAttributeStore getAttributeStore() {
+        return attributeStore;
+    }
+
+
+    // ------------------------------------------------------ Lifecycle Methods
+
+    @Override
+    protected void startInternal() throws LifecycleException {
+        // The store is required to load any persisted sessions
+        attributeStore = new OffHeapAttributeStore(slabSize, maxOffHeapSize);
+        super.startInternal();
+    }
+
+
+    @Override
+    protected void stopInternal() throws LifecycleException {
+        // Sessions are persisted and expired before the store is released
+        super.stopInternal();
+        OffHeapAttributeStore attributeStore = this.attributeStore;
+        this.attributeStore = null;
+        if (attributeStore != null) {
+            attributeStore.release();
+        }
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+    @Override
+    protected StandardSession getNewSession() {
+        return new OffHeapSession(this);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.Serial;
+
+/**
+ * A {@link StandardSession} that stores the values of its attributes outside of the Java heap. See
+ * {@link OffHeapManager} for details.
+ */
+public class OffHeapSession extends StandardSession {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+
+    /**
+     * Construct a new Session associated with the specified Manager.
+     *
+     * @param manager The manager with which this Session is associated
+     */
+    public OffHeapSession(OffHeapManager manager) {
+        super(manager);
+        attributes = new OffHeapAttributeMap(manager);
+    }
+
+
+    @Override
+    public void access() {
+        super.access();
+        if (attributes instanceof OffHeapAttributeMap offHeapAttributes) {
+            offHeapAttributes.beginAccess();
+        }
+    }
+
+
+    @Override
+    public void endAccess() {
+        super.endAccess();
+        if (attributes instanceof OffHeapAttributeMap offHeapAttributes) {
+            offHeapAttributes.endAccess();
+        }
+    }
+}
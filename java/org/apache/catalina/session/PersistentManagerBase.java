@@ -79,6 +79,12 @@ public abstract class PersistentManagerBase extends ManagerBase implements Store
     protected boolean saveOnRestart = true;
 
 
+    /**
+     * Whether to load all the sessions in the Store when the Manager starts.
+     */
+    protected boolean loadOnStart = false;
+
+
     /**
      * How long a session must be idle before it should be backed up. {@code -1} means sessions won't be backed up.
      */
@@ -293,6 +299,37 @@ public abstract class PersistentManagerBase extends ManagerBase implements Store
     }
 
 
+    /**
+     * Indicates whether all the sessions in the Store are loaded when the Manager starts.
+     *
+     * @return {@code true}, when sessions are loaded on start, {@code false} otherwise
+     */
+    public boolean getLoadOnStart() {
+        return loadOnStart;
+    }
+
+
+    /**
+     * Set the option to load all the sessions in the Store when the Manager starts. Otherwise, sessions are loaded from
+     * the Store when they are first requested. Loading on start allows a {@link StoreBase} to read the sessions in bulk
+     * which is more efficient than loading each one when it is first requested.
+     *
+     * @param loadOnStart {@code true} if sessions should be loaded on start, {@code false} if they should be loaded
+     *                        when requested.
+     */
+    public void setLoadOnStart(boolean loadOnStart) {
+
+        if (loadOnStart == this.loadOnStart) {
+            return;
+        }
+
+        boolean oldLoadOnStart = this.loadOnStart;
+        this.loadOnStart = loadOnStart;
+        support.firePropertyChange("loadOnStart", Boolean.valueOf(oldLoadOnStart), Boolean.valueOf(this.loadOnStart));
+
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
 
@@ -323,16 +360,10 @@ public abstract class PersistentManagerBase extends ManagerBase implements Store
     public void processExpires() {
 
         long timeNow = System.currentTimeMillis();
-        Session[] sessions = findSessions();
-        int expireHere = 0;
         if (log.isTraceEnabled()) {
-            log.trace("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.length);
-        }
-        for (Session session : sessions) {
-            if (!session.isValid()) {
-                expireHere++;
-            }
+            log.trace("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + getActiveSessions());
         }
+        int expireHere = processExpiredSessions(timeNow);
         processPersistenceChecks();
         if (getStore() instanceof StoreBase) {
             ((StoreBase) getStore()).processExpires();
@@ -407,18 +438,33 @@ public abstract class PersistentManagerBase extends ManagerBase implements Store
      * expiration limit. If persistence is not supported, this method returns without doing anything.
      * <p>
      * Note that by default, this method is not called by the MiddleManager class. In order to use it, a subclass must
-     * specifically call it, for example in the start() and/or processPersistenceChecks() methods.
+     * specifically call it, for example in the start() and/or processPersistenceChecks() methods. It is called on start
+     * if {@link #setLoadOnStart(boolean) loadOnStart} is set.
      */
     @Override
     public void load() {
 
         // Initialize our internal data structures
+        clearExpiryIndex();
         sessions.clear();
 
         if (store == null) {
             return;
         }
 
+        if (store instanceof StoreBase storeBase) {
+            // Load in bulk
+            try {
+                storeBase.loadAll(this::addLoadedSession);
+            } catch (IOException ioe) {
+                log.error(sm.getString("persistentManager.storeLoadError"), ioe);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("persistentManager.loaded", String.valueOf(getActiveSessions())));
+            }
+            return;
+        }
+
         String[] ids;
         try {
             ids = store.keys();
@@ -610,6 +656,41 @@ public abstract class PersistentManagerBase extends ManagerBase implements Store
 
     }
 
+    /*
+     * Add a session loaded by StoreBase.loadAll(). Equivalent to swapIn() for a session that has already been loaded.
+     * Uses the same lock as swapIn() so a request that swaps in the same session concurrently does not add it twice.
+     */
+    private void addLoadedSession(Session session) {
+        String id = session.getIdInternal();
+
+        Object swapInLock;
+        synchronized (this) {
+            swapInLock = sessionSwapInLocks.computeIfAbsent(id, k -> new Object());
+        }
+
+        synchronized (swapInLock) {
+            if (!sessions.containsKey(id)) {
+                sessionToSwapIn.set(session);
+                try {
+                    if (!session.isValid()) {
+                        log.error(sm.getString("persistentManager.swapInInvalid", id));
+                        session.expire();
+                        removeSession(id);
+                    } else {
+                        reactivateLoadedSession(id, session);
+                    }
+                } finally {
+                    sessionToSwapIn.remove();
+                }
+            }
+        }
+
+        // Make sure the lock is removed
+        synchronized (this) {
+            sessionSwapInLocks.remove(id);
+        }
+    }
+
     private void reactivateLoadedSession(String id, Session session) {
         if (log.isTraceEnabled()) {
             log.trace(sm.getString("persistentManager.swapIn", id));
@@ -698,8 +779,13 @@ public abstract class PersistentManagerBase extends ManagerBase implements Store
 
         if (store == null) {
             log.error(sm.getString("persistentManager.noStore"));
-        } else if (store instanceof Lifecycle) {
-            ((Lifecycle) store).start();
+        } else {
+            if (store instanceof Lifecycle) {
+                ((Lifecycle) store).start();
+            }
+            if (loadOnStart) {
+                load();
+            }
         }
 
         setState(LifecycleState.STARTING);
@@ -0,0 +1,1021 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import jakarta.servlet.ServletContext;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Session;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.buf.ByteBufferUtils;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Concrete implementation of the <b>Store</b> interface that appends saved Sessions to a log of memory-mapped segment
+ * files in a configured directory. An in-memory index records where the current copy of each Session is located. When
+ * a segment is full it is closed by writing a footer that summarises its contents so the index can be rebuilt on
+ * start without reading the Session data. Segments that were not closed cleanly are recovered by scanning them.
+ * <p>
+ * Saving or removing a Session appends to the current segment so older copies remain in the log until the segment
+ * that contains them is compacted. Compaction is performed during the background processing of expired Sessions and
+ * copies any current Sessions from the oldest segment to the current segment before deleting the oldest segment.
+ * Sessions that are saved are still subject to being expired based on inactivity.
+ */
+public final class SegmentFileStore extends StoreBase {
+
+    private static final Log log = LogFactory.getLog(SegmentFileStore.class);
+    private static final StringManager sm = StringManager.getManager(SegmentFileStore.class);
+
+
+    // ----------------------------------------------------- Constants
+
+    /**
+     * The extension to use for segment filenames.
+     */
+    private static final String SEGMENT_EXT = ".seg";
+
+    private static final int SEGMENT_MAGIC = 0x54435347;
+    private static final int FOOTER_MAGIC = 0x54435346;
+    private static final int VERSION = 1;
+
+    /*
+     * Segment header: magic, version
+     */
+    private static final int SEGMENT_HEADER_LENGTH = 8;
+
+    /*
+     * Record: length, type, last accessed time, max inactive interval, ID length, ID, data, CRC32
+     */
+    private static final int RECORD_HEADER_LENGTH = 19;
+    private static final int RECORD_TRAILER_LENGTH = 4;
+
+    /*
+     * Trailer at the end of a closed segment: footer offset, entry count, footer CRC32, magic
+     */
+    private static final int TRAILER_LENGTH = 16;
+
+    private static final byte TYPE_SAVE = 1;
+    private static final byte TYPE_REMOVE = 2;
+
+    private static final byte[] NO_DATA = new byte[0];
+
+
+    // ----------------------------------------------------- Instance Variables
+
+    /**
+     * The pathname of the directory in which Sessions are stored. This may be an absolute pathname, or a relative path
+     * that is resolved against the temporary work directory for this application.
+     */
+    private volatile String directory = ".";
+
+
+    /**
+     * A File representing the directory in which Sessions are stored.
+     */
+    private File directoryFile = null;
+
+
+    /**
+     * The size in bytes of each segment file.
+     */
+    private int segmentSize = 16 * 1024 * 1024;
+
+
+    /**
+     * The percentage of the oldest segment that must be occupied by Sessions that have since been saved again or
+     * removed before that segment is compacted.
+     */
+    private int compactionThreshold = 50;
+
+
+    /*
+     * Guards the segments and the index. Appending to the log, compaction and closing segments require the write lock.
+     * Reading from a segment requires the read lock so that a segment is never unmapped while it is being read.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+
+    /*
+     * Open segments, oldest first. The last segment is the segment currently being written if it is not sealed. Null
+     * until the directory has been read.
+     */
+    private volatile List<Segment> segments = null;
+
+
+    /*
+     * The location of the current copy of each Session in the Store.
+     */
+    private final Map<String,Entry> index = new HashMap<>();
+
+
+    private long nextSegmentNumber = 0;
+
+
+    /**
+     * Name to register for this Store, used for logging.
+     */
+    private static final String storeName = "segmentFileStore";
+
+
+    /**
+     * Default constructor for SegmentFileStore.
+     */
+    public SegmentFileStore() {
+        // Default constructor
+    }
+
+
+    // ------------------------------------------------------------- Properties
+
+    /**
+     * Returns the directory path where segment files are stored.
+     *
+     * @return The directory path for this Store
+     */
+    public String getDirectory() {
+        return directory;
+    }
+
+
+    /**
+     * Set the directory path for this Store.
+     *
+     * @param path The new directory path
+     */
+    public synchronized void setDirectory(String path) {
+        String oldDirectory = this.directory;
+        this.directory = path;
+        this.directoryFile = null;
+        support.firePropertyChange("directory", oldDirectory, this.directory);
+    }
+
+
+    /**
+     * Returns the size in bytes of each segment file.
+     *
+     * @return The segment size for this Store
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+
+    /**
+     * Set the size in bytes of each segment file. A Session that is larger than this is written to a segment of its
+     * own.
+     *
+     * @param segmentSize The new segment size
+     */
+    public void setSegmentSize(int segmentSize) {
+        int oldSegmentSize = this.segmentSize;
+        this.segmentSize = segmentSize;
+        support.firePropertyChange("segmentSize", oldSegmentSize, this.segmentSize);
+    }
+
+
+    /**
+     * Returns the percentage of the oldest segment that must no longer be required before it is compacted.
+     *
+     * @return The compaction threshold for this Store
+     */
+    public int getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+
+    /**
+     * Set the percentage of the oldest segment that must no longer be required before it is compacted.
+     *
+     * @param compactionThreshold The new compaction threshold
+     */
+    public void setCompactionThreshold(int compactionThreshold) {
+        int oldCompactionThreshold = this.compactionThreshold;
+        this.compactionThreshold = compactionThreshold;
+        support.firePropertyChange("compactionThreshold", oldCompactionThreshold, this.compactionThreshold);
+    }
+
+
+    @Override
+    public String getStoreName() {
+        return storeName;
+    }
+
+
+    @Override
+    public int getSize() throws IOException {
+        Lock readLock = readLock();
+        try {
+            return index.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+    @Override
+    public void clear() throws IOException {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            open();
+            for (Segment segment : segments) {
+                delete(segment);
+            }
+            segments.clear();
+            index.clear();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+
+    @Override
+    public String[] keys() throws IOException {
+        Lock readLock = readLock();
+        try {
+            return index.keySet().toArray(new String[0]);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+
+    @Override
+    public String[] expiredKeys() throws IOException {
+        long timeNow = System.currentTimeMillis();
+        List<String> keys = new ArrayList<>();
+        Lock readLock = readLock();
+        try {
+            for (Entry entry : index.values()) {
+                if (entry.lastAccessedTime + entry.maxInactiveInterval * 1000L < timeNow) {
+                    keys.add(entry.id);
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+        return keys.toArray(new String[0]);
+    }
+
+
+    @Override
+    public Session load(String id) throws ClassNotFoundException, IOException {
+        byte[] data;
+        File file;
+        Lock readLock = readLock();
+        try {
+            Entry entry = index.get(id);
+            if (entry == null) {
+                return null;
+            }
+            data = new byte[entry.getDataLength()];
+            entry.segment.buffer.get(entry.getDataOffset(), data);
+            file = entry.segment.file;
+        } finally {
+            readLock.unlock();
+        }
+
+        Context context = getManager().getContext();
+        Log contextLog = context.getLogger();
+
+        if (contextLog.isTraceEnabled()) {
+            contextLog.trace(sm.getString("segmentFileStore.loading", id, file.getAbsolutePath()));
+        }
+
+        ClassLoader oldThreadContextCL = context.bind(null);
+        try (ObjectInputStream ois = getObjectInputStream(new ByteArrayInputStream(data))) {
+            StandardSession session = (StandardSession) manager.createEmptySession();
+            session.readObjectData(ois);
+            session.setManager(manager);
+            return session;
+        } finally {
+            context.unbind(oldThreadContextCL);
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation loads the Sessions in the order in which they appear in the segment files so the segments
+     * are read sequentially.
+     */
+    @Override
+    public void loadAll(Consumer<Session> consumer) throws IOException {
+        List<Entry> entries;
+        Lock readLock = readLock();
+        try {
+            entries = new ArrayList<>(index.values());
+        } finally {
+            readLock.unlock();
+        }
+        entries.sort(Comparator.comparingLong((Entry entry) -> entry.segment.number)
+                .thenComparingInt(entry -> entry.offset));
+
+        for (Entry entry : entries) {
+            try {
+                Session session = load(entry.id);
+                if (session != null) {
+                    consumer.accept(session);
+                }
+            } catch (ClassNotFoundException | IOException e) {
+                manager.getContext().getLogger().error(sm.getString("store.loadFail", entry.id), e);
+            }
+        }
+    }
+
+
+    @Override
+    public void remove(String id) throws IOException {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            open();
+            if (!index.containsKey(id)) {
+                return;
+            }
+            // Record the removal so older copies of the Session are ignored when the index is rebuilt
+            Entry entry = write(TYPE_REMOVE, id, 0, 0, NO_DATA);
+            if (manager.getContext().getLogger().isTraceEnabled()) {
+                manager.getContext().getLogger()
+                        .trace(sm.getString("segmentFileStore.removing", id, entry.segment.file.getAbsolutePath()));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+
+    @Override
+    public void save(Session session) throws IOException {
+        if (directory() == null) {
+            return;
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = getObjectOutputStream(bos)) {
+            ((StandardSession) session).writeObjectData(oos);
+        }
+        byte[] data = bos.toByteArray();
+
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            open();
+            Entry entry = write(TYPE_SAVE, session.getIdInternal(), session.getLastAccessedTime(),
+                    session.getMaxInactiveInterval(), data);
+            if (manager.getContext().getLogger().isTraceEnabled()) {
+                manager.getContext().getLogger().trace(sm.getString("segmentFileStore.saving",
+                        session.getIdInternal(), entry.segment.file.getAbsolutePath()));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Once expired Sessions have been removed, the oldest segments are compacted.
+     */
+    @Override
+    public void processExpires() {
+        super.processExpires();
+
+        if (!getState().isAvailable()) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException ioe) {
+            manager.getContext().getLogger().error(sm.getString("segmentFileStore.compactFail"), ioe);
+        }
+    }
+
+
+    /**
+     * Compact the segment files. Starting with the oldest, each segment that has reached the compaction threshold has
+     * the current Sessions it contains copied to the segment currently being written and is then deleted. Segments that
+     * contain no current Sessions and no removals are deleted regardless of age.
+     *
+     * @throws IOException if an error occurs reading or writing the segment files
+     */
+    public void compact() throws IOException {
+        long limit;
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            // Segments created while compacting are not compacted
+            limit = nextSegmentNumber;
+        } finally {
+            writeLock.unlock();
+        }
+        while (compactSegment(limit)) {
+            // Release the lock between segments so Sessions may be saved and loaded
+        }
+    }
+
+
+    // -------------------------------------------------------- Protected Methods
+
+    @Override
+    protected void stopInternal() throws LifecycleException {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (segments != null) {
+                Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+                if (last != null && !last.sealed) {
+                    if (last.entries.isEmpty()) {
+                        segments.remove(last);
+                        delete(last);
+                    } else {
+                        seal(last);
+                    }
+                }
+                for (Segment segment : segments) {
+                    close(segment);
+                }
+            }
+        } catch (IOException ioe) {
+            manager.getContext().getLogger().error(sm.getString("segmentFileStore.closeFail"), ioe);
+            for (Segment segment : segments) {
+                close(segment);
+            }
+        } finally {
+            segments = null;
+            index.clear();
+            writeLock.unlock();
+        }
+
+        super.stopInternal();
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+    /*
+     * Obtain the read lock, reading the segment files first if required.
+     */
+    private Lock readLock() throws IOException {
+        if (segments == null) {
+            Lock writeLock = lock.writeLock();
+            writeLock.lock();
+            try {
+                open();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        return readLock;
+    }
+
+
+    /*
+     * Read the segment files and build the index. The write lock must be held.
+     */
+    private void open() throws IOException {
+        if (segments != null) {
+            return;
+        }
+        File dir = directory();
+        List<Segment> result = new ArrayList<>();
+        if (dir != null) {
+            File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_EXT));
+            Map<Long,File> sorted = new TreeMap<>();
+            if (files != null) {
+                for (File file : files) {
+                    String name = file.getName();
+                    try {
+                        long number = Long.parseLong(name.substring(0, name.length() - SEGMENT_EXT.length()), 16);
+                        sorted.put(Long.valueOf(number), file);
+                        nextSegmentNumber = Math.max(nextSegmentNumber, number + 1);
+                    } catch (NumberFormatException e) {
+                        log.warn(sm.getString("segmentFileStore.invalidSegment", file.getAbsolutePath()));
+                    }
+                }
+            }
+            try {
+                for (Map.Entry<Long,File> file : sorted.entrySet()) {
+                    Segment segment = openSegment(file.getKey().longValue(), file.getValue());
+                    if (segment != null) {
+                        result.add(segment);
+                    }
+                }
+            } catch (IOException ioe) {
+                for (Segment segment : result) {
+                    close(segment);
+                }
+                index.clear();
+                throw ioe;
+            }
+        }
+        segments = result;
+    }
+
+
+    /*
+     * Open an existing segment file and add its contents to the index. Returns null if the file is not a segment.
+     */
+    private Segment openSegment(long number, File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_LENGTH);
+            if (size < SEGMENT_HEADER_LENGTH || size > Integer.MAX_VALUE) {
+                header = null;
+            } else {
+                readFully(channel, header, 0);
+            }
+            if (header == null || header.getInt(0) != SEGMENT_MAGIC || header.getInt(4) != VERSION) {
+                log.warn(sm.getString("segmentFileStore.invalidSegment", file.getAbsolutePath()));
+                channel.close();
+                return null;
+            }
+
+            Segment segment = new Segment(number, file, channel);
+            List<Entry> entries = readFooter(segment, size);
+            if (entries == null) {
+                // Not closed cleanly. Recover the records that were written completely and close the segment.
+                segment.buffer = channel.map(MapMode.READ_ONLY, 0, size);
+                entries = scan(segment, (int) size);
+                log.warn(sm.getString("segmentFileStore.recovered", file.getAbsolutePath(),
+                        Integer.valueOf(entries.size())));
+                segment.entries = entries;
+                seal(segment);
+            } else {
+                segment.buffer = channel.map(MapMode.READ_ONLY, 0, segment.end);
+                segment.sealed = true;
+            }
+            for (Entry entry : entries) {
+                apply(entry);
+            }
+            return segment;
+        } catch (IOException ioe) {
+            channel.close();
+            throw ioe;
+        }
+    }
+
+
+    /*
+     * Read the footer of a closed segment. Returns null if the segment does not have a valid footer.
+     */
+    private static List<Entry> readFooter(Segment segment, long size) throws IOException {
+        if (size < SEGMENT_HEADER_LENGTH + TRAILER_LENGTH) {
+            return null;
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_LENGTH);
+        readFully(segment.channel, trailer, size - TRAILER_LENGTH);
+        int footerOffset = trailer.getInt(0);
+        int count = trailer.getInt(4);
+        if (trailer.getInt(12) != FOOTER_MAGIC || footerOffset < SEGMENT_HEADER_LENGTH ||
+                footerOffset > size - TRAILER_LENGTH || count < 0) {
+            return null;
+        }
+
+        ByteBuffer footer = ByteBuffer.allocate((int) (size - TRAILER_LENGTH - footerOffset));
+        readFully(segment.channel, footer, footerOffset);
+        CRC32 crc = new CRC32();
+        crc.update(footer.array());
+        if ((int) crc.getValue() != trailer.getInt(8)) {
+            return null;
+        }
+
+        footer.flip();
+        List<Entry> entries = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                byte type = footer.get();
+                long lastAccessedTime = footer.getLong();
+                int maxInactiveInterval = footer.getInt();
+                int offset = footer.getInt();
+                int length = footer.getInt();
+                int idLength = footer.getShort() & 0xFFFF;
+                byte[] id = new byte[idLength];
+                footer.get(id);
+                entries.add(new Entry(segment, type, new String(id, StandardCharsets.UTF_8), lastAccessedTime,
+                        maxInactiveInterval, offset, length, idLength));
+            }
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+        segment.end = footerOffset;
+        return entries;
+    }
+
+
+    /*
+     * Read the complete records in a segment that was not closed cleanly.
+     */
+    private static List<Entry> scan(Segment segment, int limit) {
+        ByteBuffer buffer = segment.buffer;
+        List<Entry> entries = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        int pos = SEGMENT_HEADER_LENGTH;
+        while (limit - pos >= RECORD_HEADER_LENGTH + RECORD_TRAILER_LENGTH) {
+            int length = buffer.getInt(pos);
+            if (length < RECORD_HEADER_LENGTH + RECORD_TRAILER_LENGTH || length > limit - pos) {
+                break;
+            }
+            byte type = buffer.get(pos + 4);
+            int idLength = buffer.getShort(pos + 17) & 0xFFFF;
+            if (type != TYPE_SAVE && type != TYPE_REMOVE ||
+                    idLength > length - RECORD_HEADER_LENGTH - RECORD_TRAILER_LENGTH) {
+                break;
+            }
+            byte[] record = new byte[length - RECORD_TRAILER_LENGTH];
+            buffer.get(pos, record);
+            crc.reset();
+            crc.update(record);
+            if ((int) crc.getValue() != buffer.getInt(pos + record.length)) {
+                break;
+            }
+            entries.add(new Entry(segment, type,
+                    new String(record, RECORD_HEADER_LENGTH, idLength, StandardCharsets.UTF_8),
+                    buffer.getLong(pos + 5), buffer.getInt(pos + 13), pos, length, idLength));
+            pos += length;
+        }
+        segment.end = pos;
+        return entries;
+    }
+
+
+    /*
+     * Close a segment that has been written by writing its footer and re-mapping it read-only. The write lock must be
+     * held.
+     */
+    private static void seal(Segment segment) throws IOException {
+        if (!segment.buffer.isReadOnly()) {
+            segment.buffer.force();
+        }
+        ByteBufferUtils.cleanDirectBuffer(segment.buffer);
+        segment.buffer = null;
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DataOutputStream footer = new DataOutputStream(bos)) {
+            for (Entry entry : segment.entries) {
+                byte[] id = entry.id.getBytes(StandardCharsets.UTF_8);
+                footer.writeByte(entry.type);
+                footer.writeLong(entry.lastAccessedTime);
+                footer.writeInt(entry.maxInactiveInterval);
+                footer.writeInt(entry.offset);
+                footer.writeInt(entry.length);
+                footer.writeShort(id.length);
+                footer.write(id);
+            }
+        }
+        byte[] footer = bos.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(footer);
+        ByteBuffer buffer = ByteBuffer.allocate(footer.length + TRAILER_LENGTH);
+        buffer.put(footer);
+        buffer.putInt(segment.end);
+        buffer.putInt(segment.entries.size());
+        buffer.putInt((int) crc.getValue());
+        buffer.putInt(FOOTER_MAGIC);
+        buffer.flip();
+
+        segment.channel.truncate(segment.end);
+        long pos = segment.end;
+        while (buffer.hasRemaining()) {
+            pos += segment.channel.write(buffer, pos);
+        }
+        segment.channel.force(true);
+
+        segment.buffer = segment.channel.map(MapMode.READ_ONLY, 0, segment.end);
+        segment.entries = null;
+        segment.sealed = true;
+    }
+
+
+    /*
+     * Append a record to the segment currently being written. The write lock must be held.
+     */
+    private Entry write(byte type, String id, long lastAccessedTime, int maxInactiveInterval, byte[] data)
+            throws IOException {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        if (idBytes.length > 0xFFFF) {
+            throw new IOException(sm.getString("segmentFileStore.idTooLong", id));
+        }
+        int length = RECORD_HEADER_LENGTH + idBytes.length + data.length + RECORD_TRAILER_LENGTH;
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.putInt(length);
+        record.put(type);
+        record.putLong(lastAccessedTime);
+        record.putInt(maxInactiveInterval);
+        record.putShort((short) idBytes.length);
+        record.put(idBytes);
+        record.put(data);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, length - RECORD_TRAILER_LENGTH);
+        record.putInt((int) crc.getValue());
+
+        return append(record.array(), type, id, lastAccessedTime, maxInactiveInterval, idBytes.length);
+    }
+
+
+    /*
+     * Append a complete record to the segment currently being written and update the index. The write lock must be
+     * held.
+     */
+    private Entry append(byte[] record, byte type, String id, long lastAccessedTime, int maxInactiveInterval,
+            int idLength) throws IOException {
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.sealed || record.length > segment.buffer.capacity() - segment.end) {
+            if (segment != null && !segment.sealed) {
+                seal(segment);
+            }
+            segment = createSegment(Math.max(segmentSize, SEGMENT_HEADER_LENGTH + record.length));
+        }
+
+        segment.buffer.put(segment.end, record);
+        Entry entry = new Entry(segment, type, id, lastAccessedTime, maxInactiveInterval, segment.end, record.length,
+                idLength);
+        segment.end += record.length;
+        segment.entries.add(entry);
+        apply(entry);
+        return entry;
+    }
+
+
+    /*
+     * Create a new segment to be written. The write lock must be held.
+     */
+    private Segment createSegment(int size) throws IOException {
+        File file = new File(directory(), String.format("%016x", Long.valueOf(nextSegmentNumber)) + SEGMENT_EXT);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        Segment segment = new Segment(nextSegmentNumber++, file, channel);
+        try {
+            segment.buffer = channel.map(MapMode.READ_WRITE, 0, size);
+        } catch (IOException ioe) {
+            channel.close();
+            throw ioe;
+        }
+        segment.buffer.putInt(0, SEGMENT_MAGIC);
+        segment.buffer.putInt(4, VERSION);
+        segment.end = SEGMENT_HEADER_LENGTH;
+        segment.entries = new ArrayList<>();
+        segments.add(segment);
+        return segment;
+    }
+
+
+    /*
+     * Update the index with a record. The write lock must be held.
+     */
+    private void apply(Entry entry) {
+        Entry previous;
+        if (entry.type == TYPE_SAVE) {
+            previous = index.put(entry.id, entry);
+            entry.segment.liveBytes += entry.length;
+        } else {
+            previous = index.remove(entry.id);
+            entry.segment.removals++;
+        }
+        if (previous != null) {
+            previous.segment.liveBytes -= previous.length;
+        }
+    }
+
+
+    /*
+     * Compact the first eligible segment created before the given segment number. Returns false if no segment was
+     * eligible.
+     */
+    private boolean compactSegment(long limit) throws IOException {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (segments == null) {
+                return false;
+            }
+            Segment segment = null;
+            for (int i = 0; i < segments.size(); i++) {
+                Segment candidate = segments.get(i);
+                if (!candidate.sealed || candidate.number >= limit) {
+                    break;
+                }
+                long recordBytes = candidate.end - SEGMENT_HEADER_LENGTH;
+                // Removals in the oldest segment are no longer required as there are no older copies to ignore
+                if (i == 0 && (recordBytes - candidate.liveBytes) * 100 >= recordBytes * compactionThreshold ||
+                        candidate.liveBytes == 0 && candidate.removals == 0) {
+                    segment = candidate;
+                    break;
+                }
+            }
+            if (segment == null) {
+                return false;
+            }
+
+            // Copy the current Sessions to the segment being written
+            int copied = 0;
+            ByteBuffer buffer = segment.buffer;
+            int pos = SEGMENT_HEADER_LENGTH;
+            while (segment.liveBytes > 0 && pos < segment.end) {
+                int length = buffer.getInt(pos);
+                if (buffer.get(pos + 4) == TYPE_SAVE) {
+                    int idLength = buffer.getShort(pos + 17) & 0xFFFF;
+                    byte[] id = new byte[idLength];
+                    buffer.get(pos + RECORD_HEADER_LENGTH, id);
+                    Entry entry = index.get(new String(id, StandardCharsets.UTF_8));
+                    if (entry != null && entry.segment == segment && entry.offset == pos) {
+                        byte[] record = new byte[length];
+                        buffer.get(pos, record);
+                        append(record, entry.type, entry.id, entry.lastAccessedTime, entry.maxInactiveInterval,
+                                idLength);
+                        copied++;
+                    }
+                }
+                pos += length;
+            }
+
+            if (copied > 0) {
+                // Make sure the copies are on disk before the originals are deleted. Any segments that were filled
+                // while copying were forced when they were sealed.
+                Segment current = segments.get(segments.size() - 1);
+                if (!current.sealed) {
+                    current.buffer.force();
+                }
+            }
+
+            segments.remove(segment);
+            delete(segment);
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("segmentFileStore.compacted", segment.file.getAbsolutePath(),
+                        Integer.valueOf(copied)));
+            }
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+
+    private static void close(Segment segment) {
+        if (segment.buffer != null) {
+            ByteBufferUtils.cleanDirectBuffer(segment.buffer);
+            segment.buffer = null;
+        }
+        try {
+            segment.channel.close();
+        } catch (IOException ioe) {
+            log.warn(sm.getString("segmentFileStore.closeSegmentFail", segment.file.getAbsolutePath()), ioe);
+        }
+    }
+
+
+    private static void delete(Segment segment) {
+        close(segment);
+        if (!segment.file.delete()) {
+            log.warn(sm.getString("segmentFileStore.deleteSegmentFailed", segment.file.getAbsolutePath()));
+        }
+    }
+
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, pos);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            pos += read;
+        }
+    }
+
+
+    /**
+     * Return a File object representing the pathname to our session persistence directory, if any. The directory will
+     * be created if it does not already exist.
+     */
+    private synchronized File directory() throws IOException {
+        // Synchronised to avoid concurrent attempts to create the directory.
+        if (this.directory == null) {
+            return null;
+        }
+        if (this.directoryFile != null) {
+            return this.directoryFile;
+        }
+        File file = new File(this.directory);
+        if (!file.isAbsolute()) {
+            Context context = manager.getContext();
+            ServletContext servletContext = context.getServletContext();
+            File work = (File) servletContext.getAttribute(ServletContext.TEMPDIR);
+            file = new File(work, this.directory);
+        }
+        if (!file.exists() || !file.isDirectory()) {
+            if (!file.delete() && file.exists()) {
+                throw new IOException(sm.getString("segmentFileStore.deleteFailed", file));
+            }
+            if (!file.mkdirs() && !file.isDirectory()) {
+                throw new IOException(sm.getString("segmentFileStore.createFailed", file));
+            }
+        }
+        this.directoryFile = file;
+        return file;
+    }
+
+
+    private static final class Segment {
+
+        private final long number;
+        private final File file;
+        private final FileChannel channel;
+        private MappedByteBuffer buffer;
+        // Offset of the end of the last record
+        private int end;
+        // Records written to the segment. Only used until the segment is sealed.
+        private List<Entry> entries;
+        private boolean sealed;
+        // Total length of the records in the segment that are the current copy of a Session
+        private long liveBytes;
+        private int removals;
+
+        private Segment(long number, File file, FileChannel channel) {
+            this.number = number;
+            this.file = file;
+            this.channel = channel;
+        }
+    }
+
+
+    private static final class Entry {
+
+        private final Segment segment;
+        private final byte type;
+        private final String id;
+        private final long lastAccessedTime;
+        private final int maxInactiveInterval;
+        private final int offset;
+        private final int length;
+        private final int idLength;
+
+        private Entry(Segment segment, byte type, String id, long lastAccessedTime, int maxInactiveInterval,
+                int offset, int length, int idLength) {
+            this.segment = segment;
+            this.type = type;
+            this.id = id;
+            this.lastAccessedTime = lastAccessedTime;
+            this.maxInactiveInterval = maxInactiveInterval;
+            this.offset = offset;
+            this.length = length;
+            this.idLength = idLength;
+        }
+
+        private int getDataOffset() {
+            return offset + RECORD_HEADER_LENGTH + idLength;
+        }
+
+        private int getDataLength() {
+            return length - RECORD_HEADER_LENGTH - idLength - RECORD_TRAILER_LENGTH;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel that indexes sessions by the time at which they are expected to expire so that
+ * {@link ManagerBase#processExpires()} only needs to check the sessions that may have expired rather than every
+ * session.
+ * <p>
+ * The wheel has four levels of 64 slots. A slot in the first level covers one tick of one second and a slot in each
+ * subsequent level covers 64 times as many ticks as a slot in the previous level so the wheel spans a little over 194
+ * days. Sessions that are expected to expire further in the future are placed in the last slot that the wheel spans
+ * and are re-scheduled when that slot is reached. As the wheel advances, the sessions in a slot of a higher level are
+ * moved to the lower levels once the slot is reached.
+ * <p>
+ * The expected expiry time is based on the last access time and the maximum inactive interval when the session is
+ * scheduled. Accessing a session only ever makes its expiry time later so the index is not updated when a session is
+ * accessed. Instead, when its slot is reached, a session that is still valid is re-scheduled based on its current
+ * last access time. A session is re-scheduled immediately if its maximum inactive interval changes.
+ * <p>
+ * The slots are intrusive doubly linked lists of {@link StandardSession} instances so adding and removing a session
+ * are constant time operations that do not allocate. All methods are synchronized.
+ */
+final class SessionExpiryWheel {
+
+    static final long TICK_MILLIS = 1000;
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_TICKS = 1L << (SLOT_BITS * LEVELS);
+
+    /*
+     * The first session in each slot. The index is level * SLOTS + slot. StandardSession.expiryBucket holds the index
+     * plus one so that the default value of zero means the session is not in any slot, including after
+     * deserialization.
+     */
+    private final StandardSession[] heads = new StandardSession[LEVELS * SLOTS];
+
+    // The last tick that has been processed
+    private long currentTick;
+
+    private int size = 0;
+
+
+    SessionExpiryWheel(long timeNow) {
+        currentTick = timeNow / TICK_MILLIS;
+    }
+
+
+    /**
+     * Add a session to the index.
+     *
+     * @param session The session to add
+     */
+    synchronized void add(StandardSession session) {
+        if (!session.expiryIndexed) {
+            session.expiryIndexed = true;
+            size++;
+        }
+        schedule(session);
+    }
+
+
+    /**
+     * Remove a session from the index. Removing a session that is not in the index has no effect.
+     *
+     * @param session The session to remove
+     */
+    synchronized void remove(StandardSession session) {
+        if (session.expiryIndexed) {
+            session.expiryIndexed = false;
+            size--;
+            unlink(session);
+        }
+    }
+
+
+    /**
+     * Schedule a session that is in the index based on its current last access time and maximum inactive interval.
+     * Sessions that are not in the index are ignored.
+     *
+     * @param session The session to re-schedule
+     */
+    synchronized void reschedule(StandardSession session) {
+        if (session.expiryIndexed) {
+            schedule(session);
+        }
+    }
+
+
+    /**
+     * Advance the wheel to the given time.
+     *
+     * @param timeNow The current time
+     *
+     * @return the sessions that were expected to expire by the given time. They remain in the index but are not
+     *             scheduled so the caller must either re-schedule them or remove them.
+     */
+    synchronized List<StandardSession> advance(long timeNow) {
+        List<StandardSession> result = new ArrayList<>();
+        long targetTick = timeNow / TICK_MILLIS;
+        while (currentTick < targetTick) {
+            long tick = currentTick + 1;
+            // Move sessions down from the higher levels, starting with the highest, when their slot is reached
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((tick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    int bucket = level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+                    StandardSession session = heads[bucket];
+                    heads[bucket] = null;
+                    while (session != null) {
+                        StandardSession next = session.expiryNext;
+                        session.expiryPrev = null;
+                        session.expiryNext = null;
+                        session.expiryBucket = 0;
+                        // Sessions due at this tick are placed in the first level and processed below
+                        link(session, session.expiryTick, tick);
+                        session = next;
+                    }
+                }
+            }
+            int bucket = (int) (tick & SLOT_MASK);
+            StandardSession session = heads[bucket];
+            heads[bucket] = null;
+            while (session != null) {
+                StandardSession next = session.expiryNext;
+                session.expiryPrev = null;
+                session.expiryNext = null;
+                session.expiryBucket = 0;
+                result.add(session);
+                session = next;
+            }
+            currentTick = tick;
+        }
+        return result;
+    }
+
+
+    /**
+     * Remove all sessions from the index.
+     */
+    synchronized void clear() {
+        for (int i = 0; i < heads.length; i++) {
+            StandardSession session = heads[i];
+            heads[i] = null;
+            while (session != null) {
+                StandardSession next = session.expiryNext;
+                session.expiryPrev = null;
+                session.expiryNext = null;
+                session.expiryBucket = 0;
+                session.expiryIndexed = false;
+                session = next;
+            }
+        }
+        size = 0;
+    }
+
+
+    /**
+     * @return the number of sessions in the index
+     */
+    synchronized int size() {
+        return size;
+    }
+
+
+    private void schedule(StandardSession session) {
+        unlink(session);
+        long expiryTime = session.getExpiryTimeInternal();
+        if (expiryTime < 0) {
+            // Never expires
+            return;
+        }
+        // Round up so the session is never checked before it has expired. A session that was expected to have
+        // expired but is still valid, because it is in use or an implementation specific rule applies, is checked
+        // again the next time the wheel advances.
+        long expiryTick = (expiryTime + TICK_MILLIS - 1) / TICK_MILLIS;
+        // The current tick has already been processed
+        link(session, Math.max(expiryTick, currentTick + 1), currentTick);
+    }
+
+
+    /*
+     * The level is selected by the distance from the base tick so that the slot is always reached after the base tick
+     * and before the slot is reused for a later tick. expiryTick must not be before baseTick.
+     */
+    private void link(StandardSession session, long expiryTick, long baseTick) {
+        long delta = expiryTick - baseTick;
+        if (delta >= MAX_TICKS) {
+            expiryTick = baseTick + MAX_TICKS - 1;
+            delta = MAX_TICKS - 1;
+        }
+        session.expiryTick = expiryTick;
+
+        int level = 0;
+        while (delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int bucket = level * SLOTS + (int) ((expiryTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+
+        StandardSession head = heads[bucket];
+        session.expiryPrev = null;
+        session.expiryNext = head;
+        if (head != null) {
+            head.expiryPrev = session;
+        }
+        heads[bucket] = session;
+        session.expiryBucket = bucket + 1;
+    }
+
+
+    private void unlink(StandardSession session) {
+        if (session.expiryBucket == 0) {
+            return;
+        }
+        StandardSession prev = session.expiryPrev;
+        StandardSession next = session.expiryNext;
+        if (prev == null) {
+            heads[session.expiryBucket - 1] = next;
+        } else {
+            prev.expiryNext = next;
+        }
+        if (next != null) {
+            next.expiryPrev = prev;
+        }
+        session.expiryPrev = null;
+        session.expiryNext = null;
+        session.expiryBucket = 0;
+    }
+}
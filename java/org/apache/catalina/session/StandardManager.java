@@ -116,6 +116,7 @@ public class StandardManager extends ManagerBase {
         }
 
         // Initialize our internal data structures
+        clearExpiryIndex();
         sessions.clear();
 
         // Open an input stream to the specified pathname, if any
@@ -126,25 +127,23 @@ public class StandardManager extends ManagerBase {
         if (log.isTraceEnabled()) {
             log.trace(sm.getString("standardManager.loading", pathname));
         }
-        Loader loader;
-        ClassLoader classLoader = null;
-        Log logger;
         try (FileInputStream fis = new FileInputStream(file.getAbsolutePath());
                 BufferedInputStream bis = new BufferedInputStream(fis)) {
             Context c = getContext();
-            loader = c.getLoader();
-            logger = c.getLogger();
+            Loader loader = c.getLoader();
+            Log logger = c.getLogger();
+            ClassLoader loaderClassLoader = null;
             if (loader != null) {
-                classLoader = loader.getClassLoader();
-            }
-            if (classLoader == null) {
-                classLoader = getClass().getClassLoader();
+                loaderClassLoader = loader.getClassLoader();
             }
+            ClassLoader classLoader = loaderClassLoader == null ? getClass().getClassLoader() : loaderClassLoader;
 
             // Load the previously unloaded active sessions
             synchronized (sessions) {
-                try (ObjectInputStream ois = new CustomObjectInputStream(bis, classLoader, logger,
-                        getSessionAttributeValueClassNamePattern(), getWarnOnSessionAttributeFilterFailure())) {
+                try (ObjectInputStream ois = getSessionCodec().getObjectInputStream(bis,
+                        is -> new CustomObjectInputStream(is, classLoader, logger,
+                                getSessionAttributeValueClassNamePattern(),
+                                getWarnOnSessionAttributeFilterFailure()))) {
                     Integer count = (Integer) ois.readObject();
                     int n = count.intValue();
                     if (log.isTraceEnabled()) {
@@ -155,6 +154,7 @@ public class StandardManager extends ManagerBase {
                         session.readObjectData(ois);
                         session.setManager(this);
                         sessions.put(session.getIdInternal(), session);
+                        indexExpiry(session);
                         session.activate();
                         if (!session.isValidInternal()) {
                             // If session is already invalid,
@@ -211,7 +211,7 @@ public class StandardManager extends ManagerBase {
 
         try (FileOutputStream fos = new FileOutputStream(file.getAbsolutePath());
                 BufferedOutputStream bos = new BufferedOutputStream(fos);
-                ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+                ObjectOutputStream oos = getSessionCodec().getObjectOutputStream(bos)) {
 
             synchronized (sessions) {
                 if (log.isTraceEnabled()) {
@@ -233,6 +233,17 @@ public class StandardSession implements HttpSession, Session, Serializable {
     protected transient boolean lastAccessAtStart;
 
 
+    /*
+     * The state used by the SessionExpiryWheel of the Manager, if any, to track this session. Only accessed while
+     * holding the lock of the SessionExpiryWheel.
+     */
+    transient boolean expiryIndexed = false;
+    transient int expiryBucket = 0;
+    transient long expiryTick;
+    transient StandardSession expiryPrev = null;
+    transient StandardSession expiryNext = null;
+
+
     // ----------------------------------------------------- Session Properties
 
 
@@ -439,6 +450,36 @@ public class StandardSession implements HttpSession, Session, Serializable {
     @Override
     public void setMaxInactiveInterval(int interval) {
         this.maxInactiveInterval = interval;
+        expiryChanged();
+    }
+
+
+    /**
+     * Notify the Manager that the time at which this session will expire may have changed for a reason other than the
+     * session being accessed.
+     */
+    protected void expiryChanged() {
+        if (manager instanceof ManagerBase managerBase) {
+            managerBase.rescheduleExpiry(this);
+        }
+    }
+
+
+    /**
+     * Return the time at which this session will expire if it is not accessed again.
+     *
+     * @return the expiry time in milliseconds since the epoch or -1 if the session never expires
+     */
+    long getExpiryTimeInternal() {
+        int interval = maxInactiveInterval;
+        if (interval <= 0) {
+            return -1;
+        }
+        if (lastAccessAtStart) {
+            return lastAccessedTime + interval * 1000L;
+        } else {
+            return thisAccessedTime + interval * 1000L;
+        }
     }
 
 
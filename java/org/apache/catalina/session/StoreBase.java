@@ -19,14 +19,19 @@ package org.apache.catalina.session;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.function.Consumer;
 
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleState;
 import org.apache.catalina.Manager;
 import org.apache.catalina.Session;
+import org.apache.catalina.SessionCodec;
 import org.apache.catalina.Store;
 import org.apache.catalina.util.CustomObjectInputStream;
 import org.apache.catalina.util.LifecycleBase;
@@ -62,11 +67,18 @@ public abstract class StoreBase extends LifecycleBase implements Store {
      */
     protected static final StringManager sm = StringManager.getManager(StoreBase.class);
 
+    private static final SessionCodec DEFAULT_SESSION_CODEC = new JavaSerializationSessionCodec();
+
     /**
      * The Manager with which this Store is associated.
      */
     protected Manager manager;
 
+    /**
+     * The codec used to encode sessions saved in this Store. If not set, the codec of the Manager is used.
+     */
+    private SessionCodec sessionCodec = null;
+
 
     // ------------------------------------------------------------- Properties
 
@@ -93,6 +105,33 @@ public abstract class StoreBase extends LifecycleBase implements Store {
     }
 
 
+    /**
+     * Obtain the codec used to encode sessions saved in this Store. If no codec has been configured for this Store, the
+     * codec of the Manager is used if it is a {@link ManagerBase}, otherwise Java serialization is used.
+     *
+     * @return The session codec
+     */
+    public SessionCodec getSessionCodec() {
+        if (sessionCodec != null) {
+            return sessionCodec;
+        }
+        if (manager instanceof ManagerBase managerBase) {
+            return managerBase.getSessionCodec();
+        }
+        return DEFAULT_SESSION_CODEC;
+    }
+
+
+    /**
+     * Configure the codec used to encode sessions saved in this Store.
+     *
+     * @param sessionCodec The session codec
+     */
+    public void setSessionCodec(SessionCodec sessionCodec) {
+        this.sessionCodec = sessionCodec;
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
     @Override
@@ -116,6 +155,28 @@ public abstract class StoreBase extends LifecycleBase implements Store {
         return keys();
     }
 
+    /**
+     * Load every session in this Store, passing each one to the given consumer. This is intended for loading all the
+     * persisted sessions when a Manager starts. This implementation loads the session for each of the {@link #keys()}
+     * individually. Sessions that cannot be loaded are logged and skipped.
+     *
+     * @param consumer Called with each session that is loaded
+     *
+     * @throws IOException if the sessions in the Store could not be determined
+     */
+    public void loadAll(Consumer<Session> consumer) throws IOException {
+        for (String key : keys()) {
+            try {
+                Session session = load(key);
+                if (session != null) {
+                    consumer.accept(session);
+                }
+            } catch (ClassNotFoundException | IOException e) {
+                manager.getContext().getLogger().error(sm.getString("store.loadFail", key), e);
+            }
+        }
+    }
+
     /**
      * Called by our background reaper thread to check if Sessions saved in our store are subject of being expired. If
      * so expire the Session and remove it from the Store.
@@ -201,18 +262,31 @@ public abstract class StoreBase extends LifecycleBase implements Store {
     protected ObjectInputStream getObjectInputStream(InputStream is) throws IOException {
         BufferedInputStream bis = new BufferedInputStream(is);
 
-        CustomObjectInputStream ois;
         ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
 
-        if (manager instanceof ManagerBase managerBase) {
-            ois = new CustomObjectInputStream(bis, classLoader, manager.getContext().getLogger(),
-                    managerBase.getSessionAttributeValueClassNamePattern(),
-                    managerBase.getWarnOnSessionAttributeFilterFailure());
-        } else {
-            ois = new CustomObjectInputStream(bis, classLoader);
-        }
+        return getSessionCodec().getObjectInputStream(bis, javaIs -> {
+            if (manager instanceof ManagerBase managerBase) {
+                return new CustomObjectInputStream(javaIs, classLoader, manager.getContext().getLogger(),
+                        managerBase.getSessionAttributeValueClassNamePattern(),
+                        managerBase.getWarnOnSessionAttributeFilterFailure());
+            } else {
+                return new CustomObjectInputStream(javaIs, classLoader);
+            }
+        });
+    }
+
 
-        return ois;
+    /**
+     * Create the object output stream to use to write a session to the store.
+     *
+     * @param os The output stream provided by the subclass to which the data for a session will be written
+     *
+     * @return An appropriately configured ObjectOutputStream to which the session can be written.
+     *
+     * @throws IOException if a problem occurs creating the ObjectOutputStream
+     */
+    protected ObjectOutputStream getObjectOutputStream(OutputStream os) throws IOException {
+        return getSessionCodec().getObjectOutputStream(new BufferedOutputStream(os));
     }
 
 
@@ -110,12 +110,24 @@ public class ContextRuleSet implements RuleSet {
         digester.addSetProperties(prefix + "Context/Manager/Store");
         digester.addSetNext(prefix + "Context/Manager/Store", "setStore", "org.apache.catalina.Store");
 
+        digester.addObjectCreate(prefix + "Context/Manager/Store/SessionCodec", null, // MUST be specified
+                "className");
+        digester.addSetProperties(prefix + "Context/Manager/Store/SessionCodec");
+        digester.addSetNext(prefix + "Context/Manager/Store/SessionCodec", "setSessionCodec",
+                "org.apache.catalina.SessionCodec");
+
         digester.addObjectCreate(prefix + "Context/Manager/SessionIdGenerator",
                 "org.apache.catalina.util.StandardSessionIdGenerator", "className");
         digester.addSetProperties(prefix + "Context/Manager/SessionIdGenerator");
         digester.addSetNext(prefix + "Context/Manager/SessionIdGenerator", "setSessionIdGenerator",
                 "org.apache.catalina.SessionIdGenerator");
 
+        digester.addObjectCreate(prefix + "Context/Manager/SessionCodec", null, // MUST be specified in the element
+                "className");
+        digester.addSetProperties(prefix + "Context/Manager/SessionCodec");
+        digester.addSetNext(prefix + "Context/Manager/SessionCodec", "setSessionCodec",
+                "org.apache.catalina.SessionCodec");
+
         digester.addObjectCreate(prefix + "Context/Parameter",
                 "org.apache.tomcat.util.descriptor.web.ApplicationParameter");
         digester.addSetProperties(prefix + "Context/Parameter");
@@ -25,8 +25,11 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -34,6 +37,7 @@ import java.util.Objects;
 import java.util.TimeZone;
 
 import org.apache.catalina.LifecycleException;
+import org.apache.catalina.valves.AsyncAccessLogWriter.OverflowPolicy;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
@@ -56,6 +60,10 @@ import org.apache.tomcat.util.buf.B2CConverter;
  * For JMX junkies, a public method called <code>rotate</code> has been made available to allow you to tell this
  * instance to move the existing log file to somewhere else and start writing a new log file.
  * </p>
+ * <p>
+ * If <code>asyncWrite</code> is enabled, request threads only encode log entries into a pre-allocated ring buffer and
+ * a dedicated thread writes them to the log file in batches. Request threads then never wait for the log file.
+ * </p>
  */
 public class AccessLogValve extends AbstractAccessLogValve {
 
@@ -158,6 +166,31 @@ public class AccessLogValve extends AbstractAccessLogValve {
     private int maxDays = -1;
     private volatile boolean checkForOldLogs = false;
 
+    /**
+     * Should log entries be written by a dedicated thread?
+     */
+    private boolean asyncWrite = false;
+
+    /**
+     * The number of log entries that may be waiting to be written by the dedicated thread.
+     */
+    private int asyncWriteQueueSize = 8192;
+
+    /**
+     * The action to take when the queue of log entries waiting to be written by the dedicated thread is full.
+     */
+    private OverflowPolicy asyncWriteOverflowPolicy = OverflowPolicy.BLOCK;
+
+    /**
+     * The channel for the current log file when log entries are written by a dedicated thread.
+     */
+    private FileChannel channel = null;
+
+    /**
+     * The dedicated writer, if log entries are written by a dedicated thread.
+     */
+    private volatile AsyncAccessLogWriter asyncWriter = null;
+
     // ------------------------------------------------------------- Properties
 
 
@@ -304,6 +337,90 @@ public class AccessLogValve extends AbstractAccessLogValve {
     }
 
 
+    /**
+     * Are log entries written to the log file by a dedicated thread rather than by the request processing threads?
+     *
+     * @return <code>true</code> if log entries are written by a dedicated thread
+     */
+    public boolean getAsyncWrite() {
+        return asyncWrite;
+    }
+
+
+    /**
+     * Configure whether log entries are written to the log file by a dedicated thread rather than by the request
+     * processing threads. Changes take effect when the valve is next started.
+     *
+     * @param asyncWrite <code>true</code> if log entries should be written by a dedicated thread
+     */
+    public void setAsyncWrite(boolean asyncWrite) {
+        this.asyncWrite = asyncWrite;
+    }
+
+
+    /**
+     * Returns the number of log entries that may be waiting to be written by the dedicated thread.
+     *
+     * @return the queue size
+     */
+    public int getAsyncWriteQueueSize() {
+        return asyncWriteQueueSize;
+    }
+
+
+    /**
+     * Set the number of log entries that may be waiting to be written by the dedicated thread. The value is rounded up
+     * to a power of two. Changes take effect when the valve is next started.
+     *
+     * @param asyncWriteQueueSize the queue size
+     */
+    public void setAsyncWriteQueueSize(int asyncWriteQueueSize) {
+        this.asyncWriteQueueSize = asyncWriteQueueSize;
+    }
+
+
+    /**
+     * Returns the action taken when the queue of log entries waiting to be written by the dedicated thread is full.
+     *
+     * @return one of <code>block</code>, <code>drop</code> or <code>count</code>
+     */
+    public String getAsyncWriteOverflowPolicy() {
+        return asyncWriteOverflowPolicy.name().toLowerCase(Locale.ENGLISH);
+    }
+
+
+    /**
+     * Set the action taken when the queue of log entries waiting to be written by the dedicated thread is full.
+     * <code>block</code> waits for space, <code>drop</code> discards the entry and periodically logs a warning and
+     * <code>count</code> discards the entry and only records the number of discarded entries.
+     *
+     * @param asyncWriteOverflowPolicy one of <code>block</code>, <code>drop</code> or <code>count</code>
+     */
+    public void setAsyncWriteOverflowPolicy(String asyncWriteOverflowPolicy) {
+        try {
+            this.asyncWriteOverflowPolicy = OverflowPolicy.valueOf(asyncWriteOverflowPolicy.toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException(
+                    sm.getString("accessLogValve.invalidOverflowPolicy", asyncWriteOverflowPolicy), iae);
+        }
+    }
+
+
+    /**
+     * Returns the number of log entries discarded because the queue of log entries waiting to be written by the
+     * dedicated thread was full.
+     *
+     * @return the number of discarded entries since the valve was started
+     */
+    public long getAsyncWriteDroppedCount() {
+        AsyncAccessLogWriter asyncWriter = this.asyncWriter;
+        if (asyncWriter == null) {
+            return 0;
+        }
+        return asyncWriter.getDropped();
+    }
+
+
     /**
      * Returns the log file suffix.
      *
@@ -382,6 +499,14 @@ public class AccessLogValve extends AbstractAccessLogValve {
             writer.flush();
         }
 
+        AsyncAccessLogWriter asyncWriter = this.asyncWriter;
+        if (asyncWriter != null && asyncWriteOverflowPolicy == OverflowPolicy.DROP) {
+            long dropped = asyncWriter.getDroppedSinceLastCall();
+            if (dropped > 0) {
+                log.warn(sm.getString("accessLogValve.asyncWriteDropped", Long.valueOf(dropped)));
+            }
+        }
+
         int maxDays = this.maxDays;
         String prefix = this.prefix;
         String suffix = this.suffix;
@@ -551,11 +676,19 @@ public class AccessLogValve extends AbstractAccessLogValve {
      * @param rename Rename file to final name after closing
      */
     private synchronized void close(boolean rename) {
-        if (writer == null) {
+        if (writer == null && channel == null) {
             return;
         }
-        writer.flush();
-        writer.close();
+        if (writer != null) {
+            writer.flush();
+            writer.close();
+        } else {
+            try {
+                channel.close();
+            } catch (IOException ioe) {
+                log.warn(sm.getString("accessLogValve.closeFail"), ioe);
+            }
+        }
         if (rename && renameOnRotate) {
             File newLogFile = getLogFile(true);
             if (!newLogFile.exists()) {
@@ -572,6 +705,7 @@ public class AccessLogValve extends AbstractAccessLogValve {
             }
         }
         writer = null;
+        channel = null;
         dateStamp = "";
         currentLogFile = null;
     }
@@ -580,30 +714,24 @@ public class AccessLogValve extends AbstractAccessLogValve {
     @Override
     public void log(CharArrayWriter message) {
 
+        message.append(System.lineSeparator());
+
+        AsyncAccessLogWriter asyncWriter = this.asyncWriter;
+        // If the writer has been closed by a concurrent stop, write the entry directly so it is not lost
+        if (asyncWriter != null && (asyncWriter.offer(message) || !asyncWriter.isClosed())) {
+            // Rotation and writing are handled by the writer thread
+            return;
+        }
+
         rotate();
 
         /* In case something external rotated the file instead */
         if (checkExists) {
-            synchronized (this) {
-                if (currentLogFile != null && !currentLogFile.exists()) {
-                    try {
-                        close(false);
-                    } catch (Throwable t) {
-                        ExceptionUtils.handleThrowable(t);
-                        log.info(sm.getString("accessLogValve.closeFail"), t);
-                    }
-
-                    /* Make sure date is correct */
-                    dateStamp = fileDateFormatter.format(new Date(System.currentTimeMillis()));
-
-                    open();
-                }
-            }
+            reopenIfMissing();
         }
 
         // Log this message
         try {
-            message.write(System.lineSeparator());
             synchronized (this) {
                 if (writer != null) {
                     message.writeTo(writer);
@@ -619,13 +747,63 @@ public class AccessLogValve extends AbstractAccessLogValve {
 
 
     /**
-     * Open the new log file for the date specified by <code>dateStamp</code>.
+     * Write a batch of log entries that have already been encoded. Called by the dedicated writer thread when
+     * <code>asyncWrite</code> is enabled.
+     *
+     * @param entries The encoded log entries
+     * @param count   The number of entries to write, starting with the first
      */
-    protected synchronized void open() {
-        // Open the current log file
-        // If no rotate - no need for dateStamp in fileName
-        File pathname = getLogFile(rotatable && !renameOnRotate);
+    void writeAsync(ByteBuffer[] entries, int count) {
+
+        rotate();
+
+        /* In case something external rotated the file instead */
+        if (checkExists) {
+            reopenIfMissing();
+        }
+
+        synchronized (this) {
+            if (channel != null) {
+                try {
+                    long remaining = 0;
+                    for (int i = 0; i < count; i++) {
+                        remaining += entries[i].remaining();
+                    }
+                    while (remaining > 0) {
+                        remaining -= channel.write(entries, 0, count);
+                    }
+                } catch (IOException ioe) {
+                    log.warn(sm.getString("accessLogValve.asyncWriteFail", Integer.valueOf(count)), ioe);
+                }
+            }
+        }
+    }
+
 
+    /*
+     * Close and re-open the log file if it no longer exists.
+     */
+    private synchronized void reopenIfMissing() {
+        if (currentLogFile != null && !currentLogFile.exists()) {
+            try {
+                close(false);
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                log.info(sm.getString("accessLogValve.closeFail"), t);
+            }
+
+            /* Make sure date is correct */
+            dateStamp = fileDateFormatter.format(new Date(System.currentTimeMillis()));
+
+            open();
+        }
+    }
+
+
+    /*
+     * The character set used to write the log file.
+     */
+    private Charset getCharset() {
         Charset charset = null;
         if (encoding != null) {
             try {
@@ -637,15 +815,31 @@ public class AccessLogValve extends AbstractAccessLogValve {
         if (charset == null) {
             charset = StandardCharsets.UTF_8;
         }
+        return charset;
+    }
+
+
+    /**
+     * Open the new log file for the date specified by <code>dateStamp</code>.
+     */
+    protected synchronized void open() {
+        // Open the current log file
+        // If no rotate - no need for dateStamp in fileName
+        File pathname = getLogFile(rotatable && !renameOnRotate);
 
         try {
-            writer = new PrintWriter(
-                    new BufferedWriter(new OutputStreamWriter(new FileOutputStream(pathname, true), charset), 128000),
-                    false);
+            if (asyncWrite) {
+                channel = FileChannel.open(pathname.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+            } else {
+                writer = new PrintWriter(new BufferedWriter(
+                        new OutputStreamWriter(new FileOutputStream(pathname, true), getCharset()), 128000), false);
+            }
 
             currentLogFile = pathname;
         } catch (IOException ioe) {
             writer = null;
+            channel = null;
             currentLogFile = null;
             log.error(sm.getString("accessLogValve.openFail", pathname, System.getProperty("user.name")), ioe);
         }
@@ -675,6 +869,12 @@ public class AccessLogValve extends AbstractAccessLogValve {
         }
         open();
 
+        if (asyncWrite) {
+            asyncWriter = new AsyncAccessLogWriter(this, "AccessLogWriter[" + getContainer().getName() + "]",
+                    asyncWriteQueueSize, getCharset(), asyncWriteOverflowPolicy);
+            asyncWriter.start();
+        }
+
         super.startInternal();
     }
 
@@ -690,6 +890,18 @@ public class AccessLogValve extends AbstractAccessLogValve {
     protected void stopInternal() throws LifecycleException {
 
         super.stopInternal();
+
+        AsyncAccessLogWriter asyncWriter = this.asyncWriter;
+        if (asyncWriter != null) {
+            this.asyncWriter = null;
+            try {
+                // Write any entries that are still queued
+                asyncWriter.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
         close(false);
     }
 }
@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.valves;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Writes access log entries from a dedicated thread. Request threads encode each entry into a slot of a pre-allocated
+ * ring buffer that supports many concurrent producers and a single consumer. The writer thread drains the published
+ * entries in order and passes them to the {@link AccessLogValve} in batches so they can be written to the log file
+ * with a single gathering write.
+ */
+final class AsyncAccessLogWriter implements Runnable {
+
+    /**
+     * The action taken when an entry is logged and the ring buffer is full.
+     */
+    enum OverflowPolicy {
+        /**
+         * Wait for the writer thread to make space.
+         */
+        BLOCK,
+        /**
+         * Discard the entry and periodically log a warning with the number of discarded entries.
+         */
+        DROP,
+        /**
+         * Discard the entry. The number of discarded entries is only available via JMX.
+         */
+        COUNT
+    }
+
+
+    private static final Log log = LogFactory.getLog(AsyncAccessLogWriter.class);
+    private static final StringManager sm = StringManager.getManager(AsyncAccessLogWriter.class);
+
+
+    /*
+     * Initial size of the buffer of each slot. Buffers grow as required for longer entries and are returned to this
+     * size once an entry that needed more than MAX_RETAINED_SLOT_SIZE has been written.
+     */
+    private static final int INITIAL_SLOT_SIZE = 256;
+    private static final int MAX_RETAINED_SLOT_SIZE = 16 * 1024;
+
+    private static final int MAX_BATCH_SIZE = 64;
+
+    // The value of tail once the writer has stopped and no further entries can be claimed
+    private static final long CLOSED = -1;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final AccessLogValve valve;
+    private final OverflowPolicy overflowPolicy;
+
+    private final Slot[] slots;
+    private final int mask;
+    // The sequence number of the entry that is currently published in each slot
+    private final AtomicLongArray published;
+    // The sequence number that will be claimed by the next producer
+    private final AtomicLong tail = new AtomicLong();
+    // The sequence number of the next entry the writer thread will consume
+    private volatile long head = 0;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private long droppedReported = 0;
+
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean waiting = false;
+
+
+    AsyncAccessLogWriter(AccessLogValve valve, String name, int queueSize, Charset charset,
+            OverflowPolicy overflowPolicy) {
+        this.valve = valve;
+        this.overflowPolicy = overflowPolicy;
+        int size = Integer.highestOneBit(Math.max(2, queueSize) - 1) << 1;
+        slots = new Slot[size];
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot(charset);
+            published.set(i, -1);
+        }
+        mask = size - 1;
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+    }
+
+
+    void start() {
+        thread.start();
+    }
+
+
+    /**
+     * Stop the writer thread once all the entries that have been queued have been written. Once the writer has
+     * stopped, it is closed and no further entries are accepted.
+     *
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the writer thread to stop
+     */
+    void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        // In case the writer thread did not close the writer because it was never started or failed
+        tail.set(CLOSED);
+    }
+
+
+    /**
+     * @return {@code true} if the writer has stopped and entries must be written by the caller
+     */
+    boolean isClosed() {
+        return tail.get() == CLOSED;
+    }
+
+
+    /**
+     * @return the total number of entries discarded because the ring buffer was full
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+
+    /**
+     * @return the number of entries discarded since the last call to this method. Only called by the background
+     *             processing thread.
+     */
+    long getDroppedSinceLastCall() {
+        long current = dropped.get();
+        long result = current - droppedReported;
+        droppedReported = current;
+        return result;
+    }
+
+
+    /**
+     * Encode the given entry and queue it for writing. The entry has been fully encoded when this method returns.
+     *
+     * @param message The complete entry, including the line separator
+     *
+     * @return {@code true} if the entry was queued, {@code false} if it was discarded or the writer has been closed
+     */
+    boolean offer(CharArrayWriter message) {
+        long sequence;
+        while (true) {
+            sequence = tail.get();
+            if (sequence == CLOSED) {
+                // Not counted as dropped as the caller is expected to write the entry
+                return false;
+            }
+            if (sequence - head >= slots.length) {
+                // Don't wait for a writer thread that is not running as space will never be made
+                if (overflowPolicy != OverflowPolicy.BLOCK || !thread.isAlive()) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                LockSupport.unpark(thread);
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+                continue;
+            }
+            if (tail.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+
+        int index = (int) sequence & mask;
+        Slot slot = slots[index];
+        slot.encode(message);
+        published.setRelease(index, sequence);
+
+        if (waiting) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+
+    @Override
+    public void run() {
+        ByteBuffer[] batch = new ByteBuffer[MAX_BATCH_SIZE];
+        while (true) {
+            long next = head;
+            int count = 0;
+            while (count < MAX_BATCH_SIZE && published.getAcquire((int) (next + count) & mask) == next + count) {
+                batch[count] = slots[(int) (next + count) & mask].buffer;
+                count++;
+            }
+
+            if (count == 0) {
+                if (!running && tail.compareAndSet(next, CLOSED)) {
+                    // Stopped, every claimed entry has been written and no more entries can be claimed
+                    break;
+                }
+                waiting = true;
+                // Re-check after setting the flag so a publication between the check above and the flag is not missed
+                if (published.getAcquire((int) next & mask) != next) {
+                    LockSupport.parkNanos(this, running ? IDLE_PARK_NANOS : FULL_PARK_NANOS);
+                }
+                waiting = false;
+                continue;
+            }
+
+            try {
+                valve.writeAsync(batch, count);
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                // Discard the batch and carry on with the next one so the ring buffer does not fill up
+                log.error(sm.getString("accessLogValve.asyncWriteFail", Integer.valueOf(count)), t);
+            }
+
+            for (int i = 0; i < count; i++) {
+                slots[(int) (next + i) & mask].recycle();
+                batch[i] = null;
+            }
+            head = next + count;
+        }
+    }
+
+
+    /*
+     * A slot of the ring buffer. Between claiming a slot and publishing it, only the producer that claimed the slot
+     * accesses it. After publication, only the writer thread accesses it until the head moves past it.
+     */
+    private static final class Slot extends Writer {
+
+        private final CharsetEncoder encoder;
+        private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_SLOT_SIZE);
+
+        Slot(Charset charset) {
+            encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        void encode(CharArrayWriter message) {
+            encoder.reset();
+            try {
+                // Passes the internal array of the CharArrayWriter to write(char[], int, int) so it is not copied
+                message.writeTo(this);
+            } catch (IOException ioe) {
+                // Not possible as write() does not throw IOException
+                throw new IllegalStateException(ioe);
+            }
+            while (encoder.flush(buffer).isOverflow()) {
+                expand(16);
+            }
+            buffer.flip();
+        }
+
+        void recycle() {
+            if (buffer.capacity() > MAX_RETAINED_SLOT_SIZE) {
+                buffer = ByteBuffer.allocate(INITIAL_SLOT_SIZE);
+            } else {
+                buffer.clear();
+            }
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            CharBuffer in = CharBuffer.wrap(cbuf, off, len);
+            while (true) {
+                CoderResult result = encoder.encode(in, buffer, true);
+                if (!result.isOverflow()) {
+                    break;
+                }
+                expand((int) (in.remaining() * encoder.averageBytesPerChar()) + 16);
+            }
+        }
+
+        private void expand(int required) {
+            ByteBuffer expanded = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + required));
+            buffer.flip();
+            expanded.put(buffer);
+            buffer = expanded;
+        }
+
+        @Override
+        public void flush() {
+            // NO-OP
+        }
+
+        @Override
+        public void close() {
+            // NO-OP
+        }
+    }
+}
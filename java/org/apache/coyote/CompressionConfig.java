@@ -30,6 +30,7 @@ import java.util.regex.Pattern;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.buf.MessageBytes;
+import org.apache.tomcat.util.http.HttpHeader;
 import org.apache.tomcat.util.http.MimeHeaders;
 import org.apache.tomcat.util.http.ResponseUtil;
 import org.apache.tomcat.util.http.parser.AcceptEncoding;
@@ -268,7 +269,7 @@ public class CompressionConfig {
         MimeHeaders responseHeaders = response.getMimeHeaders();
 
         // Check if content is not already compressed
-        MessageBytes contentEncodingMB = responseHeaders.getValue("Content-Encoding");
+        MessageBytes contentEncodingMB = responseHeaders.getValue(HttpHeader.CONTENT_ENCODING);
         if (contentEncodingMB != null) {
             // Content-Encoding values are ordered but order is not important
             // for this check so use a Set rather than a List
@@ -328,7 +329,7 @@ public class CompressionConfig {
         }
 
         // Check if the resource has a strong ETag
-        String eTag = responseHeaders.getHeader("ETag");
+        String eTag = responseHeaders.getHeader(HttpHeader.ETAG);
         if (!useTransferEncoding && eTag != null && !eTag.trim().startsWith("W/")) {
             // Has an ETag that doesn't start with "W/..." so it must be a
             // strong ETag
@@ -371,7 +372,7 @@ public class CompressionConfig {
             // Check for incompatible Browser
             Pattern noCompressionUserAgents = this.noCompressionUserAgents;
             if (noCompressionUserAgents != null) {
-                MessageBytes userAgentValueMB = request.getMimeHeaders().getValue("user-agent");
+                MessageBytes userAgentValueMB = request.getMimeHeaders().getValue(HttpHeader.USER_AGENT);
                 if (userAgentValueMB != null) {
                     String userAgentValue = userAgentValueMB.toString();
                     if (noCompressionUserAgents.matcher(userAgentValue).matches()) {
@@ -220,7 +220,15 @@ public interface ProtocolHandler {
 
 
     /**
-     * Create a new ProtocolHandler for the given protocol.
+     * The class name of the io_uring HTTP/1.1 protocol handler. It is only available when Tomcat has been built with
+     * Java 22 or later and is only usable on Linux.
+     */
+    String IO_URING_PROTOCOL = "org.apache.coyote.http11.Http11IoUringProtocol";
+
+
+    /**
+     * Create a new ProtocolHandler for the given protocol. If the io_uring protocol handler is requested but is not
+     * supported on the current system, the NIO protocol handler is used instead.
      *
      * @param protocol the protocol
      *
@@ -243,6 +251,22 @@ public interface ProtocolHandler {
         } else if ("AJP/1.3".equals(protocol) ||
                 org.apache.coyote.ajp.AjpNioProtocol.class.getName().equals(protocol)) {
             return new org.apache.coyote.ajp.AjpNioProtocol();
+        } else if (IO_URING_PROTOCOL.equals(protocol)) {
+            // Fall back to NIO when io_uring cannot be used on this system
+            String reason;
+            try {
+                Class<?> clazz = Class.forName(protocol);
+                reason = (String) clazz.getMethod("getUnsupportedReason").invoke(null);
+                if (reason == null) {
+                    return (ProtocolHandler) clazz.getConstructor().newInstance();
+                }
+            } catch (ReflectiveOperationException | LinkageError e) {
+                reason = e.toString();
+            }
+            org.apache.juli.logging.LogFactory.getLog(ProtocolHandler.class).warn(
+                    org.apache.tomcat.util.res.StringManager.getManager(ProtocolHandler.class)
+                            .getString("protocolHandler.ioUringUnavailable", reason));
+            return new org.apache.coyote.http11.Http11NioProtocol();
         } else {
             // Instantiate protocol handler
             Class<?> clazz = Class.forName(protocol);
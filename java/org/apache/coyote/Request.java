@@ -33,6 +33,7 @@ import jakarta.servlet.ServletConnection;
 import org.apache.tomcat.util.buf.CharsetHolder;
 import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.buf.UDecoder;
+import org.apache.tomcat.util.http.HttpHeader;
 import org.apache.tomcat.util.http.Method;
 import org.apache.tomcat.util.http.MimeHeaders;
 import org.apache.tomcat.util.http.Parameters;
@@ -608,7 +609,7 @@ public final class Request {
             return contentLength;
         }
 
-        MessageBytes clB = headers.getUniqueValue("content-length");
+        MessageBytes clB = headers.getUniqueValue(HttpHeader.CONTENT_LENGTH);
         contentLength = (clB == null || clB.isNull()) ? -1 : clB.getLong();
 
         return contentLength;
@@ -645,7 +646,7 @@ public final class Request {
      */
     public MessageBytes contentType() {
         if (contentTypeMB == null) {
-            contentTypeMB = headers.getValue("content-type");
+            contentTypeMB = headers.getValue(HttpHeader.CONTENT_TYPE);
         }
         return contentTypeMB;
     }
@@ -48,6 +48,7 @@ import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.buf.ByteChunk;
 import org.apache.tomcat.util.buf.MessageBytes;
+import org.apache.tomcat.util.http.HttpHeader;
 import org.apache.tomcat.util.http.Method;
 import org.apache.tomcat.util.http.MimeHeaders;
 import org.apache.tomcat.util.net.AbstractEndpoint.Handler.SocketState;
@@ -876,7 +877,7 @@ public class AjpProcessor extends AbstractProcessor {
 
         }
 
-        MessageBytes valueMB = request.getMimeHeaders().getValue("host");
+        MessageBytes valueMB = request.getMimeHeaders().getValue(HttpHeader.HOST);
         parseHost(valueMB);
 
         if (!getErrorState().isIoAllowed()) {
@@ -44,6 +44,8 @@ import org.apache.coyote.http11.upgrade.InternalHttpUpgradeHandler;
 import org.apache.coyote.http11.upgrade.UpgradeGroupInfo;
 import org.apache.coyote.http11.upgrade.UpgradeProcessorExternal;
 import org.apache.coyote.http11.upgrade.UpgradeProcessorInternal;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.buf.StringUtils;
 import org.apache.tomcat.util.http.parser.HttpParser;
 import org.apache.tomcat.util.modeler.Registry;
@@ -225,6 +227,72 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
     }
 
 
+    private String priorityPaths = null;
+    private volatile PriorityPath[] priorityPathArray = new PriorityPath[0];
+
+    /**
+     * Get the mapping of request URI prefixes to priority classes.
+     *
+     * @return The mapping as a comma separated list of {@code prefix=class} entries
+     */
+    public String getPriorityPaths() {
+        return priorityPaths;
+    }
+
+    /**
+     * Set the mapping of request URI prefixes to priority classes as a comma separated list of {@code prefix=class}
+     * entries. Once the request line has been parsed, the priority class of the first matching prefix is used for any
+     * further work for the connection that is queued by an executor that uses a
+     * {@link org.apache.tomcat.util.threads.PriorityTaskQueue}.
+     *
+     * @param priorityPaths The mapping
+     */
+    public void setPriorityPaths(String priorityPaths) {
+        List<PriorityPath> result = new ArrayList<>();
+        if (priorityPaths != null) {
+            for (String entry : priorityPaths.split(",")) {
+                entry = entry.trim();
+                if (entry.isEmpty()) {
+                    continue;
+                }
+                int index = entry.lastIndexOf('=');
+                try {
+                    if (index < 1) {
+                        throw new IllegalArgumentException();
+                    }
+                    result.add(new PriorityPath(entry.substring(0, index).trim(),
+                            Integer.parseInt(entry.substring(index + 1).trim())));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(
+                            sm.getString("abstractHttp11Protocol.invalidPriorityPath", entry), e);
+                }
+            }
+        }
+        this.priorityPathArray = result.toArray(new PriorityPath[0]);
+        this.priorityPaths = priorityPaths;
+    }
+
+    /*
+     * Returns the priority class for the given request URI or -1 if no prefix matches.
+     */
+    int getPriorityClass(MessageBytes requestURI) {
+        PriorityPath[] priorityPathArray = this.priorityPathArray;
+        if (priorityPathArray.length == 0) {
+            return -1;
+        }
+        ByteChunk uri = requestURI.getByteChunk();
+        for (PriorityPath priorityPath : priorityPathArray) {
+            if (uri.startsWith(priorityPath.prefix(), 0)) {
+                return priorityPath.priorityClass();
+            }
+        }
+        return -1;
+    }
+
+    private record PriorityPath(String prefix, int priorityClass) {
+    }
+
+
     private String relaxedQueryChars = null;
 
     /**
@@ -28,6 +28,7 @@ import org.apache.coyote.Request;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.http.HeaderUtil;
+import org.apache.tomcat.util.http.parser.HttpByteScanner;
 import org.apache.tomcat.util.http.parser.HttpHeaderParser;
 import org.apache.tomcat.util.http.parser.HttpHeaderParser.HeaderDataSource;
 import org.apache.tomcat.util.http.parser.HttpHeaderParser.HeaderParseStatus;
@@ -126,6 +127,7 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler,
     private int parsingRequestLineQPos;
     private final HttpParser httpParser;
     private final HttpHeaderParser httpHeaderParser;
+    private final HttpByteScanner byteScanner = HttpByteScanner.getInstance();
 
     /**
      * Maximum allowed size of the HTTP request line plus headers plus any leading blank lines.
@@ -384,6 +386,12 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler,
                         return false;
                     }
                 }
+                // Skip any run of token characters
+                byteBuffer.position(byteScanner.skipToken(byteBuffer.array(), byteBuffer.position(),
+                        byteBuffer.limit()));
+                if (byteBuffer.position() >= byteBuffer.limit()) {
+                    continue;
+                }
                 // Spec says method name is a token followed by a single SP but
                 // also be tolerant of multiple SP and/or HT.
                 int pos = byteBuffer.position();
@@ -434,6 +442,12 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler,
                         return false;
                     }
                 }
+                // Skip any run of characters that are valid in both the path and the query string
+                byteBuffer.position(byteScanner.skipRequestTarget(byteBuffer.array(), byteBuffer.position(),
+                        byteBuffer.limit()));
+                if (byteBuffer.position() >= byteBuffer.limit()) {
+                    continue;
+                }
                 int pos = byteBuffer.position();
                 chr = byteBuffer.get();
                 if (chr == Constants.SP || chr == Constants.HT) {
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http11;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.net.iouring.IoUringEndpoint;
+
+
+/**
+ * HTTP/1.1 protocol implementation using Linux io_uring. TLS is not supported.
+ */
+public class Http11IoUringProtocol extends AbstractHttp11Protocol<Integer> {
+
+    private static final Log log = LogFactory.getLog(Http11IoUringProtocol.class);
+
+
+    /**
+     * Can this protocol handler be used on the current system?
+     *
+     * @return {@code true} if io_uring is supported
+     */
+    public static boolean isSupported() {
+        return IoUringEndpoint.isSupported();
+    }
+
+
+    /**
+     * Obtain the reason this protocol handler cannot be used on the current system.
+     *
+     * @return the reason or {@code null} if io_uring is supported
+     */
+    public static String getUnsupportedReason() {
+        return IoUringEndpoint.getUnsupportedReason();
+    }
+
+
+    /**
+     * Constructs a new Http11IoUringProtocol with a default io_uring endpoint.
+     */
+    public Http11IoUringProtocol() {
+        this(new IoUringEndpoint());
+    }
+
+
+    /**
+     * Constructs a new Http11IoUringProtocol with the specified endpoint.
+     *
+     * @param endpoint the io_uring endpoint to use
+     */
+    public Http11IoUringProtocol(IoUringEndpoint endpoint) {
+        super(endpoint);
+    }
+
+
+    @Override
+    protected Log getLog() {
+        return log;
+    }
+
+
+    // -------------------- Pool setup --------------------
+
+    /**
+     * Sets the ring thread priority for the io_uring endpoint.
+     *
+     * @param threadPriority the ring thread priority
+     */
+    public void setPollerThreadPriority(int threadPriority) {
+        ((IoUringEndpoint) getEndpoint()).setPollerThreadPriority(threadPriority);
+    }
+
+    /**
+     * Gets the ring thread priority for the io_uring endpoint.
+     *
+     * @return the ring thread priority
+     */
+    public int getPollerThreadPriority() {
+        return ((IoUringEndpoint) getEndpoint()).getPollerThreadPriority();
+    }
+
+    /**
+     * Sets the number of io_uring submission queue entries.
+     *
+     * @param ringEntries the number of submission queue entries
+     */
+    public void setRingEntries(int ringEntries) {
+        ((IoUringEndpoint) getEndpoint()).setRingEntries(ringEntries);
+    }
+
+    /**
+     * Gets the number of io_uring submission queue entries.
+     *
+     * @return the number of submission queue entries
+     */
+    public int getRingEntries() {
+        return ((IoUringEndpoint) getEndpoint()).getRingEntries();
+    }
+
+
+    @Override
+    protected String getNamePrefix() {
+        return "http-iouring";
+    }
+}
@@ -92,6 +92,42 @@ public class Http11NioProtocol extends AbstractHttp11Protocol<NioChannel> {
         return ((NioEndpoint) getEndpoint()).getPollerThreadPriority();
     }
 
+    /**
+     * Sets the number of poller threads for the NIO endpoint.
+     *
+     * @param count the number of poller threads
+     */
+    public void setPollerThreadCount(int count) {
+        ((NioEndpoint) getEndpoint()).setPollerThreadCount(count);
+    }
+
+    /**
+     * Gets the number of poller threads for the NIO endpoint.
+     *
+     * @return the number of poller threads
+     */
+    public int getPollerThreadCount() {
+        return ((NioEndpoint) getEndpoint()).getPollerThreadCount();
+    }
+
+    /**
+     * Sets whether the NIO endpoint uses one acceptor, with its own SO_REUSEPORT server socket, per poller.
+     *
+     * @param acceptorPerPoller {@code true} to use one acceptor per poller
+     */
+    public void setAcceptorPerPoller(boolean acceptorPerPoller) {
+        ((NioEndpoint) getEndpoint()).setAcceptorPerPoller(acceptorPerPoller);
+    }
+
+    /**
+     * Gets whether the NIO endpoint uses one acceptor per poller.
+     *
+     * @return {@code true} if one acceptor per poller is configured
+     */
+    public boolean getAcceptorPerPoller() {
+        return ((NioEndpoint) getEndpoint()).getAcceptorPerPoller();
+    }
+
 
     @Override
     protected String getNamePrefix() {
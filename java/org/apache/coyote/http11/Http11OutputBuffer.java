@@ -25,6 +25,8 @@ import org.apache.coyote.CloseNowException;
 import org.apache.coyote.Response;
 import org.apache.tomcat.util.buf.ByteChunk;
 import org.apache.tomcat.util.buf.MessageBytes;
+import org.apache.tomcat.util.http.HttpHeader;
+import org.apache.tomcat.util.http.MimeHeaders;
 import org.apache.tomcat.util.net.SocketWrapperBase;
 import org.apache.tomcat.util.res.StringManager;
 
@@ -43,6 +45,13 @@ public class Http11OutputBuffer implements HttpOutputBuffer {
     protected static final StringManager sm = StringManager.getManager(Http11OutputBuffer.class);
 
 
+    /*
+     * The number of response header templates retained by each output buffer and the maximum size of a template.
+     */
+    private static final int HEADER_TEMPLATE_COUNT = 4;
+    private static final int HEADER_TEMPLATE_MAX_SIZE = 2048;
+
+
     // ----------------------------------------------------- Instance Variables
 
     /**
@@ -66,6 +75,44 @@ public class Http11OutputBuffer implements HttpOutputBuffer {
     protected final ByteBuffer headerBuffer;
 
 
+    /*
+     * When the response is committed by the first write of the response body, writing the headers is deferred so that
+     * the headers and the body can be written to the network with a single gathering write. While the headers are
+     * pending, headerBuffer is in read mode.
+     */
+    private boolean deferHeaders = false;
+    private boolean headersPending = false;
+    private final ByteBuffer[] singleBuffer = new ByteBuffer[1];
+    private ByteBuffer[] gatherBuffers = new ByteBuffer[4];
+
+
+    /*
+     * Position of the status line and of the end of each header written to headerBuffer since the last call to
+     * sendStatus(). Used to create header templates.
+     */
+    private int statusStart;
+    private int statusEnd;
+    private int[] headerEnds = new int[16];
+    private int headerCount;
+
+
+    /*
+     * Templates of recently written header blocks. Processors, and therefore output buffers, are re-used for many
+     * requests so responses that repeat the same status and headers can be written with a few bulk copies.
+     */
+    private final HeaderTemplate[] headerTemplates = new HeaderTemplate[HEADER_TEMPLATE_COUNT];
+    private int nextHeaderTemplate = 0;
+
+
+    /*
+     * Hash of the status and fixed headers of the last header block that did not match a template. A template is only
+     * created when the same status and fixed headers are written twice in succession so that responses that are never
+     * repeated (e.g. because they include an ETag or a Set-Cookie header) do not allocate a template each time.
+     */
+    private int lastMissHash = 0;
+    private boolean lastMissHashValid = false;
+
+
     /**
      * Filter library for processing the response body.
      */
@@ -190,14 +237,34 @@ public class Http11OutputBuffer implements HttpOutputBuffer {
             // Send the connector a request for commit. The connector should
             // then validate the headers, send them (using sendHeaders) and
             // set the filters accordingly.
-            response.action(ActionCode.COMMIT, null);
+            deferHeaders = isBlocking();
+            try {
+                response.action(ActionCode.COMMIT, null);
+            } finally {
+                deferHeaders = false;
+            }
         }
 
-        if (lastActiveFilter == -1) {
-            return outputStreamOutputBuffer.doWrite(chunk);
-        } else {
-            return activeFilters[lastActiveFilter].doWrite(chunk);
+        int result;
+        try {
+            if (lastActiveFilter == -1) {
+                result = outputStreamOutputBuffer.doWrite(chunk);
+            } else {
+                result = activeFilters[lastActiveFilter].doWrite(chunk);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (headersPending) {
+                headersPending = false;
+                resetHeaderBuffer();
+            }
+            throw e;
         }
+
+        if (headersPending) {
+            // A filter buffered the data (or discarded it) so the headers have not been written yet
+            writePendingHeaders();
+        }
+        return result;
     }
 
 
@@ -247,6 +314,7 @@ public class Http11OutputBuffer implements HttpOutputBuffer {
      * written.
      */
     void resetHeaderBuffer() {
+        headersPending = false;
         headerBuffer.position(0).limit(headerBuffer.capacity());
     }
 
@@ -272,6 +340,7 @@ public class Http11OutputBuffer implements HttpOutputBuffer {
         // Recycle response object
         response.recycle();
         // Reset pointers
+        headersPending = false;
         headerBuffer.position(0).limit(headerBuffer.capacity());
         lastActiveFilter = -1;
         ackSent = false;
@@ -316,7 +385,31 @@ public class Http11OutputBuffer implements HttpOutputBuffer {
      */
     protected void commit() throws IOException {
         response.setCommitted(true);
-        writeHeaders();
+        if (deferHeaders && headerBuffer.position() > 0) {
+            // The headers will be written with the first part of the response body
+            headerBuffer.flip();
+            headersPending = true;
+        } else {
+            writeHeaders();
+        }
+    }
+
+
+    /*
+     * Write headers that were deferred by commit() but could not be combined with the response body.
+     */
+    private void writePendingHeaders() throws IOException {
+        headersPending = false;
+        try {
+            SocketWrapperBase<?> socketWrapper = this.socketWrapper;
+            if (socketWrapper != null) {
+                socketWrapper.write(isBlocking(), headerBuffer);
+            } else {
+                throw new CloseNowException(sm.getString("iob.failedwrite"));
+            }
+        } finally {
+            headerBuffer.position(0).limit(headerBuffer.capacity());
+        }
     }
 
     /**
@@ -348,6 +441,9 @@ public class Http11OutputBuffer implements HttpOutputBuffer {
      * @param status The HTTP status code to include in the status line
      */
     public void sendStatus(int status) {
+        statusStart = headerBuffer.position();
+        headerCount = 0;
+
         // Write protocol name
         write(Constants.HTTP_11_BYTES);
         headerBuffer.put(Constants.SP);
@@ -374,6 +470,7 @@ public class Http11OutputBuffer implements HttpOutputBuffer {
         // just wastes bytes.
 
         headerBuffer.put(Constants.CR).put(Constants.LF);
+        statusEnd = headerBuffer.position();
     }
 
 
@@ -388,6 +485,146 @@ public class Http11OutputBuffer implements HttpOutputBuffer {
         headerBuffer.put(Constants.COLON).put(Constants.SP);
         write(value);
         headerBuffer.put(Constants.CR).put(Constants.LF);
+        if (headerCount == headerEnds.length) {
+            headerEnds = Arrays.copyOf(headerEnds, headerCount * 2);
+        }
+        headerEnds[headerCount++] = headerBuffer.position();
+    }
+
+
+    /**
+     * Send the status line and headers using a template created by {@link #createHeaderTemplate(int, MimeHeaders)}
+     * for an earlier response with the same status, the same header names in the same order and the same header
+     * values. The values of the Date and Content-Length headers are not part of the template. They are written for
+     * each response in the position they occupy in the header block.
+     *
+     * @param status  The HTTP status code
+     * @param headers The response headers
+     *
+     * @return {@code true} if the status line and headers were written, {@code false} if there is no matching
+     *             template, in which case nothing has been written
+     */
+    boolean sendHeadersFromTemplate(int status, MimeHeaders headers) {
+        HeaderTemplate template = null;
+        for (HeaderTemplate candidate : headerTemplates) {
+            if (candidate != null && candidate.matches(status, headers)) {
+                template = candidate;
+                break;
+            }
+        }
+        if (template == null) {
+            return false;
+        }
+
+        int start = headerBuffer.position();
+        try {
+            byte[] bytes = template.bytes;
+            int pos = 0;
+            for (int i = 0; i < template.values.length; i++) {
+                if (template.values[i] == null) {
+                    // Write the fixed content that precedes this header then the header itself
+                    writeTemplate(bytes, pos, template.offsets[i] - pos);
+                    pos = template.offsets[i];
+                    sendHeader(headers.getName(i), headers.getValue(i));
+                }
+            }
+            writeTemplate(bytes, pos, bytes.length - pos);
+        } catch (IllegalArgumentException iae) {
+            // Invalid Date or Content-Length value. Let the caller write the headers individually and handle it.
+            headerBuffer.position(start);
+            return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Create a template from the status line and headers that have just been written with {@link #sendStatus(int)}
+     * and {@link #sendHeader(MessageBytes, MessageBytes)} so that responses with the same status and headers can be
+     * written with {@link #sendHeadersFromTemplate(int, MimeHeaders)}. No template is created if any header name or
+     * value is not a String in the default character set, apart from the Date and Content-Length values, nor unless
+     * the previous header block that did not match a template had the same status and fixed headers.
+     *
+     * @param status  The HTTP status code that was written
+     * @param headers The response headers that were written
+     */
+    void createHeaderTemplate(int status, MimeHeaders headers) {
+        int size = headers.size();
+        if (size != headerCount) {
+            return;
+        }
+        // Check the headers and calculate the key without allocating
+        int hash = status;
+        int length = statusEnd - statusStart;
+        int previousEnd = statusEnd;
+        for (int i = 0; i < size; i++) {
+            MessageBytes name = headers.getName(i);
+            if (name.getType() != MessageBytes.T_STR) {
+                lastMissHashValid = false;
+                return;
+            }
+            String nameString = name.getString();
+            hash = 31 * hash + nameString.hashCode();
+            if (!isTemplateVariable(nameString)) {
+                MessageBytes value = headers.getValue(i);
+                if (value.getType() != MessageBytes.T_STR || value.getCharset() != ByteChunk.DEFAULT_CHARSET) {
+                    lastMissHashValid = false;
+                    return;
+                }
+                hash = 31 * hash + value.getString().hashCode();
+                length += headerEnds[i] - previousEnd;
+            }
+            previousEnd = headerEnds[i];
+        }
+        if (length > HEADER_TEMPLATE_MAX_SIZE) {
+            lastMissHashValid = false;
+            return;
+        }
+        if (!lastMissHashValid || hash != lastMissHash) {
+            lastMissHash = hash;
+            lastMissHashValid = true;
+            return;
+        }
+        lastMissHashValid = false;
+
+        String[] names = new String[size];
+        String[] values = new String[size];
+        int[] offsets = new int[size];
+        length = statusEnd - statusStart;
+        previousEnd = statusEnd;
+        for (int i = 0; i < size; i++) {
+            names[i] = headers.getName(i).getString();
+            if (!isTemplateVariable(names[i])) {
+                values[i] = headers.getValue(i).getString();
+                length += headerEnds[i] - previousEnd;
+            }
+            offsets[i] = length;
+            previousEnd = headerEnds[i];
+        }
+
+        byte[] bytes = new byte[length];
+        headerBuffer.get(statusStart, bytes, 0, statusEnd - statusStart);
+        for (int i = 0; i < size; i++) {
+            if (values[i] != null) {
+                int start = i == 0 ? statusEnd : headerEnds[i - 1];
+                headerBuffer.get(start, bytes, offsets[i] - (headerEnds[i] - start), headerEnds[i] - start);
+            }
+        }
+
+        headerTemplates[nextHeaderTemplate] = new HeaderTemplate(status, names, values, offsets, bytes);
+        nextHeaderTemplate = (nextHeaderTemplate + 1) % HEADER_TEMPLATE_COUNT;
+    }
+
+
+    private static boolean isTemplateVariable(String name) {
+        return HttpHeader.DATE.getName().equalsIgnoreCase(name) ||
+                HttpHeader.CONTENT_LENGTH.getName().equalsIgnoreCase(name);
+    }
+
+
+    private void writeTemplate(byte[] bytes, int offset, int length) {
+        checkLengthBeforeWrite(length);
+        headerBuffer.put(bytes, offset, length);
     }
 
 
@@ -570,6 +807,14 @@ public class Http11OutputBuffer implements HttpOutputBuffer {
 
         @Override
         public int doWrite(ByteBuffer chunk) throws IOException {
+            if (headersPending) {
+                singleBuffer[0] = chunk;
+                try {
+                    return doWrite(singleBuffer, 0, 1);
+                } finally {
+                    singleBuffer[0] = null;
+                }
+            }
             try {
                 int len = chunk.remaining();
                 SocketWrapperBase<?> socketWrapper = Http11OutputBuffer.this.socketWrapper;
@@ -588,6 +833,52 @@ public class Http11OutputBuffer implements HttpOutputBuffer {
             }
         }
 
+        @Override
+        public int doWrite(ByteBuffer[] chunks, int offset, int length) throws IOException {
+            ByteBuffer[] buffers = chunks;
+            int first = offset;
+            int count = length;
+            boolean writeHeaders = headersPending;
+            if (writeHeaders) {
+                // Prepend the pending headers
+                if (gatherBuffers.length < length + 1) {
+                    gatherBuffers = new ByteBuffer[length + 1];
+                }
+                buffers = gatherBuffers;
+                System.arraycopy(chunks, offset, buffers, 1, length);
+                buffers[0] = headerBuffer;
+                first = 0;
+                count = length + 1;
+                headersPending = false;
+            }
+            try {
+                long len = 0;
+                for (int i = offset; i < offset + length; i++) {
+                    len += chunks[i].remaining();
+                }
+                SocketWrapperBase<?> socketWrapper = Http11OutputBuffer.this.socketWrapper;
+                if (socketWrapper != null) {
+                    socketWrapper.write(isBlocking(), buffers, first, count);
+                } else {
+                    throw new CloseNowException(sm.getString("iob.failedwrite"));
+                }
+                for (int i = offset; i < offset + length; i++) {
+                    len -= chunks[i].remaining();
+                }
+                byteCount += len;
+                return (int) len;
+            } catch (IOException ioe) {
+                response.action(ActionCode.CLOSE_NOW, ioe);
+                // Re-throw
+                throw ioe;
+            } finally {
+                if (writeHeaders) {
+                    headerBuffer.position(0).limit(headerBuffer.capacity());
+                    Arrays.fill(buffers, first, count, null);
+                }
+            }
+        }
+
         @Override
         public long getBytesWritten() {
             return byteCount;
@@ -603,4 +894,47 @@ public class Http11OutputBuffer implements HttpOutputBuffer {
             socketWrapper.flush(isBlocking());
         }
     }
+
+
+    /*
+     * The encoded form of a status line and header block. Headers with variable values (values[i] == null) are not
+     * included in the bytes. offsets[i] is the position in the bytes at which header i ends or, for a header with a
+     * variable value, the position at which that header must be inserted.
+     */
+    private static final class HeaderTemplate {
+
+        private final int status;
+        private final String[] names;
+        private final String[] values;
+        private final int[] offsets;
+        private final byte[] bytes;
+
+        HeaderTemplate(int status, String[] names, String[] values, int[] offsets, byte[] bytes) {
+            this.status = status;
+            this.names = names;
+            this.values = values;
+            this.offsets = offsets;
+            this.bytes = bytes;
+        }
+
+        boolean matches(int status, MimeHeaders headers) {
+            if (this.status != status || names.length != headers.size()) {
+                return false;
+            }
+            for (int i = 0; i < names.length; i++) {
+                MessageBytes name = headers.getName(i);
+                if (name.getType() != MessageBytes.T_STR || !names[i].equals(name.getString())) {
+                    return false;
+                }
+                if (values[i] != null) {
+                    MessageBytes value = headers.getValue(i);
+                    if (value.getType() != MessageBytes.T_STR || value.getCharset() != ByteChunk.DEFAULT_CHARSET ||
+                            !values[i].equals(value.getString())) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
 }
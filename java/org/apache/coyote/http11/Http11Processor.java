@@ -55,6 +55,7 @@ import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.buf.ByteChunk;
 import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.http.FastHttpDateFormat;
+import org.apache.tomcat.util.http.HttpHeader;
 import org.apache.tomcat.util.http.Method;
 import org.apache.tomcat.util.http.MimeHeaders;
 import org.apache.tomcat.util.http.parser.HttpParser;
@@ -284,6 +285,12 @@ public class Http11Processor extends AbstractProcessor {
                 // parse headers.
                 prepareRequestProtocol();
 
+                // Applies to any further work for this connection that is queued
+                int priorityClass = protocol.getPriorityClass(request.requestURI());
+                if (priorityClass >= 0) {
+                    socketWrapper.setPriorityClass(priorityClass);
+                }
+
                 if (protocol.isPaused()) {
                     // 503 - Service unavailable
                     response.setStatus(503);
@@ -629,7 +636,7 @@ public class Http11Processor extends AbstractProcessor {
         MimeHeaders headers = request.getMimeHeaders();
 
         // Check connection header
-        MessageBytes connectionValueMB = headers.getValue(Constants.CONNECTION);
+        MessageBytes connectionValueMB = headers.getValue(HttpHeader.CONNECTION);
         if (connectionValueMB != null && !connectionValueMB.isNull()) {
             Set<String> tokens = new HashSet<>();
             TokenList.parseTokenList(headers.values(Constants.CONNECTION), tokens);
@@ -647,7 +654,7 @@ public class Http11Processor extends AbstractProcessor {
         // Check user-agent header
         Pattern restrictedUserAgents = protocol.getRestrictedUserAgentsPattern();
         if (restrictedUserAgents != null && (http11 || keepAlive)) {
-            MessageBytes userAgentValueMB = headers.getValue("user-agent");
+            MessageBytes userAgentValueMB = headers.getValue(HttpHeader.USER_AGENT);
             // Check in the restricted list, and adjust the http11
             // and keepAlive flags accordingly
             if (userAgentValueMB != null && !userAgentValueMB.isNull()) {
@@ -663,7 +670,7 @@ public class Http11Processor extends AbstractProcessor {
         // Check host header
         MessageBytes hostValueMB = null;
         try {
-            hostValueMB = headers.getUniqueValue("host");
+            hostValueMB = headers.getUniqueValue(HttpHeader.HOST);
         } catch (IllegalArgumentException iae) {
             // Multiple Host headers are not permitted
             badRequest("http11processor.request.multipleHosts");
@@ -783,7 +790,7 @@ public class Http11Processor extends AbstractProcessor {
 
 
     private void prepareExpectation(MimeHeaders headers) {
-        MessageBytes expectMB = headers.getValue("expect");
+        MessageBytes expectMB = headers.getValue(HttpHeader.EXPECT);
         if (expectMB != null && !expectMB.isNull()) {
             if (expectMB.toString().trim().equalsIgnoreCase("100-continue")) {
                 request.setExpectation(true);
@@ -803,7 +810,7 @@ public class Http11Processor extends AbstractProcessor {
         // Parse transfer-encoding header
         // HTTP specs say an HTTP 1.1 server should accept any recognised
         // HTTP 1.x header from a 1.x client unless the specs says otherwise.
-        MessageBytes transferEncodingValueMB = headers.getValue("transfer-encoding");
+        MessageBytes transferEncodingValueMB = headers.getValue(HttpHeader.TRANSFER_ENCODING);
         if (transferEncodingValueMB != null) {
             List<String> encodingNames = new ArrayList<>();
             if (TokenList.parseTokenList(headers.values("transfer-encoding"), encodingNames)) {
@@ -832,7 +839,7 @@ public class Http11Processor extends AbstractProcessor {
                 // not be used with a content length. RFC 2616, section 4.4,
                 // bullet 3 states Content-Length must be ignored in this case -
                 // so remove it.
-                headers.removeHeader("content-length");
+                headers.removeHeader(HttpHeader.CONTENT_LENGTH);
                 request.setContentLength(-1);
                 keepAlive = false;
             } else {
@@ -950,7 +957,7 @@ public class Http11Processor extends AbstractProcessor {
 
         // Add date header unless application has already set one (e.g. in a
         // Caching Filter)
-        if (headers.getValue("Date") == null) {
+        if (headers.getValue(HttpHeader.DATE) == null) {
             headers.addValue("Date").setString(FastHttpDateFormat.getCurrentDate());
         }
 
@@ -1006,7 +1013,7 @@ public class Http11Processor extends AbstractProcessor {
                         if (http11) {
                             // Append if there is already a Connection header,
                             // else create the header
-                            MessageBytes connectionHeaderValue = headers.getValue(Constants.CONNECTION);
+                            MessageBytes connectionHeaderValue = headers.getValue(HttpHeader.CONNECTION);
                             if (connectionHeaderValue == null) {
                                 headers.addValue(Constants.CONNECTION)
                                         .setString(Constants.KEEP_ALIVE_HEADER_VALUE_TOKEN);
@@ -1024,7 +1031,7 @@ public class Http11Processor extends AbstractProcessor {
         String server = protocol.getServer();
         if (server == null) {
             if (protocol.getServerRemoveAppProvidedValues()) {
-                headers.removeHeader("server");
+                headers.removeHeader(HttpHeader.SERVER);
             }
         } else {
             // server always overrides anything the app might set
@@ -1039,6 +1046,11 @@ public class Http11Processor extends AbstractProcessor {
 
     private void writeHeaders(int status, MimeHeaders headers) {
         try {
+            if (outputBuffer.sendHeadersFromTemplate(status, headers)) {
+                outputBuffer.endHeaders();
+                return;
+            }
+
             outputBuffer.sendStatus(status);
 
             int size = headers.size();
@@ -1059,6 +1071,7 @@ public class Http11Processor extends AbstractProcessor {
                     outputBuffer.sendStatus(status);
                 }
             }
+            outputBuffer.createHeaderTemplate(status, headers);
             outputBuffer.endHeaders();
         } catch (Throwable t) {
             ExceptionUtils.handleThrowable(t);
@@ -1071,7 +1084,7 @@ public class Http11Processor extends AbstractProcessor {
 
 
     private static boolean isConnectionToken(MimeHeaders headers, String token) throws IOException {
-        MessageBytes connection = headers.getValue(Constants.CONNECTION);
+        MessageBytes connection = headers.getValue(HttpHeader.CONNECTION);
         if (connection == null) {
             return false;
         }
@@ -17,6 +17,7 @@
 package org.apache.coyote.http11;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.coyote.OutputBuffer;
 
@@ -40,4 +41,24 @@ public interface HttpOutputBuffer extends OutputBuffer {
      * @throws IOException If an I/O error occurs while flushing
      */
     void flush() throws IOException;
+
+    /**
+     * Write the given buffers, in order. Implementations that write to the network may combine the buffers into a
+     * single gathering write. The default implementation calls {@link #doWrite(ByteBuffer)} for each buffer in turn.
+     *
+     * @param chunks The buffers containing the data to write
+     * @param offset The offset within the array of the first buffer to write
+     * @param length The number of buffers to write
+     *
+     * @return The number of bytes written
+     *
+     * @throws IOException If an I/O error occurs while writing to the client
+     */
+    default int doWrite(ByteBuffer[] chunks, int offset, int length) throws IOException {
+        int result = 0;
+        for (int i = offset; i < offset + length; i++) {
+            result += doWrite(chunks[i]);
+        }
+        return result;
+    }
 }
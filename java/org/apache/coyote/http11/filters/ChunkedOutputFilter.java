@@ -50,6 +50,13 @@ public class ChunkedOutputFilter implements OutputFilter {
      */
     protected final ByteBuffer chunkHeader = ByteBuffer.allocate(10);
 
+    /**
+     * The CRLF at the end of the chunk header, used to end the chunk data.
+     */
+    private final ByteBuffer chunkEnd = chunkHeader.duplicate();
+
+    private final ByteBuffer[] chunkBuffers = new ByteBuffer[3];
+
 
     /**
      * The last chunk buffer.
@@ -90,13 +97,17 @@ public class ChunkedOutputFilter implements OutputFilter {
 
         int pos = calculateChunkHeader(result);
 
+        // Chunk header, data and trailing CRLF are written together
         chunkHeader.position(pos).limit(10);
-        buffer.doWrite(chunkHeader);
-
-        buffer.doWrite(chunk);
-
-        chunkHeader.position(8).limit(10);
-        buffer.doWrite(chunkHeader);
+        chunkEnd.position(8).limit(10);
+        chunkBuffers[0] = chunkHeader;
+        chunkBuffers[1] = chunk;
+        chunkBuffers[2] = chunkEnd;
+        try {
+            buffer.doWrite(chunkBuffers, 0, chunkBuffers.length);
+        } finally {
+            chunkBuffers[1] = null;
+        }
 
         return result;
     }
@@ -42,18 +42,32 @@ public class HPackHuffman {
 
     private static final HuffmanCode[] HUFFMAN_CODES;
 
-    /**
-     * array based tree representation of a huffman code.
-     * <p/>
-     * the high two bytes corresponds to the tree node if the bit is set, and the low two bytes for if it is clear if
-     * the high bit is set it is a terminal node, otherwise it contains the next node position.
-     */
-    private static final int[] DECODING_TABLE;
-
     private static final int LOW_TERMINAL_BIT = (0b10000000) << 8;
     private static final int HIGH_TERMINAL_BIT = (0b10000000) << 24;
     private static final int LOW_MASK = 0b0111111111111111;
 
+    private static final int EOS = 256;
+
+    /**
+     * State transition table that decodes a whole byte at a time. The states are the internal nodes of the Huffman
+     * tree (the root is state zero) and the table is indexed by {@code state << 8 | byte}. Each entry holds the next
+     * state in the high byte, the number of symbols completed by the byte (at most two as the shortest code is five
+     * bits) in {@link #SYMBOL_COUNT_MASK}, the symbols themselves in the two low bytes (first symbol in the lowest)
+     * and {@link #EOS_FLAG} if the EOS symbol was decoded.
+     */
+    private static final int[] DECODING_STATES;
+
+    /**
+     * For each decoding state, the number of bits of EOS padding consumed if the state is on the path of the EOS
+     * symbol, otherwise -1.
+     */
+    private static final byte[] DECODING_PADDING;
+
+    private static final int SYMBOL_COUNT_SHIFT = 16;
+    private static final int SYMBOL_COUNT_MASK = 0b11 << SYMBOL_COUNT_SHIFT;
+    private static final int EOS_FLAG = 1 << 18;
+    private static final int NEXT_STATE_SHIFT = 24;
+
 
     static {
 
@@ -372,7 +386,58 @@ public class HPackHuffman {
             codingTree[pos] = newVal;
             pos++;
         }
-        DECODING_TABLE = codingTree;
+
+        /*
+         * codingTree is an array based tree representation of the huffman code. The high two bytes correspond to the
+         * tree node if the bit is set, and the low two bytes for if it is clear. If the high bit is set it is a
+         * terminal node, otherwise it contains the next node position. Use it to pre-compute the outcome of decoding
+         * every possible byte from every internal node.
+         */
+        int[] states = new int[pos << 8];
+        for (int state = 0; state < pos; state++) {
+            for (int b = 0; b < 256; b++) {
+                int node = state;
+                int symbolCount = 0;
+                int entry = 0;
+                for (int bitPos = 7; bitPos >= 0; bitPos--) {
+                    int val = codingTree[node];
+                    boolean terminal;
+                    int next;
+                    if (((1 << bitPos) & b) == 0) {
+                        terminal = (val & LOW_TERMINAL_BIT) != 0;
+                        next = val & LOW_MASK;
+                    } else {
+                        terminal = (val & HIGH_TERMINAL_BIT) != 0;
+                        next = (val >> 16) & LOW_MASK;
+                    }
+                    if (!terminal) {
+                        node = next;
+                    } else if (next == EOS) {
+                        entry = EOS_FLAG;
+                        break;
+                    } else {
+                        entry |= next << (8 * symbolCount++);
+                        node = 0;
+                    }
+                }
+                if ((entry & EOS_FLAG) == 0) {
+                    entry |= (symbolCount << SYMBOL_COUNT_SHIFT) | (node << NEXT_STATE_SHIFT);
+                }
+                states[(state << 8) | b] = entry;
+            }
+        }
+        DECODING_STATES = states;
+
+        byte[] padding = new byte[pos];
+        Arrays.fill(padding, (byte) -1);
+        int node = 0;
+        int depth = 0;
+        while ((codingTree[node] & HIGH_TERMINAL_BIT) == 0) {
+            padding[node] = (byte) depth++;
+            node = (codingTree[node] >> 16) & LOW_MASK;
+        }
+        padding[node] = (byte) depth;
+        DECODING_PADDING = padding;
     }
 
     /**
@@ -391,97 +456,29 @@ public class HPackHuffman {
             throws HpackException {
 
         assert data.remaining() >= length;
-        int treePos = 0;
-        boolean eosBits = true;
-        int eosBitCount = 0;
+        int state = 0;
         boolean firstChar = true;
         char c = 'a';
         for (int i = 0; i < length; ++i) {
-            byte b = data.get();
-            int bitPos = 7;
-            while (bitPos >= 0) {
-                int val = DECODING_TABLE[treePos];
-                if (((1 << bitPos) & b) == 0) {
-                    // bit not set, we want the lower part of the tree
-                    if ((val & LOW_TERMINAL_BIT) == 0) {
-                        treePos = val & LOW_MASK;
-                        eosBits = false;
-                        // Found a zero, can't be counting EOS bits
-                        eosBitCount = 0;
-                    } else {
-                        c = (char) (val & LOW_MASK);
-                        if (isFieldName) {
-                            if (!HttpParser.isToken(c) || Character.isUpperCase(c)) {
-                                throw new IllegalArgumentException(sm
-                                        .getString("hpackhuffman.decode.illegalCharacterName", Character.toString(c)));
-                            }
-                        } else {
-                            if (firstChar) {
-                                if (!HttpParser.isFieldVChar(c)) {
-                                    throw new IllegalArgumentException(sm.getString(
-                                            "hpackhuffman.decode.illegalCharacterValue.start", Character.toString(c)));
-                                }
-                                firstChar = false;
-                            } else {
-                                if (!HttpParser.isFieldContent(c)) {
-                                    throw new IllegalArgumentException(sm.getString(
-                                            "hpackhuffman.decode.illegalCharacterValue", Character.toString(c)));
-                                }
-                            }
-                        }
-                        target.append(c);
-                        treePos = 0;
-                        eosBits = true;
-                        // Output a character, reset eosBitCount
-                        eosBitCount = 0;
-                    }
-                } else {
-                    if (eosBits) {
-                        eosBitCount++;
-                    }
-                    // bit not set, we want the lower part of the tree
-                    if ((val & HIGH_TERMINAL_BIT) == 0) {
-                        treePos = (val >> 16) & LOW_MASK;
-                    } else {
-                        if (eosBitCount != 0) {
-                            // This must be the EOS symbol which MUST be treated
-                            // as an error
-                            throw new HpackException(sm.getString("hpackhuffman.stringLiteralEOS"));
-                        }
-                        c = (char) ((val >> 16) & LOW_MASK);
-                        if (isFieldName) {
-                            if (!HttpParser.isToken(c) || Character.isUpperCase(c)) {
-                                throw new IllegalArgumentException(sm
-                                        .getString("hpackhuffman.decode.illegalCharacterName", Character.toString(c)));
-                            }
-                        } else {
-                            if (firstChar) {
-                                if (!HttpParser.isFieldVChar(c)) {
-                                    throw new IllegalArgumentException(sm.getString(
-                                            "hpackhuffman.decode.illegalCharacterValue.start", Character.toString(c)));
-                                }
-                                firstChar = false;
-                            } else {
-                                if (!HttpParser.isFieldContent(c)) {
-                                    throw new IllegalArgumentException(sm.getString(
-                                            "hpackhuffman.decode.illegalCharacterValue", Character.toString(c)));
-                                }
-                            }
-                        }
-                        target.append(c);
-                        treePos = 0;
-                        eosBits = true;
-                        // Output a character, reset eosBitCount
-                        eosBitCount = 0;
-                    }
-                }
-                bitPos--;
+            int entry = DECODING_STATES[(state << 8) | (data.get() & 0xFF)];
+            if ((entry & EOS_FLAG) != 0) {
+                // The EOS symbol MUST be treated as an error
+                throw new HpackException(sm.getString("hpackhuffman.stringLiteralEOS"));
+            }
+            int symbolCount = (entry & SYMBOL_COUNT_MASK) >> SYMBOL_COUNT_SHIFT;
+            for (int j = 0; j < symbolCount; j++) {
+                c = (char) ((entry >> (8 * j)) & 0xFF);
+                validateCharacter(c, isFieldName, firstChar);
+                firstChar = false;
+                target.append(c);
             }
+            state = entry >>> NEXT_STATE_SHIFT;
         }
-        if (eosBitCount > 7) {
+        int padding = DECODING_PADDING[state];
+        if (padding > 7) {
             throw new HpackException(sm.getString("hpackhuffman.stringLiteralTooMuchPadding"));
         }
-        if (!eosBits) {
+        if (padding < 0) {
             throw new HpackException(sm.getString("hpackhuffman.huffmanEncodedHpackValueDidNotEndWithEOS"));
         }
         if (!isFieldName && !HttpParser.isFieldVChar(c)) {
@@ -491,6 +488,26 @@ public class HPackHuffman {
     }
 
 
+    private static void validateCharacter(char c, boolean isFieldName, boolean firstChar) {
+        if (isFieldName) {
+            if (!HttpParser.isToken(c) || Character.isUpperCase(c)) {
+                throw new IllegalArgumentException(
+                        sm.getString("hpackhuffman.decode.illegalCharacterName", Character.toString(c)));
+            }
+        } else if (firstChar) {
+            if (!HttpParser.isFieldVChar(c)) {
+                throw new IllegalArgumentException(
+                        sm.getString("hpackhuffman.decode.illegalCharacterValue.start", Character.toString(c)));
+            }
+        } else {
+            if (!HttpParser.isFieldContent(c)) {
+                throw new IllegalArgumentException(
+                        sm.getString("hpackhuffman.decode.illegalCharacterValue", Character.toString(c)));
+            }
+        }
+    }
+
+
     /**
      * Encodes the given string into the buffer. If there is not enough space in the buffer, or the encoded version is
      * bigger than the original it will return false and not modify the buffers position.
@@ -585,6 +602,21 @@ public class HPackHuffman {
         return true;
     }
 
+    /**
+     * Encodes the given string as a Huffman encoded string literal, including the length prefix.
+     *
+     * @param toEncode The string to encode
+     *
+     * @return the encoded string literal or {@code null} if the encoded version is bigger than the original
+     */
+    static byte[] encode(String toEncode) {
+        ByteBuffer buffer = ByteBuffer.allocate(toEncode.length() + 1);
+        if (!encode(buffer, toEncode)) {
+            return null;
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
     /**
      * Represents a Huffman code with a value and bit length.
      */
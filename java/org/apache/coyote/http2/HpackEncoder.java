@@ -17,12 +17,8 @@
 package org.apache.coyote.http2;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -63,21 +59,30 @@ class HpackEncoder {
 
     };
 
+    /*
+     * Common response header names and values that are not in the static table. Only these fixed strings have their
+     * Huffman encoding cached so the cache can be shared by all connections without retaining anything from a request
+     * or response.
+     */
+    private static final String[] HUFFMAN_CACHE_VALUES = { "x-content-type-options", "x-frame-options",
+            "content-security-policy", "referrer-policy", "nosniff", "SAMEORIGIN", "no-cache", "no-store",
+            "max-age=0", "Accept-Encoding", "text/html;charset=UTF-8", "text/html;charset=ISO-8859-1",
+            "text/plain;charset=UTF-8", "application/json", "application/javascript", "application/octet-stream",
+            "text/css", "image/png", "image/jpeg", "image/svg+xml", "chunked" };
+
+    private static final Map<String,byte[]> HUFFMAN_CACHE;
+
     private int headersIterator = -1;
     private boolean firstPass = true;
 
     private MimeHeaders currentHeaders;
 
-    private int entryPositionCounter;
-
     private int newMaxHeaderSize = -1; // if the max header size has been changed
     private int minNewMaxHeaderSize = -1; // records the smallest value of newMaxHeaderSize, as per section 4.1
 
     private static final Map<String,TableEntry[]> ENCODING_STATIC_TABLE;
 
-    private final Deque<TableEntry> evictionQueue = new ArrayDeque<>();
-    private final Map<String,List<TableEntry>> dynamicTable = new HashMap<>(); // TODO: use a custom data structure to
-                                                                               // reduce allocations
+    private final DynamicTable dynamicTable = new DynamicTable();
 
     static {
         Map<String,TableEntry[]> map = new HashMap<>();
@@ -85,15 +90,24 @@ class HpackEncoder {
             Hpack.HeaderField m = Hpack.STATIC_TABLE[i];
             TableEntry[] existing = map.get(m.name);
             if (existing == null) {
-                map.put(m.name, new TableEntry[] { new TableEntry(m.name, m.value, i) });
+                map.put(m.name, new TableEntry[] { new TableEntry(m.value, i) });
             } else {
                 TableEntry[] newEntry = new TableEntry[existing.length + 1];
                 System.arraycopy(existing, 0, newEntry, 0, existing.length);
-                newEntry[existing.length] = new TableEntry(m.name, m.value, i);
+                newEntry[existing.length] = new TableEntry(m.value, i);
                 map.put(m.name, newEntry);
             }
         }
         ENCODING_STATIC_TABLE = Collections.unmodifiableMap(map);
+
+        Map<String,byte[]> huffmanCache = new HashMap<>();
+        for (String value : HUFFMAN_CACHE_VALUES) {
+            byte[] encoded = HPackHuffman.encode(value);
+            if (encoded != null) {
+                huffmanCache.put(value, encoded);
+            }
+        }
+        HUFFMAN_CACHE = Collections.unmodifiableMap(huffmanCache);
     }
 
     /**
@@ -173,7 +187,7 @@ class HpackEncoder {
                 if (log.isTraceEnabled()) {
                     log.trace(sm.getString("hpackEncoder.encodeHeader", headerName, val));
                 }
-                TableEntry tableEntry = findInTable(headerName, val);
+                int index = findInTable(headerName, val);
 
                 // We use 11 to make sure we have enough room for the
                 // variable length integers
@@ -186,34 +200,35 @@ class HpackEncoder {
                 // Only index if it will fit
                 boolean canIndex = hpackHeaderFunction.shouldUseIndexing(headerName, val) &&
                         (headerName.length() + val.length() + 32) < maxTableSize;
-                if (tableEntry == null && canIndex) {
+                if (index == 0 && canIndex) {
                     // add the entry to the dynamic table
                     target.put((byte) (1 << 6));
                     writeHuffmanEncodableName(target, headerName);
                     writeHuffmanEncodableValue(target, headerName, val);
                     addToDynamicTable(headerName, val);
-                } else if (tableEntry == null) {
+                } else if (index == 0) {
                     // literal never indexed
                     target.put((byte) (1 << 4));
                     writeHuffmanEncodableName(target, headerName);
                     writeHuffmanEncodableValue(target, headerName, val);
                 } else {
                     // so we know something is already in the table
-                    if (val.equals(tableEntry.value)) {
+                    if (index > 0) {
                         // the whole thing is in the table
                         target.put((byte) (1 << 7));
-                        Hpack.encodeInteger(target, tableEntry.getPosition(), 7);
+                        Hpack.encodeInteger(target, index, 7);
                     } else {
+                        // only the name is in the table
                         if (canIndex) {
                             // add the entry to the dynamic table
                             target.put((byte) (1 << 6));
-                            Hpack.encodeInteger(target, tableEntry.getPosition(), 6);
+                            Hpack.encodeInteger(target, -index, 6);
                             writeHuffmanEncodableValue(target, headerName, val);
                             addToDynamicTable(headerName, val);
 
                         } else {
                             target.put((byte) (1 << 4));
-                            Hpack.encodeInteger(target, tableEntry.getPosition(), 4);
+                            Hpack.encodeInteger(target, -index, 4);
                             writeHuffmanEncodableValue(target, headerName, val);
                         }
                     }
@@ -238,7 +253,7 @@ class HpackEncoder {
      */
     private void writeHuffmanEncodableName(ByteBuffer target, String headerName) {
         if (hpackHeaderFunction.shouldUseHuffman(headerName)) {
-            if (HPackHuffman.encode(target, headerName)) {
+            if (writeHuffman(target, headerName)) {
                 return;
             }
         }
@@ -252,7 +267,7 @@ class HpackEncoder {
 
     private void writeHuffmanEncodableValue(ByteBuffer target, String headerName, String val) {
         if (hpackHeaderFunction.shouldUseHuffman(headerName, val)) {
-            if (!HPackHuffman.encode(target, val)) {
+            if (!writeHuffman(target, val)) {
                 writeValueString(target, val);
             }
         } else {
@@ -260,6 +275,21 @@ class HpackEncoder {
         }
     }
 
+    /*
+     * Equivalent to HPackHuffman.encode(ByteBuffer, String) but uses the cached encoding for common strings.
+     */
+    private static boolean writeHuffman(ByteBuffer target, String toEncode) {
+        byte[] encoded = HUFFMAN_CACHE.get(toEncode);
+        if (encoded == null) {
+            return HPackHuffman.encode(target, toEncode);
+        }
+        if (target.remaining() <= toEncode.length()) {
+            return false;
+        }
+        target.put(encoded);
+        return true;
+    }
+
     private void writeValueString(ByteBuffer target, String val) {
         target.put((byte) 0); // to use encodeInteger we need to place the first byte in the buffer.
         Hpack.encodeInteger(target, val.length(), 7);
@@ -269,68 +299,37 @@ class HpackEncoder {
     }
 
     private void addToDynamicTable(String headerName, String val) {
-        int pos = entryPositionCounter++;
-        DynamicTableEntry d = new DynamicTableEntry(headerName, val, -pos);
-        dynamicTable.computeIfAbsent(headerName, k -> new ArrayList<>(1)).add(d);
-        evictionQueue.add(d);
-        currentTableSize += d.getSize();
+        currentTableSize += dynamicTable.add(headerName, val);
         runEvictionIfRequired();
-        if (entryPositionCounter == Integer.MAX_VALUE) {
-            // prevent rollover
-            preventPositionRollover();
-        }
-
-    }
-
-
-    private void preventPositionRollover() {
-        // if the position counter is about to roll over we iterate all the table entries
-        // and set their position to their actual position
-        for (List<TableEntry> tableEntries : dynamicTable.values()) {
-            for (TableEntry t : tableEntries) {
-                t.position = t.getPosition();
-            }
-        }
-        entryPositionCounter = 0;
     }
 
     private void runEvictionIfRequired() {
-
-        while (currentTableSize > maxTableSize) {
-            TableEntry next = evictionQueue.poll();
-            if (next == null) {
-                return;
-            }
-            currentTableSize -= next.size;
-            List<TableEntry> list = dynamicTable.get(next.name);
-            list.remove(next);
-            if (list.isEmpty()) {
-                dynamicTable.remove(next.name);
-            }
+        while (currentTableSize > maxTableSize && dynamicTable.size() > 0) {
+            currentTableSize -= dynamicTable.evict();
         }
     }
 
-    private TableEntry findInTable(String headerName, String value) {
+    /*
+     * Returns the index of the entry that matches both name and value, the negated index of a static table entry that
+     * matches the name only or zero if there is no match.
+     */
+    private int findInTable(String headerName, String value) {
         TableEntry[] staticTable = ENCODING_STATIC_TABLE.get(headerName);
         if (staticTable != null) {
             for (TableEntry st : staticTable) {
-                if (st.value != null && st.value.equals(value)) { // todo: some form of lookup?
-                    return st;
+                if (st.value != null && st.value.equals(value)) {
+                    return st.position;
                 }
             }
         }
-        List<TableEntry> dynamic = dynamicTable.get(headerName);
-        if (dynamic != null) {
-            for (TableEntry st : dynamic) {
-                if (st.value.equals(value)) { // todo: some form of lookup?
-                    return st;
-                }
-            }
+        int index = dynamicTable.find(headerName, value);
+        if (index > 0) {
+            return index;
         }
         if (staticTable != null) {
-            return staticTable[0];
+            return -staticTable[0].position;
         }
-        return null;
+        return 0;
     }
 
     public void setMaxTableSize(int newSize) {
@@ -365,40 +364,167 @@ class HpackEncoder {
     }
 
     private static class TableEntry {
-        private final String name;
         private final String value;
-        private final int size;
-        private int position;
+        private final int position;
 
-        private TableEntry(String name, String value, int position) {
-            this.name = name;
+        private TableEntry(String value, int position) {
             this.value = value;
             this.position = position;
-            if (value != null) {
-                this.size = 32 + name.length() + value.length();
-            } else {
-                this.size = -1;
-            }
         }
+    }
 
-        int getPosition() {
-            return position;
+    /**
+     * The encoder's view of the dynamic table. Entries are held in insertion order in a ring buffer so that adding the
+     * newest entry and evicting the oldest are both constant time operations. An open addressing hash index (linear
+     * probing, backward shift deletion) maps each name/value pair to its slot in the ring so look-ups do not need to
+     * scan the table. Neither the ring nor the index allocates once it has grown to the size required by the current
+     * maximum table size.
+     */
+    private static final class DynamicTable {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private String[] names = new String[INITIAL_CAPACITY];
+        private String[] values = new String[INITIAL_CAPACITY];
+        private int[] hashes = new int[INITIAL_CAPACITY];
+        private int[] sizes = new int[INITIAL_CAPACITY];
+        // Ring slot + 1 of the entry, zero marks an empty bucket
+        private int[] index = new int[INITIAL_CAPACITY * 2];
+        // Slot of the oldest entry
+        private int head;
+        private int count;
+
+        int size() {
+            return count;
         }
 
-        int getSize() {
+        /**
+         * Adds an entry as the newest entry in the table.
+         *
+         * @param name  The header name
+         * @param value The header value
+         *
+         * @return The size of the new entry as defined by RFC 7541
+         */
+        int add(String name, String value) {
+            if (count == names.length) {
+                grow();
+            }
+            int mask = names.length - 1;
+            int slot = (head + count) & mask;
+            int hash = hash(name, value);
+            int size = 32 + name.length() + value.length();
+            names[slot] = name;
+            values[slot] = value;
+            hashes[slot] = hash;
+            sizes[slot] = size;
+            insertIndex(slot, hash);
+            count++;
             return size;
         }
-    }
 
-    private class DynamicTableEntry extends TableEntry {
+        /**
+         * Removes the oldest entry from the table. The table must not be empty.
+         *
+         * @return The size of the evicted entry
+         */
+        int evict() {
+            int slot = head;
+            removeIndex(slot);
+            int size = sizes[slot];
+            names[slot] = null;
+            values[slot] = null;
+            head = (head + 1) & (names.length - 1);
+            count--;
+            return size;
+        }
+
+        /**
+         * Finds the entry with the given name and value.
+         *
+         * @param name  The header name
+         * @param value The header value
+         *
+         * @return The HPACK index of the entry or zero if the table does not contain it
+         */
+        int find(String name, String value) {
+            if (count == 0) {
+                return 0;
+            }
+            int hash = hash(name, value);
+            int mask = index.length - 1;
+            int bucket = hash & mask;
+            int entry;
+            while ((entry = index[bucket]) != 0) {
+                int slot = entry - 1;
+                if (hashes[slot] == hash && names[slot].equals(name) && values[slot].equals(value)) {
+                    // The newest entry immediately follows the static table
+                    return Hpack.STATIC_TABLE_LENGTH + count - ((slot - head) & (names.length - 1));
+                }
+                bucket = (bucket + 1) & mask;
+            }
+            return 0;
+        }
+
+        private void insertIndex(int slot, int hash) {
+            int mask = index.length - 1;
+            int bucket = hash & mask;
+            while (index[bucket] != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+            index[bucket] = slot + 1;
+        }
+
+        private void removeIndex(int slot) {
+            int mask = index.length - 1;
+            int bucket = hashes[slot] & mask;
+            while (index[bucket] != slot + 1) {
+                bucket = (bucket + 1) & mask;
+            }
+            // Shift back any following entries that would no longer be reachable from their home bucket
+            int next = (bucket + 1) & mask;
+            int entry;
+            while ((entry = index[next]) != 0) {
+                int home = hashes[entry - 1] & mask;
+                if (((next - home) & mask) >= ((next - bucket) & mask)) {
+                    index[bucket] = entry;
+                    bucket = next;
+                }
+                next = (next + 1) & mask;
+            }
+            index[bucket] = 0;
+        }
 
-        private DynamicTableEntry(String name, String value, int position) {
-            super(name, value, position);
+        private void grow() {
+            int oldCapacity = names.length;
+            int newCapacity = oldCapacity * 2;
+            String[] newNames = new String[newCapacity];
+            String[] newValues = new String[newCapacity];
+            int[] newHashes = new int[newCapacity];
+            int[] newSizes = new int[newCapacity];
+            // Unwrap the ring so the oldest entry is in slot zero
+            for (int i = 0; i < count; i++) {
+                int slot = (head + i) & (oldCapacity - 1);
+                newNames[i] = names[slot];
+                newValues[i] = values[slot];
+                newHashes[i] = hashes[slot];
+                newSizes[i] = sizes[slot];
+            }
+            names = newNames;
+            values = newValues;
+            hashes = newHashes;
+            sizes = newSizes;
+            head = 0;
+            index = new int[newCapacity * 2];
+            for (int i = 0; i < count; i++) {
+                insertIndex(i, hashes[i]);
+            }
         }
 
-        @Override
-        int getPosition() {
-            return super.getPosition() + entryPositionCounter + Hpack.STATIC_TABLE_LENGTH;
+        private static int hash(String name, String value) {
+            int h = name.hashCode() * 31 + value.hashCode();
+            // Spread the high bits as the index is addressed with the low bits
+            return h ^ (h >>> 16);
         }
     }
 
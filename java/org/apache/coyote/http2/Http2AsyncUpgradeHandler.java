@@ -46,6 +46,9 @@ import org.apache.tomcat.util.net.SocketWrapperBase.CompletionState;
 public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
 
     private static final ByteBuffer[] BYTEBUFFER_ARRAY = new ByteBuffer[0];
+    // The maximum number of DATA frames combined into a single gathering write
+    // of a file
+    private static final int SENDFILE_MAX_FRAMES = 8;
     // Ensures headers are generated and then written for one thread at a time.
     // Because of the compression used, headers need to be written to the
     // network in the same order they are generated.
@@ -359,31 +362,11 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
                         Integer.valueOf(sendfile.streamReservation)));
             }
 
-            // connectionReservation will always be smaller than or the same as
-            // streamReservation
-            int frameSize = Integer.min(getMaxFrameSize(), sendfile.connectionReservation);
-            boolean finished =
-                    (frameSize == sendfile.left) && sendfile.stream.getCoyoteResponse().getTrailerFields() == null;
-
-            // Need to check this now since sending end of stream will change this.
-            boolean writable = sendfile.stream.canWrite();
-            byte[] header = new byte[9];
-            ByteUtil.setThreeBytes(header, 0, frameSize);
-            header[3] = FrameType.DATA.getIdByte();
-            if (finished) {
-                header[4] = FLAG_END_OF_STREAM;
-                sentEndOfStream(sendfile.stream);
-            }
-            if (writable) {
-                if (log.isTraceEnabled()) {
-                    log.trace(sm.getString("upgradeHandler.writeBody", connectionId, sendfile.stream.getIdAsString(),
-                            Integer.toString(frameSize), Boolean.valueOf(finished)));
-                }
-                ByteUtil.set31Bits(header, 5, sendfile.stream.getIdAsInt());
-                sendfile.mappedBuffer.limit(sendfile.mappedBuffer.position() + frameSize);
+            ByteBuffer[] frames = prepareSendfileFrames(sendfile);
+            if (frames != null) {
                 socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS,
                         sendfile, SocketWrapperBase.COMPLETE_WRITE_WITH_COMPLETION, new SendfileCompletionHandler(),
-                        ByteBuffer.wrap(header), sendfile.mappedBuffer);
+                        frames);
                 try {
                     handleAsyncException();
                 } catch (IOException ioe) {
@@ -396,6 +379,57 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
         }
     }
 
+    /*
+     * Prepares as many DATA frames as the current reservation allows (up to SENDFILE_MAX_FRAMES) so they can be
+     * written with a single gathering write. The frame payloads are slices of the mapped file so no data is copied.
+     * Returns null if the stream can no longer be written to.
+     */
+    private ByteBuffer[] prepareSendfileFrames(SendfileData sendfile) {
+        int maxFrameSize = getMaxFrameSize();
+        // connectionReservation will always be smaller than or the same as
+        // streamReservation
+        int dataLength = (int) Long.min((long) maxFrameSize * SENDFILE_MAX_FRAMES, sendfile.connectionReservation);
+        boolean finished =
+                (dataLength == sendfile.left) && sendfile.stream.getCoyoteResponse().getTrailerFields() == null;
+
+        // Need to check this now since sending end of stream will change this.
+        boolean writable = sendfile.stream.canWrite();
+        if (finished) {
+            sentEndOfStream(sendfile.stream);
+        }
+        if (!writable) {
+            return null;
+        }
+
+        int frameCount = (dataLength + maxFrameSize - 1) / maxFrameSize;
+        ByteBuffer[] frames = new ByteBuffer[frameCount * 2];
+        int position = sendfile.mappedBuffer.position();
+        int remaining = dataLength;
+        for (int i = 0; i < frameCount; i++) {
+            int frameSize = Integer.min(maxFrameSize, remaining);
+            remaining -= frameSize;
+            boolean endOfStream = finished && remaining == 0;
+            if (log.isTraceEnabled()) {
+                log.trace(sm.getString("upgradeHandler.writeBody", connectionId, sendfile.stream.getIdAsString(),
+                        Integer.toString(frameSize), Boolean.valueOf(endOfStream)));
+            }
+            byte[] header = new byte[9];
+            ByteUtil.setThreeBytes(header, 0, frameSize);
+            header[3] = FrameType.DATA.getIdByte();
+            if (endOfStream) {
+                header[4] = FLAG_END_OF_STREAM;
+            }
+            ByteUtil.set31Bits(header, 5, sendfile.stream.getIdAsInt());
+            frames[i * 2] = ByteBuffer.wrap(header);
+            frames[i * 2 + 1] = sendfile.mappedBuffer.slice(position, frameSize);
+            position += frameSize;
+        }
+        sendfile.mappedBuffer.position(position);
+        sendfile.frameCount = frameCount;
+        sendfile.dataLength = dataLength;
+        return frames;
+    }
+
     /**
      * Completion handler for asynchronous sendfile operations.
      */
@@ -409,7 +443,7 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
         @Override
         public void completed(Long nBytes, SendfileData sendfile) {
             CompletionState completionState = null;
-            long bytesWritten = nBytes.longValue() - 9;
+            long bytesWritten = nBytes.longValue() - 9L * sendfile.frameCount;
 
             /*
              * Loop for in-line writes only. Avoids a possible stack-overflow of chained completion handlers with a long
@@ -449,35 +483,13 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
                             Integer.valueOf(sendfile.streamReservation)));
                 }
 
-                // connectionReservation will always be smaller than or the same as
-                // streamReservation
-                int frameSize = Integer.min(getMaxFrameSize(), sendfile.connectionReservation);
-                boolean finished =
-                        (frameSize == sendfile.left) && sendfile.stream.getCoyoteResponse().getTrailerFields() == null;
-
-                // Need to check this now since sending end of stream will change this.
-                boolean writable = sendfile.stream.canWrite();
-                byte[] header = new byte[9];
-                ByteUtil.setThreeBytes(header, 0, frameSize);
-                header[3] = FrameType.DATA.getIdByte();
-                if (finished) {
-                    header[4] = FLAG_END_OF_STREAM;
-                    sentEndOfStream(sendfile.stream);
-                }
-                if (writable) {
-                    if (log.isTraceEnabled()) {
-                        log.trace(
-                                sm.getString("upgradeHandler.writeBody", connectionId, sendfile.stream.getIdAsString(),
-                                        Integer.toString(frameSize), Boolean.valueOf(finished)));
-                    }
-                    ByteUtil.set31Bits(header, 5, sendfile.stream.getIdAsInt());
-                    sendfile.mappedBuffer.limit(sendfile.mappedBuffer.position() + frameSize);
+                ByteBuffer[] frames = prepareSendfileFrames(sendfile);
+                if (frames != null) {
                     // Note: Completion handler not called in the write
                     // completes in-line. The wrote will continue via the
                     // surrounding loop.
                     completionState = socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(),
-                            TimeUnit.MILLISECONDS, sendfile, SocketWrapperBase.COMPLETE_WRITE, this,
-                            ByteBuffer.wrap(header), sendfile.mappedBuffer);
+                            TimeUnit.MILLISECONDS, sendfile, SocketWrapperBase.COMPLETE_WRITE, this, frames);
                     try {
                         handleAsyncException();
                     } catch (IOException ioe) {
@@ -486,7 +498,7 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
                     }
                 }
                 // Update bytesWritten for start of next loop iteration
-                bytesWritten = frameSize;
+                bytesWritten = sendfile.dataLength;
             } while (completionState == CompletionState.INLINE);
         }
 
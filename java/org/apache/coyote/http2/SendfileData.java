@@ -30,4 +30,7 @@ class SendfileData {
     int connectionReservation;
     long pos;
     long end;
+    // The DATA frames and payload bytes of the current write
+    int frameCount;
+    int dataLength;
 }
\ No newline at end of file
@@ -47,6 +47,7 @@ import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.buf.ByteChunk;
 import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.http.HeaderUtil;
+import org.apache.tomcat.util.http.HttpHeader;
 import org.apache.tomcat.util.http.Method;
 import org.apache.tomcat.util.http.MimeHeaders;
 import org.apache.tomcat.util.http.parser.Host;
@@ -174,7 +175,7 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
                 coyoteRequest.scheme().setString("http");
             }
         }
-        MessageBytes hostValueMB = coyoteRequest.getMimeHeaders().getUniqueValue("host");
+        MessageBytes hostValueMB = coyoteRequest.getMimeHeaders().getUniqueValue(HttpHeader.HOST);
         if (hostValueMB == null) {
             throw new IllegalArgumentException();
         }
@@ -44,6 +44,7 @@ import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.buf.ByteChunk;
 import org.apache.tomcat.util.http.FastHttpDateFormat;
+import org.apache.tomcat.util.http.HttpHeader;
 import org.apache.tomcat.util.http.MimeHeaders;
 import org.apache.tomcat.util.http.parser.HttpParser;
 import org.apache.tomcat.util.net.AbstractEndpoint.Handler.SocketState;
@@ -227,7 +228,7 @@ class StreamProcessor extends AbstractProcessor implements NonPipeliningProcesso
             // Add a content-length header if a content length has been set unless
             // the application has already added one
             long contentLength = coyoteResponse.getContentLengthLong();
-            if (contentLength != -1 && headers.getValue("content-length") == null) {
+            if (contentLength != -1 && headers.getValue(HttpHeader.CONTENT_LENGTH) == null) {
                 headers.addValue("content-length").setLong(contentLength);
             }
         } else {
@@ -246,7 +247,7 @@ class StreamProcessor extends AbstractProcessor implements NonPipeliningProcesso
 
         // Add date header unless it is an informational response or the
         // application has already set one
-        if (statusCode >= 200 && headers.getValue("date") == null) {
+        if (statusCode >= 200 && headers.getValue(HttpHeader.DATE) == null) {
             headers.addValue("date").setString(FastHttpDateFormat.getCurrentDate());
         }
 
@@ -255,7 +256,7 @@ class StreamProcessor extends AbstractProcessor implements NonPipeliningProcesso
             String server = protocol.getHttp11Protocol().getServer();
             if (server == null) {
                 if (protocol.getHttp11Protocol().getServerRemoveAppProvidedValues()) {
-                    headers.removeHeader("server");
+                    headers.removeHeader(HttpHeader.SERVER);
                 }
             } else {
                 // server always overrides anything the app might set
@@ -19,18 +19,21 @@ package org.apache.tomcat.util.buf;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CodingErrorAction;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map.Entry;
-import java.util.Objects;
-import java.util.TreeMap;
-
-import org.apache.juli.logging.Log;
-import org.apache.juli.logging.LogFactory;
-import org.apache.tomcat.util.res.StringManager;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class implements a String cache for ByteChunk and CharChunk.
+ * <p>
+ * The cache is split into a number of shards, selected by a hash of the raw bytes or chars, so that lookups never
+ * block and concurrent updates rarely contend. Each shard is a set associative table. Lookups compare the raw content
+ * of the chunk with the cached entries so a String is only created when there is a cache miss. Each shard also keeps
+ * a compact frequency sketch of recent lookups. A new entry is only admitted to a full bucket if it has been seen more
+ * often than the least frequently seen entry it would replace. Rarely seen values, such as session IDs, therefore do
+ * not displace commonly seen values, such as header names, and the contents of the cache adapt when the traffic
+ * changes.
  */
 public class StringCache {
 
@@ -40,9 +43,6 @@ public class StringCache {
     public StringCache() {
     }
 
-    private static final Log log = LogFactory.getLog(StringCache.class);
-    private static final StringManager sm = StringManager.getManager(StringCache.class);
-
 
     // ------------------------------------------------------- Static Variables
 
@@ -50,26 +50,20 @@ public class StringCache {
     /**
      * Enabled ?
      */
-    protected static boolean byteEnabled = Boolean.getBoolean("tomcat.util.buf.StringCache.byte.enabled");
+    protected static volatile boolean byteEnabled = Boolean.getBoolean("tomcat.util.buf.StringCache.byte.enabled");
 
 
     /**
      * Whether the char chunk string cache is enabled.
      */
-    protected static boolean charEnabled = Boolean.getBoolean("tomcat.util.buf.StringCache.char.enabled");
-
-
-    /**
-     * Number of toString calls required before the cache is built.
-     */
-    protected static int trainThreshold =
-            Integer.getInteger("tomcat.util.buf.StringCache.trainThreshold", 20000).intValue();
+    protected static volatile boolean charEnabled = Boolean.getBoolean("tomcat.util.buf.StringCache.char.enabled");
 
 
     /**
      * Maximum size of the string cache.
      */
-    protected static int cacheSize = Integer.getInteger("tomcat.util.buf.StringCache.cacheSize", 200).intValue();
+    protected static volatile int cacheSize =
+            Integer.getInteger("tomcat.util.buf.StringCache.cacheSize", 1024).intValue();
 
 
     /**
@@ -79,52 +73,28 @@ public class StringCache {
             Integer.getInteger("tomcat.util.buf.StringCache.maxStringSize", 128).intValue();
 
 
-    /**
-     * Statistics hash map for byte chunk.
-     */
-    protected static final HashMap<ByteEntry,int[]> bcStats = new HashMap<>(cacheSize);
-
-
-    /**
-     * toString count for byte chunk.
-     */
-    protected static int bcCount = 0;
-
-
     /**
      * Cache for byte chunk.
      */
-    protected static volatile ByteEntry[] bcCache = null;
-
-
-    /**
-     * Statistics hash map for char chunk.
-     */
-    protected static final HashMap<CharEntry,int[]> ccStats = new HashMap<>(cacheSize);
-
-
-    /**
-     * toString count for char chunk.
-     */
-    protected static int ccCount = 0;
+    private static volatile ShardedCache<ByteEntry> bcCache = new ShardedCache<>(cacheSize);
 
 
     /**
      * Cache for char chunk.
      */
-    protected static volatile CharEntry[] ccCache = null;
+    private static volatile ShardedCache<CharEntry> ccCache = new ShardedCache<>(cacheSize);
 
 
     /**
      * Access count.
      */
-    protected static int accessCount = 0;
+    private static final LongAdder accessCount = new LongAdder();
 
 
     /**
      * Hit count.
      */
-    protected static int hitCount = 0;
+    private static final LongAdder hitCount = new LongAdder();
 
 
     // ------------------------------------------------------------ Properties
@@ -141,12 +111,13 @@ public class StringCache {
 
 
     /**
-     * Sets the maximum size of the string cache.
+     * Sets the maximum size of the string cache. The cache is cleared when the size is changed.
      *
      * @param cacheSize the cache size
      */
     public void setCacheSize(int cacheSize) {
         StringCache.cacheSize = cacheSize;
+        reset();
     }
 
 
@@ -191,42 +162,46 @@ public class StringCache {
 
 
     /**
-     * Returns the number of toString calls required before the cache is built.
+     * Returns the total number of cache lookups performed.
      *
-     * @return the training threshold
+     * @return the access count
      */
-    public int getTrainThreshold() {
-        return trainThreshold;
+    public long getAccessCount() {
+        return accessCount.sum();
     }
 
 
     /**
-     * Sets the number of toString calls required before the cache is built.
+     * Returns the number of cache hits.
      *
-     * @param trainThreshold the training threshold
+     * @return the hit count
      */
-    public void setTrainThreshold(int trainThreshold) {
-        StringCache.trainThreshold = trainThreshold;
+    public long getHitCount() {
+        return hitCount.sum();
     }
 
 
     /**
-     * Returns the total number of cache lookups performed.
+     * Returns the proportion of cache lookups that found the String in the cache.
      *
-     * @return the access count
+     * @return the hit ratio, between 0 and 1
      */
-    public int getAccessCount() {
-        return accessCount;
+    public double getHitRatio() {
+        long accesses = accessCount.sum();
+        if (accesses == 0) {
+            return 0;
+        }
+        return (double) hitCount.sum() / accesses;
     }
 
 
     /**
-     * Returns the number of cache hits.
+     * Returns the number of Strings currently held in the cache.
      *
-     * @return the hit count
+     * @return the number of cached Strings
      */
-    public int getHitCount() {
-        return hitCount;
+    public int getSize() {
+        return bcCache.size() + ccCache.size();
     }
 
 
@@ -237,16 +212,10 @@ public class StringCache {
      * Resets all cache statistics and clears the cache.
      */
     public void reset() {
-        hitCount = 0;
-        accessCount = 0;
-        synchronized (bcStats) {
-            bcCache = null;
-            bcCount = 0;
-        }
-        synchronized (ccStats) {
-            ccCache = null;
-            ccCount = 0;
-        }
+        hitCount.reset();
+        accessCount.reset();
+        bcCache = new ShardedCache<>(cacheSize);
+        ccCache = new ShardedCache<>(cacheSize);
     }
 
 
@@ -279,108 +248,42 @@ public class StringCache {
     public static String toString(ByteChunk bc, CodingErrorAction malformedInputAction,
             CodingErrorAction unmappableCharacterAction) throws CharacterCodingException {
 
-        // If the cache is null, then either caching is disabled, or we're
-        // still training
-        if (bcCache == null) {
-            String value = bc.toStringInternal(malformedInputAction, unmappableCharacterAction);
-            if (byteEnabled && (value.length() < maxStringSize)) {
-                // If training, everything is synced
-                synchronized (bcStats) {
-                    // If the cache has been generated on a previous invocation
-                    // while waiting for the lock, just return the toString
-                    // value we just calculated
-                    if (bcCache != null) {
-                        return value;
-                    }
-                    // Two cases: either we just exceeded the train count, in
-                    // which case the cache must be created, or we just update
-                    // the count for the string
-                    if (bcCount > trainThreshold) {
-                        long t1 = System.currentTimeMillis();
-                        // Sort the entries according to occurrence
-                        TreeMap<Integer,ArrayList<ByteEntry>> tempMap = new TreeMap<>();
-                        for (Entry<ByteEntry,int[]> item : bcStats.entrySet()) {
-                            ByteEntry entry = item.getKey();
-                            int[] countA = item.getValue();
-                            Integer count = Integer.valueOf(countA[0]);
-                            // Add to the list for that count
-                            tempMap.computeIfAbsent(count, k -> new ArrayList<>()).add(entry);
-                        }
-                        // Allocate array of the right size
-                        int size = bcStats.size();
-                        if (size > cacheSize) {
-                            size = cacheSize;
-                        }
-                        ByteEntry[] tempbcCache = new ByteEntry[size];
-                        // Fill it up using an alphabetical order
-                        // and a dumb insert sort
-                        ByteChunk tempChunk = new ByteChunk();
-                        int n = 0;
-                        while (n < size) {
-                            Object key = tempMap.lastKey();
-                            ArrayList<ByteEntry> list = tempMap.get(key);
-                            for (int i = 0; i < list.size() && n < size; i++) {
-                                ByteEntry entry = list.get(i);
-                                tempChunk.setBytes(entry.name, 0, entry.name.length);
-                                int insertPos = findClosest(tempChunk, tempbcCache, n);
-                                if (insertPos == n) {
-                                    tempbcCache[n + 1] = entry;
-                                } else {
-                                    System.arraycopy(tempbcCache, insertPos + 1, tempbcCache, insertPos + 2,
-                                            n - insertPos - 1);
-                                    tempbcCache[insertPos + 1] = entry;
-                                }
-                                n++;
-                            }
-                            tempMap.remove(key);
-                        }
-                        bcCount = 0;
-                        bcStats.clear();
-                        bcCache = tempbcCache;
-                        if (log.isDebugEnabled()) {
-                            long t2 = System.currentTimeMillis();
-                            log.debug(sm.getString("stringCache.byteTime", Long.valueOf(t2 - t1)));
-                        }
-                    } else {
-                        bcCount++;
-                        // Allocate new ByteEntry for the lookup
-                        ByteEntry entry = new ByteEntry();
-                        entry.value = value;
-                        int[] count = bcStats.get(entry);
-                        if (count == null) {
-                            int end = bc.getEnd();
-                            int start = bc.getStart();
-                            // Create byte array and copy bytes
-                            entry.name = new byte[bc.getLength()];
-                            System.arraycopy(bc.getBuffer(), start, entry.name, 0, end - start);
-                            // Set encoding
-                            entry.charset = bc.getCharset();
-                            entry.malformedInputAction = malformedInputAction;
-                            entry.unmappableCharacterAction = unmappableCharacterAction;
-                            // Initialize occurrence count to one
-                            count = new int[1];
-                            count[0] = 1;
-                            // Set in the stats hash map
-                            bcStats.put(entry, count);
-                        } else {
-                            count[0] = count[0] + 1;
-                        }
-                    }
-                }
-            }
-            return value;
-        } else {
-            accessCount++;
-            // Find the corresponding String
-            String result = find(bc, malformedInputAction, unmappableCharacterAction);
-            if (result == null) {
-                return bc.toStringInternal(malformedInputAction, unmappableCharacterAction);
+        int len = bc.getLength();
+        if (!byteEnabled || len > maxStringSize) {
+            return bc.toStringInternal(malformedInputAction, unmappableCharacterAction);
+        }
+
+        accessCount.increment();
+        byte[] b = bc.getBuffer();
+        int start = bc.getStart();
+        int hash = hash(b, start, len);
+        Charset charset = bc.getCharset();
+        ShardedCache<ByteEntry> cache = bcCache;
+        Shard<ByteEntry> shard = cache.shard(hash);
+        shard.sketch.increment(hash);
+
+        // Find the corresponding String
+        int bucket = shard.bucket(hash);
+        for (int i = bucket; i < bucket + WAYS; i++) {
+            ByteEntry entry = shard.entries.get(i);
+            if (entry != null && entry.hash == hash && entry.charset.equals(charset) &&
+                    entry.malformedInputAction == malformedInputAction &&
+                    entry.unmappableCharacterAction == unmappableCharacterAction &&
+                    equals(entry.name, b, start, len)) {
+                hitCount.increment();
+                return entry.value;
             }
-            // Note: We don't care about safety for the stats
-            hitCount++;
-            return result;
         }
 
+        String value = bc.toStringInternal(malformedInputAction, unmappableCharacterAction);
+        int victim = shard.admit(hash, bucket);
+        if (victim >= 0) {
+            byte[] name = new byte[len];
+            System.arraycopy(b, start, name, 0, len);
+            shard.replace(victim, new ByteEntry(hash, value, name, charset, malformedInputAction,
+                    unmappableCharacterAction));
+        }
+        return value;
     }
 
 
@@ -392,410 +295,334 @@ public class StringCache {
      */
     public static String toString(CharChunk cc) {
 
-        // If the cache is null, then either caching is disabled, or we're
-        // still training
-        if (ccCache == null) {
-            String value = cc.toStringInternal();
-            if (charEnabled && (value.length() < maxStringSize)) {
-                // If training, everything is synced
-                synchronized (ccStats) {
-                    // If the cache has been generated on a previous invocation
-                    // while waiting for the lock, just return the toString
-                    // value we just calculated
-                    if (ccCache != null) {
-                        return value;
-                    }
-                    // Two cases: either we just exceeded the train count, in
-                    // which case the cache must be created, or we just update
-                    // the count for the string
-                    if (ccCount > trainThreshold) {
-                        long t1 = System.currentTimeMillis();
-                        // Sort the entries according to occurrence
-                        TreeMap<Integer,ArrayList<CharEntry>> tempMap = new TreeMap<>();
-                        for (Entry<CharEntry,int[]> item : ccStats.entrySet()) {
-                            CharEntry entry = item.getKey();
-                            int[] countA = item.getValue();
-                            Integer count = Integer.valueOf(countA[0]);
-                            // Add to the list for that count
-                            ArrayList<CharEntry> list = tempMap.computeIfAbsent(count, k -> new ArrayList<>());
-                            list.add(entry);
-                        }
-                        // Allocate array of the right size
-                        int size = ccStats.size();
-                        if (size > cacheSize) {
-                            size = cacheSize;
-                        }
-                        CharEntry[] tempccCache = new CharEntry[size];
-                        // Fill it up using an alphabetical order
-                        // and a dumb insert sort
-                        CharChunk tempChunk = new CharChunk();
-                        int n = 0;
-                        while (n < size) {
-                            Object key = tempMap.lastKey();
-                            ArrayList<CharEntry> list = tempMap.get(key);
-                            for (int i = 0; i < list.size() && n < size; i++) {
-                                CharEntry entry = list.get(i);
-                                tempChunk.setChars(entry.name, 0, entry.name.length);
-                                int insertPos = findClosest(tempChunk, tempccCache, n);
-                                if (insertPos == n) {
-                                    tempccCache[n + 1] = entry;
-                                } else {
-                                    System.arraycopy(tempccCache, insertPos + 1, tempccCache, insertPos + 2,
-                                            n - insertPos - 1);
-                                    tempccCache[insertPos + 1] = entry;
-                                }
-                                n++;
-                            }
-                            tempMap.remove(key);
-                        }
-                        ccCount = 0;
-                        ccStats.clear();
-                        ccCache = tempccCache;
-                        if (log.isDebugEnabled()) {
-                            long t2 = System.currentTimeMillis();
-                            log.debug(sm.getString("stringCache.charTime", Long.valueOf(t2 - t1)));
-                        }
-                    } else {
-                        ccCount++;
-                        // Allocate new CharEntry for the lookup
-                        CharEntry entry = new CharEntry();
-                        entry.value = value;
-                        int[] count = ccStats.get(entry);
-                        if (count == null) {
-                            int end = cc.getEnd();
-                            int start = cc.getStart();
-                            // Create char array and copy chars
-                            entry.name = new char[cc.getLength()];
-                            System.arraycopy(cc.getBuffer(), start, entry.name, 0, end - start);
-                            // Initialize occurrence count to one
-                            count = new int[1];
-                            count[0] = 1;
-                            // Set in the stats hash map
-                            ccStats.put(entry, count);
-                        } else {
-                            count[0] = count[0] + 1;
-                        }
-                    }
-                }
-            }
-            return value;
-        } else {
-            accessCount++;
-            // Find the corresponding String
-            String result = find(cc);
-            if (result == null) {
-                return cc.toStringInternal();
+        int len = cc.getLength();
+        if (!charEnabled || len > maxStringSize) {
+            return cc.toStringInternal();
+        }
+
+        accessCount.increment();
+        char[] c = cc.getBuffer();
+        int start = cc.getStart();
+        int hash = hash(c, start, len);
+        ShardedCache<CharEntry> cache = ccCache;
+        Shard<CharEntry> shard = cache.shard(hash);
+        shard.sketch.increment(hash);
+
+        // Find the corresponding String
+        int bucket = shard.bucket(hash);
+        for (int i = bucket; i < bucket + WAYS; i++) {
+            CharEntry entry = shard.entries.get(i);
+            if (entry != null && entry.hash == hash && equals(entry.name, c, start, len)) {
+                hitCount.increment();
+                return entry.value;
             }
-            // Note: We don't care about safety for the stats
-            hitCount++;
-            return result;
         }
 
+        String value = cc.toStringInternal();
+        int victim = shard.admit(hash, bucket);
+        if (victim >= 0) {
+            char[] name = new char[len];
+            System.arraycopy(c, start, name, 0, len);
+            shard.replace(victim, new CharEntry(hash, value, name));
+        }
+        return value;
     }
 
 
-    // ----------------------------------------------------- Protected Methods
+    // -------------------------------------------------------- Private Methods
 
 
-    /**
-     * Compare given byte chunk with byte array.
-     *
-     * @param name      The name to compare
-     * @param compareTo The compared to data
-     *
-     * @return -1, 0 or +1 if inferior, equal, or superior to the String.
-     */
-    protected static int compare(ByteChunk name, byte[] compareTo) {
-        int result = 0;
-
-        byte[] b = name.getBuffer();
-        int start = name.getStart();
-        int end = name.getEnd();
-        int len = compareTo.length;
-
-        if ((end - start) < len) {
-            len = end - start;
-        }
-        for (int i = 0; (i < len) && (result == 0); i++) {
-            if (b[i + start] > compareTo[i]) {
-                result = 1;
-            } else if (b[i + start] < compareTo[i]) {
-                result = -1;
-            }
-        }
-        if (result == 0) {
-            if (compareTo.length > (end - start)) {
-                result = -1;
-            } else if (compareTo.length < (end - start)) {
-                result = 1;
-            }
+    private static int hash(byte[] b, int start, int len) {
+        int h = len;
+        for (int i = start; i < start + len; i++) {
+            h = 31 * h + b[i];
         }
-        return result;
+        return spread(h);
     }
 
 
-    /**
-     * Find an entry given its name in the cache and return the associated String.
-     *
-     * @param name                      The name to find
-     * @param malformedInputAction      Action to take if a malformed input is encountered
-     * @param unmappableCharacterAction Action to take if an unmappable character is encountered
-     *
-     * @return the corresponding value
-     */
-    protected static String find(ByteChunk name, CodingErrorAction malformedInputAction,
-            CodingErrorAction unmappableCharacterAction) {
-        int pos = findClosest(name, bcCache, bcCache.length);
-        if ((pos < 0) || (compare(name, bcCache[pos].name) != 0) || !(name.getCharset().equals(bcCache[pos].charset)) ||
-                !malformedInputAction.equals(bcCache[pos].malformedInputAction) ||
-                !unmappableCharacterAction.equals(bcCache[pos].unmappableCharacterAction)) {
-            return null;
-        } else {
-            return bcCache[pos].value;
+    private static int hash(char[] c, int start, int len) {
+        int h = len;
+        for (int i = start; i < start + len; i++) {
+            h = 31 * h + c[i];
         }
+        return spread(h);
     }
 
 
-    /**
-     * Find an entry given its name in a sorted array of map elements. This will return the index for the closest
-     * inferior or equal item in the given array.
-     *
-     * @param name  The name to find
-     * @param array The array in which to look
-     * @param len   The effective length of the array
-     *
-     * @return the position of the best match
-     */
-    protected static int findClosest(ByteChunk name, ByteEntry[] array, int len) {
-
-        int a = 0;
-        int b = len - 1;
+    private static int spread(int h) {
+        // Mix the bits so both the high bits (the shard) and the low bits (the bucket) are well distributed
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
 
-        // Special cases: -1 and 0
-        if (b == -1) {
-            return -1;
-        }
 
-        if (compare(name, array[0].name) < 0) {
-            return -1;
-        }
-        if (b == 0) {
-            return 0;
+    private static boolean equals(byte[] name, byte[] b, int start, int len) {
+        if (name.length != len) {
+            return false;
         }
-
-        int i;
-        while (true) {
-            i = (b + a) >>> 1;
-            int result = compare(name, array[i].name);
-            if (result == 1) {
-                a = i;
-            } else if (result == 0) {
-                return i;
-            } else {
-                b = i;
-            }
-            if ((b - a) == 1) {
-                int result2 = compare(name, array[b].name);
-                if (result2 < 0) {
-                    return a;
-                } else {
-                    return b;
-                }
+        for (int i = 0; i < len; i++) {
+            if (name[i] != b[start + i]) {
+                return false;
             }
         }
-
+        return true;
     }
 
 
-    /**
-     * Compare given char chunk with char array.
-     *
-     * @param name      The name to compare
-     * @param compareTo The compared to data
-     *
-     * @return -1, 0 or +1 if inferior, equal, or superior to the String.
-     */
-    protected static int compare(CharChunk name, char[] compareTo) {
-        int result = 0;
-
-        char[] c = name.getBuffer();
-        int start = name.getStart();
-        int end = name.getEnd();
-        int len = compareTo.length;
-
-        if ((end - start) < len) {
-            len = end - start;
-        }
-        for (int i = 0; (i < len) && (result == 0); i++) {
-            if (c[i + start] > compareTo[i]) {
-                result = 1;
-            } else if (c[i + start] < compareTo[i]) {
-                result = -1;
-            }
+    private static boolean equals(char[] name, char[] c, int start, int len) {
+        if (name.length != len) {
+            return false;
         }
-        if (result == 0) {
-            if (compareTo.length > (end - start)) {
-                result = -1;
-            } else if (compareTo.length < (end - start)) {
-                result = 1;
+        for (int i = 0; i < len; i++) {
+            if (name[i] != c[start + i]) {
+                return false;
             }
         }
-        return result;
+        return true;
     }
 
 
+    // ------------------------------------------------------ Cache Structures
+
+
     /**
-     * Find an entry given its name in the cache and return the associated String.
-     *
-     * @param name The name to find
-     *
-     * @return the corresponding value
+     * The number of entries in each bucket of a shard.
      */
-    protected static String find(CharChunk name) {
-        int pos = findClosest(name, ccCache, ccCache.length);
-        if ((pos < 0) || (compare(name, ccCache[pos].name) != 0)) {
-            return null;
-        } else {
-            return ccCache[pos].value;
-        }
-    }
+    private static final int WAYS = 4;
 
 
     /**
-     * Find an entry given its name in a sorted array of map elements. This will return the index for the closest
-     * inferior or equal item in the given array.
-     *
-     * @param name  The name to find
-     * @param array The array in which to look
-     * @param len   The effective length of the array
-     *
-     * @return the position of the best match
+     * The maximum number of shards.
      */
-    protected static int findClosest(CharChunk name, CharEntry[] array, int len) {
+    private static final int MAX_SHARDS = 64;
 
-        int a = 0;
-        int b = len - 1;
 
-        // Special cases: -1 and 0
-        if (b == -1) {
-            return -1;
+    private static int nextPowerOfTwo(int value) {
+        if (value <= 1) {
+            return 1;
         }
+        return Integer.highestOneBit(value - 1) << 1;
+    }
 
-        if (compare(name, array[0].name) < 0) {
-            return -1;
+
+    private static final class ShardedCache<E extends Entry> {
+
+        private final Shard<E>[] shards;
+        private final int shardShift;
+
+        ShardedCache(int size) {
+            int count = Math.min(MAX_SHARDS, nextPowerOfTwo(Runtime.getRuntime().availableProcessors()));
+            // Don't create shards that are smaller than a bucket
+            while (count > 1 && size / count < WAYS) {
+                count >>= 1;
+            }
+            int shardSize = nextPowerOfTwo(Math.max(WAYS, size / count));
+            @SuppressWarnings("unchecked")
+            Shard<E>[] shards = (Shard<E>[]) new Shard<?>[count];
+            this.shards = shards;
+            for (int i = 0; i < count; i++) {
+                shards[i] = new Shard<>(shardSize);
+            }
+            shardShift = 32 - Integer.numberOfTrailingZeros(count);
         }
-        if (b == 0) {
-            return 0;
+
+        Shard<E> shard(int hash) {
+            if (shards.length == 1) {
+                return shards[0];
+            }
+            // The high bits select the shard and the low bits select the bucket
+            return shards[hash >>> shardShift];
         }
 
-        int i;
-        while (true) {
-            i = (b + a) >>> 1;
-            int result = compare(name, array[i].name);
-            if (result == 1) {
-                a = i;
-            } else if (result == 0) {
-                return i;
-            } else {
-                b = i;
+        int size() {
+            int result = 0;
+            for (Shard<E> shard : shards) {
+                result += shard.size.get();
             }
-            if ((b - a) == 1) {
-                int result2 = compare(name, array[b].name);
-                if (result2 < 0) {
-                    return a;
-                } else {
-                    return b;
+            return result;
+        }
+    }
+
+
+    private static final class Shard<E extends Entry> {
+
+        private final AtomicReferenceArray<E> entries;
+        private final int bucketMask;
+        private final FrequencySketch sketch;
+        private final AtomicInteger size = new AtomicInteger();
+
+        Shard(int shardSize) {
+            entries = new AtomicReferenceArray<>(shardSize);
+            bucketMask = shardSize / WAYS - 1;
+            sketch = new FrequencySketch(shardSize);
+        }
+
+        /*
+         * Returns the index of the first entry of the bucket for the given hash.
+         */
+        int bucket(int hash) {
+            return (hash & bucketMask) * WAYS;
+        }
+
+        /*
+         * Returns the index of the entry to replace with an entry with the given hash or -1 if the new entry should
+         * not be admitted. A free entry is always used if there is one. Otherwise, the new entry is only admitted if
+         * it is seen more frequently than the least frequently seen entry in the bucket.
+         */
+        int admit(int hash, int bucket) {
+            int victim = -1;
+            int victimFrequency = Integer.MAX_VALUE;
+            for (int i = bucket; i < bucket + WAYS; i++) {
+                E entry = entries.get(i);
+                if (entry == null) {
+                    return i;
                 }
+                int frequency = sketch.frequency(entry.hash);
+                if (frequency < victimFrequency) {
+                    victim = i;
+                    victimFrequency = frequency;
+                }
+            }
+            if (sketch.frequency(hash) > victimFrequency) {
+                return victim;
             }
+            return -1;
         }
 
+        void replace(int index, E entry) {
+            // Concurrent misses may race to replace the same entry. Any of the results is acceptable.
+            E previous = entries.getAndSet(index, entry);
+            if (previous == null) {
+                size.incrementAndGet();
+            }
+        }
     }
 
 
-    // -------------------------------------------------- ByteEntry Inner Class
-
-    /**
-     * Cache entry for byte chunk to String mapping.
+    /*
+     * A count-min sketch of 4-bit counters that estimates how often each hash has been seen recently. All the
+     * counters are halved periodically so that the estimates reflect recent traffic. Updates are lock free. Counters
+     * are small and saturate at 15 which is sufficient for comparing candidates with the entries they would replace.
      */
-    protected static class ByteEntry {
+    private static final class FrequencySketch {
 
-        /**
-         * Constructs a new ByteEntry.
-         */
-        public ByteEntry() {
-        }
+        private static final long[] SEEDS =
+                { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+        private static final long RESET_MASK = 0x7777777777777777L;
 
-        private byte[] name = null;
-        private Charset charset = null;
-        private CodingErrorAction malformedInputAction = null;
-        private CodingErrorAction unmappableCharacterAction = null;
-        private String value = null;
+        private final AtomicLongArray table;
+        private final int counterMask;
+        private final int sampleSize;
+        private final AtomicInteger additions = new AtomicInteger();
 
-        @Override
-        public String toString() {
-            return value;
+        FrequencySketch(int capacity) {
+            // Each long holds 16 counters
+            int length = nextPowerOfTwo(Math.max(8, capacity / 4));
+            table = new AtomicLongArray(length);
+            counterMask = length * 16 - 1;
+            sampleSize = capacity * 10;
         }
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(malformedInputAction, unmappableCharacterAction, value);
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                added |= incrementAt(indexOf(hash, i));
+            }
+            if (added && additions.incrementAndGet() == sampleSize) {
+                reset();
+            }
         }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj) {
-                return true;
+        int frequency(int hash) {
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = indexOf(hash, i);
+                int count = (int) ((table.get(index >>> 4) >>> ((index & 15) << 2)) & 0xF);
+                frequency = Math.min(frequency, count);
             }
-            if (obj == null) {
-                return false;
+            return frequency;
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & counterMask;
+        }
+
+        private boolean incrementAt(int index) {
+            int word = index >>> 4;
+            int shift = (index & 15) << 2;
+            long mask = 0xFL << shift;
+            while (true) {
+                long current = table.get(word);
+                if ((current & mask) == mask) {
+                    // Saturated
+                    return false;
+                }
+                if (table.compareAndSet(word, current, current + (1L << shift))) {
+                    return true;
+                }
             }
-            if (getClass() != obj.getClass()) {
-                return false;
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length(); i++) {
+                long current;
+                do {
+                    current = table.get(i);
+                } while (!table.compareAndSet(i, current, (current >>> 1) & RESET_MASK));
             }
-            ByteEntry other = (ByteEntry) obj;
-            return Objects.equals(malformedInputAction, other.malformedInputAction) &&
-                    Objects.equals(unmappableCharacterAction, other.unmappableCharacterAction) &&
-                    Objects.equals(value, other.value);
+            additions.addAndGet(-sampleSize / 2);
         }
     }
 
 
-    // -------------------------------------------------- CharEntry Inner Class
+    // ------------------------------------------------------ Entry Inner Classes
 
 
-    /**
-     * Cache entry for char chunk to String mapping.
-     */
-    protected static class CharEntry {
+    private abstract static class Entry {
 
-        /**
-         * Constructs a new CharEntry.
-         */
-        public CharEntry() {
-        }
+        final int hash;
+        final String value;
 
-        private char[] name = null;
-        private String value = null;
+        Entry(int hash, String value) {
+            this.hash = hash;
+            this.value = value;
+        }
 
         @Override
         public String toString() {
             return value;
         }
+    }
 
-        @Override
-        public int hashCode() {
-            return value.hashCode();
-        }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (obj instanceof CharEntry) {
-                return value.equals(((CharEntry) obj).value);
-            }
-            return false;
-        }
+    private static final class ByteEntry extends Entry {
 
+        private final byte[] name;
+        private final Charset charset;
+        private final CodingErrorAction malformedInputAction;
+        private final CodingErrorAction unmappableCharacterAction;
+
+        ByteEntry(int hash, String value, byte[] name, Charset charset, CodingErrorAction malformedInputAction,
+                CodingErrorAction unmappableCharacterAction) {
+            super(hash, value);
+            this.name = name;
+            this.charset = charset;
+            this.malformedInputAction = malformedInputAction;
+            this.unmappableCharacterAction = unmappableCharacterAction;
+        }
     }
 
 
+    private static final class CharEntry extends Entry {
+
+        private final char[] name;
+
+        CharEntry(int hash, String value, char[] name) {
+            super(hash, value);
+            this.name = name;
+        }
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free, bounded pool of re-usable objects. It is intended as an alternative to {@link SynchronizedStack} when
+ * objects are obtained and returned concurrently by many threads and strict LIFO ordering is not required.
+ * <p>
+ * Objects are held in a fixed size array of slots that is filled from the start, in the same manner as a stack. A
+ * count of the objects in the pool is used to estimate the boundary between the occupied and free slots. Each call to
+ * {@link #push(Object)} or {@link #pop()} examines a small number of slots either side of that boundary and claims one
+ * with a single compare-and-set. Concurrent calls may leave gaps so the pool is a best effort cache: {@link #pop()}
+ * may return {@code null} while the pool still holds objects and {@link #push(Object)} may return {@code false} while
+ * there is still space. Callers must be prepared to create new objects or discard objects in those cases, exactly as
+ * they would for a {@link SynchronizedStack} that was empty or full.
+ *
+ * @param <T> The type of object managed by this pool
+ */
+public class ConcurrentObjectPool<T> {
+
+    /**
+     * The maximum number of slots examined by a single push or pop.
+     */
+    private static final int MAX_PROBES = 8;
+
+    private final AtomicReferenceArray<T> slots;
+    private final AtomicInteger count = new AtomicInteger(0);
+
+
+    /**
+     * Constructs a new pool that can hold the given number of objects.
+     *
+     * @param limit the number of objects the pool should be able to hold
+     */
+    public ConcurrentObjectPool(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException();
+        }
+        slots = new AtomicReferenceArray<>(limit);
+    }
+
+
+    /**
+     * Adds an object to the pool.
+     *
+     * @param obj The object to add
+     *
+     * @return {@code true} if the object was added, {@code false} if no free slot was found
+     */
+    public boolean push(T obj) {
+        int top = count.get();
+        int size = slots.length();
+        for (int i = 0; i < MAX_PROBES; i++) {
+            // Free slots are expected at and above the top
+            int index = probe(top, i, true);
+            if (index >= 0 && index < size && slots.getPlain(index) == null &&
+                    slots.compareAndSet(index, null, obj)) {
+                count.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Removes an object from the pool.
+     *
+     * @return an object from the pool, or {@code null} if no object was found
+     */
+    public T pop() {
+        int top = count.get();
+        if (top <= 0) {
+            return null;
+        }
+        int size = slots.length();
+        for (int i = 0; i < MAX_PROBES; i++) {
+            // Occupied slots are expected below the top
+            int index = probe(top - 1, i, false);
+            if (index >= 0 && index < size) {
+                T result = slots.getAcquire(index);
+                if (result != null && slots.compareAndSet(index, result, null)) {
+                    count.decrementAndGet();
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Removes all objects from the pool.
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+        count.set(0);
+    }
+
+
+    /*
+     * Returns the index to examine for the given probe. Probes alternate either side of the start index, moving
+     * further away each time, beginning in the given direction.
+     */
+    private static int probe(int start, int probe, boolean upwards) {
+        int offset = (probe + 1) >> 1;
+        if (((probe & 1) == 1) == upwards) {
+            return start + offset;
+        } else {
+            return start - offset;
+        }
+    }
+}
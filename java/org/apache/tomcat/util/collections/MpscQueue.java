@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free, unbounded, multiple producer, single consumer FIFO queue. It is intended as an alternative to
+ * {@link SynchronizedQueue} when many threads add elements and a single thread (such as a Poller) removes them.
+ * <p>
+ * Elements are stored in fixed size array segments that are linked together as required. Producers claim a position
+ * with a single atomic increment and then publish the element into that position so producers never block each other
+ * or the consumer. The only garbage created is a segment each time {@link #getSegmentSize()} elements have been
+ * added.
+ * <p>
+ * {@link #offer(Object)} may be called from any thread. {@link #poll()} and {@link #clear()} must only be called by
+ * the single consumer thread. An element that is in the process of being added may not be visible to {@link #poll()}
+ * until the producer has completed the call to {@link #offer(Object)}.
+ *
+ * @param <T> The type of object managed by this queue
+ */
+public class MpscQueue<T> {
+
+    /**
+     * The default number of elements in each segment.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 1024;
+
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final VarHandle NEXT;
+    static {
+        try {
+            NEXT = MethodHandles.lookup().findVarHandle(Segment.class, "next", Segment.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int segmentSize;
+
+    /**
+     * The index that will be used for the next element added to the queue.
+     */
+    private final AtomicLong producerIndex = new AtomicLong(0);
+
+    /**
+     * The index of the next element to be removed. Only modified by the consumer.
+     */
+    private volatile long consumerIndex = 0;
+
+    /**
+     * The segment containing the next element to be removed. Only modified by the consumer. Since the consumer can
+     * never move past an element that has not yet been published, this segment is always at or before the segment any
+     * producer is about to write to.
+     */
+    private volatile Segment consumerSegment;
+
+    /**
+     * Hint for producers so they do not have to walk from the consumer's segment when the queue is long.
+     */
+    private volatile Segment producerSegment;
+
+
+    /**
+     * Constructs a new MpscQueue with the default segment size.
+     */
+    public MpscQueue() {
+        this(DEFAULT_SEGMENT_SIZE);
+    }
+
+
+    /**
+     * Constructs a new MpscQueue with the specified segment size.
+     *
+     * @param segmentSize the number of elements in each segment
+     */
+    public MpscQueue(int segmentSize) {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.segmentSize = segmentSize;
+        consumerSegment = new Segment(0, segmentSize);
+        producerSegment = consumerSegment;
+    }
+
+
+    /**
+     * Returns the number of elements in each segment.
+     *
+     * @return the segment size
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+
+    /**
+     * Adds the specified element to the tail of this queue. May be called concurrently by any number of threads.
+     *
+     * @param t the element to add
+     *
+     * @return true (as specified by {@link java.util.Queue#offer})
+     */
+    public boolean offer(T t) {
+        Objects.requireNonNull(t);
+        long index = producerIndex.getAndIncrement();
+
+        Segment segment = producerSegment;
+        if (segment.base > index) {
+            // Another producer has moved the hint past this index
+            segment = consumerSegment;
+        }
+        boolean moved = false;
+        while (index - segment.base >= segmentSize) {
+            Segment next = segment.next;
+            if (next == null) {
+                Segment newSegment = new Segment(segment.base + segmentSize, segmentSize);
+                next = (Segment) NEXT.compareAndExchange(segment, null, newSegment);
+                if (next == null) {
+                    next = newSegment;
+                }
+            }
+            segment = next;
+            moved = true;
+        }
+        if (moved) {
+            // Benign race. The hint is validated before it is used.
+            producerSegment = segment;
+        }
+
+        SLOT.setRelease(segment.slots, (int) (index - segment.base), t);
+        return true;
+    }
+
+
+    /**
+     * Retrieves and removes the head of this queue, or returns null if this queue is empty. Must only be called by the
+     * consumer thread.
+     *
+     * @return the head of this queue, or null if empty
+     */
+    public T poll() {
+        Segment segment = consumerSegment;
+        long index = consumerIndex;
+        int offset = (int) (index - segment.base);
+        if (offset == segmentSize) {
+            Segment next = segment.next;
+            if (next == null) {
+                return null;
+            }
+            segment = next;
+            consumerSegment = next;
+            offset = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        T result = (T) SLOT.getAcquire(segment.slots, offset);
+        if (result == null) {
+            // Empty or the producer has not yet published the element
+            return null;
+        }
+        SLOT.setOpaque(segment.slots, offset, null);
+        consumerIndex = index + 1;
+        return result;
+    }
+
+
+    /**
+     * Returns an estimate of the number of elements in this queue. The estimate may include elements that are in the
+     * process of being added.
+     *
+     * @return the number of elements
+     */
+    public int size() {
+        long size = producerIndex.get() - consumerIndex;
+        if (size < 0) {
+            return 0;
+        } else if (size > Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) size;
+    }
+
+
+    /**
+     * Returns whether this queue is empty.
+     *
+     * @return {@code true} if this queue contains no elements
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+
+    /**
+     * Removes all published elements from this queue. Must only be called by the consumer thread.
+     */
+    public void clear() {
+        while (poll() != null) {
+            // NO-OP
+        }
+    }
+
+
+    private static final class Segment {
+        private final long base;
+        private final Object[] slots;
+        private volatile Segment next;
+
+        Segment(long base, int size) {
+            this.base = base;
+            this.slots = new Object[size];
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.http;
+
+import java.util.Locale;
+
+/**
+ * Well-known HTTP header names. The hash used by {@link MimeHeaders} to index header names is calculated once for each
+ * constant so look-ups using these constants avoid both the linear scan of the header fields (once there are enough
+ * fields for the index to be used) and the hashing of the name.
+ */
+public enum HttpHeader {
+
+    /** Accept header. */
+    ACCEPT("Accept"),
+    /** Accept-Encoding header. */
+    ACCEPT_ENCODING("Accept-Encoding"),
+    /** Accept-Language header. */
+    ACCEPT_LANGUAGE("Accept-Language"),
+    /** Accept-Ranges header. */
+    ACCEPT_RANGES("Accept-Ranges"),
+    /** Authorization header. */
+    AUTHORIZATION("Authorization"),
+    /** Cache-Control header. */
+    CACHE_CONTROL("Cache-Control"),
+    /** Connection header. */
+    CONNECTION("Connection"),
+    /** Content-Disposition header. */
+    CONTENT_DISPOSITION("Content-Disposition"),
+    /** Content-Encoding header. */
+    CONTENT_ENCODING("Content-Encoding"),
+    /** Content-Language header. */
+    CONTENT_LANGUAGE("Content-Language"),
+    /** Content-Length header. */
+    CONTENT_LENGTH("Content-Length"),
+    /** Content-Range header. */
+    CONTENT_RANGE("Content-Range"),
+    /** Content-Type header. */
+    CONTENT_TYPE("Content-Type"),
+    /** Cookie header. */
+    COOKIE("Cookie"),
+    /** Date header. */
+    DATE("Date"),
+    /** ETag header. */
+    ETAG("ETag"),
+    /** Expect header. */
+    EXPECT("Expect"),
+    /** Forwarded header. */
+    FORWARDED("Forwarded"),
+    /** Host header. */
+    HOST("Host"),
+    /** If-Match header. */
+    IF_MATCH("If-Match"),
+    /** If-Modified-Since header. */
+    IF_MODIFIED_SINCE("If-Modified-Since"),
+    /** If-None-Match header. */
+    IF_NONE_MATCH("If-None-Match"),
+    /** If-Range header. */
+    IF_RANGE("If-Range"),
+    /** If-Unmodified-Since header. */
+    IF_UNMODIFIED_SINCE("If-Unmodified-Since"),
+    /** Keep-Alive header. */
+    KEEP_ALIVE("Keep-Alive"),
+    /** Last-Modified header. */
+    LAST_MODIFIED("Last-Modified"),
+    /** Location header. */
+    LOCATION("Location"),
+    /** Origin header. */
+    ORIGIN("Origin"),
+    /** Pragma header. */
+    PRAGMA("Pragma"),
+    /** Range header. */
+    RANGE("Range"),
+    /** Referer header. */
+    REFERER("Referer"),
+    /** Server header. */
+    SERVER("Server"),
+    /** Set-Cookie header. */
+    SET_COOKIE("Set-Cookie"),
+    /** TE header. */
+    TE("TE"),
+    /** traceparent header (W3C Trace Context). */
+    TRACEPARENT("traceparent"),
+    /** tracestate header (W3C Trace Context). */
+    TRACESTATE("tracestate"),
+    /** Trailer header. */
+    TRAILER("Trailer"),
+    /** Transfer-Encoding header. */
+    TRANSFER_ENCODING("Transfer-Encoding"),
+    /** Upgrade header. */
+    UPGRADE("Upgrade"),
+    /** User-Agent header. */
+    USER_AGENT("User-Agent"),
+    /** Vary header. */
+    VARY("Vary"),
+    /** WWW-Authenticate header. */
+    WWW_AUTHENTICATE("WWW-Authenticate"),
+    /** X-Forwarded-For header. */
+    X_FORWARDED_FOR("X-Forwarded-For"),
+    /** X-Forwarded-Proto header. */
+    X_FORWARDED_PROTO("X-Forwarded-Proto");
+
+
+    private final String name;
+    private final String lowerCaseName;
+    private final int hash;
+
+
+    HttpHeader(String name) {
+        this.name = name;
+        this.lowerCaseName = name.toLowerCase(Locale.ENGLISH);
+        this.hash = MimeHeaders.hash(name);
+    }
+
+
+    /**
+     * Obtain the name of the header using the capitalisation in which it is usually written.
+     *
+     * @return the header name
+     */
+    public String getName() {
+        return name;
+    }
+
+
+    /**
+     * Obtain the name of the header in lower case, as required by HTTP/2 and HTTP/3.
+     *
+     * @return the header name in lower case
+     */
+    public String getLowerCaseName() {
+        return lowerCaseName;
+    }
+
+
+    int getHash() {
+        return hash;
+    }
+
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
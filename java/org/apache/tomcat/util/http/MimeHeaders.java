@@ -19,6 +19,7 @@ package org.apache.tomcat.util.http;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -26,6 +27,9 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.tomcat.util.buf.Ascii;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.buf.CharChunk;
 import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.buf.StringUtils;
 import org.apache.tomcat.util.res.StringManager;
@@ -56,8 +60,11 @@ import org.apache.tomcat.util.res.StringManager;
  * or by name (returning an array of string values).
  * <p>
  * Headers are first parsed and stored in the order they are received. This is based on the fact that most servlets will
- * not directly access all headers, and most headers are single-valued. (the alternative - a hash or similar data
- * structure - will add an overhead that is not needed in most cases)
+ * not directly access all headers, and most headers are single-valued. When there are enough header fields for a linear
+ * scan to be slower, the first look-up by name builds an open addressing index of the ASCII lower case header names.
+ * The index is updated as header fields are added and removed and retained when the headers are recycled. Header names
+ * should not be modified via {@link #getName(int)} as the index would not be updated. {@link HttpHeader} provides
+ * pre-hashed names for the most commonly used headers.
  * <p>
  * Apache seems to be using a similar method for storing and manipulating headers.
  */
@@ -70,6 +77,18 @@ public class MimeHeaders {
 
     private static final StringManager sm = StringManager.getManager("org.apache.tomcat.util.http");
 
+    /**
+     * The minimum number of header fields for which look-ups by name use the index. A linear scan is at least as fast
+     * for fewer fields.
+     */
+    private static final int INDEX_THRESHOLD = 8;
+
+    /**
+     * The hash returned for names that are null or contain non-ASCII characters. Such names are compared using a linear
+     * scan so that the results are identical to {@link MessageBytes#equalsIgnoreCase(String)}.
+     */
+    private static final int NON_ASCII = -1;
+
     /**
      * The header fields.
      */
@@ -85,6 +104,22 @@ public class MimeHeaders {
      */
     private int limit = -1;
 
+    /**
+     * Open addressing (linear probing) index of the header names. Each slot holds the position of a header field plus
+     * one or zero if the slot is empty. The length is always a power of two.
+     */
+    private int[] index = null;
+
+    /**
+     * The number of header fields in the index or -1 if the index needs to be rebuilt.
+     */
+    private int indexedCount = -1;
+
+    /**
+     * Is the index usable? It is not if any of the header names contain non-ASCII characters.
+     */
+    private boolean indexUsable;
+
     /**
      * Creates a new MimeHeaders object using a default buffer size.
      */
@@ -115,6 +150,7 @@ public class MimeHeaders {
             headers[i].recycle();
         }
         count = 0;
+        indexedCount = -1;
     }
 
     @Override
@@ -174,6 +210,7 @@ public class MimeHeaders {
         }
         int unfilteredCount = count;
         count = ++j;
+        indexedCount = -1;
         for (int i = count; i < unfilteredCount; i++) {
             headers[i].recycle();
         }
@@ -235,13 +272,31 @@ public class MimeHeaders {
      * @return the header index
      */
     public int findHeader(String name, int starting) {
-        // We can use a hash - but it's not clear how much
-        // benefit you can get - there is an overhead
-        // and the number of headers is small (4-5 ?)
-        // Another problem is that we'll pay the overhead
-        // of constructing the hashtable
+        if (useIndex()) {
+            int hash = hash(name);
+            if (hash != NON_ASCII) {
+                return findIndexed(name, hash, starting);
+            }
+        }
+        return findLinear(name, starting);
+    }
 
-        // A custom search tree may be better
+    /**
+     * Find the index of a header with the given name.
+     *
+     * @param header   The header
+     * @param starting Index on which to start looking
+     *
+     * @return the header index
+     */
+    public int findHeader(HttpHeader header, int starting) {
+        if (useIndex()) {
+            return findIndexed(header.getName(), header.getHash(), starting);
+        }
+        return findLinear(header.getName(), starting);
+    }
+
+    private int findLinear(String name, int starting) {
         for (int i = starting; i < count; i++) {
             if (headers[i].getName().equalsIgnoreCase(name)) {
                 return i;
@@ -250,6 +305,137 @@ public class MimeHeaders {
         return -1;
     }
 
+    private int findIndexed(String name, int hash, int starting) {
+        int mask = index.length - 1;
+        int slot = hash & mask;
+        int entry;
+        /*
+         * Fields with the same name share a starting slot and, since fields are only ever appended to the index, are
+         * encountered in order. Therefore, the first match at or after the starting position is the lowest.
+         */
+        while ((entry = index[slot]) != 0) {
+            int i = entry - 1;
+            if (i >= starting && headers[i].nameHash == hash && headers[i].getName().equalsIgnoreCase(name)) {
+                return i;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /*
+     * Ensures the index is up to date, if it should be used, and returns true if it can be used.
+     */
+    private boolean useIndex() {
+        if (count < INDEX_THRESHOLD) {
+            return false;
+        }
+        if (indexedCount != count) {
+            // Keep the load factor at or below 0.5
+            int size = Integer.highestOneBit(count * 4 - 1);
+            if (index == null || index.length < size) {
+                index = new int[size];
+            } else {
+                Arrays.fill(index, 0);
+            }
+            indexUsable = true;
+            for (int i = 0; i < count && indexUsable; i++) {
+                indexUsable = addToIndex(i);
+            }
+            indexedCount = count;
+        }
+        return indexUsable;
+    }
+
+    private boolean addToIndex(int i) {
+        int hash = hash(headers[i].getName());
+        if (hash == NON_ASCII) {
+            return false;
+        }
+        headers[i].nameHash = hash;
+        int mask = index.length - 1;
+        int slot = hash & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = i + 1;
+        return true;
+    }
+
+    /*
+     * Called once the name of a newly created header field has been set.
+     */
+    private void headerAdded() {
+        if (indexedCount >= 0 && indexedCount == count - 1) {
+            if (!indexUsable) {
+                indexedCount = count;
+            } else if (count * 2 > index.length) {
+                // Rebuild with a larger index on the next look-up
+                indexedCount = -1;
+            } else {
+                indexUsable = addToIndex(count - 1);
+                indexedCount = count;
+            }
+        }
+    }
+
+    /*
+     * Case-insensitive hash of an ASCII header name.
+     */
+    static int hash(String name) {
+        if (name == null) {
+            return NON_ASCII;
+        }
+        int h = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c > 127) {
+                return NON_ASCII;
+            }
+            h = 31 * h + Ascii.toLower(c);
+        }
+        return spread(h);
+    }
+
+    private static int hash(MessageBytes name) {
+        switch (name.getType()) {
+            case MessageBytes.T_BYTES: {
+                ByteChunk bc = name.getByteChunk();
+                byte[] bytes = bc.getBytes();
+                int h = 0;
+                for (int i = bc.getStart(); i < bc.getEnd(); i++) {
+                    byte b = bytes[i];
+                    if (b < 0) {
+                        return NON_ASCII;
+                    }
+                    h = 31 * h + Ascii.toLower(b);
+                }
+                return spread(h);
+            }
+            case MessageBytes.T_CHARS: {
+                CharChunk cc = name.getCharChunk();
+                char[] chars = cc.getChars();
+                int h = 0;
+                for (int i = cc.getStart(); i < cc.getEnd(); i++) {
+                    char c = chars[i];
+                    if (c > 127) {
+                        return NON_ASCII;
+                    }
+                    h = 31 * h + Ascii.toLower(c);
+                }
+                return spread(h);
+            }
+            case MessageBytes.T_STR:
+                return hash(name.getString());
+            default:
+                return spread(0);
+        }
+    }
+
+    private static int spread(int h) {
+        return (h ^ (h >>> 16)) & 0x7FFFFFFF;
+    }
+
     // -------------------- --------------------
 
     /**
@@ -310,6 +496,7 @@ public class MimeHeaders {
     public MessageBytes addValue(String name) {
         MimeHeaderField mh = createHeader();
         mh.getName().setString(name);
+        headerAdded();
         return mh.getValue();
     }
 
@@ -326,6 +513,7 @@ public class MimeHeaders {
     public MessageBytes addValue(byte[] b, int startN, int len) {
         MimeHeaderField mhf = createHeader();
         mhf.getName().setBytes(b, startN, len);
+        headerAdded();
         return mhf.getValue();
     }
 
@@ -337,21 +525,21 @@ public class MimeHeaders {
      * @return the message bytes container for the value
      */
     public MessageBytes setValue(String name) {
-        for (int i = 0; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
-                for (int j = i + 1; j < count; j++) {
-                    if (headers[j].getName().equalsIgnoreCase(name)) {
-                        removeHeader(j--);
-                    }
-                }
-                return headers[i].getValue();
+        int i = findHeader(name, 0);
+        if (i >= 0) {
+            int j;
+            while ((j = findHeader(name, i + 1)) >= 0) {
+                removeHeader(j);
             }
+            return headers[i].getValue();
         }
         MimeHeaderField mh = createHeader();
         mh.getName().setString(name);
+        headerAdded();
         return mh.getValue();
     }
 
+
     // -------------------- Getting headers --------------------
 
     /**
@@ -363,12 +551,21 @@ public class MimeHeaders {
      * @return the value
      */
     public MessageBytes getValue(String name) {
-        for (int i = 0; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
-                return headers[i].getValue();
-            }
-        }
-        return null;
+        int i = findHeader(name, 0);
+        return i >= 0 ? headers[i].getValue() : null;
+    }
+
+    /**
+     * Finds and returns a header field with the given name. If no such field exists, null is returned. If more than one
+     * such field is in the header, an arbitrary one is returned.
+     *
+     * @param header The header
+     *
+     * @return the value
+     */
+    public MessageBytes getValue(HttpHeader header) {
+        int i = findHeader(header, 0);
+        return i >= 0 ? headers[i].getValue() : null;
     }
 
     /**
@@ -382,17 +579,35 @@ public class MimeHeaders {
      * @throws IllegalArgumentException if the header has multiple values
      */
     public MessageBytes getUniqueValue(String name) {
-        MessageBytes result = null;
-        for (int i = 0; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
-                if (result == null) {
-                    result = headers[i].getValue();
-                } else {
-                    throw new IllegalArgumentException();
-                }
-            }
+        int i = findHeader(name, 0);
+        if (i < 0) {
+            return null;
         }
-        return result;
+        if (findHeader(name, i + 1) >= 0) {
+            throw new IllegalArgumentException();
+        }
+        return headers[i].getValue();
+    }
+
+    /**
+     * Finds and returns a unique header field with the given name. If no such field exists, null is returned. If the
+     * specified header field is not unique then an {@link IllegalArgumentException} is thrown.
+     *
+     * @param header The header
+     *
+     * @return the value if unique
+     *
+     * @throws IllegalArgumentException if the header has multiple values
+     */
+    public MessageBytes getUniqueValue(HttpHeader header) {
+        int i = findHeader(header, 0);
+        if (i < 0) {
+            return null;
+        }
+        if (findHeader(header, i + 1) >= 0) {
+            throw new IllegalArgumentException();
+        }
+        return headers[i].getValue();
     }
 
     /**
@@ -405,6 +620,16 @@ public class MimeHeaders {
         return mh != null ? mh.toStringType() : null;
     }
 
+    /**
+     * Get the value of a header.
+     * @param header the header
+     * @return the header value
+     */
+    public String getHeader(HttpHeader header) {
+        MessageBytes mh = getValue(header);
+        return mh != null ? mh.toStringType() : null;
+    }
+
     // -------------------- Removing --------------------
 
     /**
@@ -413,11 +638,41 @@ public class MimeHeaders {
      * @param name the name of the header field to be removed
      */
     public void removeHeader(String name) {
+        removeHeaders(name);
+    }
+
+    /**
+     * Removes a header field with the specified name. Does nothing if such a field could not be found.
+     *
+     * @param header the header field to be removed
+     */
+    public void removeHeader(HttpHeader header) {
+        removeHeaders(header.getName());
+    }
+
+    /*
+     * Removes every field with the given name in a single pass, retaining the order of the remaining fields. The index,
+     * if any, is rebuilt once on the next look-up rather than being updated for each field removed.
+     */
+    private void removeHeaders(String name) {
+        int j = 0;
         for (int i = 0; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
-                removeHeader(i--);
+            MimeHeaderField mh = headers[i];
+            if (mh.getName().equalsIgnoreCase(name)) {
+                mh.recycle();
+            } else {
+                if (j != i) {
+                    // Move the removed field to the end so it can be reused
+                    headers[i] = headers[j];
+                    headers[j] = mh;
+                }
+                j++;
             }
         }
+        if (j != count) {
+            count = j;
+            indexedCount = -1;
+        }
     }
 
     /**
@@ -444,6 +699,47 @@ public class MimeHeaders {
 
         // Reduce the count
         count--;
+
+        // Positions have changed
+        if (indexedCount == count + 1 && indexUsable) {
+            removeFromIndex(idx);
+            indexedCount = count;
+        } else {
+            indexedCount = -1;
+        }
+    }
+
+    /*
+     * Removes the header field that was at position i from the index and adjusts the positions of the fields that
+     * followed it. Must be called after the fields have been moved.
+     */
+    private void removeFromIndex(int i) {
+        int mask = index.length - 1;
+        int hole = -1;
+        for (int slot = 0; slot < index.length; slot++) {
+            int entry = index[slot];
+            if (entry == i + 1) {
+                hole = slot;
+            } else if (entry > i + 1) {
+                index[slot] = entry - 1;
+            }
+        }
+        /*
+         * Close the gap by moving back any following entries that would no longer be found by probing from their
+         * starting slot. Entries are only moved towards their starting slot so the order of fields with the same name
+         * is retained.
+         */
+        int slot = (hole + 1) & mask;
+        int entry;
+        while ((entry = index[slot]) != 0) {
+            int start = headers[entry - 1].nameHash & mask;
+            if (((slot - start) & mask) >= ((slot - hole) & mask)) {
+                index[hole] = entry;
+                hole = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        index[hole] = 0;
     }
 
 }
@@ -519,11 +815,13 @@ class ValuesEnumerator implements Enumeration<String> {
 
     private void findNext() {
         next = null;
-        for (; pos < size; pos++) {
-            MessageBytes n1 = headers.getName(pos);
-            if (n1.equalsIgnoreCase(name)) {
-                next = headers.getValue(pos);
-                break;
+        if (pos < size) {
+            int i = headers.findHeader(name, pos);
+            if (i >= 0 && i < size) {
+                next = headers.getValue(i);
+                pos = i;
+            } else {
+                pos = size;
             }
         }
         pos++;
@@ -547,6 +845,11 @@ class MimeHeaderField {
     private final MessageBytes nameB = MessageBytes.newInstance();
     private final MessageBytes valueB = MessageBytes.newInstance();
 
+    /**
+     * The hash of the name. Only valid while the field is in the index.
+     */
+    int nameHash;
+
     /**
      * Creates a new, uninitialized header field.
      */
@@ -57,6 +57,16 @@ public final class Parameters {
     private int limit = -1;
     private int parameterCount = 0;
 
+    private boolean lazyDecoding = false;
+    /*
+     * Parameters that have been located but not yet added to paramHashValues. They always follow the parameters in
+     * paramHashValues in request order. The objects are re-used between requests.
+     */
+    private RawParameter[] rawParameters = new RawParameter[0];
+    private int rawCount = 0;
+    // The first failure to decode a parameter when decoding lazily
+    private InvalidParameterException decodeFailure = null;
+
     /**
      * Construct a new {@code Parameters} instance with default settings.
      */
@@ -82,6 +92,28 @@ public final class Parameters {
         this.limit = limit;
     }
 
+    /**
+     * Configure whether parameters are decoded when they are processed or only when they are accessed. When decoding
+     * lazily, processing parameters only locates the name and value of each parameter. Names and values are decoded
+     * when a parameter is looked up. A parameter that can't be decoded is ignored and the failure is available from
+     * {@link #getDecodeFailure()}.
+     *
+     * @param lazyDecoding {@code true} to decode parameters lazily
+     */
+    public void setLazyDecoding(boolean lazyDecoding) {
+        this.lazyDecoding = lazyDecoding;
+    }
+
+    /**
+     * Returns the first failure to decode a parameter when parameters are decoded lazily. Parameters that can't be
+     * decoded are ignored when they are accessed rather than the failure being thrown.
+     *
+     * @return the first decoding failure or {@code null} if there has been no failure
+     */
+    public InvalidParameterException getDecodeFailure() {
+        return decodeFailure;
+    }
+
     /**
      * Returns the character set used for decoding body parameters.
      *
@@ -139,6 +171,12 @@ public final class Parameters {
     public void recycle() {
         parameterCount = 0;
         paramHashValues.clear();
+        for (int i = 0; i < rawCount; i++) {
+            rawParameters[i].recycle();
+        }
+        rawCount = 0;
+        decodeFailure = null;
+        lazyDecoding = false;
         didQueryParameters = false;
         charset = DEFAULT_BODY_CHARSET;
         decodedQuery.recycle();
@@ -165,6 +203,21 @@ public final class Parameters {
         handleQueryParameters();
         // no "facade"
         ArrayList<String> values = paramHashValues.get(name);
+        if (rawCount > 0) {
+            ArrayList<String> rawValues = null;
+            for (int i = 0; i < rawCount; i++) {
+                RawParameter rawParameter = rawParameters[i];
+                if (rawParameter.nameEquals(name) && decodeLazily(rawParameter, true)) {
+                    if (rawValues == null) {
+                        rawValues = values == null ? new ArrayList<>() : new ArrayList<>(values);
+                    }
+                    rawValues.add(rawParameter.value);
+                }
+            }
+            if (rawValues != null) {
+                values = rawValues;
+            }
+        }
         if (values == null) {
             return null;
         }
@@ -178,6 +231,7 @@ public final class Parameters {
      */
     public Enumeration<String> getParameterNames() {
         handleQueryParameters();
+        decodeRawParameters();
         return Collections.enumeration(paramHashValues.keySet());
     }
 
@@ -196,9 +250,14 @@ public final class Parameters {
                 return "";
             }
             return values.getFirst();
-        } else {
-            return null;
         }
+        for (int i = 0; i < rawCount; i++) {
+            RawParameter rawParameter = rawParameters[i];
+            if (rawParameter.nameEquals(name) && decodeLazily(rawParameter, true)) {
+                return rawParameter.value;
+            }
+        }
+        return null;
     }
 
     // -------------------- Processing --------------------
@@ -244,13 +303,58 @@ public final class Parameters {
             return;
         }
 
+        checkLimit();
+        parameterCount++;
+
+        // Maintain the order of the parameters
+        decodeRawParameters();
+        paramHashValues.computeIfAbsent(key, k -> new ArrayList<>(1)).add(value);
+    }
+
+
+    private void checkLimit() {
         if (limit > -1 && parameterCount >= limit) {
             // Processing this parameter will push us over the limit.
             throw new InvalidParameterException(sm.getString("parameters.maxCountFail", Integer.valueOf(limit)));
         }
+    }
+
+
+    private void addRawParameter(byte[] bytes, int nameStart, int nameEnd, int valueStart, int valueEnd,
+            boolean decodeName, boolean decodeValue, Charset charset) {
+        checkLimit();
         parameterCount++;
 
-        paramHashValues.computeIfAbsent(key, k -> new ArrayList<>(1)).add(value);
+        if (rawCount == rawParameters.length) {
+            RawParameter[] expanded = new RawParameter[Math.max(16, rawCount * 2)];
+            System.arraycopy(rawParameters, 0, expanded, 0, rawCount);
+            rawParameters = expanded;
+        }
+        RawParameter rawParameter = rawParameters[rawCount];
+        if (rawParameter == null) {
+            rawParameter = new RawParameter();
+            rawParameters[rawCount] = rawParameter;
+        }
+        rawParameter.set(bytes, nameStart, nameEnd, valueStart, valueEnd, decodeName, decodeValue, charset);
+        rawCount++;
+    }
+
+
+    /*
+     * Decodes any parameters that have been located but not yet decoded and adds them to paramHashValues.
+     */
+    private void decodeRawParameters() {
+        if (rawCount == 0) {
+            return;
+        }
+        for (int i = 0; i < rawCount; i++) {
+            RawParameter rawParameter = rawParameters[i];
+            if (decodeLazily(rawParameter, true)) {
+                paramHashValues.computeIfAbsent(rawParameter.name, k -> new ArrayList<>(1)).add(rawParameter.value);
+            }
+            rawParameter.recycle();
+        }
+        rawCount = 0;
     }
 
     /**
@@ -265,10 +369,8 @@ public final class Parameters {
     // -------------------- Parameter parsing --------------------
     // we are called from a single thread - we can do it the hard way
     // if needed
-    private final ByteChunk tmpName = new ByteChunk();
-    private final ByteChunk tmpValue = new ByteChunk();
-    private final ByteChunk origName = new ByteChunk();
-    private final ByteChunk origValue = new ByteChunk();
+    private final ByteChunk tmp = new ByteChunk();
+    private final RawParameter eagerParameter = new RawParameter();
     private static final Charset DEFAULT_BODY_CHARSET = StandardCharsets.ISO_8859_1;
     private static final Charset DEFAULT_URI_CHARSET = StandardCharsets.UTF_8;
 
@@ -378,68 +480,96 @@ public final class Parameters {
                 throw new InvalidParameterException(message);
             }
 
-            tmpName.setBytes(bytes, nameStart, nameEnd - nameStart);
-            if (valueStart >= 0) {
-                tmpValue.setBytes(bytes, valueStart, valueEnd - valueStart);
+            if (lazyDecoding) {
+                addRawParameter(bytes, nameStart, nameEnd, valueStart, valueEnd, decodeName, decodeValue, charset);
             } else {
-                tmpValue.setBytes(bytes, 0, 0);
-            }
-
-            // Take copies as if anything goes wrong originals will be
-            // corrupted. This means original values can be logged.
-            // For performance - only done for debug
-            if (log.isDebugEnabled()) {
+                eagerParameter.set(bytes, nameStart, nameEnd, valueStart, valueEnd, decodeName, decodeValue, charset);
                 try {
-                    origName.append(bytes, nameStart, nameEnd - nameStart);
-                    if (valueStart >= 0) {
-                        origValue.append(bytes, valueStart, valueEnd - valueStart);
-                    } else {
-                        origValue.append(bytes, 0, 0);
-                    }
-                } catch (IOException ioe) {
-                    // Should never happen...
-                    log.error(sm.getString("parameters.copyFail"), ioe);
+                    decode(eagerParameter, true);
+                    addParameter(eagerParameter.name, eagerParameter.value);
+                } finally {
+                    eagerParameter.recycle();
                 }
             }
+        }
+    }
 
-            try {
-                String name;
-                String value;
 
-                if (decodeName) {
-                    urlDecode(tmpName);
-                }
-                tmpName.setCharset(charset);
-                name = tmpName.toString(CodingErrorAction.REPORT, CodingErrorAction.REPORT);
+    /*
+     * Decodes the name and, optionally, the value of the given parameter. If the name or value needs to be %nn decoded,
+     * this is done in place so each may only be decoded once.
+     */
+    private void decode(RawParameter parameter, boolean includeValue) {
+        if (parameter.failure != null) {
+            // The bytes may have been partially decoded so the failure can't be repeated
+            throw parameter.failure;
+        }
+        if (parameter.name == null) {
+            parameter.name = decodePart(parameter, true);
+        }
+        if (includeValue && parameter.value == null) {
+            if (parameter.valueStart >= 0) {
+                parameter.value = decodePart(parameter, false);
+            } else {
+                parameter.value = "";
+            }
+        }
+    }
 
-                if (valueStart >= 0) {
-                    if (decodeValue) {
-                        urlDecode(tmpValue);
-                    }
-                    tmpValue.setCharset(charset);
-                    value = tmpValue.toString(CodingErrorAction.REPORT, CodingErrorAction.REPORT);
-                } else {
-                    value = "";
-                }
 
-                addParameter(name, value);
-            } catch (IOException ioe) {
-                String message;
-                if (log.isDebugEnabled()) {
-                    message = sm.getString("parameters.decodeFail.debug", origName.toString(), origValue.toString());
-                } else {
-                    message = sm.getString("parameters.decodeFail.info", tmpName.toString(), tmpValue.toString());
-                }
-                throw new InvalidParameterException(message, ioe);
-            } finally {
-                tmpName.recycle();
-                tmpValue.recycle();
-                // Only recycle copies if we used them
-                if (log.isDebugEnabled()) {
-                    origName.recycle();
-                    origValue.recycle();
-                }
+    private String decodePart(RawParameter parameter, boolean name) {
+        byte[] bytes = parameter.bytes;
+        int start = name ? parameter.nameStart : parameter.valueStart;
+        int end = name ? parameter.nameEnd : parameter.valueEnd;
+
+        // Take a copy as if anything goes wrong the original will be corrupted. This means the original value can be
+        // logged. For performance - only done for debug
+        String original = null;
+        if (log.isDebugEnabled()) {
+            original = new String(bytes, start, end - start, DEFAULT_BODY_CHARSET);
+        }
+
+        tmp.setBytes(bytes, start, end - start);
+        try {
+            if (name ? parameter.decodeName : parameter.decodeValue) {
+                urlDecode(tmp);
+            }
+            tmp.setCharset(parameter.charset);
+            return tmp.toString(CodingErrorAction.REPORT, CodingErrorAction.REPORT);
+        } catch (IOException ioe) {
+            String failed = original == null ? tmp.toString() : original;
+            String message;
+            if (name) {
+                // The value has not been decoded so it is not corrupted
+                String value = parameter.valueStart >= 0 ? new String(bytes, parameter.valueStart,
+                        parameter.valueEnd - parameter.valueStart, DEFAULT_BODY_CHARSET) : "";
+                message = sm.getString(original == null ? "parameters.decodeFail.info" : "parameters.decodeFail.debug",
+                        failed, value);
+            } else {
+                message = sm.getString(original == null ? "parameters.decodeFail.info" : "parameters.decodeFail.debug",
+                        parameter.name, failed);
+            }
+            parameter.failure = new InvalidParameterException(message, ioe);
+            throw parameter.failure;
+        } finally {
+            tmp.recycle();
+        }
+    }
+
+
+    /*
+     * Decodes a parameter that was located when decoding lazily. If the parameter can't be decoded, it is ignored and
+     * the first such failure is retained so the caller can report it.
+     */
+    private boolean decodeLazily(RawParameter parameter, boolean includeValue) {
+        try {
+            decode(parameter, includeValue);
+            return true;
+        } catch (InvalidParameterException e) {
+            if (decodeFailure == null) {
+                decodeFailure = e;
             }
+            return false;
         }
     }
 
@@ -479,6 +609,101 @@ public final class Parameters {
             StringUtils.join(e.getValue(), ',', sb);
             sb.append('\n');
         }
+        // Parameters that have not been decoded are shown as received
+        for (int i = 0; i < rawCount; i++) {
+            RawParameter rawParameter = rawParameters[i];
+            if (rawParameter.name != null && rawParameter.value != null) {
+                sb.append(rawParameter.name).append('=').append(rawParameter.value).append('\n');
+                continue;
+            }
+            sb.append(new String(rawParameter.bytes, rawParameter.nameStart,
+                    rawParameter.nameEnd - rawParameter.nameStart, DEFAULT_BODY_CHARSET)).append('=');
+            if (rawParameter.valueStart >= 0) {
+                sb.append(new String(rawParameter.bytes, rawParameter.valueStart,
+                        rawParameter.valueEnd - rawParameter.valueStart, DEFAULT_BODY_CHARSET));
+            }
+            sb.append('\n');
+        }
         return sb.toString();
     }
+
+
+    /*
+     * The location of a parameter within the query string or request body, together with the decoded name and value
+     * once they are required.
+     */
+    private final class RawParameter {
+        private byte[] bytes;
+        private int nameStart;
+        private int nameEnd;
+        private int valueStart;
+        private int valueEnd;
+        private boolean decodeName;
+        private boolean decodeValue;
+        private Charset charset;
+
+        private InvalidParameterException failure;
+        private String name;
+        private String value;
+
+        private void set(byte[] bytes, int nameStart, int nameEnd, int valueStart, int valueEnd, boolean decodeName,
+                boolean decodeValue, Charset charset) {
+            this.bytes = bytes;
+            this.nameStart = nameStart;
+            this.nameEnd = nameEnd;
+            this.valueStart = valueStart;
+            this.valueEnd = valueEnd;
+            this.decodeName = decodeName;
+            this.decodeValue = decodeValue;
+            this.charset = charset;
+        }
+
+        /*
+         * Only the name is decoded so a parameter that has a value that can't be decoded does not prevent other
+         * parameters being found. Returns false if the name can't be decoded.
+         */
+        private boolean nameEquals(String name) {
+            if (this.name == null && !decodeName) {
+                /*
+                 * For the common character sets the name can be compared with the raw bytes without decoding them if
+                 * the requested name is US-ASCII (or ISO-8859-1 if that is the character set in use).
+                 */
+                boolean iso88591 = charset == StandardCharsets.ISO_8859_1;
+                if (iso88591 || charset == StandardCharsets.UTF_8 || charset == StandardCharsets.US_ASCII) {
+                    int len = name.length();
+                    int maxChar = iso88591 ? 0xFF : 0x7F;
+                    boolean compare = true;
+                    for (int i = 0; i < len; i++) {
+                        if (name.charAt(i) > maxChar) {
+                            compare = false;
+                            break;
+                        }
+                    }
+                    if (compare) {
+                        if (nameEnd - nameStart != len) {
+                            return false;
+                        }
+                        for (int i = 0; i < len; i++) {
+                            if ((bytes[nameStart + i] & 0xFF) != name.charAt(i)) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }
+            }
+            if (!decodeLazily(this, false)) {
+                return false;
+            }
+            return this.name.equals(name);
+        }
+
+        private void recycle() {
+            bytes = null;
+            charset = null;
+            failure = null;
+            name = null;
+            value = null;
+        }
+    }
 }
@@ -17,9 +17,9 @@
 package org.apache.tomcat.util.http.fileupload;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.Files;
 
 
 /**
@@ -148,7 +148,8 @@ public class DeferredFileOutputStream
             outputFile = File.createTempFile(prefix, suffix, directory);
         }
         FileUtils.forceMkdirParent(outputFile);
-        final FileOutputStream fos = new FileOutputStream(outputFile);
+        // Backed by a FileChannel which avoids allocating native memory for every large write
+        final OutputStream fos = Files.newOutputStream(outputFile.toPath());
         try {
             memoryOutputStream.writeTo(fos);
         } catch (final IOException e){
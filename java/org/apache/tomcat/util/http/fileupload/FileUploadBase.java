@@ -17,6 +17,8 @@
 package org.apache.tomcat.util.http.fileupload;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
@@ -29,7 +31,6 @@ import org.apache.tomcat.util.http.fileupload.impl.FileItemIteratorImpl;
 import org.apache.tomcat.util.http.fileupload.impl.FileUploadIOException;
 import org.apache.tomcat.util.http.fileupload.impl.IOFileUploadException;
 import org.apache.tomcat.util.http.fileupload.util.FileItemHeadersImpl;
-import org.apache.tomcat.util.http.fileupload.util.Streams;
 
 
 /**
@@ -452,7 +453,6 @@ public abstract class FileUploadBase {
             final FileItemIterator iter = getItemIterator(ctx);
             final FileItemFactory fileItemFactory = getFileItemFactory();
             Objects.requireNonNull(fileItemFactory, "getFileItemFactory()");
-            final byte[] buffer = new byte[Streams.DEFAULT_BUFFER_SIZE];
             while (iter.hasNext()) {
                 if (items.size() == fileCountMax) {
                     // The next item will exceed the limit.
@@ -464,8 +464,9 @@ public abstract class FileUploadBase {
                 final FileItem fileItem = fileItemFactory.createItem(item.getFieldName(), item.getContentType(),
                                                    item.isFormField(), fileName);
                 items.add(fileItem);
-                try {
-                    Streams.copy(item.openStream(), fileItem.getOutputStream(), true, buffer);
+                try (InputStream in = item.openStream(); OutputStream out = fileItem.getOutputStream()) {
+                    // Allows the item stream to write directly from its internal buffer
+                    in.transferTo(out);
                 } catch (final FileUploadIOException e) {
                     throw (FileUploadException) e.getCause();
                 } catch (final IOException e) {
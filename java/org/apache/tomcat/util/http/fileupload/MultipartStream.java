@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 
 import org.apache.tomcat.util.http.fileupload.impl.FileUploadIOException;
 import org.apache.tomcat.util.http.fileupload.impl.SizeLimitExceededException;
@@ -337,6 +338,35 @@ public class MultipartStream {
             return res;
         }
 
+        /**
+         * Writes the remaining bytes of the item to the given stream directly from the internal buffer, rather than
+         * copying them through an intermediate array first.
+         *
+         * @param out The stream to which the bytes are written.
+         * @return Number of bytes, which have been transferred.
+         * @throws IOException An I/O error occurred.
+         */
+        @Override
+        public long transferTo(final OutputStream out) throws IOException {
+            if (closed) {
+                throw new FileItemStream.ItemSkippedException();
+            }
+            long transferred = 0;
+            for (;;) {
+                int res = available();
+                if (res == 0) {
+                    res = makeAvailable();
+                    if (res == 0) {
+                        return transferred;
+                    }
+                }
+                out.write(buffer, head, res);
+                head += res;
+                total += res;
+                transferred += res;
+            }
+        }
+
         /**
          * Skips the given number of bytes.
          *
@@ -551,7 +581,7 @@ public class MultipartStream {
     private final byte[] boundary;
 
     /**
-     * The table for Knuth-Morris-Pratt search algorithm.
+     * The shift table, indexed by byte value, for the Boyer-Moore-Horspool search algorithm.
      */
     private final int[] boundaryTable;
 
@@ -626,7 +656,7 @@ public class MultipartStream {
         this.buffer = new byte[this.bufSize];
         this.notifier = notifier;
         this.boundary = new byte[this.boundaryLength];
-        this.boundaryTable = new int[this.boundaryLength + 1];
+        this.boundaryTable = new int[256];
         this.keepRegion = this.boundary.length;
         System.arraycopy(BOUNDARY_PREFIX, 0, this.boundary, 0, BOUNDARY_PREFIX.length);
         System.arraycopy(boundary, 0, this.boundary, BOUNDARY_PREFIX.length, boundary.length);
@@ -651,26 +681,13 @@ public class MultipartStream {
     }
 
     /**
-     * Compute the table used for Knuth-Morris-Pratt search algorithm.
+     * Compute the table used for Boyer-Moore-Horspool search algorithm. Each entry is the distance the search window
+     * may be moved when the byte aligned with the end of the window has that value.
      */
     private void computeBoundaryTable() {
-        int position = 2;
-        int candidate = 0;
-
-        boundaryTable[0] = -1;
-        boundaryTable[1] = 0;
-
-        while (position <= boundaryLength) {
-            if (boundary[position - 1] == boundary[candidate]) {
-                boundaryTable[position] = candidate + 1;
-                candidate++;
-                position++;
-            } else if (candidate > 0) {
-                candidate = boundaryTable[candidate];
-            } else {
-                boundaryTable[position] = 0;
-                position++;
-            }
+        Arrays.fill(boundaryTable, boundaryLength);
+        for (int i = 0; i < boundaryLength - 1; i++) {
+            boundaryTable[boundary[i] & 0xFF] = boundaryLength - 1 - i;
         }
     }
 
@@ -698,18 +715,23 @@ public class MultipartStream {
      */
     protected int findSeparator() {
 
+        final int last = boundaryLength - 1;
+        final byte lastByte = boundary[last];
+        final int end = tail - boundaryLength;
         int bufferPos = head;
-        int tablePos = 0;
 
-        while (bufferPos < tail) {
-            while (tablePos >= 0 && buffer[bufferPos] != boundary[tablePos]) {
-                tablePos = boundaryTable[tablePos];
-            }
-            bufferPos++;
-            tablePos++;
-            if (tablePos == boundaryLength) {
-                return bufferPos - boundaryLength;
+        while (bufferPos <= end) {
+            final byte b = buffer[bufferPos + last];
+            if (b == lastByte) {
+                int i = last - 1;
+                while (i >= 0 && buffer[bufferPos + i] == boundary[i]) {
+                    i--;
+                }
+                if (i < 0) {
+                    return bufferPos;
+                }
             }
+            bufferPos += boundaryTable[b & 0xFF];
         }
         return -1;
     }
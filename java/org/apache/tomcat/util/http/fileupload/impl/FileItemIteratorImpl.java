@@ -42,6 +42,12 @@ import org.apache.tomcat.util.http.fileupload.util.LimitedInputStream;
  * {@link FileUploadBase#getItemIterator(RequestContext)}.
  */
 public class FileItemIteratorImpl implements FileItemIterator {
+    /**
+     * The size of the buffer used to parse the request. This is larger than
+     * the {@link MultipartStream} default so that large file items are written
+     * in fewer, larger blocks and the boundary search can skip further.
+     */
+    private static final int BUFFER_SIZE = 32 * 1024;
     /**
      * The file uploads processing utility.
      * @see FileUploadBase
@@ -199,7 +205,7 @@ public class FileItemIteratorImpl implements FileItemIterator {
 
         progressNotifier = new MultipartStream.ProgressNotifier(fileUploadBase.getProgressListener(), requestSize);
         try {
-            multiPartStream = new MultipartStream(input, multiPartBoundary, progressNotifier);
+            multiPartStream = new MultipartStream(input, multiPartBoundary, BUFFER_SIZE, progressNotifier);
         } catch (final IllegalArgumentException iae) {
             IOUtils.closeQuietly(input); // avoid possible resource leak
             throw new InvalidContentTypeException(
@@ -17,8 +17,10 @@
 package org.apache.tomcat.util.http.fileupload.util;
 
 import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * An input stream, which limits its data size. This stream is
@@ -162,4 +164,32 @@ public abstract class LimitedInputStream extends FilterInputStream implements Cl
         return res;
     }
 
+    /**
+     * Transfers the remaining bytes of this input stream to the given output
+     * stream. The limit is checked before each block of bytes is written so
+     * no more than {@code sizeMax} bytes are written to the output stream.
+     *
+     * @param out the output stream to which the bytes are written
+     * @return the number of bytes transferred
+     * @throws IOException if an I/O error occurs or the limit is exceeded
+     */
+    @Override
+    public long transferTo(final OutputStream out) throws IOException {
+        return in.transferTo(new FilterOutputStream(out) {
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                count += len;
+                checkLimit();
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void write(final int b) throws IOException {
+                count++;
+                checkLimit();
+                out.write(b);
+            }
+        });
+    }
+
 }
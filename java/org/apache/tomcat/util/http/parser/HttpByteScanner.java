@@ -0,0 +1,169 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http.parser;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Locates the end of runs of bytes that need no special handling while parsing the HTTP/1.1 request line and headers
+ * so that the byte-wise parsing loops only need to examine delimiters and invalid bytes. Each method returns the index
+ * of the first byte in the given range that is not part of the run or {@code end} if every byte in the range is part
+ * of the run.
+ * <p>
+ * This implementation examines one byte at a time. If Tomcat was built with the optional Vector API based scanner
+ * ({@code compile.vector=true}) and the {@code jdk.incubator.vector} module has been added to the boot layer (e.g. via
+ * {@code --add-modules jdk.incubator.vector}), {@link #getInstance()} returns an implementation that uses the Vector
+ * API to examine many bytes at a time.
+ */
+public class HttpByteScanner {
+
+    private static final Log log = LogFactory.getLog(HttpByteScanner.class);
+    private static final StringManager sm = StringManager.getManager(HttpByteScanner.class);
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_SCANNER = "org.apache.tomcat.util.http.parser.VectorHttpByteScanner";
+
+    private static final int ARRAY_SIZE = 128;
+    private static final boolean[] IS_TOKEN = new boolean[ARRAY_SIZE];
+    private static final boolean[] IS_PATH_AND_QUERY = new boolean[ARRAY_SIZE];
+
+    private static final HttpByteScanner INSTANCE;
+
+    static {
+        for (int i = 0; i < ARRAY_SIZE; i++) {
+            IS_TOKEN[i] = HttpParser.isToken(i);
+            // Characters that are always valid in both the path and the query string other than '?'
+            IS_PATH_AND_QUERY[i] = HttpParser.isAbsolutePath(i);
+        }
+
+        HttpByteScanner instance = null;
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                instance = (HttpByteScanner) Class.forName(VECTOR_SCANNER).getDeclaredConstructor().newInstance();
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("httpByteScanner.vector", instance));
+                }
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                log.warn(sm.getString("httpByteScanner.vectorFailed"), t);
+            }
+        }
+        if (instance == null) {
+            instance = new HttpByteScanner();
+        }
+        INSTANCE = instance;
+    }
+
+
+    /**
+     * Obtain the scanner to use for parsing. This will use the Vector API if it is available.
+     *
+     * @return the scanner
+     */
+    public static HttpByteScanner getInstance() {
+        return INSTANCE;
+    }
+
+
+    /**
+     * Creates a scanner that examines one byte at a time.
+     */
+    protected HttpByteScanner() {
+    }
+
+
+    /**
+     * Skips a run of token characters as used in the method and header names.
+     *
+     * @param bytes the bytes to scan
+     * @param start the index of the first byte to scan
+     * @param end   the index after the last byte to scan
+     *
+     * @return the index of the first byte that is not a token character or {@code end}
+     */
+    public int skipToken(byte[] bytes, int start, int end) {
+        int i = start;
+        while (i < end && isToken(bytes[i])) {
+            i++;
+        }
+        return i;
+    }
+
+
+    /**
+     * Skips a run of characters that are valid in both the path and the query string of the request target. The
+     * characters are those permitted in an absolute path by RFC 3986 without any relaxation. Characters that require
+     * further checks, including {@code '?'}, SP and HT, end the run.
+     *
+     * @param bytes the bytes to scan
+     * @param start the index of the first byte to scan
+     * @param end   the index after the last byte to scan
+     *
+     * @return the index of the first byte that is not part of the run or {@code end}
+     */
+    public int skipRequestTarget(byte[] bytes, int start, int end) {
+        int i = start;
+        while (i < end && isPathAndQuery(bytes[i])) {
+            i++;
+        }
+        return i;
+    }
+
+
+    /**
+     * Skips a run of SP, visible characters and obs-text in a header value. Control characters, including HT, CR and
+     * LF, end the run.
+     *
+     * @param bytes the bytes to scan
+     * @param start the index of the first byte to scan
+     * @param end   the index after the last byte to scan
+     *
+     * @return the index of the first byte that is not part of the run or {@code end}
+     */
+    public int skipFieldContent(byte[] bytes, int start, int end) {
+        int i = start;
+        while (i < end && isFieldContent(bytes[i])) {
+            i++;
+        }
+        return i;
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName();
+    }
+
+
+    static boolean isToken(byte b) {
+        return b >= 0 && IS_TOKEN[b];
+    }
+
+
+    static boolean isPathAndQuery(byte b) {
+        return b >= 0 && IS_PATH_AND_QUERY[b];
+    }
+
+
+    static boolean isFieldContent(byte b) {
+        // Negative values are obs-text
+        return (b < 0 || b >= ' ') && b != 0x7F;
+    }
+}
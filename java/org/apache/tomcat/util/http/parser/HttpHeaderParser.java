@@ -41,6 +41,7 @@ public class HttpHeaderParser {
     private final MimeHeaders headers;
     private final boolean tolerantEol;
     private final HeaderParseData headerData = new HeaderParseData();
+    private final HttpByteScanner byteScanner = HttpByteScanner.getInstance();
 
     private HeaderParsePosition headerParsePos = HeaderParsePosition.HEADER_START;
     private byte prevChr = 0;
@@ -134,6 +135,13 @@ public class HttpHeaderParser {
                 }
             }
 
+            // Skip any run of token characters
+            ByteBuffer byteBuffer = source.getHeaderByteBuffer();
+            byteBuffer.position(byteScanner.skipToken(byteBuffer.array(), byteBuffer.position(), byteBuffer.limit()));
+            if (byteBuffer.position() >= byteBuffer.limit()) {
+                continue;
+            }
+
             int pos = source.getHeaderByteBuffer().position();
             chr = source.getHeaderByteBuffer().get();
             if (chr == COLON) {
@@ -209,6 +217,11 @@ public class HttpHeaderParser {
                         }
                     }
 
+                    if (chr != CR && copyFieldContent()) {
+                        // Bytes may remain that need to be processed individually
+                        continue;
+                    }
+
                     prevChr = chr;
                     chr = source.getHeaderByteBuffer().get();
                     if (chr == CR && prevChr != CR) {
@@ -271,6 +284,37 @@ public class HttpHeaderParser {
     }
 
 
+    /*
+     * Copies any run of bytes in the header value that would otherwise be processed individually without any special
+     * handling. Returns true if any bytes were copied.
+     */
+    private boolean copyFieldContent() {
+        ByteBuffer byteBuffer = source.getHeaderByteBuffer();
+        byte[] bytes = byteBuffer.array();
+        int pos = byteBuffer.position();
+        int runEnd = byteScanner.skipFieldContent(bytes, pos, byteBuffer.limit());
+        if (runEnd == pos) {
+            return false;
+        }
+        int length = runEnd - pos;
+        if (headerData.realPos != pos) {
+            System.arraycopy(bytes, pos, bytes, headerData.realPos, length);
+        }
+        // Find the last byte in the run that is not SP
+        int last = runEnd - 1;
+        while (last >= pos && bytes[last] == SP) {
+            last--;
+        }
+        if (last >= pos) {
+            headerData.lastSignificantChar = headerData.realPos + last - pos + 1;
+        }
+        headerData.realPos += length;
+        chr = bytes[runEnd - 1];
+        byteBuffer.position(runEnd);
+        return true;
+    }
+
+
     private HeaderParseStatus skipLine() throws IOException {
         // Parse the rest of the invalid header so we can construct a useful
         // exception and/or debug message.
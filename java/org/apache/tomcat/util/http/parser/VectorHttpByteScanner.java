@@ -0,0 +1,153 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http.parser;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Scanner that uses the Vector API to examine as many bytes at a time as the preferred vector species allows,
+ * typically 32 or 64. Ranges that are too close to the end of the array for a full vector load are examined one byte
+ * at a time. Bytes beyond the end of the range but within the array may be loaded but are never examined.
+ * <p>
+ * This class depends on the {@code jdk.incubator.vector} module and is only loaded by
+ * {@link HttpByteScanner#getInstance()} when that module is present.
+ */
+final class VectorHttpByteScanner extends HttpByteScanner {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final int LENGTH = SPECIES.length();
+
+
+    VectorHttpByteScanner() {
+    }
+
+
+    @Override
+    public int skipToken(byte[] bytes, int start, int end) {
+        int i = start;
+        while (i < end) {
+            if (i + LENGTH > bytes.length) {
+                return super.skipToken(bytes, i, end);
+            }
+            ByteVector v = ByteVector.fromArray(SPECIES, bytes, i);
+            /*
+             * Token characters are the visible ASCII characters 0x21 to 0x7E other than the separators
+             * "(),/:;<=>?@[\]{}
+             */
+            VectorMask<Byte> stop = v.compare(VectorOperators.LT, (byte) 0x21);
+            stop = stop.or(v.compare(VectorOperators.EQ, (byte) 0x7F));
+            stop = stop.or(v.compare(VectorOperators.EQ, (byte) '"'));
+            stop = stop.or(v.compare(VectorOperators.EQ, (byte) '('));
+            stop = stop.or(v.compare(VectorOperators.EQ, (byte) ')'));
+            stop = stop.or(v.compare(VectorOperators.EQ, (byte) ','));
+            stop = stop.or(v.compare(VectorOperators.EQ, (byte) '/'));
+            stop = stop.or(inRange(v, ':', '@'));
+            stop = stop.or(inRange(v, '[', ']'));
+            stop = stop.or(v.compare(VectorOperators.EQ, (byte) '{'));
+            stop = stop.or(v.compare(VectorOperators.EQ, (byte) '}'));
+            int result = next(stop, i, end);
+            if (result >= 0) {
+                return result;
+            }
+            i += LENGTH;
+        }
+        return end;
+    }
+
+
+    @Override
+    public int skipRequestTarget(byte[] bytes, int start, int end) {
+        int i = start;
+        while (i < end) {
+            if (i + LENGTH > bytes.length) {
+                return super.skipRequestTarget(bytes, i, end);
+            }
+            ByteVector v = ByteVector.fromArray(SPECIES, bytes, i);
+            /*
+             * The run is the visible ASCII characters 0x21 to 0x7E other than "#<>?[\]^`{|}
+             */
+            VectorMask<Byte> stop = v.compare(VectorOperators.LT, (byte) 0x21);
+            stop = stop.or(v.compare(VectorOperators.EQ, (byte) 0x7F));
+            stop = stop.or(inRange(v, '"', '#'));
+            stop = stop.or(v.compare(VectorOperators.EQ, (byte) '<'));
+            stop = stop.or(inRange(v, '>', '?'));
+            stop = stop.or(inRange(v, '[', '^'));
+            stop = stop.or(v.compare(VectorOperators.EQ, (byte) '`'));
+            stop = stop.or(inRange(v, '{', '}'));
+            int result = next(stop, i, end);
+            if (result >= 0) {
+                return result;
+            }
+            i += LENGTH;
+        }
+        return end;
+    }
+
+
+    @Override
+    public int skipFieldContent(byte[] bytes, int start, int end) {
+        int i = start;
+        while (i < end) {
+            if (i + LENGTH > bytes.length) {
+                return super.skipFieldContent(bytes, i, end);
+            }
+            ByteVector v = ByteVector.fromArray(SPECIES, bytes, i);
+            // Controls are 0x00 to 0x1F and 0x7F. Negative values are obs-text.
+            VectorMask<Byte> stop = v.compare(VectorOperators.UNSIGNED_LT, (byte) 0x20);
+            stop = stop.or(v.compare(VectorOperators.EQ, (byte) 0x7F));
+            int result = next(stop, i, end);
+            if (result >= 0) {
+                return result;
+            }
+            i += LENGTH;
+        }
+        return end;
+    }
+
+
+    @Override
+    public String toString() {
+        return super.toString() + "[" + SPECIES + "]";
+    }
+
+
+    /*
+     * Uses an unsigned comparison so a single comparison checks both ends of the range.
+     */
+    private static VectorMask<Byte> inRange(ByteVector v, char low, char high) {
+        return v.sub((byte) low).compare(VectorOperators.UNSIGNED_LE, (byte) (high - low));
+    }
+
+
+    /*
+     * Returns the index of the first byte that ends the run, end if the run reaches the end of the range within this
+     * vector or -1 if the run continues into the next vector.
+     */
+    private static int next(VectorMask<Byte> stop, int i, int end) {
+        int first = stop.firstTrue();
+        if (first < LENGTH) {
+            return Math.min(i + first, end);
+        }
+        if (i + LENGTH >= end) {
+            return end;
+        }
+        return -1;
+    }
+}
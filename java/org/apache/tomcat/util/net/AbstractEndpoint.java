@@ -59,12 +59,16 @@ import org.apache.tomcat.util.net.openssl.ciphers.Cipher;
 import org.apache.tomcat.util.net.openssl.ciphers.Group;
 import org.apache.tomcat.util.net.openssl.ciphers.SignatureScheme;
 import org.apache.tomcat.util.res.StringManager;
+import org.apache.tomcat.util.threads.HybridThreadExecutor;
+import org.apache.tomcat.util.threads.HybridThreadExecutor.MappingStatistics;
 import org.apache.tomcat.util.threads.LimitLatch;
+import org.apache.tomcat.util.threads.PriorityTaskQueue;
 import org.apache.tomcat.util.threads.ResizableExecutor;
 import org.apache.tomcat.util.threads.TaskQueue;
 import org.apache.tomcat.util.threads.TaskThreadFactory;
 import org.apache.tomcat.util.threads.ThreadPoolExecutor;
 import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.apache.tomcat.util.threads.WorkStealingThreadPoolExecutor;
 
 /**
  * Abstract endpoint implementation.
@@ -1107,6 +1111,83 @@ public abstract class AbstractEndpoint<S, U> {
     }
 
 
+    /**
+     * The maximum number of platform threads that may be used for requests that pin virtual threads.
+     */
+    private int platformFallbackThreads = 0;
+
+    /**
+     * Set the maximum number of platform threads that may be used for requests to servlet mappings that have been
+     * observed to pin virtual threads. This is only used when virtual threads are enabled with the internal executor.
+     *
+     * @param platformFallbackThreads the maximum number of platform threads or zero to disable the fallback
+     */
+    public void setPlatformFallbackThreads(int platformFallbackThreads) {
+        this.platformFallbackThreads = platformFallbackThreads;
+    }
+
+    /**
+     * Get the maximum number of platform threads that may be used for requests that pin virtual threads.
+     *
+     * @return the maximum number of platform threads
+     */
+    public int getPlatformFallbackThreads() {
+        return platformFallbackThreads;
+    }
+
+
+    /**
+     * The processing time in ms above which requests for a servlet mapping are treated as if they pinned a virtual
+     * thread.
+     */
+    private long platformFallbackSlowThreshold = -1;
+
+    /**
+     * Set the processing time above which requests for a servlet mapping are treated as if they pinned a virtual
+     * thread.
+     *
+     * @param platformFallbackSlowThreshold the threshold in milliseconds or a negative value to disable
+     */
+    public void setPlatformFallbackSlowThreshold(long platformFallbackSlowThreshold) {
+        this.platformFallbackSlowThreshold = platformFallbackSlowThreshold;
+    }
+
+    /**
+     * Get the processing time above which requests for a servlet mapping are treated as if they pinned a virtual
+     * thread.
+     *
+     * @return the threshold in milliseconds
+     */
+    public long getPlatformFallbackSlowThreshold() {
+        return platformFallbackSlowThreshold;
+    }
+
+
+    /**
+     * Flag to indicate whether the internal executor should use work stealing.
+     */
+    private boolean useWorkStealingExecutor = false;
+
+    /**
+     * Set whether the internal executor should be a {@link WorkStealingThreadPoolExecutor} rather than a
+     * {@link ThreadPoolExecutor}. This is ignored if virtual threads are used.
+     *
+     * @param useWorkStealingExecutor True to use a work stealing executor
+     */
+    public void setUseWorkStealingExecutor(boolean useWorkStealingExecutor) {
+        this.useWorkStealingExecutor = useWorkStealingExecutor;
+    }
+
+    /**
+     * Get whether the internal executor uses work stealing.
+     *
+     * @return True if the internal executor uses work stealing
+     */
+    public boolean getUseWorkStealingExecutor() {
+        return useWorkStealingExecutor;
+    }
+
+
     /**
      * External Executor based thread pool for utility tasks.
      */
@@ -1443,6 +1524,8 @@ public abstract class AbstractEndpoint<S, U> {
             // null if the endpoint is not running.
             // This check also avoids various threading issues.
             ((ThreadPoolExecutor) executor).setCorePoolSize(minSpareThreads);
+        } else if (internalExecutor && executor instanceof WorkStealingThreadPoolExecutor wstpe) {
+            wstpe.setCorePoolSize(minSpareThreads);
         }
     }
 
@@ -1483,6 +1566,8 @@ public abstract class AbstractEndpoint<S, U> {
             // null if the endpoint is not running.
             // This check also avoids various threading issues.
             ((ThreadPoolExecutor) executor).setMaximumPoolSize(maxThreads);
+        } else if (internalExecutor && executor instanceof WorkStealingThreadPoolExecutor wstpe) {
+            wstpe.setMaximumPoolSize(maxThreads);
         }
     }
 
@@ -1528,6 +1613,82 @@ public abstract class AbstractEndpoint<S, U> {
     }
 
 
+    /**
+     * The weights of the priority classes used by the task queue of the internal executor.
+     */
+    private String priorityWeights = null;
+
+    /**
+     * Set the weights of the priority classes used by the task queue of the internal executor as a comma separated
+     * list. If set, the internal executor uses a {@link PriorityTaskQueue}.
+     *
+     * @param priorityWeights The weights or {@code null} to use a single FIFO queue
+     */
+    public void setPriorityWeights(String priorityWeights) {
+        this.priorityWeights = priorityWeights;
+    }
+
+    /**
+     * Get the weights of the priority classes used by the task queue of the internal executor.
+     *
+     * @return The weights as a comma separated list
+     */
+    public String getPriorityWeights() {
+        return priorityWeights;
+    }
+
+
+    /**
+     * The limits on the number of queued tasks for each priority class.
+     */
+    private String priorityQueueLimits = null;
+
+    /**
+     * Set the maximum number of tasks that may be queued for each priority class by the internal executor as a comma
+     * separated list. A negative value means no limit other than {@link #getMaxQueueSize()}.
+     *
+     * @param priorityQueueLimits The limits
+     */
+    public void setPriorityQueueLimits(String priorityQueueLimits) {
+        this.priorityQueueLimits = priorityQueueLimits;
+    }
+
+    /**
+     * Get the maximum number of tasks that may be queued for each priority class.
+     *
+     * @return The limits as a comma separated list
+     */
+    public String getPriorityQueueLimits() {
+        return priorityQueueLimits;
+    }
+
+
+    /**
+     * The priority class of connections accepted by this endpoint.
+     */
+    private int priorityClass = 0;
+
+    /**
+     * Set the priority class used when work for connections accepted by this endpoint is queued by an executor that
+     * uses a {@link PriorityTaskQueue}. This may be overridden by the SSLHostConfig selected for the connection and by
+     * the protocol once a request has been parsed.
+     *
+     * @param priorityClass The priority class
+     */
+    public void setPriorityClass(int priorityClass) {
+        this.priorityClass = priorityClass;
+    }
+
+    /**
+     * Get the priority class of connections accepted by this endpoint.
+     *
+     * @return The priority class
+     */
+    public int getPriorityClass() {
+        return priorityClass;
+    }
+
+
     /**
      * Amount of time in milliseconds before the internal thread pool stops any idle threads if the amount of thread is
      * greater than the minimum amount of spare threads.
@@ -1548,6 +1709,8 @@ public abstract class AbstractEndpoint<S, U> {
             // null if the endpoint is not running.
             // This check also avoids various threading issues.
             ((ThreadPoolExecutor) executor).setKeepAliveTime(threadsMaxIdleTime, TimeUnit.MILLISECONDS);
+        } else if (internalExecutor && executor instanceof WorkStealingThreadPoolExecutor wstpe) {
+            wstpe.setKeepAliveTime(threadsMaxIdleTime, TimeUnit.MILLISECONDS);
         }
     }
 
@@ -1919,8 +2082,26 @@ public abstract class AbstractEndpoint<S, U> {
      */
     public void createExecutor() {
         internalExecutor = true;
-        if (getUseVirtualThreads()) {
+        if (getUseVirtualThreads() && getPlatformFallbackThreads() > 0) {
+            HybridThreadExecutor hybridExecutor =
+                    new HybridThreadExecutor(getName() + "-virt-", getPlatformFallbackThreads());
+            hybridExecutor.setSlowThreshold(getPlatformFallbackSlowThreshold());
+            hybridExecutor.setMappingListener(this::registerJmx);
+            executor = hybridExecutor;
+        } else if (getUseVirtualThreads()) {
             executor = new VirtualThreadExecutor(getName() + "-virt-");
+        } else if (getUseWorkStealingExecutor()) {
+            TaskThreadFactory tf = new TaskThreadFactory(getName() + "-exec-", daemon, getThreadPriority());
+            executor = new WorkStealingThreadPoolExecutor(getMinSpareThreads(), getMaxThreads(), getThreadsMaxIdleTime(),
+                    TimeUnit.MILLISECONDS, maxQueueSize, tf);
+        } else if (getPriorityWeights() != null) {
+            PriorityTaskQueue taskqueue = new PriorityTaskQueue(maxQueueSize,
+                    PriorityTaskQueue.parseValues(getPriorityWeights()),
+                    PriorityTaskQueue.parseValues(getPriorityQueueLimits()));
+            TaskThreadFactory tf = new TaskThreadFactory(getName() + "-exec-", daemon, getThreadPriority());
+            executor = new ThreadPoolExecutor(getMinSpareThreads(), getMaxThreads(), getThreadsMaxIdleTime(),
+                    TimeUnit.MILLISECONDS, taskqueue, tf);
+            taskqueue.setParent((ThreadPoolExecutor) executor);
         } else {
             TaskQueue taskqueue = new TaskQueue(maxQueueSize);
             TaskThreadFactory tf = new TaskThreadFactory(getName() + "-exec-", daemon, getThreadPriority());
@@ -1952,8 +2133,33 @@ public abstract class AbstractEndpoint<S, U> {
                         getLog().warn(sm.getString("endpoint.warn.executorShutdown", getName()));
                     }
                 }
-                TaskQueue queue = (TaskQueue) tpe.getQueue();
-                queue.setParent(null);
+                if (tpe.getQueue() instanceof TaskQueue queue) {
+                    queue.setParent(null);
+                } else if (tpe.getQueue() instanceof PriorityTaskQueue queue) {
+                    queue.setParent(null);
+                }
+            } else if (executor instanceof WorkStealingThreadPoolExecutor wstpe) {
+                wstpe.shutdownNow();
+                long timeout = getExecutorTerminationTimeoutMillis();
+                if (timeout > 0) {
+                    try {
+                        wstpe.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                    if (wstpe.isTerminating()) {
+                        getLog().warn(sm.getString("endpoint.warn.executorShutdown", getName()));
+                    }
+                }
+            } else if (executor instanceof HybridThreadExecutor hybridExecutor) {
+                hybridExecutor.shutdownNow();
+                Registry registry = Registry.getRegistry(null);
+                for (MappingStatistics mappingStatistics : hybridExecutor.getMappingStatistics()) {
+                    ObjectName mappingOname = getMappingObjectName(mappingStatistics);
+                    if (mappingOname != null) {
+                        registry.unregisterComponent(mappingOname);
+                    }
+                }
             }
         }
     }
@@ -1963,7 +2169,7 @@ public abstract class AbstractEndpoint<S, U> {
      */
     protected void unlockAccept() {
         // Only try to unlock the acceptor if it is necessary
-        if (acceptor == null || acceptor.getState() != AcceptorState.RUNNING) {
+        if (getRunningAcceptorCount() == 0) {
             return;
         }
 
@@ -1984,31 +2190,50 @@ public abstract class AbstractEndpoint<S, U> {
         try {
             unlockAddress = getUnlockAddress(localAddress);
 
-            try (java.net.Socket s = new java.net.Socket()) {
-                // Never going to read from this socket so the timeout doesn't matter. Use the unlock timeout.
-                s.setSoTimeout(getSocketProperties().getUnlockTimeout());
-                // Newer macOS versions (e.g. Ventura 13.2) appear to linger for ~1s on close when linger is disabled.
-                // That causes delays when running the unit tests. Explicitly enabling linger but with a timeout of
-                // zero seconds seems to fix the issue.
-                s.setSoLinger(true, 0);
-                if (getLog().isTraceEnabled()) {
-                    getLog().trace("About to unlock socket for:" + unlockAddress);
+            // Wait for up to 1000ms in total for the acceptor threads to
+            // unlock. When several acceptors share the port (SO_REUSEPORT) the
+            // kernel decides which one receives each connection so keep
+            // connecting until all of them have been unlocked.
+            long deadline = System.nanoTime() + 1_000_000_000;
+            int runningAcceptors = getRunningAcceptorCount();
+            int unlockAttempts = 0;
+            while (runningAcceptors > 0 && deadline > System.nanoTime()) {
+                unlockAttempts++;
+                try (java.net.Socket s = new java.net.Socket()) {
+                    // Never going to read from this socket so the timeout doesn't matter. Use the unlock timeout.
+                    s.setSoTimeout(getSocketProperties().getUnlockTimeout());
+                    // Newer macOS versions (e.g. Ventura 13.2) appear to linger for ~1s on close when linger is
+                    // disabled. That causes delays when running the unit tests. Explicitly enabling linger but with a
+                    // timeout of zero seconds seems to fix the issue.
+                    s.setSoLinger(true, 0);
+                    if (getLog().isTraceEnabled()) {
+                        getLog().trace("About to unlock socket for:" + unlockAddress);
+                    }
+                    s.connect(unlockAddress, getSocketProperties().getUnlockTimeout());
+                    if (getLog().isTraceEnabled()) {
+                        getLog().trace("Socket unlock completed for:" + unlockAddress);
+                    }
                 }
-                s.connect(unlockAddress, getSocketProperties().getUnlockTimeout());
-                if (getLog().isTraceEnabled()) {
-                    getLog().trace("Socket unlock completed for:" + unlockAddress);
+                // Particularly for the unit tests, we want to exit this loop as
+                // quickly as possible. However, we also don't want to trigger
+                // excessive CPU usage if the unlock takes longer than expected.
+                // Therefore, we initially wait for the unlock in a tight loop
+                // but if that takes more than 1ms we start using short sleeps
+                // to reduce CPU usage.
+                long startTime = System.nanoTime();
+                long waitEnd = deadline;
+                int previousRunningAcceptors = runningAcceptors;
+                if (previousRunningAcceptors > 1 || unlockAttempts > 1) {
+                    // The connection may have been queued for an acceptor that
+                    // has already been unlocked. Don't wait too long before
+                    // trying again.
+                    waitEnd = Math.min(deadline, startTime + 10_000_000);
                 }
-            }
-            // Wait for up to 1000ms for acceptor thread to unlock. Particularly
-            // for the unit tests, we want to exit this loop as quickly as
-            // possible. However, we also don't want to trigger excessive CPU
-            // usage if the unlock takes longer than expected. Therefore, we
-            // initially wait for the unlock in a tight loop but if that takes
-            // more than 1ms we start using short sleeps to reduce CPU usage.
-            long startTime = System.nanoTime();
-            while (startTime + 1_000_000_000 > System.nanoTime() && acceptor.getState() == AcceptorState.RUNNING) {
-                if (startTime + 1_000_000 < System.nanoTime()) {
-                    Thread.sleep(1);
+                while (waitEnd > System.nanoTime() &&
+                        (runningAcceptors = getRunningAcceptorCount()) >= previousRunningAcceptors) {
+                    if (startTime + 1_000_000 < System.nanoTime()) {
+                        Thread.sleep(1);
+                    }
                 }
             }
         } catch (Throwable t) {
@@ -2020,6 +2245,20 @@ public abstract class AbstractEndpoint<S, U> {
     }
 
 
+    /**
+     * Obtain the number of acceptors that are currently running, i.e. that may be blocked waiting for a new connection
+     * and need to be unlocked before they will notice that the endpoint has been paused or stopped.
+     *
+     * @return The number of acceptors in the {@link AcceptorState#RUNNING} state
+     */
+    protected int getRunningAcceptorCount() {
+        if (acceptor != null && acceptor.getState() == AcceptorState.RUNNING) {
+            return 1;
+        }
+        return 0;
+    }
+
+
     private static InetSocketAddress getUnlockAddress(InetSocketAddress localAddress) throws SocketException {
         if (localAddress.getAddress().isAnyLocalAddress()) {
             // Need a local address of the same type (IPv4 or IPV6) as the
@@ -2253,6 +2492,36 @@ public abstract class AbstractEndpoint<S, U> {
     }
 
 
+    private void registerJmx(MappingStatistics mappingStatistics) {
+        if (domain == null) {
+            // Before init the domain is null
+            return;
+        }
+        ObjectName mappingOname = getMappingObjectName(mappingStatistics);
+        if (mappingOname != null) {
+            try {
+                Registry.getRegistry(null).registerComponent(mappingStatistics, mappingOname, null);
+            } catch (Exception e) {
+                getLog().warn(sm.getString("endpoint.jmxRegistrationFailed", mappingOname), e);
+            }
+        }
+    }
+
+
+    private ObjectName getMappingObjectName(MappingStatistics mappingStatistics) {
+        if (domain == null) {
+            return null;
+        }
+        try {
+            return new ObjectName(domain + ":type=VirtualThreadMapping,ThreadPool=\"" + getName() + "\",name=" +
+                    ObjectName.quote(mappingStatistics.getKey()));
+        } catch (MalformedObjectNameException e) {
+            getLog().warn(sm.getString("endpoint.invalidJmxNameMapping", mappingStatistics.getKey()), e);
+            return null;
+        }
+    }
+
+
     private void unregisterJmx(SSLHostConfig sslHostConfig) {
         Registry registry = Registry.getRegistry(null);
         registry.unregisterComponent(sslHostConfig.getObjectName());
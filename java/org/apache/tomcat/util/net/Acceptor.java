@@ -142,11 +142,11 @@ public class Acceptor<U> implements Runnable {
                     try {
                         // Accept the next incoming connection from the server
                         // socket
-                        socket = endpoint.serverSocketAccept();
+                        socket = serverSocketAccept();
                     } catch (Exception e) {
                         // We didn't get a socket
                         endpoint.countDownConnection();
-                        if (endpoint.isRunning()) {
+                        if (endpoint.isRunning() && !stopCalled) {
                             // Introduce delay if necessary
                             errorDelay = handleExceptionWithDelay(errorDelay);
                             // re-throw
@@ -162,7 +162,7 @@ public class Acceptor<U> implements Runnable {
                     if (!stopCalled && !endpoint.isPaused()) {
                         // setSocketOptions() will hand the socket off to
                         // an appropriate processor if successful
-                        if (!endpoint.setSocketOptions(socket)) {
+                        if (!setSocketOptions(socket)) {
                             endpoint.closeSocket(socket);
                         }
                     } else {
@@ -180,6 +180,32 @@ public class Acceptor<U> implements Runnable {
     }
 
 
+    /**
+     * Accepts the next incoming connection. By default, the connection is accepted from the server socket managed by
+     * the endpoint. Endpoints that use more than one server socket may override this.
+     *
+     * @return The accepted socket
+     *
+     * @throws Exception If an error occurs accepting the connection
+     */
+    protected U serverSocketAccept() throws Exception {
+        return endpoint.serverSocketAccept();
+    }
+
+
+    /**
+     * Configures a newly accepted connection and hands it off to an appropriate processor.
+     *
+     * @param socket The accepted socket
+     *
+     * @return {@code true} if the socket was correctly configured and processing may continue, {@code false} if the
+     *             socket needs to be closed immediately
+     */
+    protected boolean setSocketOptions(U socket) {
+        return endpoint.setSocketOptions(socket);
+    }
+
+
     /**
      * Stops the acceptor, optionally waiting for it to finish.
      *
@@ -25,19 +25,21 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.SocketTimeoutException;
 import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
 import java.net.UnixDomainSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.Channel;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.CompletionHandler;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.channels.NetworkChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
@@ -53,6 +55,7 @@ import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.SSLEngine;
@@ -60,7 +63,9 @@ import javax.net.ssl.SSLEngine;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
-import org.apache.tomcat.util.collections.SynchronizedQueue;
+import org.apache.tomcat.util.buf.ByteBufferUtils;
+import org.apache.tomcat.util.collections.ConcurrentObjectPool;
+import org.apache.tomcat.util.collections.MpscQueue;
 import org.apache.tomcat.util.collections.SynchronizedStack;
 import org.apache.tomcat.util.compat.JrePlatform;
 import org.apache.tomcat.util.net.AbstractEndpoint.Handler.SocketState;
@@ -92,6 +97,17 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
      */
     public static final int OP_REGISTER = 0x100; // register interest op
 
+    /**
+     * Size of the poller event cache when an unlimited cache is configured and the number of connections is also
+     * unlimited.
+     */
+    private static final int UNLIMITED_EVENT_CACHE_SIZE = 16384;
+
+    /**
+     * Maximum size of each mapping of a file used for sendfile when the connection is secure.
+     */
+    private static final int SENDFILE_MAPPING_SIZE = 4 * 1024 * 1024;
+
     // ----------------------------------------------------------------- Fields
 
     /**
@@ -99,6 +115,12 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
      */
     private volatile ServerSocketChannel serverSock = null;
 
+    /**
+     * Server sockets, one per poller, sharing the same port via SO_REUSEPORT. The first entry is always
+     * {@link #serverSock}. Only used when {@link #getAcceptorPerPoller()} is enabled and supported.
+     */
+    private volatile ServerSocketChannel[] pollerServerSocks = null;
+
     /**
      * Stop latch used to wait for poller stop
      */
@@ -107,13 +129,18 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
     /**
      * Cache for poller events
      */
-    private SynchronizedStack<PollerEvent> eventCache;
+    private ConcurrentObjectPool<PollerEvent> eventCache;
 
     /**
      * Bytebuffer cache, each channel holds a set of buffers (two, except for SSL holds four)
      */
     private SynchronizedStack<NioChannel> nioChannels;
 
+    /**
+     * Shared network buffers used when connections do not hold their own buffers
+     */
+    private volatile SocketBufferArena bufferArena;
+
     /**
      * Address of the previously accepted socket for duplicate detection.
      */
@@ -334,9 +361,70 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
     }
 
     /**
-     * The socket poller.
+     * Number of poller threads.
+     */
+    private int pollerThreadCount = 1;
+
+    /**
+     * Sets the number of poller threads. Each poller uses its own selector and a connection remains registered with
+     * the same poller for its entire life. Changes take effect the next time the endpoint is bound.
+     *
+     * @param pollerThreadCount the number of poller threads, values less than one are treated as one
+     */
+    public void setPollerThreadCount(int pollerThreadCount) {
+        this.pollerThreadCount = Math.max(1, pollerThreadCount);
+    }
+
+    /**
+     * Returns the number of poller threads.
+     *
+     * @return the number of poller threads
+     */
+    public int getPollerThreadCount() {
+        return pollerThreadCount;
+    }
+
+
+    /**
+     * Use a dedicated acceptor, and server socket bound with SO_REUSEPORT, for each poller.
+     */
+    private boolean acceptorPerPoller = false;
+
+    /**
+     * Sets whether each poller should have its own acceptor thread and server socket. The server sockets are bound to
+     * the same address and port using SO_REUSEPORT so the operating system distributes new connections between them.
+     * This is only used when there is more than one poller, the endpoint is not using an inherited channel or a Unix
+     * domain socket and the platform supports SO_REUSEPORT.
+     *
+     * @param acceptorPerPoller {@code true} to use one acceptor per poller
+     */
+    public void setAcceptorPerPoller(boolean acceptorPerPoller) {
+        this.acceptorPerPoller = acceptorPerPoller;
+    }
+
+    /**
+     * Returns whether each poller should have its own acceptor thread and server socket.
+     *
+     * @return {@code true} if one acceptor per poller is configured
+     */
+    public boolean getAcceptorPerPoller() {
+        return acceptorPerPoller;
+    }
+
+    /**
+     * The socket pollers.
      */
-    private Poller poller = null;
+    private volatile Poller[] pollers = null;
+
+    /**
+     * Used to distribute new connections between the pollers when there is not one acceptor per poller.
+     */
+    private final AtomicInteger pollerRotater = new AtomicInteger(0);
+
+    /**
+     * The acceptors when there is one acceptor per poller. The first entry is also the endpoint's acceptor.
+     */
+    private volatile PollerAcceptor[] pollerAcceptors = null;
 
 
     // --------------------------------------------------------- Public Methods
@@ -348,14 +436,53 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
      *             the socket
      */
     public int getKeepAliveCount() {
-        if (poller == null) {
+        Poller[] pollers = this.pollers;
+        if (pollers == null) {
             return 0;
         } else {
-            return poller.getKeyCount();
+            int sum = 0;
+            for (Poller poller : pollers) {
+                sum += poller.getKeyCount();
+            }
+            return sum;
         }
     }
 
 
+    /**
+     * Number of bytes of network buffers currently in use from the shared buffer arena.
+     *
+     * @return The number of bytes in use or zero if the arena is not enabled
+     */
+    public long getBufferArenaBytesInUse() {
+        SocketBufferArena bufferArena = this.bufferArena;
+        return bufferArena == null ? 0 : bufferArena.getBytesInUse();
+    }
+
+
+    /**
+     * Largest number of bytes of network buffers that have been in use at any one time from the shared buffer arena.
+     *
+     * @return The high-water mark in bytes or zero if the arena is not enabled
+     */
+    public long getBufferArenaHighWaterMark() {
+        SocketBufferArena bufferArena = this.bufferArena;
+        return bufferArena == null ? 0 : bufferArena.getHighWaterMark();
+    }
+
+
+    /**
+     * Number of requests for network buffers that the shared buffer arena was unable to satisfy. Each failure results
+     * in a heap buffer being allocated for the connection instead.
+     *
+     * @return The number of allocation failures or zero if the arena is not enabled
+     */
+    public long getBufferArenaAllocationFailures() {
+        SocketBufferArena bufferArena = this.bufferArena;
+        return bufferArena == null ? 0 : bufferArena.getAllocationFailures();
+    }
+
+
     @Override
     public String getId() {
         if (getUseInheritedChannel()) {
@@ -377,8 +504,6 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
     public void bind() throws Exception {
         initServerSocket();
 
-        setStopLatch(new CountDownLatch(1));
-
         // Initialize SSL if needed
         initialiseSsl();
     }
@@ -490,13 +615,53 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
         } else {
             serverSock = ServerSocketChannel.open();
             socketProperties.setProperties(serverSock.socket());
+            boolean reusePort = getAcceptorPerPoller() && getPollerThreadCount() > 1;
+            if (reusePort && !serverSock.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                log.warn(sm.getString("endpoint.nio.reusePortNotSupported", getName()));
+                reusePort = false;
+            }
+            if (reusePort) {
+                serverSock.setOption(StandardSocketOptions.SO_REUSEPORT, Boolean.TRUE);
+            }
             InetSocketAddress addr = new InetSocketAddress(getAddress(), getPortWithOffset());
             serverSock.bind(addr, getAcceptCount());
+            if (reusePort) {
+                initPollerServerSockets();
+            }
         }
         serverSock.configureBlocking(true); // mimic APR behavior
     }
 
 
+    private void initPollerServerSockets() throws IOException {
+        ServerSocketChannel[] socks = new ServerSocketChannel[getPollerThreadCount()];
+        socks[0] = serverSock;
+        // Use the actual port in case the endpoint was configured to use an ephemeral port
+        InetSocketAddress addr = new InetSocketAddress(getAddress(), getLocalAddress().getPort());
+        try {
+            for (int i = 1; i < socks.length; i++) {
+                socks[i] = ServerSocketChannel.open();
+                socketProperties.setProperties(socks[i].socket());
+                socks[i].setOption(StandardSocketOptions.SO_REUSEPORT, Boolean.TRUE);
+                socks[i].bind(addr, getAcceptCount());
+                socks[i].configureBlocking(true);
+            }
+        } catch (IOException ioe) {
+            for (int i = 1; i < socks.length; i++) {
+                if (socks[i] != null) {
+                    try {
+                        socks[i].close();
+                    } catch (IOException e) {
+                        ioe.addSuppressed(e);
+                    }
+                }
+            }
+            throw ioe;
+        }
+        pollerServerSocks = socks;
+    }
+
+
     private void setPermissionsForNonPosixFile(File file, Set<PosixFilePermission> permissions) {
         if (permissions.contains(PosixFilePermission.OTHERS_READ) && !file.setReadable(true, false)) {
             log.warn(sm.getString("endpoint.nio.perms.readFail", file.getAbsolutePath()));
@@ -521,13 +686,23 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 processorCache =
                         new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE, socketProperties.getProcessorCache());
             }
-            if (socketProperties.getEventCache() != 0) {
-                eventCache = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE, socketProperties.getEventCache());
+            int eventCacheSize = socketProperties.getEventCache();
+            if (eventCacheSize < 0) {
+                // Unlimited. The pool has a fixed size so size it to comfortably exceed the number of events that
+                // can be in flight at any one time.
+                eventCacheSize = getMaxConnections() > 0 ? getMaxConnections() * 2 : UNLIMITED_EVENT_CACHE_SIZE;
+            }
+            if (eventCacheSize != 0) {
+                eventCache = new ConcurrentObjectPool<>(eventCacheSize);
             }
             int actualBufferPool = socketProperties.getActualBufferPool(isSSLEnabled() ? getSniParseLimit() * 2 : 0);
             if (actualBufferPool != 0) {
                 nioChannels = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE, actualBufferPool);
             }
+            if (socketProperties.getBufferArenaSize() != 0) {
+                bufferArena = new SocketBufferArena(socketProperties.getDirectBuffer(),
+                        socketProperties.getBufferArenaSize());
+            }
 
             // Create worker collection
             if (getExecutor() == null) {
@@ -536,12 +711,22 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
 
             initializeConnectionLatch();
 
-            // Start poller thread
-            poller = new Poller();
-            Thread pollerThread = new Thread(poller, getName() + "-Poller");
-            pollerThread.setPriority(pollerThreadPriority);
-            pollerThread.setDaemon(true);
-            pollerThread.start();
+            // Start poller threads
+            Poller[] pollers = new Poller[getPollerThreadCount()];
+            // Sized from the pollers actually started so stop waits for each of them
+            setStopLatch(new CountDownLatch(pollers.length));
+            for (int i = 0; i < pollers.length; i++) {
+                pollers[i] = new Poller();
+                String threadName = getName() + "-Poller";
+                if (pollers.length > 1) {
+                    threadName = threadName + "-" + i;
+                }
+                Thread pollerThread = new Thread(pollers[i], threadName);
+                pollerThread.setPriority(pollerThreadPriority);
+                pollerThread.setDaemon(true);
+                pollerThread.start();
+            }
+            this.pollers = pollers;
 
             startAcceptorThread();
         }
@@ -564,9 +749,13 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
              */
             int acceptorWaitMilliSeconds = 100 + 2 * getSocketProperties().getUnlockTimeout();
             acceptor.stopMillis(acceptorWaitMilliSeconds);
-            if (poller != null) {
-                poller.destroy();
-                poller = null;
+            pollerAcceptors = null;
+            Poller[] pollers = this.pollers;
+            if (pollers != null) {
+                this.pollers = null;
+                for (Poller poller : pollers) {
+                    poller.destroy();
+                }
             }
             try {
                 if (!getStopLatch().await(selectorTimeout + 100, TimeUnit.MILLISECONDS)) {
@@ -587,6 +776,10 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 }
                 nioChannels = null;
             }
+            if (bufferArena != null) {
+                bufferArena.clear();
+                bufferArena = null;
+            }
             if (processorCache != null) {
                 processorCache.clear();
                 processorCache = null;
@@ -625,6 +818,14 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
     @Override
     protected void doCloseServerSocket() throws IOException {
         try {
+            ServerSocketChannel[] pollerServerSocks = this.pollerServerSocks;
+            if (pollerServerSocks != null) {
+                this.pollerServerSocks = null;
+                // The first entry is serverSock which is closed below
+                for (int i = 1; i < pollerServerSocks.length; i++) {
+                    pollerServerSocks[i].close();
+                }
+            }
             if (!getUseInheritedChannel() && serverSock != null) {
                 // Close server socket
                 serverSock.close();
@@ -641,6 +842,49 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
     // ------------------------------------------------------ Protected Methods
 
 
+    @Override
+    protected void startAcceptorThread() {
+        ServerSocketChannel[] pollerServerSocks = this.pollerServerSocks;
+        if (pollerServerSocks == null) {
+            super.startAcceptorThread();
+            return;
+        }
+        Poller[] pollers = this.pollers;
+        PollerAcceptor[] acceptors = new PollerAcceptor[pollerServerSocks.length];
+        for (int i = 0; i < acceptors.length; i++) {
+            // The number of pollers may have changed since the server sockets were bound
+            acceptors[i] = new PollerAcceptor(pollerServerSocks[i], pollers[i % pollers.length],
+                    i == 0 ? acceptors : null);
+        }
+        pollerAcceptors = acceptors;
+        acceptor = acceptors[0];
+        for (int i = 0; i < acceptors.length; i++) {
+            String threadName = getName() + "-Acceptor-" + i;
+            acceptors[i].setThreadName(threadName);
+            Thread t = new Thread(acceptors[i], threadName);
+            t.setPriority(getAcceptorThreadPriority());
+            t.setDaemon(getDaemon());
+            t.start();
+        }
+    }
+
+
+    @Override
+    protected int getRunningAcceptorCount() {
+        PollerAcceptor[] pollerAcceptors = this.pollerAcceptors;
+        if (pollerAcceptors == null) {
+            return super.getRunningAcceptorCount();
+        }
+        int count = 0;
+        for (PollerAcceptor pollerAcceptor : pollerAcceptors) {
+            if (pollerAcceptor.getState() == AcceptorState.RUNNING) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
     @Override
     protected void unlockAccept() {
         if (getUnixDomainSocketPath() == null) {
@@ -683,12 +927,20 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
 
 
     /**
-     * Returns the poller instance.
+     * Returns a poller instance. When more than one poller is configured, the pollers are returned in turn so that
+     * new connections are evenly distributed between them.
      *
-     * @return the poller
+     * @return the poller or {@code null} if the endpoint is not running
      */
     protected Poller getPoller() {
-        return poller;
+        Poller[] pollers = this.pollers;
+        if (pollers == null) {
+            return null;
+        }
+        if (pollers.length == 1) {
+            return pollers[0];
+        }
+        return pollers[Math.floorMod(pollerRotater.getAndIncrement(), pollers.length)];
     }
 
 
@@ -722,6 +974,28 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
      */
     @Override
     protected boolean setSocketOptions(SocketChannel socket) {
+        Poller poller;
+        PollerAcceptor[] pollerAcceptors = this.pollerAcceptors;
+        if (pollerAcceptors != null) {
+            // Connections accepted by the endpoint's acceptor belong to the first poller
+            poller = pollerAcceptors[0].poller;
+        } else {
+            poller = getPoller();
+        }
+        return setSocketOptions(socket, poller);
+    }
+
+
+    /**
+     * Process the specified connection, registering it with the given poller.
+     *
+     * @param socket The socket channel
+     * @param poller The poller the connection will use for its entire life
+     *
+     * @return <code>true</code> if the socket was correctly configured and processing may continue, <code>false</code>
+     *             if the socket needs to be close immediately
+     */
+    protected boolean setSocketOptions(SocketChannel socket, Poller poller) {
         NioSocketWrapper socketWrapper = null;
         try {
             // Allocate channel and wrapper
@@ -730,11 +1004,18 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 channel = nioChannels.pop();
             }
             if (channel == null) {
-                SocketBufferHandler bufhandler = new SocketBufferHandler(socketProperties.getAppReadBufSize(),
-                        socketProperties.getAppWriteBufSize(), socketProperties.getDirectBuffer());
+                SocketBufferHandler bufhandler;
+                SocketBufferArena bufferArena = this.bufferArena;
+                if (bufferArena == null) {
+                    bufhandler = new SocketBufferHandler(socketProperties.getAppReadBufSize(),
+                            socketProperties.getAppWriteBufSize(), socketProperties.getDirectBuffer());
+                } else {
+                    bufhandler = new SocketBufferHandler(socketProperties.getAppReadBufSize(),
+                            socketProperties.getAppWriteBufSize(), bufferArena);
+                }
                 channel = createChannel(bufhandler);
             }
-            NioSocketWrapper newWrapper = new NioSocketWrapper(channel, this);
+            NioSocketWrapper newWrapper = new NioSocketWrapper(channel, this, poller);
             channel.reset(socket, newWrapper);
             connections.put(socket, newWrapper);
             socketWrapper = newWrapper;
@@ -832,6 +1113,77 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
         return new NioChannel(buffer);
     }
 
+
+    // --------------------------------------------------- Acceptor Inner Class
+
+    /**
+     * Acceptor that accepts connections from one of the SO_REUSEPORT server sockets and registers them with the
+     * associated poller. The first acceptor is the endpoint's acceptor and stopping it stops all of them.
+     */
+    protected class PollerAcceptor extends Acceptor<SocketChannel> {
+
+        private final ServerSocketChannel serverSocket;
+        private final Poller poller;
+        private final PollerAcceptor[] linked;
+
+        /*
+         * Duplicate detection is per server socket.
+         */
+        private SocketAddress previousAcceptedSocketRemoteAddress = null;
+        private long previousAcceptedSocketNanoTime = 0;
+
+        /**
+         * Creates a new acceptor for the given server socket and poller.
+         *
+         * @param serverSocket The server socket to accept connections from
+         * @param poller       The poller to register accepted connections with
+         * @param linked       The other acceptors to stop when this acceptor is stopped, or {@code null}
+         */
+        public PollerAcceptor(ServerSocketChannel serverSocket, Poller poller, PollerAcceptor[] linked) {
+            super(NioEndpoint.this);
+            this.serverSocket = serverSocket;
+            this.poller = poller;
+            this.linked = linked;
+        }
+
+        @Override
+        protected SocketChannel serverSocketAccept() throws Exception {
+            SocketChannel result = serverSocket.accept();
+
+            // See NioEndpoint.serverSocketAccept(). SO_REUSEPORT is not used on Windows or with UDS.
+            SocketAddress currentRemoteAddress = result.getRemoteAddress();
+            long currentNanoTime = System.nanoTime();
+            if (currentRemoteAddress.equals(previousAcceptedSocketRemoteAddress) &&
+                    currentNanoTime - previousAcceptedSocketNanoTime < 1000) {
+                throw new IOException(sm.getString("endpoint.err.duplicateAccept"));
+            }
+            previousAcceptedSocketRemoteAddress = currentRemoteAddress;
+            previousAcceptedSocketNanoTime = currentNanoTime;
+
+            return result;
+        }
+
+        @Override
+        protected boolean setSocketOptions(SocketChannel socket) {
+            return NioEndpoint.this.setSocketOptions(socket, poller);
+        }
+
+        @Override
+        public void stopMillis(int waitMilliseconds) {
+            if (linked != null) {
+                for (int i = 1; i < linked.length; i++) {
+                    linked[i].stopMillis(-1);
+                }
+            }
+            super.stopMillis(waitMilliseconds);
+            if (linked != null && waitMilliseconds > 0) {
+                for (int i = 1; i < linked.length; i++) {
+                    linked[i].stopMillis(waitMilliseconds);
+                }
+            }
+        }
+    }
+
     // ----------------------------------------------------- Poller Inner Classes
 
     /**
@@ -901,7 +1253,7 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
     public class Poller implements Runnable {
 
         private final Selector selector;
-        private final SynchronizedQueue<PollerEvent> events = new SynchronizedQueue<>();
+        private final MpscQueue<PollerEvent> events = new MpscQueue<>();
 
         private volatile boolean close = false;
         // Optimize expiration handling
@@ -951,6 +1303,11 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
 
         private void addEvent(PollerEvent event) {
             events.offer(event);
+            /*
+             * The Poller sets the counter to -1 immediately before it blocks in select() and resets it to 0 when
+             * select() returns. Only the first event added while the Poller is blocked triggers a wake-up so there
+             * is at most one call to wakeup() per poll cycle no matter how many events are added.
+             */
             if (wakeupCounter.incrementAndGet() == 0) {
                 selector.wakeup();
             }
@@ -1195,9 +1552,10 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
         public SendfileState processSendfile(SelectionKey sk, NioSocketWrapper socketWrapper,
                 boolean calledByProcessor) {
             NioChannel sc = null;
+            SendfileData sd = null;
             try {
                 unreg(sk, socketWrapper, sk.readyOps());
-                SendfileData sd = socketWrapper.getSendfileData();
+                sd = socketWrapper.getSendfileData();
 
                 if (log.isTraceEnabled()) {
                     log.trace("Processing send file for: " + sd.fileName);
@@ -1213,8 +1571,6 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
 
                 // Configure output channel
                 sc = socketWrapper.getSocket();
-                // TLS/SSL channel is slightly different
-                WritableByteChannel wc = ((sc instanceof SecureNioChannel) ? sc : sc.getIOChannel());
 
                 // We still have data in the buffer
                 if (sc.getOutboundRemaining() > 0) {
@@ -1222,7 +1578,13 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                         socketWrapper.updateLastWrite();
                     }
                 } else {
-                    long written = sd.fchannel.transferTo(sd.pos, sd.length, wc);
+                    long written;
+                    if (sc instanceof SecureNioChannel) {
+                        // TLS/SSL channel is slightly different
+                        written = transferToSecure(sd, sc);
+                    } else {
+                        written = sd.fchannel.transferTo(sd.pos, sd.length, sc.getIOChannel());
+                    }
                     if (written > 0) {
                         sd.pos += written;
                         sd.length -= written;
@@ -1240,6 +1602,7 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                         log.trace("Send file complete for: " + sd.fileName);
                     }
                     socketWrapper.setSendfileData(null);
+                    sd.releaseMappedBuffer();
                     try {
                         sd.fchannel.close();
                     } catch (Exception ignore) {
@@ -1291,12 +1654,18 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 if (log.isDebugEnabled()) {
                     log.debug(sm.getString("endpoint.sendfile.error"), ioe);
                 }
+                if (sd != null) {
+                    sd.releaseMappedBuffer();
+                }
                 if (!calledByProcessor && sc != null) {
                     socketWrapper.close();
                 }
                 return SendfileState.ERROR;
             } catch (Throwable t) {
                 log.error(sm.getString("endpoint.sendfile.error"), t);
+                if (sd != null) {
+                    sd.releaseMappedBuffer();
+                }
                 if (!calledByProcessor && sc != null) {
                     socketWrapper.close();
                 }
@@ -1304,6 +1673,44 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
             }
         }
 
+        /*
+         * FileChannel.transferTo() copies the file through a small temporary buffer when the target is not a socket
+         * or a file, which results in an additional copy and a TLS record for every 8k of data. Encrypting directly
+         * from a mapping of the file avoids the copy and allows the engine to produce full sized records. The file is
+         * mapped in bounded chunks and each mapping is released as soon as it has been written, rather than when it is
+         * garbage collected, so large files do not tie up address space.
+         */
+        private long transferToSecure(SendfileData sd, NioChannel sc) throws IOException {
+            // Prevent the mapping being released by a concurrent close while it is being read
+            synchronized (sd) {
+                if (sd.mappedBuffer == null) {
+                    long size = Long.min(sd.length, SENDFILE_MAPPING_SIZE);
+                    if (sd.fchannel.size() < sd.pos + size) {
+                        throw new IOException(sm.getString("endpoint.sendfile.tooMuchData"));
+                    }
+                    sd.mappedBuffer = sd.fchannel.map(MapMode.READ_ONLY, sd.pos, size);
+                }
+                long written = 0;
+                int n;
+                try {
+                    // Each write wraps a single record so keep writing until the network buffer can't be flushed
+                    while (sd.mappedBuffer.hasRemaining() && (n = sc.write(sd.mappedBuffer)) > 0) {
+                        written += n;
+                    }
+                } catch (InternalError e) {
+                    // Thrown if the file was truncated after it was mapped. Report it as an I/O error so it is
+                    // handled like any other failure to write the file rather than ending the Poller.
+                    sd.releaseMappedBuffer();
+                    throw new IOException(sm.getString("endpoint.sendfile.truncated", sd.fileName), e);
+                }
+                if (!sd.mappedBuffer.hasRemaining()) {
+                    // The engine has consumed the data
+                    sd.releaseMappedBuffer();
+                }
+                return written;
+            }
+        }
+
         /**
          * Unregisters interest operations for a socket.
          *
@@ -1449,6 +1856,17 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
          * @param endpoint The NIO endpoint
          */
         public NioSocketWrapper(NioChannel channel, NioEndpoint endpoint) {
+            this(channel, endpoint, endpoint.getPoller());
+        }
+
+        /**
+         * Creates a new NIO socket wrapper that will use the given poller for its entire life.
+         *
+         * @param channel The NIO channel
+         * @param endpoint The NIO endpoint
+         * @param poller The poller
+         */
+        public NioSocketWrapper(NioChannel channel, NioEndpoint endpoint, Poller poller) {
             super(channel, endpoint);
             if (endpoint.getUnixDomainSocketPath() != null) {
                 // Pretend localhost for easy compatibility
@@ -1460,7 +1878,7 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 remotePort = 0;
             }
             nioChannels = endpoint.getNioChannels();
-            poller = endpoint.getPoller();
+            this.poller = poller;
             socketBufferHandler = channel.getBufHandler();
             readLock = (readPending == null) ? new Object() : readPending;
             writeLock = (writePending == null) ? new Object() : writePending;
@@ -1665,8 +2083,11 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
             }
             try {
                 SendfileData data = getSendfileData();
-                if (data != null && data.fchannel != null && data.fchannel.isOpen()) {
-                    data.fchannel.close();
+                if (data != null) {
+                    data.releaseMappedBuffer();
+                    if (data.fchannel != null && data.fchannel.isOpen()) {
+                        data.fchannel.close();
+                    }
                 }
             } catch (Throwable t) {
                 ExceptionUtils.handleThrowable(t);
@@ -1798,7 +2219,22 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
 
         @Override
         protected void doWrite(boolean block, ByteBuffer buffer) throws IOException {
-            int n;
+            doWrite(block, buffer, null, 0, 0);
+        }
+
+
+        @Override
+        protected void doWrite(boolean block, ByteBuffer[] buffers, int offset, int length) throws IOException {
+            doWrite(block, null, buffers, offset, length);
+        }
+
+
+        /*
+         * Writes either the single buffer or, if that is null, the array of buffers using a gathering write.
+         */
+        private void doWrite(boolean block, ByteBuffer buffer, ByteBuffer[] buffers, int offset, int length)
+                throws IOException {
+            long n;
             if (getSocket() == NioChannel.CLOSED_NIO_CHANNEL) {
                 throw new ClosedChannelException();
             }
@@ -1832,12 +2268,13 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                         }
                     }
                     synchronized (writeLock) {
-                        n = getSocket().write(buffer);
+                        n = (buffer != null) ? getSocket().write(buffer) : getSocket().write(buffers, offset, length);
                         // n == 0 could be an incomplete write, but it could also
                         // indicate that a previous incomplete write of the
                         // outbound buffer (for TLS) has now completed. Only
                         // block if there is still data to write.
-                        if (n == 0 && (buffer.hasRemaining() || getSocket().getOutboundRemaining() > 0)) {
+                        if (n == 0 && (hasRemaining(buffer, buffers, offset, length) ||
+                                getSocket().getOutboundRemaining() > 0)) {
                             // Ensure a spurious wake-up doesn't trigger a duplicate registration
                             if (!writeBlocking) {
                                 writeBlocking = true;
@@ -1862,11 +2299,11 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                             startNanos = 0;
                         }
                     }
-                } while (buffer.hasRemaining() || getSocket().getOutboundRemaining() > 0);
+                } while (hasRemaining(buffer, buffers, offset, length) || getSocket().getOutboundRemaining() > 0);
             } else {
                 do {
-                    n = getSocket().write(buffer);
-                } while (n > 0 && buffer.hasRemaining());
+                    n = (buffer != null) ? getSocket().write(buffer) : getSocket().write(buffers, offset, length);
+                } while (n > 0 && hasRemaining(buffer, buffers, offset, length));
                 // If there is data left in the buffer the socket will be registered for
                 // write further up the stack. This is to ensure the socket is only
                 // registered for write once as both container and user code can trigger
@@ -1876,6 +2313,19 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
         }
 
 
+        private static boolean hasRemaining(ByteBuffer buffer, ByteBuffer[] buffers, int offset, int length) {
+            if (buffer != null) {
+                return buffer.hasRemaining();
+            }
+            for (int i = offset; i < offset + length; i++) {
+                if (buffers[i].hasRemaining()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+
         @Override
         public void registerReadInterest() {
             if (log.isTraceEnabled()) {
@@ -2156,8 +2606,7 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
              * connection. That can result in a stale cached value which in turn can result in unintentionally closing
              * currently active connections.
              */
-            Poller poller = NioEndpoint.this.poller;
-            if (poller == null) {
+            if (NioEndpoint.this.pollers == null) {
                 socketWrapper.close();
                 return;
             }
@@ -2253,5 +2702,21 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
          * The file channel for the sendfile operation.
          */
         protected volatile FileChannel fchannel;
+
+        /**
+         * The current mapping of part of the file used when the connection is secure. The mapping is released
+         * explicitly via {@link #releaseMappedBuffer()} once it has been written or the transfer ends.
+         */
+        protected volatile MappedByteBuffer mappedBuffer;
+
+        /**
+         * Unmaps the current mapping of the file, if any, without waiting for it to be garbage collected.
+         */
+        protected synchronized void releaseMappedBuffer() {
+            if (mappedBuffer != null) {
+                ByteBufferUtils.cleanDirectBuffer(mappedBuffer);
+                mappedBuffer = null;
+            }
+        }
     }
 }
@@ -195,6 +195,10 @@ public class SSLHostConfig implements Serializable {
      * Whether to honor the server's cipher order preference.
      */
     private boolean honorCipherOrder = false;
+    /**
+     * The priority class for connections that use this configuration.
+     */
+    private int priorityClass = -1;
     /**
      * Whether OCSP stapling is enabled.
      */
@@ -857,6 +861,27 @@ public class SSLHostConfig implements Serializable {
     }
 
 
+    /**
+     * Sets the priority class used when work for connections that use this configuration is queued. A negative value
+     * means that the priority class of the connector is used.
+     *
+     * @param priorityClass the priority class
+     */
+    public void setPriorityClass(int priorityClass) {
+        this.priorityClass = priorityClass;
+    }
+
+
+    /**
+     * Returns the priority class for connections that use this configuration.
+     *
+     * @return the priority class, or a negative value if the priority class of the connector is used
+     */
+    public int getPriorityClass() {
+        return priorityClass;
+    }
+
+
     /**
      * Sets the host name.
      *
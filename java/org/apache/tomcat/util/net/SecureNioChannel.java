@@ -905,10 +905,25 @@ public class SecureNioChannel extends NioChannel {
             return 0;
         }
 
+        boolean hasRemaining = false;
+        for (int i = offset; i < offset + length; i++) {
+            if (srcs[i].hasRemaining()) {
+                hasRemaining = true;
+                break;
+            }
+        }
+        if (!hasRemaining) {
+            // Nothing left to write
+            return 0;
+        }
+
         // The data buffer is empty, we can reuse the entire buffer.
         netOutBuffer.clear();
 
+        // Data from all the source buffers is combined into the same TLS record(s)
         SSLEngineResult result = sslEngine.wrap(srcs, offset, length, netOutBuffer);
+        // Call to wrap() will have included any required handshake data
+        needHandshakeWrap = false;
         // The number of bytes written
         int written = result.bytesConsumed();
         netOutBuffer.flip();
@@ -983,6 +998,10 @@ public class SecureNioChannel extends NioChannel {
             List<Group> clientSupportedGroups, List<SignatureScheme> clientSignatureSchemes) {
         sslEngine = endpoint.createSSLEngine(hostName, clientRequestedCiphers, clientRequestedApplicationProtocols,
                 clientRequestedProtocols, clientSupportedGroups, clientSignatureSchemes);
+        int priorityClass = endpoint.getSSLHostConfig(hostName).getPriorityClass();
+        if (priorityClass >= 0) {
+            socketWrapper.setPriorityClass(priorityClass);
+        }
     }
 
 
@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tomcat.util.buf.ByteBufferUtils;
+import org.apache.tomcat.util.collections.ConcurrentObjectPool;
+
+/**
+ * A shared arena of network buffers used by {@link SocketBufferHandler} instances that obtain their buffers on demand
+ * rather than holding them for the lifetime of the connection.
+ * <p>
+ * Buffers are organised in power of two size classes from {@link #MIN_CLASS_SIZE} to {@link #MAX_CLASS_SIZE} bytes. A
+ * request is rounded up to the nearest size class and served from the idle buffers of that class if one is available.
+ * Requests larger than the largest size class are allocated directly and are not retained once released.
+ * <p>
+ * The arena may be given a limit for the total size of the buffers that are in use at any one time. A request that
+ * would exceed that limit, or that fails because the JVM is unable to allocate the memory, is recorded as an
+ * allocation failure and {@code null} is returned. Callers are expected to fall back to a non-pooled buffer in that
+ * case.
+ */
+public class SocketBufferArena {
+
+    /**
+     * The size in bytes of the smallest size class.
+     */
+    public static final int MIN_CLASS_SIZE = 1024;
+
+    /**
+     * The size in bytes of the largest size class.
+     */
+    public static final int MAX_CLASS_SIZE = 1024 * 1024;
+
+    /**
+     * The number of idle buffers retained per size class when the arena has no limit.
+     */
+    private static final int UNLIMITED_CACHE_SIZE = 1024;
+
+    private static final int MIN_CLASS_SHIFT = Integer.numberOfTrailingZeros(MIN_CLASS_SIZE);
+    private static final int CLASS_COUNT = Integer.numberOfTrailingZeros(MAX_CLASS_SIZE) - MIN_CLASS_SHIFT + 1;
+
+    private final boolean direct;
+    private final long limit;
+    private final ConcurrentObjectPool<ByteBuffer>[] idleBuffers;
+
+    private final AtomicLong bytesInUse = new AtomicLong();
+    private final AtomicLong highWaterMark = new AtomicLong();
+    private final AtomicLong allocationFailures = new AtomicLong();
+
+
+    /**
+     * Creates a new arena.
+     *
+     * @param direct {@code true} if the arena should provide direct buffers, {@code false} for heap buffers
+     * @param limit  the maximum number of bytes that may be in use at any one time or -1 for no limit
+     */
+    public SocketBufferArena(boolean direct, long limit) {
+        if (limit == 0 || limit < -1) {
+            throw new IllegalArgumentException();
+        }
+        this.direct = direct;
+        this.limit = limit;
+        @SuppressWarnings("unchecked")
+        ConcurrentObjectPool<ByteBuffer>[] idleBuffers =
+                (ConcurrentObjectPool<ByteBuffer>[]) new ConcurrentObjectPool<?>[CLASS_COUNT];
+        this.idleBuffers = idleBuffers;
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            int cacheSize = UNLIMITED_CACHE_SIZE;
+            if (limit > 0) {
+                // No point retaining more buffers of a class than could be in use at once
+                cacheSize = (int) Math.max(1, Math.min(UNLIMITED_CACHE_SIZE, limit / getClassSize(i)));
+            }
+            idleBuffers[i] = new ConcurrentObjectPool<>(cacheSize);
+        }
+    }
+
+
+    /**
+     * Does this arena provide direct buffers?
+     *
+     * @return {@code true} for direct buffers, {@code false} for heap buffers
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+
+    /**
+     * Obtain the maximum number of bytes that may be in use at any one time.
+     *
+     * @return the limit in bytes or -1 if there is no limit
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+
+    /**
+     * Obtain the total capacity of the buffers that are currently in use. Idle buffers retained by the arena are not
+     * included.
+     *
+     * @return the number of bytes in use
+     */
+    public long getBytesInUse() {
+        return bytesInUse.get();
+    }
+
+
+    /**
+     * Obtain the largest value that {@link #getBytesInUse()} has reached since this arena was created.
+     *
+     * @return the high-water mark in bytes
+     */
+    public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+
+    /**
+     * Obtain the number of requests that could not be satisfied, either because the limit would have been exceeded or
+     * because the JVM was unable to allocate the memory.
+     *
+     * @return the number of allocation failures
+     */
+    public long getAllocationFailures() {
+        return allocationFailures.get();
+    }
+
+
+    /**
+     * Obtain a cleared buffer with a capacity of at least the requested size. The buffer must be returned via
+     * {@link #release(ByteBuffer)} once it is no longer required.
+     *
+     * @param size the minimum required capacity
+     *
+     * @return the buffer or {@code null} if the request could not be satisfied
+     */
+    public ByteBuffer allocate(int size) {
+        int sizeClass = getSizeClass(size);
+        int capacity = sizeClass < 0 ? size : getClassSize(sizeClass);
+
+        long inUse = bytesInUse.addAndGet(capacity);
+        if (limit > 0 && inUse > limit) {
+            bytesInUse.addAndGet(-capacity);
+            allocationFailures.incrementAndGet();
+            return null;
+        }
+        highWaterMark.accumulateAndGet(inUse, Math::max);
+
+        ByteBuffer result = null;
+        if (sizeClass >= 0) {
+            result = idleBuffers[sizeClass].pop();
+        }
+        if (result == null) {
+            try {
+                if (direct) {
+                    result = ByteBuffer.allocateDirect(capacity);
+                } else {
+                    result = ByteBuffer.allocate(capacity);
+                }
+            } catch (OutOfMemoryError e) {
+                bytesInUse.addAndGet(-capacity);
+                allocationFailures.incrementAndGet();
+                return null;
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Return a buffer previously obtained from {@link #allocate(int)} to this arena.
+     *
+     * @param buffer the buffer to return
+     */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        bytesInUse.addAndGet(-capacity);
+        int sizeClass = getSizeClass(capacity);
+        if (sizeClass >= 0) {
+            buffer.clear();
+            if (idleBuffers[sizeClass].push(buffer)) {
+                return;
+            }
+        }
+        if (direct) {
+            ByteBufferUtils.cleanDirectBuffer(buffer);
+        }
+    }
+
+
+    /**
+     * Release all the idle buffers retained by this arena. Buffers that are in use are not affected.
+     */
+    public void clear() {
+        for (ConcurrentObjectPool<ByteBuffer> pool : idleBuffers) {
+            ByteBuffer buffer;
+            while ((buffer = pool.pop()) != null) {
+                if (direct) {
+                    ByteBufferUtils.cleanDirectBuffer(buffer);
+                }
+            }
+            // pop() is best effort so make sure nothing is left behind
+            pool.clear();
+        }
+    }
+
+
+    /*
+     * Returns the index of the smallest size class able to hold the given number of bytes or -1 if the size is larger
+     * than the largest size class.
+     */
+    private static int getSizeClass(int size) {
+        if (size > MAX_CLASS_SIZE) {
+            return -1;
+        }
+        if (size <= MIN_CLASS_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_CLASS_SHIFT;
+    }
+
+
+    private static int getClassSize(int sizeClass) {
+        return MIN_CLASS_SIZE << sizeClass;
+    }
+}
@@ -24,6 +24,11 @@ import org.apache.tomcat.util.buf.ByteBufferUtils;
 /**
  * Manages read and write {@link ByteBuffer} instances for a socket connection,
  * handling buffer state transitions between read and write modes.
+ * <p>
+ * By default the buffers are allocated when the handler is created and retained until {@link #free()} is called. If
+ * the handler is created with a {@link SocketBufferArena}, the buffers are obtained from the arena the first time they
+ * are used and returned to it when {@link #releaseIdleBuffers()}, {@link #reset()} or {@link #free()} is called so
+ * that idle connections do not hold on to network buffers.
  */
 public class SocketBufferHandler {
 
@@ -56,6 +61,12 @@ public class SocketBufferHandler {
 
     private final boolean direct;
 
+    private final SocketBufferArena arena;
+    private int readBufferSize;
+    private int writeBufferSize;
+    private boolean readBufferFromArena;
+    private boolean writeBufferFromArena;
+
     /**
      * Creates a new SocketBufferHandler with the specified buffer sizes.
      * @param readBufferSize the size of the read buffer in bytes
@@ -71,6 +82,21 @@ public class SocketBufferHandler {
             readBuffer = ByteBuffer.allocate(readBufferSize);
             writeBuffer = ByteBuffer.allocate(writeBufferSize);
         }
+        this.arena = null;
+    }
+
+
+    /**
+     * Creates a new SocketBufferHandler that obtains its buffers from the given arena when they are first required.
+     * @param readBufferSize the size of the read buffer in bytes
+     * @param writeBufferSize the size of the write buffer in bytes
+     * @param arena the arena from which buffers will be obtained
+     */
+    public SocketBufferHandler(int readBufferSize, int writeBufferSize, SocketBufferArena arena) {
+        this.direct = arena.isDirect();
+        this.arena = arena;
+        this.readBufferSize = readBufferSize;
+        this.writeBufferSize = writeBufferSize;
     }
 
 
@@ -93,7 +119,9 @@ public class SocketBufferHandler {
     private void setReadBufferConfiguredForWrite(boolean readBufferConFiguredForWrite) {
         // NO-OP if buffer is already in correct state
         if (this.readBufferConfiguredForWrite != readBufferConFiguredForWrite) {
-            if (readBufferConFiguredForWrite) {
+            if (readBuffer == null) {
+                // Not yet obtained from the arena. The buffer will be configured when it is obtained.
+            } else if (readBufferConFiguredForWrite) {
                 // Switching to write
                 int remaining = readBuffer.remaining();
                 if (remaining == 0) {
@@ -115,7 +143,21 @@ public class SocketBufferHandler {
      * @return the read buffer
      */
     public ByteBuffer getReadBuffer() {
-        return readBuffer;
+        ByteBuffer result = readBuffer;
+        if (result == null) {
+            result = arena.allocate(readBufferSize);
+            readBufferFromArena = result != null;
+            if (result == null) {
+                // Use a heap buffer so the fallback does not add to the direct memory the arena is intended to bound
+                result = ByteBuffer.allocate(readBufferSize);
+            }
+            if (!readBufferConfiguredForWrite) {
+                // Empty buffer in read mode
+                result.limit(0);
+            }
+            readBuffer = result;
+        }
+        return result;
     }
 
 
@@ -124,7 +166,10 @@ public class SocketBufferHandler {
      * @return {@code true} if the read buffer is empty
      */
     public boolean isReadBufferEmpty() {
-        if (readBufferConfiguredForWrite) {
+        ByteBuffer readBuffer = this.readBuffer;
+        if (readBuffer == null) {
+            return true;
+        } else if (readBufferConfiguredForWrite) {
             return readBuffer.position() == 0;
         } else {
             return readBuffer.remaining() == 0;
@@ -138,6 +183,7 @@ public class SocketBufferHandler {
      * @throws java.nio.BufferOverflowException if the buffer cannot accommodate the returned data
      */
     public void unReadReadBuffer(ByteBuffer returnedData) {
+        ByteBuffer readBuffer = getReadBuffer();
         if (isReadBufferEmpty()) {
             configureReadBufferForWrite();
             readBuffer.put(returnedData);
@@ -205,7 +251,9 @@ public class SocketBufferHandler {
     private void setWriteBufferConfiguredForWrite(boolean writeBufferConfiguredForWrite) {
         // NO-OP if buffer is already in correct state
         if (this.writeBufferConfiguredForWrite != writeBufferConfiguredForWrite) {
-            if (writeBufferConfiguredForWrite) {
+            if (writeBuffer == null) {
+                // Not yet obtained from the arena. The buffer will be configured when it is obtained.
+            } else if (writeBufferConfiguredForWrite) {
                 // Switching to write
                 int remaining = writeBuffer.remaining();
                 if (remaining == 0) {
@@ -229,7 +277,10 @@ public class SocketBufferHandler {
      * @return {@code true} if the write buffer can accept more data
      */
     public boolean isWriteBufferWritable() {
-        if (writeBufferConfiguredForWrite) {
+        ByteBuffer writeBuffer = this.writeBuffer;
+        if (writeBuffer == null) {
+            return true;
+        } else if (writeBufferConfiguredForWrite) {
             return writeBuffer.hasRemaining();
         } else {
             return writeBuffer.remaining() == 0;
@@ -242,7 +293,21 @@ public class SocketBufferHandler {
      * @return the write buffer
      */
     public ByteBuffer getWriteBuffer() {
-        return writeBuffer;
+        ByteBuffer result = writeBuffer;
+        if (result == null) {
+            result = arena.allocate(writeBufferSize);
+            writeBufferFromArena = result != null;
+            if (result == null) {
+                // Use a heap buffer so the fallback does not add to the direct memory the arena is intended to bound
+                result = ByteBuffer.allocate(writeBufferSize);
+            }
+            if (!writeBufferConfiguredForWrite) {
+                // Empty buffer in read mode
+                result.limit(0);
+            }
+            writeBuffer = result;
+        }
+        return result;
     }
 
 
@@ -251,7 +316,10 @@ public class SocketBufferHandler {
      * @return {@code true} if the write buffer is empty
      */
     public boolean isWriteBufferEmpty() {
-        if (writeBufferConfiguredForWrite) {
+        ByteBuffer writeBuffer = this.writeBuffer;
+        if (writeBuffer == null) {
+            return true;
+        } else if (writeBufferConfiguredForWrite) {
             return writeBuffer.position() == 0;
         } else {
             return writeBuffer.remaining() == 0;
@@ -260,21 +328,50 @@ public class SocketBufferHandler {
 
 
     /**
-     * Resets both read and write buffers to their initial empty state.
+     * Resets both read and write buffers to their initial empty state. Buffers obtained from an arena are returned to
+     * it.
      */
     public void reset() {
-        readBuffer.clear();
+        if (arena == null) {
+            readBuffer.clear();
+            writeBuffer.clear();
+        } else {
+            releaseReadBuffer();
+            releaseWriteBuffer();
+        }
         readBufferConfiguredForWrite = true;
-        writeBuffer.clear();
         writeBufferConfiguredForWrite = true;
     }
 
 
+    /**
+     * Returns any empty buffers to the arena they were obtained from. This is a NO-OP if this handler does not use an
+     * arena. The caller must ensure that no other thread is using the buffers.
+     */
+    public void releaseIdleBuffers() {
+        if (arena == null) {
+            return;
+        }
+        if (readBuffer != null && isReadBufferEmpty()) {
+            releaseReadBuffer();
+            readBufferConfiguredForWrite = true;
+        }
+        if (writeBuffer != null && isWriteBufferEmpty()) {
+            releaseWriteBuffer();
+            writeBufferConfiguredForWrite = true;
+        }
+    }
+
+
     /**
      * Expands both read and write buffers to the specified size.
      * @param newSize the new buffer size in bytes
      */
     public void expand(int newSize) {
+        if (arena != null) {
+            expandFromArena(newSize);
+            return;
+        }
         configureReadBufferForWrite();
         readBuffer = ByteBufferUtils.expand(readBuffer, newSize);
         configureWriteBufferForWrite();
@@ -285,10 +382,70 @@ public class SocketBufferHandler {
      * Releases native resources for direct buffers, if applicable.
      */
     public void free() {
-        if (direct) {
+        if (arena != null) {
+            releaseReadBuffer();
+            releaseWriteBuffer();
+        } else if (direct) {
             ByteBufferUtils.cleanDirectBuffer(readBuffer);
             ByteBufferUtils.cleanDirectBuffer(writeBuffer);
         }
     }
 
+
+    private void expandFromArena(int newSize) {
+        if (newSize > readBufferSize) {
+            readBufferSize = newSize;
+        }
+        if (readBuffer != null && readBuffer.capacity() < newSize) {
+            configureReadBufferForWrite();
+            ByteBuffer oldBuffer = readBuffer;
+            boolean oldBufferFromArena = readBufferFromArena;
+            readBuffer = null;
+            ByteBuffer newBuffer = getReadBuffer();
+            oldBuffer.flip();
+            newBuffer.put(oldBuffer);
+            release(oldBuffer, oldBufferFromArena);
+        }
+        if (newSize > writeBufferSize) {
+            writeBufferSize = newSize;
+        }
+        if (writeBuffer != null && writeBuffer.capacity() < newSize) {
+            configureWriteBufferForWrite();
+            ByteBuffer oldBuffer = writeBuffer;
+            boolean oldBufferFromArena = writeBufferFromArena;
+            writeBuffer = null;
+            ByteBuffer newBuffer = getWriteBuffer();
+            oldBuffer.flip();
+            newBuffer.put(oldBuffer);
+            release(oldBuffer, oldBufferFromArena);
+        }
+    }
+
+
+    private void releaseReadBuffer() {
+        ByteBuffer buffer = readBuffer;
+        if (buffer != null) {
+            readBuffer = null;
+            release(buffer, readBufferFromArena);
+        }
+    }
+
+
+    private void releaseWriteBuffer() {
+        ByteBuffer buffer = writeBuffer;
+        if (buffer != null) {
+            writeBuffer = null;
+            release(buffer, writeBufferFromArena);
+        }
+    }
+
+
+    private void release(ByteBuffer buffer, boolean fromArena) {
+        if (fromArena) {
+            arena.release(buffer);
+        } else if (buffer.isDirect()) {
+            ByteBufferUtils.cleanDirectBuffer(buffer);
+        }
+    }
+
 }
@@ -19,12 +19,14 @@ package org.apache.tomcat.util.net;
 import java.util.Objects;
 import java.util.concurrent.locks.Lock;
 
+import org.apache.tomcat.util.threads.Prioritized;
+
 /**
  * Base class for socket processors that handle I/O events on a wrapped socket.
  * Subclasses implement {@link #doRun()} to define the processing logic.
  * @param <S> the type of the socket associated with the wrapper
  */
-public abstract class SocketProcessorBase<S> implements Runnable {
+public abstract class SocketProcessorBase<S> implements Runnable, Prioritized {
 
     /**
      * The socket wrapper that provides access to the underlying socket and its state.
@@ -58,6 +60,16 @@ public abstract class SocketProcessorBase<S> implements Runnable {
     }
 
 
+    @Override
+    public int getPriorityClass() {
+        SocketWrapperBase<S> socketWrapper = this.socketWrapper;
+        if (socketWrapper == null) {
+            return -1;
+        }
+        return socketWrapper.getPriorityClass();
+    }
+
+
     @Override
     public final void run() {
         Lock lock = socketWrapper.getLock();
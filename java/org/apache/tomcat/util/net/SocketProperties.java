@@ -52,7 +52,7 @@ public class SocketProperties {
      * Enable/disable poller event cache, this bounded cache stores PollerEvent objects to reduce GC for the poller
      * <p>
      * Default is 0<br>
-     * -1 is unlimited<br>
+     * -1 is unlimited (in practice, twice maxConnections or 16384 if maxConnections is unlimited)<br>
      * 0 is disabled<br>
      * &gt;0 the max number of objects to keep in cache.
      */
@@ -108,6 +108,17 @@ public class SocketProperties {
      */
     protected int bufferPoolSize = -2;
 
+    /**
+     * Maximum number of bytes of network buffers that may be in use at any one time when the network buffers are
+     * obtained from a shared arena. When the arena is enabled each connection only holds network buffers while it is
+     * reading or writing and returns them to the arena when it is idle.
+     * <p>
+     * -1 means the arena is used without a limit<br>
+     * 0 means the arena is not used and each connection allocates its own buffers<br>
+     * Default value is 0
+     */
+    protected long bufferArenaSize = 0;
+
     /**
      * TCP_NO_DELAY option. JVM default used if not set.
      */
@@ -414,6 +425,14 @@ public class SocketProperties {
         return bufferPoolSize;
     }
 
+    /**
+     * Returns the maximum number of bytes of network buffers that may be in use when a shared buffer arena is used.
+     * @return the buffer arena size in bytes, -1 for unlimited or 0 if the arena is disabled
+     */
+    public long getBufferArenaSize() {
+        return bufferArenaSize;
+    }
+
     /**
      * Returns the poller event cache size.
      * @return the event cache size
@@ -590,6 +609,14 @@ public class SocketProperties {
         this.bufferPoolSize = bufferPoolSize;
     }
 
+    /**
+     * Sets the maximum number of bytes of network buffers that may be in use when a shared buffer arena is used.
+     * @param bufferArenaSize the buffer arena size in bytes, -1 for unlimited or 0 to disable the arena
+     */
+    public void setBufferArenaSize(long bufferArenaSize) {
+        this.bufferArenaSize = bufferArenaSize;
+    }
+
     /**
      * Sets the poller event cache size.
      * @param eventCache the event cache size
@@ -24,6 +24,7 @@ import java.nio.channels.CompletionHandler;
 import java.nio.channels.InterruptedByTimeoutException;
 import java.nio.channels.ReadPendingException;
 import java.nio.channels.WritePendingException;
+import java.util.Arrays;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
@@ -104,6 +105,9 @@ public abstract class SocketWrapperBase<E> {
     /** SNI host name. */
     protected String sniHostName = null;
 
+    /** Priority class used when queueing work for this socket. */
+    private volatile int priorityClass;
+
     /**
      * Used to record the first IOException that occurs during non-blocking read/writes that can't be usefully
      * propagated up the stack since there is no user code or appropriate container code in the stack to handle it.
@@ -129,6 +133,12 @@ public abstract class SocketWrapperBase<E> {
      */
     protected final WriteBuffer nonBlockingWriteBuffer = new WriteBuffer(bufferedWriteSize);
 
+    /*
+     * Used by blocking gathering writes to combine the socket write buffer with the buffers being written. Only one
+     * blocking write is in progress at a time so the array is re-used rather than allocated for every write.
+     */
+    private ByteBuffer[] gatheringWriteBuffers = null;
+
     /*
      * Asynchronous operations.
      */
@@ -164,6 +174,7 @@ public abstract class SocketWrapperBase<E> {
             writePending = null;
         }
         connectionId = Long.toHexString(connectionIdGenerator.getAndIncrement());
+        priorityClass = endpoint.getPriorityClass();
     }
 
     /**
@@ -310,6 +321,26 @@ public abstract class SocketWrapperBase<E> {
         this.sniHostName = sniHostName;
     }
 
+    /**
+     * Returns the priority class used when work for this socket is queued by an executor that uses a
+     * {@link org.apache.tomcat.util.threads.PriorityTaskQueue}.
+     *
+     * @return the priority class
+     */
+    public int getPriorityClass() {
+        return priorityClass;
+    }
+
+    /**
+     * Sets the priority class used when work for this socket is queued. The new priority class applies to work that is
+     * queued after this call.
+     *
+     * @param priorityClass the priority class
+     */
+    public void setPriorityClass(int priorityClass) {
+        this.priorityClass = priorityClass;
+    }
+
     /**
      * Set the timeout for reading. Values of zero or less will be changed to -1.
      *
@@ -484,6 +515,18 @@ public abstract class SocketWrapperBase<E> {
         return socketBufferHandler;
     }
 
+    /**
+     * Returns any network buffers that are empty to the arena they were obtained from so that they are not held while
+     * the connection is idle. This is a NO-OP if the connection does not obtain its buffers from an arena. Must only be
+     * called when no other thread may be reading from or writing to the socket, such as between keep-alive requests.
+     */
+    public void releaseIdleBuffers() {
+        SocketBufferHandler socketBufferHandler = this.socketBufferHandler;
+        if (socketBufferHandler != null) {
+            socketBufferHandler.releaseIdleBuffers();
+        }
+    }
+
     /**
      * Checks if there is data available to read from the socket.
      *
@@ -763,6 +806,36 @@ public abstract class SocketWrapperBase<E> {
     }
 
 
+    /**
+     * Writes the provided data to the socket in the order the buffers are provided. The result is the same as calling
+     * {@link #write(boolean, ByteBuffer)} for each buffer in turn.
+     * <p>
+     * For blocking writes, if the data will fit in the space remaining in the socket write buffer, the data is copied
+     * to the socket write buffer. Otherwise, any data already in the socket write buffer and all the provided data are
+     * written to the network with a single gathering write without copying the provided data.
+     *
+     * @param block  <code>true</code> if a blocking write should be used, otherwise a non-blocking write will be used
+     * @param from   The ByteBuffers containing the data to be written
+     * @param offset The offset within the array of the first buffer to be written
+     * @param length The number of buffers to be written
+     *
+     * @throws IOException If an IO error occurs during the write
+     */
+    public final void write(boolean block, ByteBuffer[] from, int offset, int length) throws IOException {
+        if (from == null || length == 0) {
+            return;
+        }
+
+        if (block && nonBlockingWriteBuffer.isEmpty()) {
+            writeBlocking(from, offset, length);
+        } else {
+            for (int i = offset; i < offset + length; i++) {
+                write(block, from[i]);
+            }
+        }
+    }
+
+
     /**
      * Writes the provided data to the socket write buffer. If the socket write buffer fills during the write, the
      * content of the socket write buffer is written to the network using a blocking write. Once that blocking write is
@@ -816,6 +889,52 @@ public abstract class SocketWrapperBase<E> {
     }
 
 
+    /**
+     * Writes the provided data to the network using a single, blocking, gathering write that also includes any data
+     * already in the socket write buffer. If all the data will fit in the space remaining in the socket write buffer,
+     * it is copied to the socket write buffer instead. On completion of this method there will always be space
+     * remaining in the socket write buffer.
+     *
+     * @param from   The ByteBuffers containing the data to be written
+     * @param offset The offset within the array of the first buffer to be written
+     * @param length The number of buffers to be written
+     *
+     * @throws IOException If an IO error occurs during the write
+     */
+    protected void writeBlocking(ByteBuffer[] from, int offset, int length) throws IOException {
+        long remaining = 0;
+        for (int i = offset; i < offset + length; i++) {
+            remaining += from[i].remaining();
+        }
+        if (remaining == 0) {
+            return;
+        }
+        socketBufferHandler.configureWriteBufferForWrite();
+        ByteBuffer writeBuffer = socketBufferHandler.getWriteBuffer();
+        if (remaining < writeBuffer.remaining()) {
+            // Small writes are buffered so they can be combined with subsequent writes
+            for (int i = offset; i < offset + length; i++) {
+                transfer(from[i], writeBuffer);
+            }
+            return;
+        }
+        socketBufferHandler.configureWriteBufferForRead();
+        ByteBuffer[] buffers = gatheringWriteBuffers;
+        if (buffers == null || buffers.length <= length) {
+            buffers = new ByteBuffer[length + 1];
+            gatheringWriteBuffers = buffers;
+        }
+        buffers[0] = writeBuffer;
+        System.arraycopy(from, offset, buffers, 1, length);
+        try {
+            doWrite(true, buffers, 0, length + 1);
+        } finally {
+            // Don't retain references to the buffers that were written
+            Arrays.fill(buffers, 1, length + 1, null);
+        }
+    }
+
+
     /**
      * Transfers the data to the socket write buffer (writing that data to the socket if the buffer fills up using a
      * non-blocking write) until either all the data has been transferred and space remains in the socket write buffer
@@ -982,6 +1101,33 @@ public abstract class SocketWrapperBase<E> {
     protected abstract void doWrite(boolean block, ByteBuffer from) throws IOException;
 
 
+    /**
+     * Write the contents of the ByteBuffers to the socket, in order. For blocking writes either then entire contents of
+     * the buffers will be written or an IOException will be thrown. Partial blocking writes will not occur.
+     * <p>
+     * The default implementation writes each buffer in turn. Implementations that can write multiple buffers with a
+     * single gathering write should override this method.
+     *
+     * @param block  Should the write be blocking or not?
+     * @param from   the ByteBuffers containing the data to be written
+     * @param offset The offset within the array of the first buffer to be written
+     * @param length The number of buffers to be written
+     *
+     * @throws IOException If an I/O error such as a timeout occurs during the write
+     */
+    protected void doWrite(boolean block, ByteBuffer[] from, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            if (from[i].hasRemaining()) {
+                doWrite(block, from[i]);
+                if (from[i].hasRemaining()) {
+                    // Incomplete non-blocking write
+                    return;
+                }
+            }
+        }
+    }
+
+
     /**
      * Processes a socket event.
      *
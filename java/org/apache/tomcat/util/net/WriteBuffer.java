@@ -46,7 +46,10 @@ public class WriteBuffer {
         this.bufferSize = bufferSize;
     }
 
-    void clear() {
+    /**
+     * Discards any buffered data.
+     */
+    public void clear() {
         buffers.clear();
     }
 
@@ -111,7 +114,17 @@ public class WriteBuffer {
     }
 
 
-    boolean write(SocketWrapperBase<?> socketWrapper, boolean blocking) throws IOException {
+    /**
+     * Writes the buffered data to the given socket.
+     *
+     * @param socketWrapper The socket to write to
+     * @param blocking      Whether to use blocking writes
+     *
+     * @return {@code true} if data is left unwritten, {@code false} otherwise
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public boolean write(SocketWrapperBase<?> socketWrapper, boolean blocking) throws IOException {
         Iterator<ByteBufferHolder> bufIter = buffers.iterator();
         boolean dataLeft = false;
         while (!dataLeft && bufIter.hasNext()) {
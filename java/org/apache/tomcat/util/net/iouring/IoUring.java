@@ -0,0 +1,492 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net.iouring;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * A single io_uring instance. The submission and completion queues are shared with the kernel via memory mappings and
+ * are accessed without locking. Instances are therefore not thread safe and, once created, must only be used by a
+ * single thread.
+ */
+final class IoUring {
+
+    private static final Log log = LogFactory.getLog(IoUring.class);
+    private static final StringManager sm = StringManager.getManager(IoUring.class);
+
+    static final byte IORING_OP_POLL_ADD = 6;
+    static final byte IORING_OP_TIMEOUT = 11;
+    static final byte IORING_OP_ACCEPT = 13;
+    static final byte IORING_OP_ASYNC_CANCEL = 14;
+    static final byte IORING_OP_READ = 22;
+    static final byte IORING_OP_RECV = 27;
+    static final byte IORING_OP_SPLICE = 30;
+
+    static final byte IOSQE_IO_LINK = 1 << 2;
+
+    /*
+     * The operations used by the endpoint. All were introduced by Linux 5.7.
+     */
+    private static final byte[] REQUIRED_OPERATIONS = { IORING_OP_POLL_ADD, IORING_OP_TIMEOUT, IORING_OP_ACCEPT,
+            IORING_OP_ASYNC_CANCEL, IORING_OP_READ, IORING_OP_RECV, IORING_OP_SPLICE };
+
+    private static final int IORING_SETUP_CLAMP = 1 << 4;
+    private static final int IORING_SETUP_SUBMIT_ALL = 1 << 7;
+    private static final int IORING_SETUP_COOP_TASKRUN = 1 << 8;
+    private static final int IORING_FEAT_SINGLE_MMAP = 1 << 0;
+    private static final int IORING_FEAT_NODROP = 1 << 1;
+    private static final int IORING_ENTER_GETEVENTS = 1 << 0;
+    private static final int IORING_REGISTER_PROBE = 8;
+    private static final int IO_URING_OP_SUPPORTED = 1 << 0;
+
+    private static final long IORING_OFF_SQ_RING = 0L;
+    private static final long IORING_OFF_CQ_RING = 0x8000000L;
+    private static final long IORING_OFF_SQES = 0x10000000L;
+
+    /*
+     * struct io_uring_params together with the embedded struct io_sqring_offsets and struct io_cqring_offsets
+     */
+    private static final int PARAMS_SIZE = 120;
+    private static final int PARAMS_SQ_ENTRIES = 0;
+    private static final int PARAMS_CQ_ENTRIES = 4;
+    private static final int PARAMS_FLAGS = 8;
+    private static final int PARAMS_FEATURES = 20;
+    private static final int PARAMS_SQ_OFF = 40;
+    private static final int PARAMS_CQ_OFF = 80;
+    private static final int SQ_OFF_HEAD = 0;
+    private static final int SQ_OFF_TAIL = 4;
+    private static final int SQ_OFF_RING_MASK = 8;
+    private static final int SQ_OFF_ARRAY = 24;
+    private static final int CQ_OFF_HEAD = 0;
+    private static final int CQ_OFF_TAIL = 4;
+    private static final int CQ_OFF_RING_MASK = 8;
+    private static final int CQ_OFF_CQES = 20;
+
+    /*
+     * struct io_uring_sqe
+     */
+    private static final int SQE_SIZE = 64;
+    private static final int SQE_OPCODE = 0;
+    private static final int SQE_FLAGS = 1;
+    private static final int SQE_FD = 4;
+    private static final int SQE_OFF = 8;
+    private static final int SQE_ADDR = 16;
+    private static final int SQE_LEN = 24;
+    private static final int SQE_OP_FLAGS = 28;
+    private static final int SQE_USER_DATA = 32;
+    private static final int SQE_SPLICE_FD_IN = 44;
+
+    /*
+     * struct io_uring_cqe
+     */
+    private static final int CQE_SIZE = 16;
+    private static final int CQE_USER_DATA = 0;
+    private static final int CQE_RES = 8;
+
+    private static final Support SUPPORT = new Support();
+
+
+    /**
+     * Receives the completions reaped by {@link IoUring#processCompletions(CompletionHandler)}.
+     */
+    interface CompletionHandler {
+
+        /**
+         * Process a single completion.
+         *
+         * @param userData the user data provided when the operation was submitted
+         * @param res      the result of the operation
+         */
+        void completed(long userData, int res);
+    }
+
+
+    private final Arena arena = Arena.ofShared();
+    private final int ringFd;
+    private final int features;
+
+    private final long sqRingAddress;
+    private final long sqRingSize;
+    private final long cqRingAddress;
+    private final long cqRingSize;
+    private final long sqesAddress;
+    private final long sqesSize;
+
+    private final MemorySegment sqRing;
+    private final MemorySegment cqRing;
+    private final MemorySegment sqes;
+
+    private final int sqHeadOffset;
+    private final int sqTailOffset;
+    private final int sqMask;
+    private final int sqEntries;
+    private final int cqHeadOffset;
+    private final int cqTailOffset;
+    private final int cqMask;
+    private final int cqesOffset;
+
+    /*
+     * Local copy of the submission queue tail. Only published to the kernel by submit().
+     */
+    private int sqTail;
+    private int toSubmit;
+    private boolean closed = false;
+
+
+    /**
+     * Create a new io_uring instance.
+     *
+     * @param entries the requested number of submission queue entries. The kernel will round this up to a power of
+     *                    two and may limit it.
+     *
+     * @throws IOException if the instance could not be created
+     */
+    IoUring(int entries) throws IOException {
+        MemorySegment params = arena.allocate(PARAMS_SIZE);
+        params.set(ValueLayout.JAVA_INT, PARAMS_FLAGS,
+                IORING_SETUP_CLAMP | IORING_SETUP_SUBMIT_ALL | IORING_SETUP_COOP_TASKRUN);
+        int fd = Native.ioUringSetup(entries, params.address());
+        if (fd == -Native.EINVAL) {
+            // Older kernels do not support all the flags
+            params.fill((byte) 0);
+            params.set(ValueLayout.JAVA_INT, PARAMS_FLAGS, IORING_SETUP_CLAMP);
+            fd = Native.ioUringSetup(entries, params.address());
+        }
+        if (fd < 0) {
+            arena.close();
+            throw new IOException(sm.getString("ioUring.setupFailed", Native.strerror(fd)));
+        }
+        ringFd = fd;
+        features = params.get(ValueLayout.JAVA_INT, PARAMS_FEATURES);
+        sqEntries = params.get(ValueLayout.JAVA_INT, PARAMS_SQ_ENTRIES);
+        int cqEntries = params.get(ValueLayout.JAVA_INT, PARAMS_CQ_ENTRIES);
+
+        sqHeadOffset = params.get(ValueLayout.JAVA_INT, PARAMS_SQ_OFF + SQ_OFF_HEAD);
+        sqTailOffset = params.get(ValueLayout.JAVA_INT, PARAMS_SQ_OFF + SQ_OFF_TAIL);
+        int sqMaskOffset = params.get(ValueLayout.JAVA_INT, PARAMS_SQ_OFF + SQ_OFF_RING_MASK);
+        int sqArrayOffset = params.get(ValueLayout.JAVA_INT, PARAMS_SQ_OFF + SQ_OFF_ARRAY);
+        cqHeadOffset = params.get(ValueLayout.JAVA_INT, PARAMS_CQ_OFF + CQ_OFF_HEAD);
+        cqTailOffset = params.get(ValueLayout.JAVA_INT, PARAMS_CQ_OFF + CQ_OFF_TAIL);
+        int cqMaskOffset = params.get(ValueLayout.JAVA_INT, PARAMS_CQ_OFF + CQ_OFF_RING_MASK);
+        cqesOffset = params.get(ValueLayout.JAVA_INT, PARAMS_CQ_OFF + CQ_OFF_CQES);
+
+        long sqSize = sqArrayOffset + (long) sqEntries * Integer.BYTES;
+        long cqSize = cqesOffset + (long) cqEntries * CQE_SIZE;
+        boolean singleMmap = (features & IORING_FEAT_SINGLE_MMAP) != 0;
+        if (singleMmap) {
+            sqSize = Math.max(sqSize, cqSize);
+            cqSize = sqSize;
+        }
+
+        long sqAddress = Native.mmap(sqSize, ringFd, IORING_OFF_SQ_RING);
+        long cqAddress = sqAddress;
+        long sqesAddress = -1;
+        if (sqAddress >= 0 && !singleMmap) {
+            cqAddress = Native.mmap(cqSize, ringFd, IORING_OFF_CQ_RING);
+        }
+        if (cqAddress >= 0) {
+            sqesAddress = Native.mmap((long) sqEntries * SQE_SIZE, ringFd, IORING_OFF_SQES);
+        }
+        if (sqAddress < 0 || cqAddress < 0 || sqesAddress < 0) {
+            int errno = (int) Math.min(Math.min(sqAddress, cqAddress), sqesAddress);
+            if (sqAddress >= 0) {
+                Native.munmap(sqAddress, sqSize);
+            }
+            if (cqAddress >= 0 && !singleMmap) {
+                Native.munmap(cqAddress, cqSize);
+            }
+            Native.close(ringFd);
+            arena.close();
+            throw new IOException(sm.getString("ioUring.mmapFailed", Native.strerror(errno)));
+        }
+        this.sqRingAddress = sqAddress;
+        this.sqRingSize = sqSize;
+        this.cqRingAddress = cqAddress;
+        this.cqRingSize = cqSize;
+        this.sqesAddress = sqesAddress;
+        this.sqesSize = (long) sqEntries * SQE_SIZE;
+
+        sqRing = MemorySegment.ofAddress(sqAddress).reinterpret(sqSize);
+        cqRing = MemorySegment.ofAddress(cqAddress).reinterpret(cqSize);
+        sqes = MemorySegment.ofAddress(sqesAddress).reinterpret(sqesSize);
+        sqMask = sqRing.get(ValueLayout.JAVA_INT, sqMaskOffset);
+        cqMask = cqRing.get(ValueLayout.JAVA_INT, cqMaskOffset);
+
+        // Each slot of the submission queue always refers to the SQE with the same index
+        for (int i = 0; i < sqEntries; i++) {
+            sqRing.set(ValueLayout.JAVA_INT, sqArrayOffset + (long) i * Integer.BYTES, i);
+        }
+        sqTail = sqRing.get(ValueLayout.JAVA_INT, sqTailOffset);
+
+        if ((features & IORING_FEAT_NODROP) == 0 && log.isDebugEnabled()) {
+            log.debug(sm.getString("ioUring.noNoDrop"));
+        }
+    }
+
+
+    /**
+     * Obtain the number of entries in the submission queue.
+     *
+     * @return the size of the submission queue
+     */
+    int getSubmissionQueueEntries() {
+        return sqEntries;
+    }
+
+
+    /**
+     * Obtain the number of free entries in the submission queue.
+     *
+     * @return the number of entries that may be prepared before {@link #submit(boolean)} must be called
+     */
+    int getSubmissionQueueSpace() {
+        int head = sqRing.get(ValueLayout.JAVA_INT, sqHeadOffset);
+        VarHandle.acquireFence();
+        return sqEntries - (sqTail - head);
+    }
+
+
+    /**
+     * Add an entry to the submission queue. The caller must first ensure that there is space in the queue.
+     *
+     * @param opcode     the operation
+     * @param flags      the IOSQE_* flags for the entry
+     * @param fd         the file descriptor the operation applies to
+     * @param off        the offset, the second address or, for SPLICE, the output offset
+     * @param addr       the address or, for SPLICE, the input offset
+     * @param len        the length
+     * @param opFlags    the operation specific flags
+     * @param spliceFdIn the input file descriptor for SPLICE, otherwise zero
+     * @param userData   the value that will be provided with the completion of the operation
+     */
+    void prepare(byte opcode, byte flags, int fd, long off, long addr, int len, int opFlags, int spliceFdIn,
+            long userData) {
+        long sqe = (long) (sqTail & sqMask) * SQE_SIZE;
+        sqes.asSlice(sqe, SQE_SIZE).fill((byte) 0);
+        sqes.set(ValueLayout.JAVA_BYTE, sqe + SQE_OPCODE, opcode);
+        sqes.set(ValueLayout.JAVA_BYTE, sqe + SQE_FLAGS, flags);
+        sqes.set(ValueLayout.JAVA_INT, sqe + SQE_FD, fd);
+        sqes.set(ValueLayout.JAVA_LONG, sqe + SQE_OFF, off);
+        sqes.set(ValueLayout.JAVA_LONG, sqe + SQE_ADDR, addr);
+        sqes.set(ValueLayout.JAVA_INT, sqe + SQE_LEN, len);
+        sqes.set(ValueLayout.JAVA_INT, sqe + SQE_OP_FLAGS, opFlags);
+        sqes.set(ValueLayout.JAVA_LONG, sqe + SQE_USER_DATA, userData);
+        sqes.set(ValueLayout.JAVA_INT, sqe + SQE_SPLICE_FD_IN, spliceFdIn);
+        sqTail++;
+        toSubmit++;
+    }
+
+
+    /**
+     * Submit the prepared entries to the kernel with a single system call, optionally waiting for at least one
+     * completion.
+     *
+     * @param wait {@code true} to block until at least one completion is available
+     *
+     * @return the number of entries submitted
+     *
+     * @throws IOException if the kernel reports an error other than a transient one
+     */
+    int submit(boolean wait) throws IOException {
+        // Publish the new entries before the kernel reads the tail
+        VarHandle.releaseFence();
+        sqRing.set(ValueLayout.JAVA_INT, sqTailOffset, sqTail);
+        VarHandle.fullFence();
+        int minComplete = 0;
+        int flags = 0;
+        if (wait && !hasCompletions()) {
+            minComplete = 1;
+            flags = IORING_ENTER_GETEVENTS;
+        }
+        if (toSubmit == 0 && minComplete == 0) {
+            return 0;
+        }
+        int result = Native.ioUringEnter(ringFd, toSubmit, minComplete, flags);
+        if (result < 0) {
+            if (result == -Native.EINTR || result == -Native.EAGAIN || result == -Native.ETIME ||
+                    result == -16 /* EBUSY */) {
+                // Transient. The completion queue needs to be drained or the call needs to be repeated.
+                return 0;
+            }
+            throw new IOException(sm.getString("ioUring.enterFailed", Native.strerror(result)));
+        }
+        toSubmit -= result;
+        return result;
+    }
+
+
+    private boolean hasCompletions() {
+        int head = cqRing.get(ValueLayout.JAVA_INT, cqHeadOffset);
+        int tail = cqRing.get(ValueLayout.JAVA_INT, cqTailOffset);
+        VarHandle.acquireFence();
+        return head != tail;
+    }
+
+
+    /**
+     * Pass all the available completions to the given handler.
+     *
+     * @param handler the handler for the completions
+     *
+     * @return the number of completions processed
+     */
+    int processCompletions(CompletionHandler handler) {
+        int head = cqRing.get(ValueLayout.JAVA_INT, cqHeadOffset);
+        int tail = cqRing.get(ValueLayout.JAVA_INT, cqTailOffset);
+        VarHandle.acquireFence();
+        int count = 0;
+        while (head != tail) {
+            long cqe = cqesOffset + (long) (head & cqMask) * CQE_SIZE;
+            long userData = cqRing.get(ValueLayout.JAVA_LONG, cqe + CQE_USER_DATA);
+            int res = cqRing.get(ValueLayout.JAVA_INT, cqe + CQE_RES);
+            head++;
+            count++;
+            // Release the entry before the handler runs as the handler may submit further operations
+            VarHandle.releaseFence();
+            cqRing.set(ValueLayout.JAVA_INT, cqHeadOffset, head);
+            try {
+                handler.completed(userData, res);
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                log.error(sm.getString("ioUring.completionError"), t);
+            }
+            if (head == tail) {
+                tail = cqRing.get(ValueLayout.JAVA_INT, cqTailOffset);
+                VarHandle.acquireFence();
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * Allocate native memory that will remain valid until this instance is closed.
+     *
+     * @param size the number of bytes required
+     *
+     * @return the zeroed memory
+     */
+    MemorySegment allocate(long size) {
+        return arena.allocate(size, Long.BYTES);
+    }
+
+
+    /**
+     * Close this instance. Any operations that have not completed are cancelled by the kernel.
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Native.munmap(sqesAddress, sqesSize);
+        Native.munmap(sqRingAddress, sqRingSize);
+        if (cqRingAddress != sqRingAddress) {
+            Native.munmap(cqRingAddress, cqRingSize);
+        }
+        Native.close(ringFd);
+        arena.close();
+    }
+
+
+    /**
+     * Can io_uring be used on this system? This requires a supported platform, a kernel that supports io_uring and all
+     * the operations used by the endpoint, and that io_uring has not been disabled (e.g. by a seccomp filter or the
+     * {@code kernel.io_uring_disabled} sysctl).
+     *
+     * @return {@code true} if io_uring may be used
+     */
+    static boolean isSupported() {
+        return SUPPORT.supported;
+    }
+
+
+    /**
+     * Obtain the reason io_uring may not be used.
+     *
+     * @return the reason or {@code null} if io_uring may be used
+     */
+    static String getUnsupportedReason() {
+        return SUPPORT.reason;
+    }
+
+
+    /*
+     * Lazily evaluated once, the first time support is checked.
+     */
+    private static final class Support {
+
+        private final boolean supported;
+        private final String reason;
+
+        private Support() {
+            String reason = null;
+            try {
+                if (!Native.isPlatformSupported()) {
+                    reason = sm.getString("ioUring.platform", System.getProperty("os.name"),
+                            System.getProperty("os.arch"));
+                } else {
+                    reason = probe();
+                }
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                reason = t.toString();
+            }
+            this.reason = reason;
+            this.supported = reason == null;
+        }
+
+        private static String probe() {
+            try (Arena arena = Arena.ofConfined()) {
+                MemorySegment params = arena.allocate(PARAMS_SIZE);
+                int fd = Native.ioUringSetup(2, params.address());
+                if (fd < 0) {
+                    return sm.getString("ioUring.setupFailed", Native.strerror(fd));
+                }
+                try {
+                    // struct io_uring_probe is 16 bytes followed by 8 bytes per operation
+                    int opCount = 256;
+                    MemorySegment probe = arena.allocate(16 + opCount * 8L);
+                    int result = Native.ioUringRegister(fd, IORING_REGISTER_PROBE, probe.address(), opCount);
+                    if (result < 0) {
+                        return sm.getString("ioUring.probeFailed", Native.strerror(result));
+                    }
+                    int opsLen = probe.get(ValueLayout.JAVA_BYTE, 1) & 0xff;
+                    for (byte op : REQUIRED_OPERATIONS) {
+                        // struct io_uring_probe_op { u8 op; u8 resv; u16 flags; u32 resv2; }
+                        if (op >= opsLen || (probe.get(ValueLayout.JAVA_SHORT, 16 + op * 8L + 2) &
+                                IO_URING_OP_SUPPORTED) == 0) {
+                            return sm.getString("ioUring.opNotSupported", Integer.toString(op));
+                        }
+                    }
+                } finally {
+                    Native.close(fd);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,1984 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net.iouring;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.net.BindException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.collections.MpscQueue;
+import org.apache.tomcat.util.collections.SynchronizedStack;
+import org.apache.tomcat.util.net.AbstractEndpoint;
+import org.apache.tomcat.util.net.AbstractEndpoint.Handler.SocketState;
+import org.apache.tomcat.util.net.ApplicationBufferHandler;
+import org.apache.tomcat.util.net.SSLSupport;
+import org.apache.tomcat.util.net.SendfileDataBase;
+import org.apache.tomcat.util.net.SendfileState;
+import org.apache.tomcat.util.net.SocketBufferHandler;
+import org.apache.tomcat.util.net.SocketEvent;
+import org.apache.tomcat.util.net.SocketProcessorBase;
+import org.apache.tomcat.util.net.SocketProperties;
+import org.apache.tomcat.util.net.SocketWrapperBase;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Linux io_uring endpoint implementation, accessed via the Foreign Function and Memory API.
+ * <p>
+ * A single ring thread (the Poller) owns the io_uring instance. Other threads hand operations to it via a lock-free
+ * queue and the ring thread submits all the operations queued since the previous iteration to the kernel, and reaps
+ * the available completions, with a single system call. Accepts, the reads that wait for the next request on a
+ * connection and sendfile (via splice) are performed by the kernel and the results dispatched to the executor as
+ * socket events. Reads and writes on a container thread are attempted directly and only fall back to the ring when
+ * they would block.
+ * <p>
+ * This endpoint does not support TLS. It requires Linux 5.7 or later and the Foreign Function and Memory API (Java 22
+ * or later). Use {@link #isSupported()} to test whether it may be used.
+ */
+public class IoUringEndpoint extends AbstractEndpoint<Integer,Integer> {
+
+    // -------------------------------------------------------------- Constants
+
+    private static final Log log = LogFactory.getLog(IoUringEndpoint.class);
+    private static final StringManager sm = StringManager.getManager(IoUringEndpoint.class);
+
+    /**
+     * The socket value used by wrappers that have been closed.
+     */
+    private static final Integer CLOSED_SOCKET = Integer.valueOf(-1);
+
+    /*
+     * The user data of an operation is its slot in the Poller shifted by this amount plus a tag that identifies the
+     * entry within the operation. Slot zero is reserved for the Poller's own entries.
+     */
+    private static final int SLOT_SHIFT = 8;
+    private static final long USER_DATA_IGNORE = 0;
+    private static final long USER_DATA_WAKEUP = 1;
+    private static final long USER_DATA_TIMER = 2;
+
+    /*
+     * Sendfile moves the file content to the socket via a pipe. This is the default capacity of a pipe on Linux.
+     */
+    private static final int SENDFILE_CHUNK_SIZE = 64 * 1024;
+
+
+    /**
+     * Can this endpoint be used on the current system?
+     *
+     * @return {@code true} if the platform, the kernel and the JVM all support the features required by this endpoint
+     */
+    public static boolean isSupported() {
+        return IoUring.isSupported();
+    }
+
+
+    /**
+     * Obtain the reason this endpoint cannot be used on the current system.
+     *
+     * @return the reason or {@code null} if the endpoint may be used
+     */
+    public static String getUnsupportedReason() {
+        return IoUring.getUnsupportedReason();
+    }
+
+
+    // ----------------------------------------------------------------- Fields
+
+    /**
+     * Server socket.
+     */
+    private volatile SocketHandle serverSocket = null;
+
+    /**
+     * The ring thread.
+     */
+    private volatile Poller poller = null;
+
+
+    // ------------------------------------------------------------- Properties
+
+    private int pollerThreadPriority = Thread.NORM_PRIORITY;
+
+    /**
+     * Set the priority of the ring thread.
+     *
+     * @param pollerThreadPriority The thread priority
+     */
+    public void setPollerThreadPriority(int pollerThreadPriority) {
+        this.pollerThreadPriority = pollerThreadPriority;
+    }
+
+    /**
+     * Get the priority of the ring thread.
+     *
+     * @return the thread priority
+     */
+    public int getPollerThreadPriority() {
+        return pollerThreadPriority;
+    }
+
+
+    private int ringEntries = 1024;
+
+    /**
+     * Set the number of entries in the io_uring submission queue. This is the maximum number of operations that may
+     * be submitted to the kernel with a single system call. The kernel rounds the value up to the next power of two.
+     *
+     * @param ringEntries The number of submission queue entries
+     */
+    public void setRingEntries(int ringEntries) {
+        this.ringEntries = ringEntries;
+    }
+
+    /**
+     * Get the number of entries in the io_uring submission queue.
+     *
+     * @return the number of submission queue entries
+     */
+    public int getRingEntries() {
+        return ringEntries;
+    }
+
+
+    private boolean asyncIORequested = false;
+
+    /**
+     * The asynchronous, vectored I/O API is not supported by this endpoint. Enabling it will cause the endpoint to
+     * fail to bind.
+     *
+     * @param useAsyncIO True to enable asynchronous IO
+     */
+    @Override
+    public void setUseAsyncIO(boolean useAsyncIO) {
+        asyncIORequested = useAsyncIO;
+    }
+
+    /**
+     * This endpoint does not provide the asynchronous, vectored I/O API.
+     *
+     * @return {@code false}
+     */
+    @Override
+    public boolean getUseAsyncIO() {
+        return false;
+    }
+
+
+    /**
+     * Number of keep-alive sockets, i.e. connections waiting for the kernel to provide the next request.
+     *
+     * @return The number of sockets currently in the keep-alive state waiting for the next request to be received on
+     *             the socket
+     */
+    public int getKeepAliveCount() {
+        int count = 0;
+        for (SocketWrapperBase<Integer> socketWrapper : connections.values()) {
+            if (((IoUringSocketWrapper) socketWrapper).pendingReceive != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+    @Override
+    public void bind() throws Exception {
+        if (isSSLEnabled()) {
+            throw new IllegalArgumentException(sm.getString("endpoint.ssl"));
+        }
+        if (asyncIORequested) {
+            throw new IllegalArgumentException(sm.getString("endpoint.asyncIO"));
+        }
+        if (!isSupported()) {
+            throw new IOException(sm.getString("endpoint.unsupported", getUnsupportedReason()));
+        }
+
+        InetAddress address = getAddress();
+        int family = Native.AF_INET6;
+        if (address != null && !(address instanceof Inet6Address)) {
+            family = Native.AF_INET;
+        }
+        int fd = Native.socket(family, Native.SOCK_STREAM | Native.SOCK_CLOEXEC, 0);
+        if (fd == -Native.EAFNOSUPPORT && address == null) {
+            // IPv6 is not available
+            family = Native.AF_INET;
+            fd = Native.socket(family, Native.SOCK_STREAM | Native.SOCK_CLOEXEC, 0);
+        }
+        if (fd < 0) {
+            throw new IOException(sm.getString("endpoint.socketFailed", Native.strerror(fd)));
+        }
+
+        InetSocketAddress addr = new InetSocketAddress(address, getPortWithOffset());
+        try {
+            if (family == Native.AF_INET6 && address == null) {
+                // Accept both IPv4 and IPv6 connections when listening on all addresses
+                Native.setsockopt(fd, Native.IPPROTO_IPV6, Native.IPV6_V6ONLY, 0);
+            }
+            // Consistent with the default for a ServerSocketChannel on Linux
+            Native.setsockopt(fd, Native.SOL_SOCKET, Native.SO_REUSEADDR, 1);
+            if (socketProperties.getRxBufSize() > 0) {
+                Native.setsockopt(fd, Native.SOL_SOCKET, Native.SO_RCVBUF, socketProperties.getRxBufSize());
+            }
+            int result = Native.bind(fd, family, addr);
+            if (result < 0) {
+                throw new BindException(sm.getString("endpoint.bindFailed", addr, Native.strerror(result)));
+            }
+            result = Native.listen(fd, getAcceptCount());
+            if (result < 0) {
+                throw new BindException(sm.getString("endpoint.bindFailed", addr, Native.strerror(result)));
+            }
+        } catch (IOException | RuntimeException e) {
+            Native.close(fd);
+            throw e;
+        }
+        serverSocket = new SocketHandle(fd);
+    }
+
+
+    @Override
+    public void startInternal() throws Exception {
+        if (!running) {
+            running = true;
+            paused = false;
+
+            if (socketProperties.getProcessorCache() != 0) {
+                processorCache =
+                        new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE, socketProperties.getProcessorCache());
+            }
+
+            // Create worker collection
+            if (getExecutor() == null) {
+                createExecutor();
+            }
+
+            initializeConnectionLatch();
+
+            // Start ring thread
+            Poller poller = new Poller();
+            Thread pollerThread = new Thread(poller, getName() + "-Poller");
+            pollerThread.setPriority(pollerThreadPriority);
+            pollerThread.setDaemon(true);
+            pollerThread.start();
+            this.poller = poller;
+
+            startAcceptorThread();
+        }
+    }
+
+
+    @Override
+    public void stopInternal() {
+        if (!paused) {
+            pause();
+        }
+        if (running) {
+            running = false;
+            /*
+             * Need to wait for the acceptor to unlock but not too long. 100ms plus twice the unlock timeout should be
+             * plenty of time for the acceptor to unlock without being an excessively long wait if the unlock fails.
+             */
+            acceptor.stopMillis(100 + 2 * getSocketProperties().getUnlockTimeout());
+            Poller poller = this.poller;
+            if (poller != null) {
+                this.poller = null;
+                poller.destroy();
+                try {
+                    if (!poller.stopLatch.await(socketProperties.getTimeoutInterval() + 1000, TimeUnit.MILLISECONDS)) {
+                        log.warn(sm.getString("endpoint.stopLatchAwaitFail"));
+                    }
+                } catch (InterruptedException e) {
+                    log.warn(sm.getString("endpoint.stopLatchAwaitInterrupted"), e);
+                }
+            }
+            shutdownExecutor();
+            if (processorCache != null) {
+                processorCache.clear();
+                processorCache = null;
+            }
+        }
+    }
+
+
+    @Override
+    public void unbind() throws Exception {
+        if (running) {
+            stop();
+        }
+        try {
+            doCloseServerSocket();
+        } catch (IOException ioe) {
+            getLog().warn(sm.getString("endpoint.serverSocket.closeFailed", getName()), ioe);
+        }
+        super.unbind();
+        if (getHandler() != null) {
+            getHandler().recycle();
+        }
+    }
+
+
+    @Override
+    protected void doCloseServerSocket() throws IOException {
+        SocketHandle serverSocket = this.serverSocket;
+        if (serverSocket != null) {
+            this.serverSocket = null;
+            // Any pending accept will be woken by the shutdown
+            serverSocket.close(true);
+        }
+    }
+
+
+    @Override
+    protected InetSocketAddress getLocalAddress() throws IOException {
+        SocketHandle serverSocket = this.serverSocket;
+        if (serverSocket == null || !serverSocket.acquire()) {
+            return null;
+        }
+        try {
+            return Native.getsockname(serverSocket.fd);
+        } finally {
+            serverSocket.release();
+        }
+    }
+
+
+    @Override
+    protected Integer serverSocketAccept() throws Exception {
+        SocketHandle serverSocket = this.serverSocket;
+        Poller poller = this.poller;
+        if (serverSocket == null || poller == null || !serverSocket.acquire()) {
+            throw new ClosedChannelException();
+        }
+        AcceptOperation operation = new AcceptOperation(serverSocket);
+        poller.add(operation);
+        int fd = operation.await();
+        if (fd < 0) {
+            throw new IOException(sm.getString("endpoint.acceptFailed", Native.strerror(fd)));
+        }
+        return Integer.valueOf(fd);
+    }
+
+
+    @Override
+    protected boolean setSocketOptions(Integer socket) {
+        IoUringSocketWrapper socketWrapper = null;
+        try {
+            Poller poller = this.poller;
+            if (poller == null) {
+                throw new ClosedChannelException();
+            }
+            int fd = socket.intValue();
+            SocketProperties properties = socketProperties;
+            if (properties.getRxBufSize() > 0) {
+                Native.setsockopt(fd, Native.SOL_SOCKET, Native.SO_RCVBUF, properties.getRxBufSize());
+            }
+            if (properties.getTxBufSize() > 0) {
+                Native.setsockopt(fd, Native.SOL_SOCKET, Native.SO_SNDBUF, properties.getTxBufSize());
+            }
+            if (properties.getSoKeepAlive()) {
+                Native.setsockopt(fd, Native.SOL_SOCKET, Native.SO_KEEPALIVE, 1);
+            }
+            if (properties.getSoLingerOn()) {
+                Native.setsockoptLinger(fd, true, properties.getSoLingerTime());
+            }
+            if (properties.getTcpNoDelay()) {
+                Native.setsockopt(fd, Native.IPPROTO_TCP, Native.TCP_NODELAY, 1);
+            }
+
+            IoUringSocketWrapper newWrapper = new IoUringSocketWrapper(socket, this, new SocketHandle(fd), poller);
+            connections.put(socket, newWrapper);
+            socketWrapper = newWrapper;
+
+            socketWrapper.setReadTimeout(getConnectionTimeout());
+            socketWrapper.setWriteTimeout(getConnectionTimeout());
+            socketWrapper.setKeepAliveLeft(getMaxKeepAliveRequests());
+            // Wait for the kernel to receive the first request
+            socketWrapper.registerReadInterest();
+            return true;
+        } catch (Throwable t) {
+            ExceptionUtils.handleThrowable(t);
+            try {
+                log.error(sm.getString("endpoint.socketOptionsError"), t);
+            } catch (Throwable tt) {
+                ExceptionUtils.handleThrowable(tt);
+            }
+            if (socketWrapper == null) {
+                destroySocket(socket);
+            }
+        }
+        // Tell to close the socket if needed
+        return false;
+    }
+
+
+    @Override
+    protected void destroySocket(Integer socket) {
+        countDownConnection();
+        Native.close(socket.intValue());
+    }
+
+
+    @Override
+    protected Log getLog() {
+        return log;
+    }
+
+
+    @Override
+    protected SocketProcessorBase<Integer> createSocketProcessor(SocketWrapperBase<Integer> socketWrapper,
+            SocketEvent event) {
+        return new SocketProcessor(socketWrapper, event);
+    }
+
+
+    // ----------------------------------------------------------- SocketHandle
+
+    /**
+     * A reference counted file descriptor. The descriptor is only closed once it has been closed by its owner and
+     * there are no system calls or io_uring operations in progress that use it. This ensures that the descriptor
+     * number cannot be re-used for a new connection while it is still in use.
+     */
+    static final class SocketHandle {
+
+        final int fd;
+        private final AtomicInteger references = new AtomicInteger(1);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        SocketHandle(int fd) {
+            this.fd = fd;
+        }
+
+        /**
+         * Obtain a reference to the descriptor. Every successful call must be matched by a call to
+         * {@link #release()}.
+         *
+         * @return {@code true} if the reference was obtained, {@code false} if the descriptor has been closed
+         */
+        boolean acquire() {
+            if (closed.get()) {
+                return false;
+            }
+            int count;
+            do {
+                count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                Native.close(fd);
+            }
+        }
+
+        boolean isClosed() {
+            return closed.get();
+        }
+
+        /**
+         * Close the descriptor on behalf of its owner.
+         *
+         * @param shutdown {@code true} to shut down the socket so that operations in progress complete promptly
+         */
+        void close(boolean shutdown) {
+            if (closed.compareAndSet(false, true)) {
+                if (shutdown && references.get() > 1) {
+                    Native.shutdown(fd, Native.SHUT_RDWR);
+                }
+                release();
+            }
+        }
+    }
+
+
+    // -------------------------------------------------------------- Operation
+
+    /**
+     * An operation performed by the kernel on behalf of a socket. Operations are queued for the ring thread, submitted
+     * as one or more entries and complete once the completions for all of those entries have been received. Apart from
+     * construction, all methods are only called by the ring thread.
+     */
+    abstract static class Operation {
+
+        /*
+         * The Poller slot allocated to the operation while it is in progress or -1.
+         */
+        int slot = -1;
+        int pending;
+        int firstTag;
+        int submitted;
+        boolean cancelled;
+        boolean timedOut;
+
+        /**
+         * @return the number of entries that the next call to {@link #prepare(IoUring, long)} will add
+         */
+        int getEntryCount() {
+            return 1;
+        }
+
+        /**
+         * @return the tag of the first entry that the next call to {@link #prepare(IoUring, long)} will add
+         */
+        int getFirstTag() {
+            return 0;
+        }
+
+        /**
+         * @return {@code true} if the operation should not be submitted as the socket has been closed
+         */
+        abstract boolean isObsolete();
+
+        /**
+         * Add the entries for this operation to the submission queue.
+         *
+         * @param ring     the ring
+         * @param userData the user data for the first entry. Subsequent entries must use consecutive values.
+         */
+        abstract void prepare(IoUring ring, long userData);
+
+        /**
+         * Process the completion of one of the entries of this operation.
+         *
+         * @param tag the index of the entry within the operation
+         * @param res the result
+         */
+        abstract void complete(int tag, int res);
+
+        /**
+         * Called once the completions of all the entries of the operation have been processed.
+         */
+        abstract void finished();
+
+        /**
+         * Complete an operation that could not be submitted or that was abandoned when the ring was closed.
+         */
+        void fail() {
+            cancelled = true;
+            complete(0, -Native.ECANCELED);
+            finished();
+        }
+    }
+
+
+    private static final class AcceptOperation extends Operation {
+
+        private final SocketHandle serverSocket;
+        private boolean done = false;
+        private int result;
+
+        private AcceptOperation(SocketHandle serverSocket) {
+            this.serverSocket = serverSocket;
+        }
+
+        @Override
+        boolean isObsolete() {
+            return serverSocket.isClosed();
+        }
+
+        @Override
+        void prepare(IoUring ring, long userData) {
+            ring.prepare(IoUring.IORING_OP_ACCEPT, (byte) 0, serverSocket.fd, 0, 0, 0, Native.SOCK_CLOEXEC, 0,
+                    userData);
+        }
+
+        @Override
+        synchronized void complete(int tag, int res) {
+            result = res;
+            done = true;
+            notifyAll();
+        }
+
+        @Override
+        void finished() {
+            serverSocket.release();
+        }
+
+        synchronized int await() {
+            boolean interrupted = false;
+            while (!done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return result;
+        }
+    }
+
+
+    private static final class CancelOperation extends Operation {
+
+        private final Operation target;
+
+        private CancelOperation(Operation target) {
+            this.target = target;
+        }
+
+        @Override
+        boolean isObsolete() {
+            return false;
+        }
+
+        @Override
+        void prepare(IoUring ring, long userData) {
+            // NO-OP. Handled by Poller.cancel()
+        }
+
+        @Override
+        void complete(int tag, int res) {
+            // NO-OP
+        }
+
+        @Override
+        void finished() {
+            // NO-OP
+        }
+    }
+
+
+    // ----------------------------------------------------- Poller Inner Class
+
+    /**
+     * The ring thread. Owns the io_uring instance and the state of all the operations in progress.
+     */
+    public class Poller implements Runnable, IoUring.CompletionHandler {
+
+        private final IoUring ring;
+        private final SocketHandle eventFd;
+        private final MemorySegment eventValue;
+        private final MemorySegment wakeupValue;
+        private final MemorySegment timeout;
+        private final MpscQueue<Operation> events = new MpscQueue<>();
+        private final AtomicLong wakeupCounter = new AtomicLong(0);
+        private final CountDownLatch stopLatch = new CountDownLatch(1);
+
+        private Operation[] slots = new Operation[256];
+        private int[] freeSlots = new int[256];
+        private int freeSlotCount;
+        private int inFlight;
+
+        private volatile boolean close = false;
+        private volatile boolean stopped = false;
+
+        /**
+         * Create the ring thread, including the io_uring instance.
+         *
+         * @throws IOException If the io_uring instance cannot be created
+         */
+        public Poller() throws IOException {
+            ring = new IoUring(ringEntries);
+            int fd = Native.eventfd(0, Native.EFD_CLOEXEC);
+            if (fd < 0) {
+                ring.close();
+                throw new IOException(sm.getString("endpoint.eventfdFailed", Native.strerror(fd)));
+            }
+            eventFd = new SocketHandle(fd);
+            eventValue = ring.allocate(Long.BYTES);
+            wakeupValue = ring.allocate(Long.BYTES);
+            wakeupValue.set(ValueLayout.JAVA_LONG, 0, 1L);
+            // struct __kernel_timespec
+            timeout = ring.allocate(2 * Long.BYTES);
+            long interval = Math.max(1, socketProperties.getTimeoutInterval());
+            timeout.set(ValueLayout.JAVA_LONG, 0, interval / 1000);
+            timeout.set(ValueLayout.JAVA_LONG, Long.BYTES, (interval % 1000) * 1_000_000L);
+            // Slot zero is reserved
+            for (int i = slots.length - 1; i > 0; i--) {
+                freeSlots[freeSlotCount++] = i;
+            }
+        }
+
+
+        /**
+         * Obtain the number of operations currently being performed by the kernel.
+         *
+         * @return the number of operations in progress
+         */
+        public int getOperationCount() {
+            return inFlight;
+        }
+
+
+        /**
+         * Stop the ring thread. Open connections will be closed.
+         */
+        protected void destroy() {
+            close = true;
+            wakeup();
+        }
+
+
+        /**
+         * Queue an operation for submission by the ring thread.
+         *
+         * @param operation The operation
+         */
+        void add(Operation operation) {
+            if (stopped) {
+                operation.fail();
+                return;
+            }
+            events.offer(operation);
+            if (wakeupCounter.incrementAndGet() == 0) {
+                wakeup();
+            }
+            if (stopped) {
+                // Raced with the ring thread stopping
+                failQueued();
+            }
+        }
+
+
+        private void wakeup() {
+            if (eventFd.acquire()) {
+                try {
+                    Native.write(eventFd.fd, wakeupValue.address(), Long.BYTES);
+                } finally {
+                    eventFd.release();
+                }
+            }
+        }
+
+
+        private synchronized void failQueued() {
+            Operation operation;
+            while ((operation = events.poll()) != null) {
+                operation.fail();
+            }
+        }
+
+
+        @Override
+        public void run() {
+            try {
+                armWakeup();
+                armTimer();
+                while (!close) {
+                    boolean hasEvents = events();
+                    if (close) {
+                        break;
+                    }
+                    // Submit everything queued and, unless there is more to do, wait for a completion
+                    boolean wait = !hasEvents && wakeupCounter.getAndSet(-1) <= 0;
+                    ring.submit(wait);
+                    wakeupCounter.set(0);
+                    ring.processCompletions(this);
+                }
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                log.error(sm.getString("endpoint.pollerError"), t);
+            } finally {
+                shutdown();
+            }
+        }
+
+
+        private void shutdown() {
+            try {
+                // Close all the connections. Operations in progress will complete as the sockets are shut down.
+                for (SocketWrapperBase<Integer> socketWrapper : connections.values()) {
+                    socketWrapper.close();
+                }
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1000);
+                while (inFlight > 0 && System.nanoTime() < deadline) {
+                    events();
+                    ring.submit(true);
+                    ring.processCompletions(this);
+                }
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                log.error(sm.getString("endpoint.pollerError"), t);
+            } finally {
+                stopped = true;
+                ring.close();
+                eventFd.close(false);
+                for (int i = 0; i < slots.length; i++) {
+                    Operation operation = slots[i];
+                    if (operation != null) {
+                        slots[i] = null;
+                        operation.fail();
+                    }
+                }
+                failQueued();
+                stopLatch.countDown();
+            }
+        }
+
+
+        /**
+         * Submit the queued operations.
+         *
+         * @return {@code true} if any operations were queued
+         */
+        private boolean events() {
+            boolean result = false;
+            Operation operation;
+            while ((operation = events.poll()) != null) {
+                result = true;
+                if (operation instanceof CancelOperation cancelOperation) {
+                    cancel(cancelOperation.target);
+                } else {
+                    submit(operation);
+                }
+            }
+            return result;
+        }
+
+
+        private void submit(Operation operation) {
+            if (operation.cancelled || operation.isObsolete()) {
+                operation.fail();
+                return;
+            }
+            int count = operation.getEntryCount();
+            if (!ensureSpace(count)) {
+                operation.fail();
+                return;
+            }
+            int slot = allocateSlot(operation);
+            operation.pending = count;
+            operation.firstTag = operation.getFirstTag();
+            operation.submitted = count;
+            operation.prepare(ring, (long) slot << SLOT_SHIFT);
+        }
+
+
+        private void cancel(Operation operation) {
+            if (operation.slot < 0) {
+                // Not yet submitted (or already complete)
+                operation.cancelled = true;
+                return;
+            }
+            long userData = (long) operation.slot << SLOT_SHIFT;
+            for (int i = 0; i < operation.submitted; i++) {
+                if (ensureSpace(1)) {
+                    ring.prepare(IoUring.IORING_OP_ASYNC_CANCEL, (byte) 0, -1, 0, userData + operation.firstTag + i,
+                            0, 0, 0,
+                            USER_DATA_IGNORE);
+                }
+            }
+        }
+
+
+        private boolean ensureSpace(int count) throws IllegalStateException {
+            if (ring.getSubmissionQueueSpace() >= count) {
+                return true;
+            }
+            try {
+                ring.submit(false);
+            } catch (IOException ioe) {
+                log.warn(sm.getString("endpoint.submitFailed"), ioe);
+            }
+            return ring.getSubmissionQueueSpace() >= count;
+        }
+
+
+        private int allocateSlot(Operation operation) {
+            if (freeSlotCount == 0) {
+                int oldLength = slots.length;
+                slots = Arrays.copyOf(slots, oldLength * 2);
+                freeSlots = Arrays.copyOf(freeSlots, oldLength * 2);
+                for (int i = slots.length - 1; i >= oldLength; i--) {
+                    freeSlots[freeSlotCount++] = i;
+                }
+            }
+            int slot = freeSlots[--freeSlotCount];
+            slots[slot] = operation;
+            operation.slot = slot;
+            inFlight++;
+            return slot;
+        }
+
+
+        private void armWakeup() {
+            if (ensureSpace(1)) {
+                ring.prepare(IoUring.IORING_OP_READ, (byte) 0, eventFd.fd, 0, eventValue.address(), Long.BYTES, 0, 0,
+                        USER_DATA_WAKEUP);
+            }
+        }
+
+
+        private void armTimer() {
+            if (ensureSpace(1)) {
+                ring.prepare(IoUring.IORING_OP_TIMEOUT, (byte) 0, -1, 0, timeout.address(), 1, 0, 0,
+                        USER_DATA_TIMER);
+            }
+        }
+
+
+        @Override
+        public void completed(long userData, int res) {
+            if (userData == USER_DATA_IGNORE) {
+                return;
+            } else if (userData == USER_DATA_WAKEUP) {
+                if (!close) {
+                    armWakeup();
+                }
+                return;
+            } else if (userData == USER_DATA_TIMER) {
+                if (!close) {
+                    armTimer();
+                    timeout();
+                }
+                return;
+            }
+            int slot = (int) (userData >>> SLOT_SHIFT);
+            Operation operation = slot < slots.length ? slots[slot] : null;
+            if (operation == null) {
+                return;
+            }
+            operation.complete((int) (userData & ((1 << SLOT_SHIFT) - 1)), res);
+            if (--operation.pending == 0) {
+                slots[slot] = null;
+                freeSlots[freeSlotCount++] = slot;
+                operation.slot = -1;
+                inFlight--;
+                operation.finished();
+            }
+        }
+
+
+        /**
+         * Resubmit an operation from within its {@link Operation#finished()} method.
+         *
+         * @param operation The operation
+         */
+        void resubmit(Operation operation) {
+            submit(operation);
+        }
+
+
+        /**
+         * Cancel the operations that are waiting for the connection timeout to expire.
+         */
+        protected void timeout() {
+            long now = System.currentTimeMillis();
+            for (SocketWrapperBase<Integer> socketWrapper : connections.values()) {
+                IoUringSocketWrapper ws = (IoUringSocketWrapper) socketWrapper;
+                Operation read = ws.pendingReceive;
+                if (read != null && !read.timedOut && isExpired(now, ws.getLastRead(), ws.getReadTimeout())) {
+                    read.timedOut = true;
+                    cancel(read);
+                }
+                Operation write = ws.pendingWritePoll;
+                if (write == null) {
+                    write = ws.pendingSendfile;
+                }
+                if (write != null && !write.timedOut && isExpired(now, ws.getLastWrite(), ws.getWriteTimeout())) {
+                    write.timedOut = true;
+                    cancel(write);
+                }
+            }
+        }
+
+
+        private boolean isExpired(long now, long last, long timeout) {
+            return timeout > 0 && now - last > timeout;
+        }
+    }
+
+
+    // --------------------------------------------------- Socket Wrapper Class
+
+    /**
+     * io_uring socket wrapper.
+     */
+    public static class IoUringSocketWrapper extends SocketWrapperBase<Integer> {
+
+        private final SocketHandle handle;
+        private final Poller poller;
+        private final Object readLock = new Object();
+
+        private volatile ReceiveOperation pendingReceive = null;
+        private volatile PollOperation pendingWritePoll = null;
+        private volatile SendfileOperation pendingSendfile = null;
+        private volatile boolean eof = false;
+        private volatile long lastRead = System.currentTimeMillis();
+        private volatile long lastWrite = lastRead;
+
+        /*
+         * Used to pass data from heap buffers to the kernel.
+         */
+        private ByteBuffer stagingBuffer = null;
+
+        /**
+         * Create a new socket wrapper.
+         *
+         * @param socket   The file descriptor of the socket
+         * @param endpoint The endpoint
+         * @param handle   The reference counted file descriptor
+         * @param poller   The ring thread that will perform the operations that need to wait
+         */
+        IoUringSocketWrapper(Integer socket, IoUringEndpoint endpoint, SocketHandle handle, Poller poller) {
+            super(socket, endpoint);
+            this.handle = handle;
+            this.poller = poller;
+            SocketProperties properties = endpoint.getSocketProperties();
+            // Direct buffers are always used as the kernel reads and writes them
+            socketBufferHandler =
+                    new SocketBufferHandler(properties.getAppReadBufSize(), properties.getAppWriteBufSize(), true);
+        }
+
+        /**
+         * Updates the last write timestamp.
+         */
+        public void updateLastWrite() {
+            lastWrite = System.currentTimeMillis();
+        }
+
+        /**
+         * Returns the last write timestamp.
+         *
+         * @return the last write time in milliseconds
+         */
+        public long getLastWrite() {
+            return lastWrite;
+        }
+
+        /**
+         * Updates the last read timestamp.
+         */
+        public void updateLastRead() {
+            lastRead = System.currentTimeMillis();
+        }
+
+        /**
+         * Returns the last read timestamp.
+         *
+         * @return the last read time in milliseconds
+         */
+        public long getLastRead() {
+            return lastRead;
+        }
+
+
+        @Override
+        public boolean isReadyForRead() throws IOException {
+            if (pendingReceive != null) {
+                return false;
+            }
+            socketBufferHandler.configureReadBufferForRead();
+
+            if (socketBufferHandler.getReadBuffer().remaining() > 0) {
+                return true;
+            }
+
+            fillReadBuffer(false);
+
+            return socketBufferHandler.getReadBuffer().position() > 0;
+        }
+
+
+        @Override
+        public int read(boolean block, byte[] b, int off, int len) throws IOException {
+            if (!awaitPendingReceive(block)) {
+                return 0;
+            }
+            int nRead = populateReadBuffer(b, off, len);
+            if (nRead > 0) {
+                return nRead;
+            }
+
+            // Fill the read buffer as best we can.
+            nRead = fillReadBuffer(block);
+            updateLastRead();
+
+            // Fill as much of the remaining byte array as possible with the
+            // data that was just read
+            if (nRead > 0) {
+                socketBufferHandler.configureReadBufferForRead();
+                nRead = Math.min(nRead, len);
+                socketBufferHandler.getReadBuffer().get(b, off, nRead);
+            }
+            return nRead;
+        }
+
+
+        @Override
+        public int read(boolean block, ByteBuffer to) throws IOException {
+            if (!awaitPendingReceive(block)) {
+                return 0;
+            }
+            int nRead = populateReadBuffer(to);
+            if (nRead > 0) {
+                return nRead;
+            }
+
+            // The socket read buffer capacity is socket.appReadBufSize
+            int limit = socketBufferHandler.getReadBuffer().capacity();
+            if (to.isDirect() && to.remaining() >= limit) {
+                // The kernel can write directly to the destination
+                to.limit(to.position() + limit);
+                nRead = fillReadBuffer(block, to);
+                if (log.isTraceEnabled()) {
+                    log.trace("Socket: [" + this + "], Read direct from socket: [" + nRead + "]");
+                }
+                updateLastRead();
+            } else {
+                // Fill the read buffer as best we can.
+                nRead = fillReadBuffer(block);
+                if (log.isTraceEnabled()) {
+                    log.trace("Socket: [" + this + "], Read into buffer: [" + nRead + "]");
+                }
+                updateLastRead();
+
+                // Fill as much of the remaining byte array as possible with the
+                // data that was just read
+                if (nRead > 0) {
+                    nRead = populateReadBuffer(to);
+                }
+            }
+            return nRead;
+        }
+
+
+        /*
+         * While the kernel is receiving into the read buffer, the buffer must not be touched. Non-blocking reads
+         * report that no data is available. Blocking reads wait for the receive to complete.
+         */
+        private boolean awaitPendingReceive(boolean block) throws IOException {
+            if (pendingReceive == null) {
+                return true;
+            }
+            if (!block) {
+                return false;
+            }
+            long timeout = getReadTimeout();
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            synchronized (readLock) {
+                while (pendingReceive != null) {
+                    try {
+                        if (timeout > 0) {
+                            long remaining = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+                            if (remaining <= 0) {
+                                throw new SocketTimeoutException();
+                            }
+                            readLock.wait(remaining);
+                        } else {
+                            readLock.wait();
+                        }
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+            }
+            return true;
+        }
+
+
+        private int fillReadBuffer(boolean block) throws IOException {
+            socketBufferHandler.configureReadBufferForWrite();
+            return fillReadBuffer(block, socketBufferHandler.getReadBuffer());
+        }
+
+
+        private int fillReadBuffer(boolean block, ByteBuffer buffer) throws IOException {
+            if (eof) {
+                throw new EOFException();
+            }
+            if (!buffer.hasRemaining()) {
+                return 0;
+            }
+            while (true) {
+                long n = recv(buffer);
+                if (n > 0) {
+                    return (int) n;
+                } else if (n == 0) {
+                    eof = true;
+                    throw new EOFException();
+                } else if (n != -Native.EAGAIN) {
+                    throw new IOException(Native.strerror((int) n));
+                } else if (!block) {
+                    return 0;
+                }
+                awaitPoll(Native.POLLIN, getReadTimeout());
+            }
+        }
+
+
+        /*
+         * Non-blocking receive directly into the buffer. Returns the number of bytes read, zero for end of stream or
+         * the negated error code.
+         */
+        private long recv(ByteBuffer buffer) throws IOException {
+            if (!handle.acquire()) {
+                throw new ClosedChannelException();
+            }
+            try {
+                long n;
+                do {
+                    n = Native.recv(handle.fd, MemorySegment.ofBuffer(buffer).address(), buffer.remaining(),
+                            Native.MSG_DONTWAIT);
+                } while (n == -Native.EINTR);
+                if (n > 0) {
+                    buffer.position(buffer.position() + (int) n);
+                }
+                return n;
+            } finally {
+                handle.release();
+            }
+        }
+
+
+        /*
+         * Non-blocking send directly from the buffer. Returns the number of bytes written which will be zero if the
+         * socket send buffer is full.
+         */
+        private int send(ByteBuffer buffer) throws IOException {
+            if (!handle.acquire()) {
+                throw new ClosedChannelException();
+            }
+            try {
+                long address;
+                int length = buffer.remaining();
+                if (buffer.isDirect()) {
+                    address = MemorySegment.ofBuffer(buffer).address();
+                } else {
+                    if (stagingBuffer == null) {
+                        stagingBuffer = ByteBuffer.allocateDirect(Math.max(8192,
+                                getEndpoint().getSocketProperties().getAppWriteBufSize()));
+                    }
+                    length = Math.min(length, stagingBuffer.capacity());
+                    stagingBuffer.clear();
+                    stagingBuffer.put(0, buffer, buffer.position(), length);
+                    address = MemorySegment.ofBuffer(stagingBuffer).address();
+                }
+                long n;
+                do {
+                    n = Native.send(handle.fd, address, length, Native.MSG_DONTWAIT | Native.MSG_NOSIGNAL);
+                } while (n == -Native.EINTR);
+                if (n >= 0) {
+                    buffer.position(buffer.position() + (int) n);
+                    return (int) n;
+                } else if (n == -Native.EAGAIN) {
+                    return 0;
+                }
+                throw new IOException(Native.strerror((int) n));
+            } finally {
+                handle.release();
+            }
+        }
+
+
+        /*
+         * Wait for the socket to become readable or writable.
+         */
+        private void awaitPoll(int events, long timeout) throws IOException {
+            PollOperation operation = new PollOperation(this, events, true);
+            if (!submit(operation)) {
+                throw new ClosedChannelException();
+            }
+            int result = operation.await(timeout);
+            if (result == Integer.MIN_VALUE) {
+                poller.add(new CancelOperation(operation));
+                throw new SocketTimeoutException();
+            } else if (result < 0) {
+                if (handle.isClosed() || result == -Native.ECANCELED) {
+                    throw new ClosedChannelException();
+                }
+                throw new IOException(Native.strerror(result));
+            }
+        }
+
+
+        private boolean submit(Operation operation) {
+            if (!handle.acquire()) {
+                return false;
+            }
+            poller.add(operation);
+            return true;
+        }
+
+
+        private void dispatch(SocketEvent event) {
+            if (!getEndpoint().processSocket(this, event, true)) {
+                close();
+            }
+        }
+
+
+        @Override
+        protected void doClose() {
+            if (log.isTraceEnabled()) {
+                log.trace("Calling [" + getEndpoint() + "].closeSocket([" + this + "])");
+            }
+            try {
+                ((IoUringEndpoint) getEndpoint()).connections.remove(getSocket(), this);
+                handle.close(true);
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                if (log.isDebugEnabled()) {
+                    log.error(sm.getString("endpoint.closeFailed"), t);
+                }
+            } finally {
+                nonBlockingWriteBuffer.clear();
+                reset(CLOSED_SOCKET);
+            }
+        }
+
+
+        @Override
+        protected boolean flushNonBlocking() throws IOException {
+            boolean dataLeft = !socketBufferHandler.isWriteBufferEmpty();
+
+            // Write to the socket, if there is anything to write
+            if (dataLeft) {
+                doWrite(false);
+                dataLeft = !socketBufferHandler.isWriteBufferEmpty();
+            }
+
+            if (!dataLeft && !nonBlockingWriteBuffer.isEmpty()) {
+                dataLeft = nonBlockingWriteBuffer.write(this, false);
+
+                if (!dataLeft && !socketBufferHandler.isWriteBufferEmpty()) {
+                    doWrite(false);
+                    dataLeft = !socketBufferHandler.isWriteBufferEmpty();
+                }
+            }
+
+            return dataLeft;
+        }
+
+
+        @Override
+        protected void doWrite(boolean block, ByteBuffer buffer) throws IOException {
+            if (handle.isClosed()) {
+                throw new ClosedChannelException();
+            }
+            if (block) {
+                if (previousIOException != null) {
+                    /*
+                     * Socket has previously timed out. See NioEndpoint for the reason subsequent writes are skipped.
+                     */
+                    throw new IOException(previousIOException);
+                }
+                while (buffer.hasRemaining()) {
+                    if (send(buffer) == 0) {
+                        try {
+                            awaitPoll(Native.POLLOUT, getWriteTimeout());
+                        } catch (SocketTimeoutException e) {
+                            previousIOException = e;
+                            throw e;
+                        }
+                    }
+                }
+            } else {
+                int n;
+                do {
+                    n = send(buffer);
+                } while (n > 0 && buffer.hasRemaining());
+                // If there is data left in the buffer the socket will be registered for
+                // write further up the stack.
+            }
+            updateLastWrite();
+        }
+
+
+        @Override
+        public void registerReadInterest() {
+            if (log.isTraceEnabled()) {
+                log.trace(sm.getString("endpoint.debug.registerRead", this));
+            }
+            ReceiveOperation operation = null;
+            synchronized (readLock) {
+                if (pendingReceive != null || handle.isClosed()) {
+                    return;
+                }
+                if (!eof && socketBufferHandler.isReadBufferEmpty()) {
+                    socketBufferHandler.configureReadBufferForWrite();
+                    ByteBuffer buffer = socketBufferHandler.getReadBuffer();
+                    if (buffer.hasRemaining()) {
+                        operation = new ReceiveOperation(this, buffer);
+                        pendingReceive = operation;
+                    }
+                }
+            }
+            if (operation == null) {
+                // There is already something to process
+                dispatch(SocketEvent.OPEN_READ);
+            } else if (!submit(operation)) {
+                pendingReceive = null;
+            }
+        }
+
+
+        /*
+         * Called by the ring thread.
+         */
+        private void receiveCompleted(ReceiveOperation operation, int res) {
+            synchronized (readLock) {
+                if (res > 0) {
+                    operation.buffer.position(operation.position + res);
+                }
+                pendingReceive = null;
+                readLock.notifyAll();
+            }
+            if (isClosed()) {
+                return;
+            }
+            if (res > 0) {
+                updateLastRead();
+                dispatch(SocketEvent.OPEN_READ);
+            } else if (res == 0) {
+                eof = true;
+                dispatch(SocketEvent.OPEN_READ);
+            } else {
+                if (operation.timedOut) {
+                    setError(new SocketTimeoutException());
+                } else {
+                    setError(new IOException(Native.strerror(res)));
+                }
+                dispatch(SocketEvent.ERROR);
+            }
+        }
+
+
+        @Override
+        public void registerWriteInterest() {
+            if (log.isTraceEnabled()) {
+                log.trace(sm.getString("endpoint.debug.registerWrite", this));
+            }
+            PollOperation operation;
+            synchronized (this) {
+                if (pendingWritePoll != null) {
+                    return;
+                }
+                operation = new PollOperation(this, Native.POLLOUT, false);
+                pendingWritePoll = operation;
+            }
+            if (!submit(operation)) {
+                pendingWritePoll = null;
+            }
+        }
+
+
+        /*
+         * Called by the ring thread.
+         */
+        private void writePollCompleted(PollOperation operation, int res) {
+            pendingWritePoll = null;
+            if (isClosed()) {
+                return;
+            }
+            if (res < 0 && operation.timedOut) {
+                setError(new SocketTimeoutException());
+                dispatch(SocketEvent.ERROR);
+            } else {
+                dispatch(SocketEvent.OPEN_WRITE);
+            }
+        }
+
+
+        @Override
+        public SendfileDataBase createSendfileData(String filename, long pos, long length) {
+            return new SendfileData(filename, pos, length);
+        }
+
+
+        @Override
+        public SendfileState processSendfile(SendfileDataBase sendfileData) {
+            SendfileData data = (SendfileData) sendfileData;
+            try {
+                data.open();
+            } catch (IOException ioe) {
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("endpoint.sendfile.error"), ioe);
+                }
+                data.close();
+                return SendfileState.ERROR;
+            }
+            SendfileOperation operation = new SendfileOperation(this, data);
+            pendingSendfile = operation;
+            updateLastWrite();
+            if (!submit(operation)) {
+                pendingSendfile = null;
+                data.close();
+                return SendfileState.ERROR;
+            }
+            return SendfileState.PENDING;
+        }
+
+
+        /*
+         * Called by the ring thread once the file has been sent or sendfile has failed.
+         */
+        private void sendfileCompleted(SendfileOperation operation, boolean success) {
+            pendingSendfile = null;
+            SendfileData data = operation.data;
+            data.close();
+            if (isClosed()) {
+                return;
+            }
+            if (!success) {
+                close();
+                return;
+            }
+            if (log.isTraceEnabled()) {
+                log.trace("Send file complete for: " + data.fileName);
+            }
+            switch (data.keepAliveState) {
+                case NONE: {
+                    if (log.isTraceEnabled()) {
+                        log.trace("Send file connection is being closed");
+                    }
+                    close();
+                    break;
+                }
+                case PIPELINED: {
+                    if (log.isTraceEnabled()) {
+                        log.trace("Connection is keep alive, processing pipe-lined data");
+                    }
+                    dispatch(SocketEvent.OPEN_READ);
+                    break;
+                }
+                case OPEN: {
+                    if (log.isTraceEnabled()) {
+                        log.trace("Connection is keep alive, waiting for the next request");
+                    }
+                    registerReadInterest();
+                    break;
+                }
+            }
+        }
+
+
+        private InetSocketAddress getAddress(boolean local) {
+            if (!handle.acquire()) {
+                return null;
+            }
+            try {
+                return local ? Native.getsockname(handle.fd) : Native.getpeername(handle.fd);
+            } finally {
+                handle.release();
+            }
+        }
+
+
+        @Override
+        protected void populateRemoteAddr() {
+            InetSocketAddress address = getAddress(false);
+            if (address != null) {
+                remoteAddr = address.getAddress().getHostAddress();
+            }
+        }
+
+
+        @Override
+        protected void populateRemoteHost() {
+            InetSocketAddress address = getAddress(false);
+            if (address != null) {
+                remoteHost = address.getAddress().getHostName();
+                if (remoteAddr == null) {
+                    remoteAddr = address.getAddress().getHostAddress();
+                }
+            }
+        }
+
+
+        @Override
+        protected void populateRemotePort() {
+            InetSocketAddress address = getAddress(false);
+            if (address != null) {
+                remotePort = address.getPort();
+            }
+        }
+
+
+        @Override
+        protected void populateLocalName() {
+            InetSocketAddress address = getAddress(true);
+            if (address != null) {
+                localName = address.getAddress().getHostName();
+            }
+        }
+
+
+        @Override
+        protected void populateLocalAddr() {
+            InetSocketAddress address = getAddress(true);
+            if (address != null) {
+                localAddr = address.getAddress().getHostAddress();
+            }
+        }
+
+
+        @Override
+        protected void populateLocalPort() {
+            InetSocketAddress address = getAddress(true);
+            if (address != null) {
+                localPort = address.getPort();
+            }
+        }
+
+
+        @Override
+        public SSLSupport getSslSupport() {
+            return null;
+        }
+
+
+        @Override
+        public void doClientAuth(SSLSupport sslSupport) throws IOException {
+            // NO-OP. TLS is not supported.
+        }
+
+
+        @Override
+        public void setAppReadBufHandler(ApplicationBufferHandler handler) {
+            // NO-OP. Only used for TLS.
+        }
+
+
+        @Override
+        protected <A> OperationState<A> newOperationState(boolean read, ByteBuffer[] buffers, int offset, int length,
+                BlockingMode block, long timeout, TimeUnit unit, A attachment, CompletionCheck check,
+                CompletionHandler<Long,? super A> handler, Semaphore semaphore,
+                VectoredIOCompletionHandler<A> completion) {
+            // Not reachable. The endpoint never enables async IO so hasAsyncIO() is always false and the vectored
+            // read and write methods are not used. Configurations that request async IO are rejected in bind().
+            throw new UnsupportedOperationException(sm.getString("endpoint.asyncIO"));
+        }
+    }
+
+
+    // ------------------------------------------------- Socket operation types
+
+    /**
+     * Receive into the read buffer of a connection that is waiting for data. The completion is dispatched to the
+     * executor as an {@link SocketEvent#OPEN_READ} event.
+     */
+    private static final class ReceiveOperation extends Operation {
+
+        private final IoUringSocketWrapper socketWrapper;
+        private final ByteBuffer buffer;
+        private final int position;
+        private final long address;
+        private final int length;
+
+        private ReceiveOperation(IoUringSocketWrapper socketWrapper, ByteBuffer buffer) {
+            this.socketWrapper = socketWrapper;
+            this.buffer = buffer;
+            this.position = buffer.position();
+            this.address = MemorySegment.ofBuffer(buffer).address();
+            this.length = buffer.remaining();
+        }
+
+        @Override
+        boolean isObsolete() {
+            return socketWrapper.handle.isClosed();
+        }
+
+        @Override
+        void prepare(IoUring ring, long userData) {
+            ring.prepare(IoUring.IORING_OP_RECV, (byte) 0, socketWrapper.handle.fd, 0, address, length, 0, 0,
+                    userData);
+        }
+
+        @Override
+        void complete(int tag, int res) {
+            socketWrapper.receiveCompleted(this, res);
+        }
+
+        @Override
+        void finished() {
+            socketWrapper.handle.release();
+        }
+    }
+
+
+    /**
+     * Wait for a socket to become readable or writable. Blocking operations notify the waiting thread. Otherwise, the
+     * completion is dispatched to the executor as an {@link SocketEvent#OPEN_WRITE} event.
+     */
+    private static final class PollOperation extends Operation {
+
+        private final IoUringSocketWrapper socketWrapper;
+        private final int events;
+        private final boolean blocking;
+        private boolean done = false;
+        private int result;
+
+        private PollOperation(IoUringSocketWrapper socketWrapper, int events, boolean blocking) {
+            this.socketWrapper = socketWrapper;
+            this.events = events;
+            this.blocking = blocking;
+        }
+
+        @Override
+        boolean isObsolete() {
+            return socketWrapper.handle.isClosed();
+        }
+
+        @Override
+        void prepare(IoUring ring, long userData) {
+            ring.prepare(IoUring.IORING_OP_POLL_ADD, (byte) 0, socketWrapper.handle.fd, 0, 0, 0, events, 0, userData);
+        }
+
+        @Override
+        void complete(int tag, int res) {
+            if (blocking) {
+                synchronized (this) {
+                    result = res;
+                    done = true;
+                    notifyAll();
+                }
+            } else {
+                socketWrapper.writePollCompleted(this, res);
+            }
+        }
+
+        @Override
+        void finished() {
+            socketWrapper.handle.release();
+        }
+
+        /*
+         * Returns the result or Integer.MIN_VALUE if the timeout expired.
+         */
+        synchronized int await(long timeout) throws IOException {
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (!done) {
+                try {
+                    if (timeout > 0) {
+                        long remaining = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+                        if (remaining <= 0) {
+                            return Integer.MIN_VALUE;
+                        }
+                        wait(remaining);
+                    } else {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            return result;
+        }
+    }
+
+
+    /**
+     * Send part of a file via a pipe using a pair of linked splice entries: file to pipe and pipe to socket. The
+     * operation is resubmitted by the ring thread until the whole file has been sent.
+     */
+    private static final class SendfileOperation extends Operation {
+
+        private static final int TAG_FILL = 0;
+        private static final int TAG_DRAIN = 1;
+
+        private final IoUringSocketWrapper socketWrapper;
+        private final SendfileData data;
+        private boolean failed = false;
+
+        private SendfileOperation(IoUringSocketWrapper socketWrapper, SendfileData data) {
+            this.socketWrapper = socketWrapper;
+            this.data = data;
+        }
+
+        @Override
+        boolean isObsolete() {
+            return socketWrapper.handle.isClosed();
+        }
+
+        @Override
+        int getEntryCount() {
+            // Only refill the pipe once it is empty
+            return data.inPipe == 0 ? 2 : 1;
+        }
+
+        @Override
+        void prepare(IoUring ring, long userData) {
+            if (data.inPipe == 0) {
+                int length = (int) Math.min(data.length, SENDFILE_CHUNK_SIZE);
+                ring.prepare(IoUring.IORING_OP_SPLICE, IoUring.IOSQE_IO_LINK, data.pipeOut, -1, data.pos, length, 0,
+                        data.fileFd, userData + TAG_FILL);
+                ring.prepare(IoUring.IORING_OP_SPLICE, (byte) 0, socketWrapper.handle.fd, -1, -1, length, 0,
+                        data.pipeIn, userData + TAG_DRAIN);
+            } else {
+                // Finish draining the pipe
+                ring.prepare(IoUring.IORING_OP_SPLICE, (byte) 0, socketWrapper.handle.fd, -1, -1, data.inPipe, 0,
+                        data.pipeIn, userData + TAG_DRAIN);
+            }
+        }
+
+        @Override
+        int getFirstTag() {
+            return data.inPipe == 0 ? TAG_FILL : TAG_DRAIN;
+        }
+
+        @Override
+        void complete(int tag, int res) {
+            if (tag == TAG_FILL) {
+                if (res > 0) {
+                    data.inPipe += res;
+                    data.pos += res;
+                } else {
+                    // Zero means the file is shorter than expected
+                    failed = true;
+                }
+            } else {
+                if (res > 0) {
+                    data.inPipe -= res;
+                    data.length -= res;
+                    socketWrapper.updateLastWrite();
+                } else if (res != -Native.ECANCELED || timedOut || cancelled) {
+                    // A short fill cancels the linked drain. That is not an error.
+                    failed = true;
+                }
+            }
+        }
+
+        @Override
+        void finished() {
+            if (!failed && !timedOut && !cancelled && !socketWrapper.handle.isClosed() && data.length > 0) {
+                // More to send
+                socketWrapper.poller.resubmit(this);
+                return;
+            }
+            socketWrapper.handle.release();
+            socketWrapper.sendfileCompleted(this, !failed && !timedOut && !cancelled && data.length == 0);
+        }
+    }
+
+
+    // ---------------------------------------------- SocketProcessor Inner Class
+
+    /**
+     * This class is the equivalent of the Worker, but will simply use in an external Executor thread pool.
+     */
+    protected class SocketProcessor extends SocketProcessorBase<Integer> {
+
+        /**
+         * Creates a new socket processor.
+         *
+         * @param socketWrapper The socket wrapper
+         * @param event         The socket event
+         */
+        public SocketProcessor(SocketWrapperBase<Integer> socketWrapper, SocketEvent event) {
+            super(socketWrapper, event);
+        }
+
+        @Override
+        protected void doRun() {
+            if (IoUringEndpoint.this.poller == null) {
+                socketWrapper.close();
+                return;
+            }
+            try {
+                SocketState state = getHandler().process(socketWrapper, event);
+                if (state == SocketState.CLOSED) {
+                    socketWrapper.close();
+                }
+            } catch (VirtualMachineError vme) {
+                ExceptionUtils.handleThrowable(vme);
+            } catch (Throwable t) {
+                log.error(sm.getString("endpoint.processing.fail"), t);
+                socketWrapper.close();
+            } finally {
+                socketWrapper = null;
+                event = null;
+                // return to cache
+                if (running && processorCache != null) {
+                    processorCache.push(this);
+                }
+            }
+        }
+    }
+
+
+    // ----------------------------------------------- SendfileData Inner Class
+
+    /**
+     * SendfileData class.
+     */
+    public static class SendfileData extends SendfileDataBase {
+
+        private int fileFd = -1;
+        private int pipeIn = -1;
+        private int pipeOut = -1;
+        private int inPipe = 0;
+
+        /**
+         * Creates a new sendfile data object.
+         *
+         * @param filename The file to send
+         * @param pos      The starting position
+         * @param length   The number of bytes to send
+         */
+        public SendfileData(String filename, long pos, long length) {
+            super(filename, pos, length);
+        }
+
+        private void open() throws IOException {
+            int fd = Native.open(fileName, Native.O_RDONLY | Native.O_CLOEXEC);
+            if (fd < 0) {
+                throw new IOException(sm.getString("endpoint.sendfile.openFailed", fileName, Native.strerror(fd)));
+            }
+            fileFd = fd;
+            try (java.lang.foreign.Arena arena = java.lang.foreign.Arena.ofConfined()) {
+                MemorySegment fds = arena.allocate(2 * Integer.BYTES);
+                int result = Native.pipe2(fds.address(), Native.O_CLOEXEC);
+                if (result < 0) {
+                    throw new IOException(sm.getString("endpoint.sendfile.pipeFailed", Native.strerror(result)));
+                }
+                pipeIn = fds.get(ValueLayout.JAVA_INT, 0);
+                pipeOut = fds.get(ValueLayout.JAVA_INT, Integer.BYTES);
+            }
+        }
+
+        private void close() {
+            if (fileFd >= 0) {
+                Native.close(fileFd);
+                fileFd = -1;
+            }
+            if (pipeIn >= 0) {
+                Native.close(pipeIn);
+                pipeIn = -1;
+            }
+            if (pipeOut >= 0) {
+                Native.close(pipeOut);
+                pipeOut = -1;
+            }
+        }
+    }
+}
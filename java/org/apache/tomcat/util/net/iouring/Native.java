@@ -0,0 +1,547 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net.iouring;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Access to the Linux system calls used by the io_uring endpoint. Pointer arguments are passed as {@code long}
+ * addresses to avoid creating a {@link MemorySegment} for every call. Unless otherwise stated, methods return the
+ * result of the system call or, on failure, the negated value of {@code errno} in the same manner as the kernel
+ * reports failures in io_uring completions.
+ * <p>
+ * The constants are the values used by the generic Linux system call interface and by the x86_64 architecture. Use of
+ * this class is therefore limited to those architectures by {@link #isPlatformSupported()}.
+ */
+final class Native {
+
+    static final int AF_INET = 2;
+    static final int AF_INET6 = 10;
+    static final int SOCK_STREAM = 1;
+    static final int SOCK_CLOEXEC = 0x80000;
+    static final int O_RDONLY = 0;
+    static final int O_CLOEXEC = 0x80000;
+    static final int EFD_CLOEXEC = 0x80000;
+
+    static final int SOL_SOCKET = 1;
+    static final int SO_REUSEADDR = 2;
+    static final int SO_SNDBUF = 7;
+    static final int SO_RCVBUF = 8;
+    static final int SO_KEEPALIVE = 9;
+    static final int SO_LINGER = 13;
+    static final int IPPROTO_TCP = 6;
+    static final int TCP_NODELAY = 1;
+    static final int IPPROTO_IPV6 = 41;
+    static final int IPV6_V6ONLY = 26;
+
+    static final int SHUT_RDWR = 2;
+    static final int MSG_DONTWAIT = 0x40;
+    static final int MSG_NOSIGNAL = 0x4000;
+
+    static final int POLLIN = 0x001;
+    static final int POLLOUT = 0x004;
+
+    static final int EINTR = 4;
+    static final int EAGAIN = 11;
+    static final int EINVAL = 22;
+    static final int ETIME = 62;
+    static final int EAFNOSUPPORT = 97;
+    static final int ECANCELED = 125;
+
+    private static final long SYS_IO_URING_SETUP = 425;
+    private static final long SYS_IO_URING_ENTER = 426;
+    private static final long SYS_IO_URING_REGISTER = 427;
+
+    static final int PROT_READ = 0x1;
+    static final int PROT_WRITE = 0x2;
+    static final int MAP_SHARED = 0x01;
+    static final int MAP_POPULATE = 0x08000;
+    static final long MAP_FAILED = -1;
+
+    private static final int SOCKADDR_SIZE = 28;
+
+    private static final StructLayout CAPTURE_LAYOUT = Linker.Option.captureStateLayout();
+    private static final long ERRNO_OFFSET =
+            CAPTURE_LAYOUT.byteOffset(MemoryLayout.PathElement.groupElement("errno"));
+
+    private static final ThreadLocal<MemorySegment> CAPTURE =
+            ThreadLocal.withInitial(() -> Arena.ofAuto().allocate(CAPTURE_LAYOUT));
+
+    private static final MethodHandle SOCKET;
+    private static final MethodHandle SETSOCKOPT;
+    private static final MethodHandle BIND;
+    private static final MethodHandle LISTEN;
+    private static final MethodHandle GETSOCKNAME;
+    private static final MethodHandle GETPEERNAME;
+    private static final MethodHandle SHUTDOWN;
+    private static final MethodHandle CLOSE;
+    private static final MethodHandle RECV;
+    private static final MethodHandle SEND;
+    private static final MethodHandle WRITE;
+    private static final MethodHandle EVENTFD;
+    private static final MethodHandle PIPE2;
+    private static final MethodHandle OPEN;
+    private static final MethodHandle MMAP;
+    private static final MethodHandle MUNMAP;
+    private static final MethodHandle IO_URING_SETUP;
+    private static final MethodHandle IO_URING_ENTER;
+    private static final MethodHandle IO_URING_REGISTER;
+    private static final MethodHandle STRERROR;
+
+    static {
+        Linker linker = Linker.nativeLinker();
+        SymbolLookup libc = linker.defaultLookup();
+        Linker.Option errno = Linker.Option.captureCallState("errno");
+        ValueLayout i = ValueLayout.JAVA_INT;
+        ValueLayout l = ValueLayout.JAVA_LONG;
+
+        SOCKET = downcall(linker, libc, "socket", FunctionDescriptor.of(i, i, i, i), errno);
+        SETSOCKOPT = downcall(linker, libc, "setsockopt", FunctionDescriptor.of(i, i, i, i, l, i), errno);
+        BIND = downcall(linker, libc, "bind", FunctionDescriptor.of(i, i, l, i), errno);
+        LISTEN = downcall(linker, libc, "listen", FunctionDescriptor.of(i, i, i), errno);
+        GETSOCKNAME = downcall(linker, libc, "getsockname", FunctionDescriptor.of(i, i, l, l), errno);
+        GETPEERNAME = downcall(linker, libc, "getpeername", FunctionDescriptor.of(i, i, l, l), errno);
+        SHUTDOWN = downcall(linker, libc, "shutdown", FunctionDescriptor.of(i, i, i), errno);
+        CLOSE = downcall(linker, libc, "close", FunctionDescriptor.of(i, i), errno);
+        RECV = downcall(linker, libc, "recv", FunctionDescriptor.of(l, i, l, l, i), errno);
+        SEND = downcall(linker, libc, "send", FunctionDescriptor.of(l, i, l, l, i), errno);
+        WRITE = downcall(linker, libc, "write", FunctionDescriptor.of(l, i, l, l), errno);
+        EVENTFD = downcall(linker, libc, "eventfd", FunctionDescriptor.of(i, i, i), errno);
+        PIPE2 = downcall(linker, libc, "pipe2", FunctionDescriptor.of(i, l, i), errno);
+        OPEN = downcall(linker, libc, "open", FunctionDescriptor.of(i, l, i, i), errno,
+                Linker.Option.firstVariadicArg(2));
+        MMAP = downcall(linker, libc, "mmap", FunctionDescriptor.of(l, l, l, i, i, i, l), errno);
+        MUNMAP = downcall(linker, libc, "munmap", FunctionDescriptor.of(i, l, l), errno);
+        IO_URING_SETUP = downcall(linker, libc, "syscall", FunctionDescriptor.of(l, l, i, l), errno,
+                Linker.Option.firstVariadicArg(1));
+        IO_URING_ENTER = downcall(linker, libc, "syscall", FunctionDescriptor.of(l, l, i, i, i, i, l, l), errno,
+                Linker.Option.firstVariadicArg(1));
+        IO_URING_REGISTER = downcall(linker, libc, "syscall", FunctionDescriptor.of(l, l, i, i, l, i), errno,
+                Linker.Option.firstVariadicArg(1));
+        STRERROR = linker.downcallHandle(libc.find("strerror").orElseThrow(), FunctionDescriptor.of(l, i));
+    }
+
+
+    private Native() {
+        // Utility class
+    }
+
+
+    private static MethodHandle downcall(Linker linker, SymbolLookup lookup, String name,
+            FunctionDescriptor descriptor, Linker.Option... options) {
+        return linker.downcallHandle(lookup.find(name).orElseThrow(), descriptor, options);
+    }
+
+
+    /**
+     * Is the current operating system and architecture one for which the constants in this class are valid?
+     *
+     * @return {@code true} for Linux on x86_64 or aarch64
+     */
+    static boolean isPlatformSupported() {
+        String os = System.getProperty("os.name", "").toLowerCase(Locale.ENGLISH);
+        String arch = System.getProperty("os.arch", "").toLowerCase(Locale.ENGLISH);
+        return os.startsWith("linux") && (arch.equals("amd64") || arch.equals("x86_64") || arch.equals("aarch64"));
+    }
+
+
+    private static int result(int result, MemorySegment capture) {
+        if (result < 0) {
+            return -capture.get(ValueLayout.JAVA_INT, ERRNO_OFFSET);
+        }
+        return result;
+    }
+
+
+    private static long result(long result, MemorySegment capture) {
+        if (result < 0) {
+            return -capture.get(ValueLayout.JAVA_INT, ERRNO_OFFSET);
+        }
+        return result;
+    }
+
+
+    private static RuntimeException invocationError(Throwable t) {
+        if (t instanceof Error e) {
+            throw e;
+        } else if (t instanceof RuntimeException re) {
+            return re;
+        }
+        return new IllegalStateException(t);
+    }
+
+
+    static int socket(int domain, int type, int protocol) {
+        MemorySegment capture = CAPTURE.get();
+        try {
+            return result((int) SOCKET.invokeExact(capture, domain, type, protocol), capture);
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    static int setsockopt(int fd, int level, int name, long value, int length) {
+        MemorySegment capture = CAPTURE.get();
+        try {
+            return result((int) SETSOCKOPT.invokeExact(capture, fd, level, name, value, length), capture);
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    static int setsockopt(int fd, int level, int name, int value) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = arena.allocate(ValueLayout.JAVA_INT);
+            segment.set(ValueLayout.JAVA_INT, 0, value);
+            return setsockopt(fd, level, name, segment.address(), Integer.BYTES);
+        }
+    }
+
+
+    static int setsockoptLinger(int fd, boolean on, int seconds) {
+        try (Arena arena = Arena.ofConfined()) {
+            // struct linger { int l_onoff; int l_linger; }
+            MemorySegment segment = arena.allocate(2 * Integer.BYTES);
+            segment.set(ValueLayout.JAVA_INT, 0, on ? 1 : 0);
+            segment.set(ValueLayout.JAVA_INT, Integer.BYTES, seconds);
+            return setsockopt(fd, SOL_SOCKET, SO_LINGER, segment.address(), 2 * Integer.BYTES);
+        }
+    }
+
+
+    static int bind(int fd, int family, InetSocketAddress address) {
+        MemorySegment capture = CAPTURE.get();
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment sockaddr = arena.allocate(SOCKADDR_SIZE);
+            int length = writeSockaddr(sockaddr, family, address);
+            return result((int) BIND.invokeExact(capture, fd, sockaddr.address(), length), capture);
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    static int listen(int fd, int backlog) {
+        MemorySegment capture = CAPTURE.get();
+        try {
+            return result((int) LISTEN.invokeExact(capture, fd, backlog), capture);
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    /**
+     * Obtain the local address of a socket.
+     *
+     * @param fd the socket
+     *
+     * @return the address or {@code null} if it could not be determined
+     */
+    static InetSocketAddress getsockname(int fd) {
+        return getAddress(GETSOCKNAME, fd);
+    }
+
+
+    /**
+     * Obtain the remote address of a socket.
+     *
+     * @param fd the socket
+     *
+     * @return the address or {@code null} if it could not be determined
+     */
+    static InetSocketAddress getpeername(int fd) {
+        return getAddress(GETPEERNAME, fd);
+    }
+
+
+    private static InetSocketAddress getAddress(MethodHandle handle, int fd) {
+        MemorySegment capture = CAPTURE.get();
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment sockaddr = arena.allocate(SOCKADDR_SIZE);
+            MemorySegment length = arena.allocate(ValueLayout.JAVA_INT);
+            length.set(ValueLayout.JAVA_INT, 0, SOCKADDR_SIZE);
+            int result = result((int) handle.invokeExact(capture, fd, sockaddr.address(), length.address()), capture);
+            if (result < 0) {
+                return null;
+            }
+            return readSockaddr(sockaddr);
+        } catch (UnknownHostException e) {
+            return null;
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    static int shutdown(int fd, int how) {
+        MemorySegment capture = CAPTURE.get();
+        try {
+            return result((int) SHUTDOWN.invokeExact(capture, fd, how), capture);
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    static int close(int fd) {
+        MemorySegment capture = CAPTURE.get();
+        try {
+            return result((int) CLOSE.invokeExact(capture, fd), capture);
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    static long recv(int fd, long address, long length, int flags) {
+        MemorySegment capture = CAPTURE.get();
+        try {
+            return result((long) RECV.invokeExact(capture, fd, address, length, flags), capture);
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    static long send(int fd, long address, long length, int flags) {
+        MemorySegment capture = CAPTURE.get();
+        try {
+            return result((long) SEND.invokeExact(capture, fd, address, length, flags), capture);
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    static long write(int fd, long address, long length) {
+        MemorySegment capture = CAPTURE.get();
+        try {
+            return result((long) WRITE.invokeExact(capture, fd, address, length), capture);
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    static int eventfd(int initialValue, int flags) {
+        MemorySegment capture = CAPTURE.get();
+        try {
+            return result((int) EVENTFD.invokeExact(capture, initialValue, flags), capture);
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    /**
+     * Create a pipe.
+     *
+     * @param fds   the address of an array of two ints that will receive the read and write ends of the pipe
+     * @param flags the flags for the pipe
+     *
+     * @return zero or the negated value of {@code errno}
+     */
+    static int pipe2(long fds, int flags) {
+        MemorySegment capture = CAPTURE.get();
+        try {
+            return result((int) PIPE2.invokeExact(capture, fds, flags), capture);
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    static int open(String path, int flags) {
+        MemorySegment capture = CAPTURE.get();
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment cPath = arena.allocate(bytes.length + 1);
+            MemorySegment.copy(bytes, 0, cPath, ValueLayout.JAVA_BYTE, 0, bytes.length);
+            cPath.set(ValueLayout.JAVA_BYTE, bytes.length, (byte) 0);
+            return result((int) OPEN.invokeExact(capture, cPath.address(), flags, 0), capture);
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    /**
+     * Map the given region of an io_uring file descriptor into memory.
+     *
+     * @param length the length of the region
+     * @param fd     the io_uring file descriptor
+     * @param offset the io_uring specific offset identifying the region
+     *
+     * @return the address of the mapping or the negated value of {@code errno}
+     */
+    static long mmap(long length, int fd, long offset) {
+        MemorySegment capture = CAPTURE.get();
+        try {
+            long result = (long) MMAP.invokeExact(capture, 0L, length, PROT_READ | PROT_WRITE,
+                    MAP_SHARED | MAP_POPULATE, fd, offset);
+            if (result == MAP_FAILED) {
+                return -capture.get(ValueLayout.JAVA_INT, ERRNO_OFFSET);
+            }
+            return result;
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    static int munmap(long address, long length) {
+        MemorySegment capture = CAPTURE.get();
+        try {
+            return result((int) MUNMAP.invokeExact(capture, address, length), capture);
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    static int ioUringSetup(int entries, long params) {
+        MemorySegment capture = CAPTURE.get();
+        try {
+            return (int) result((long) IO_URING_SETUP.invokeExact(capture, SYS_IO_URING_SETUP, entries, params),
+                    capture);
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    static int ioUringEnter(int fd, int toSubmit, int minComplete, int flags) {
+        MemorySegment capture = CAPTURE.get();
+        try {
+            return (int) result((long) IO_URING_ENTER.invokeExact(capture, SYS_IO_URING_ENTER, fd, toSubmit,
+                    minComplete, flags, 0L, 0L), capture);
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    static int ioUringRegister(int fd, int opcode, long arg, int nrArgs) {
+        MemorySegment capture = CAPTURE.get();
+        try {
+            return (int) result((long) IO_URING_REGISTER.invokeExact(capture, SYS_IO_URING_REGISTER, fd, opcode,
+                    arg, nrArgs), capture);
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    /**
+     * Obtain the description of an error code.
+     *
+     * @param errno the error code, which may be negated
+     *
+     * @return the description provided by the C library
+     */
+    static String strerror(int errno) {
+        try {
+            long address = (long) STRERROR.invokeExact(Math.abs(errno));
+            if (address == 0) {
+                return Integer.toString(errno);
+            }
+            MemorySegment string = MemorySegment.ofAddress(address).reinterpret(1024);
+            int length = 0;
+            while (length < 1024 && string.get(ValueLayout.JAVA_BYTE, length) != 0) {
+                length++;
+            }
+            byte[] bytes = new byte[length];
+            MemorySegment.copy(string, ValueLayout.JAVA_BYTE, 0, bytes, 0, length);
+            return new String(bytes, StandardCharsets.UTF_8);
+        } catch (Throwable t) {
+            throw invocationError(t);
+        }
+    }
+
+
+    /*
+     * Writes a struct sockaddr_in or sockaddr_in6 and returns its length. The port is in network byte order and the
+     * family in native byte order.
+     */
+    private static int writeSockaddr(MemorySegment sockaddr, int family, InetSocketAddress address) {
+        InetAddress inetAddress = address.getAddress();
+        // The wildcard address is all zeros for both families
+        byte[] bytes = inetAddress == null || inetAddress.isAnyLocalAddress() ? null : inetAddress.getAddress();
+        int port = address.getPort();
+        sockaddr.set(ValueLayout.JAVA_SHORT, 0, (short) family);
+        sockaddr.set(ValueLayout.JAVA_BYTE, 2, (byte) (port >> 8));
+        sockaddr.set(ValueLayout.JAVA_BYTE, 3, (byte) port);
+        if (family == AF_INET) {
+            if (bytes != null && bytes.length == 4) {
+                MemorySegment.copy(bytes, 0, sockaddr, ValueLayout.JAVA_BYTE, 4, 4);
+            }
+            return 16;
+        } else {
+            if (bytes != null && bytes.length == 16) {
+                MemorySegment.copy(bytes, 0, sockaddr, ValueLayout.JAVA_BYTE, 8, 16);
+                if (inetAddress instanceof Inet6Address inet6Address) {
+                    sockaddr.set(ValueLayout.JAVA_INT, 24, inet6Address.getScopeId());
+                }
+            } else if (bytes != null && bytes.length == 4) {
+                // IPv4 mapped IPv6 address
+                sockaddr.set(ValueLayout.JAVA_BYTE, 18, (byte) 0xff);
+                sockaddr.set(ValueLayout.JAVA_BYTE, 19, (byte) 0xff);
+                MemorySegment.copy(bytes, 0, sockaddr, ValueLayout.JAVA_BYTE, 20, 4);
+            }
+            return SOCKADDR_SIZE;
+        }
+    }
+
+
+    private static InetSocketAddress readSockaddr(MemorySegment sockaddr) throws UnknownHostException {
+        int family = sockaddr.get(ValueLayout.JAVA_SHORT, 0);
+        int port = ((sockaddr.get(ValueLayout.JAVA_BYTE, 2) & 0xff) << 8) | (sockaddr.get(ValueLayout.JAVA_BYTE, 3) & 0xff);
+        byte[] bytes;
+        if (family == AF_INET) {
+            bytes = new byte[4];
+            MemorySegment.copy(sockaddr, ValueLayout.JAVA_BYTE, 4, bytes, 0, 4);
+        } else if (family == AF_INET6) {
+            bytes = new byte[16];
+            MemorySegment.copy(sockaddr, ValueLayout.JAVA_BYTE, 8, bytes, 0, 16);
+            int scopeId = sockaddr.get(ValueLayout.JAVA_INT, 24);
+            if (scopeId != 0) {
+                return new InetSocketAddress(Inet6Address.getByAddress(null, bytes, scopeId), port);
+            }
+        } else {
+            return null;
+        }
+        // IPv4 mapped IPv6 addresses are converted to Inet4Address
+        return new InetSocketAddress(InetAddress.getByAddress(bytes), port);
+    }
+}
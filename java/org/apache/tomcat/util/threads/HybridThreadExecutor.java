@@ -0,0 +1,569 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingStream;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * An executor that uses a new virtual thread for each task and that also maintains a bounded pool of platform threads.
+ * Work that may pin the carrier thread of a virtual thread, such as blocking inside a {@code synchronized} block, can
+ * be passed to {@link #call(String, Callable)} with a key that identifies it (typically a servlet mapping). Work for a
+ * key runs on the calling virtual thread until pinning is detected for that key, either via the JFR
+ * {@code jdk.VirtualThreadPinned} event or because the work took longer than the configured slow threshold. From then
+ * on, work for that key is routed to the platform threads while the calling virtual thread waits without pinning its
+ * carrier.
+ */
+public class HybridThreadExecutor extends AbstractExecutorService {
+
+    private static final Log log = LogFactory.getLog(HybridThreadExecutor.class);
+    private static final StringManager sm = StringManager.getManager(HybridThreadExecutor.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final CountDownLatch shutdown = new CountDownLatch(1);
+
+    private final Thread.Builder threadBuilder;
+
+    private final ThreadPoolExecutor platformExecutor;
+
+    private final Map<String,MappingStatistics> statistics = new ConcurrentHashMap<>();
+
+    /*
+     * The key most recently used by each virtual thread. Pinned events are delivered asynchronously so entries are
+     * retained until a flush of the event stream has occurred after the work completed.
+     */
+    private final Map<Long,ThreadUsage> threadUsage = new ConcurrentHashMap<>();
+
+    private volatile RecordingStream pinnedEvents;
+    private volatile boolean pinnedEventsStarted = false;
+    private volatile long lastFlush;
+
+    private volatile boolean detectPinning = true;
+    private volatile long pinnedThreshold = 20;
+    private volatile long slowThreshold = -1;
+    private volatile int routingThreshold = 1;
+    private volatile Consumer<MappingStatistics> mappingListener;
+
+
+    /**
+     * Constructs a new HybridThreadExecutor.
+     *
+     * @param namePrefix         The name prefix for virtual threads and platform threads
+     * @param maxPlatformThreads The maximum number of platform threads
+     */
+    public HybridThreadExecutor(String namePrefix, int maxPlatformThreads) {
+        threadBuilder = Thread.ofVirtual().name(namePrefix, 0);
+        TaskQueue taskqueue = new TaskQueue();
+        TaskThreadFactory tf = new TaskThreadFactory(namePrefix + "platform-", true, Thread.NORM_PRIORITY);
+        platformExecutor = new ThreadPoolExecutor(0, maxPlatformThreads, 60, TimeUnit.SECONDS, taskqueue, tf);
+        taskqueue.setParent(platformExecutor);
+    }
+
+
+    /**
+     * Should pinning be detected using JFR events? The default is {@code true}.
+     *
+     * @return {@code true} if pinning is detected using JFR
+     */
+    public boolean getDetectPinning() {
+        return detectPinning;
+    }
+
+    /**
+     * Configure whether pinning should be detected using JFR events. This must be set before the first call to
+     * {@link #call(String, Callable)}.
+     *
+     * @param detectPinning {@code true} to detect pinning using JFR
+     */
+    public void setDetectPinning(boolean detectPinning) {
+        this.detectPinning = detectPinning;
+    }
+
+    /**
+     * @return the minimum duration, in milliseconds, of a pinned event for it to count towards routing
+     */
+    public long getPinnedThreshold() {
+        return pinnedThreshold;
+    }
+
+    /**
+     * Set the minimum duration of a pinned event for it to count towards routing. This must be set before the first
+     * call to {@link #call(String, Callable)}. The default is 20 milliseconds, the JDK default for the event.
+     *
+     * @param pinnedThreshold the threshold in milliseconds
+     */
+    public void setPinnedThreshold(long pinnedThreshold) {
+        this.pinnedThreshold = pinnedThreshold;
+    }
+
+    /**
+     * @return the processing time, in milliseconds, above which work on a virtual thread counts towards routing, or a
+     *             negative value if processing time is not considered
+     */
+    public long getSlowThreshold() {
+        return slowThreshold;
+    }
+
+    /**
+     * Set the processing time above which work on a virtual thread counts towards routing. Processing time includes
+     * time spent blocked, which does not normally pin a virtual thread, so this is disabled by default.
+     *
+     * @param slowThreshold the threshold in milliseconds or a negative value to disable
+     */
+    public void setSlowThreshold(long slowThreshold) {
+        this.slowThreshold = slowThreshold;
+    }
+
+    /**
+     * @return the number of pinned or slow events for a key after which work for that key is routed to platform
+     *             threads
+     */
+    public int getRoutingThreshold() {
+        return routingThreshold;
+    }
+
+    /**
+     * Set the number of pinned or slow events for a key after which work for that key is routed to platform threads.
+     * The default is 1.
+     *
+     * @param routingThreshold the number of events
+     */
+    public void setRoutingThreshold(int routingThreshold) {
+        this.routingThreshold = routingThreshold;
+    }
+
+    /**
+     * Set a listener that is notified when statistics are created for a new key, for example to register them with
+     * JMX.
+     *
+     * @param mappingListener the listener
+     */
+    public void setMappingListener(Consumer<MappingStatistics> mappingListener) {
+        this.mappingListener = mappingListener;
+    }
+
+    /**
+     * @return the number of platform threads currently in the pool
+     */
+    public int getPlatformPoolSize() {
+        return platformExecutor.getPoolSize();
+    }
+
+    /**
+     * @return the number of platform threads currently executing work
+     */
+    public int getPlatformActiveCount() {
+        return platformExecutor.getActiveCount();
+    }
+
+    /**
+     * @return the maximum number of platform threads
+     */
+    public int getMaxPlatformThreads() {
+        return platformExecutor.getMaximumPoolSize();
+    }
+
+    /**
+     * Obtain the statistics for the given key.
+     *
+     * @param key the key
+     *
+     * @return the statistics or {@code null} if no work has been performed for the key
+     */
+    public MappingStatistics getMappingStatistics(String key) {
+        return statistics.get(key);
+    }
+
+    /**
+     * @return the statistics for all keys for which work has been performed
+     */
+    public List<MappingStatistics> getMappingStatistics() {
+        return new ArrayList<>(statistics.values());
+    }
+
+
+    @Override
+    public void execute(Runnable command) {
+        if (isShutdown()) {
+            throw new RejectedExecutionException(
+                    sm.getString("virtualThreadExecutor.taskRejected", command.toString(), this.toString()));
+        }
+        threadBuilder.start(command);
+    }
+
+
+    /**
+     * Perform work identified by the given key. If the current thread is a virtual thread and the key has been routed
+     * to platform threads, the work is performed on a platform thread and the current thread waits for it to complete.
+     * Otherwise the work is performed on the current thread. No thread context, such as the context class loader, is
+     * copied to the platform thread. If the work needs it, the work is responsible for binding the thread.
+     *
+     * @param key  the key that identifies the work
+     * @param task the work
+     * @param <T>  the type of the result
+     *
+     * @return the result of the work
+     *
+     * @throws Exception if the work throws an exception
+     */
+    public <T> T call(String key, Callable<T> task) throws Exception {
+        MappingStatistics stats = statistics.get(key);
+        if (stats == null) {
+            stats = new MappingStatistics(key);
+            MappingStatistics existing = statistics.putIfAbsent(key, stats);
+            if (existing == null) {
+                Consumer<MappingStatistics> listener = mappingListener;
+                if (listener != null) {
+                    listener.accept(stats);
+                }
+            } else {
+                stats = existing;
+            }
+        }
+
+        Thread currentThread = Thread.currentThread();
+        if (!currentThread.isVirtual()) {
+            // Nothing to gain from moving to another platform thread
+            long start = System.nanoTime();
+            try {
+                return task.call();
+            } finally {
+                stats.recordRequest(System.nanoTime() - start, false);
+            }
+        }
+
+        if (stats.isRoutedToPlatform() && !isShutdown()) {
+            long start = System.nanoTime();
+            Future<T> future;
+            try {
+                future = platformExecutor.submit(task);
+            } catch (RejectedExecutionException e) {
+                future = null;
+            }
+            if (future != null) {
+                try {
+                    return getUninterruptibly(future);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception exception) {
+                        throw exception;
+                    }
+                    if (cause instanceof Error error) {
+                        throw error;
+                    }
+                    throw e;
+                } finally {
+                    stats.recordRequest(System.nanoTime() - start, true);
+                }
+            }
+        }
+
+        ThreadUsage usage = null;
+        if (startPinnedEvents()) {
+            usage = new ThreadUsage(stats);
+            threadUsage.put(Long.valueOf(currentThread.threadId()), usage);
+        }
+        long start = System.nanoTime();
+        try {
+            return task.call();
+        } finally {
+            long end = System.nanoTime();
+            long elapsed = end - start;
+            stats.recordRequest(elapsed, false);
+            if (usage != null) {
+                usage.end = end;
+            }
+            long slowThreshold = this.slowThreshold;
+            if (slowThreshold >= 0 && elapsed > TimeUnit.MILLISECONDS.toNanos(slowThreshold)) {
+                stats.slowCount.increment();
+                checkRouting(stats);
+            }
+        }
+    }
+
+
+    /*
+     * The work must complete before the caller continues since it may be using objects owned by the caller.
+     */
+    private static <T> T getUninterruptibly(Future<T> future) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    private void checkRouting(MappingStatistics stats) {
+        if (!stats.isRoutedToPlatform() && stats.getPinnedCount() + stats.getSlowCount() >= routingThreshold) {
+            stats.setRoutedToPlatform(true);
+            log.info(sm.getString("hybridThreadExecutor.routed", stats.getKey(), Long.valueOf(stats.getPinnedCount()),
+                    Long.valueOf(stats.getSlowCount())));
+        }
+    }
+
+
+    /*
+     * Returns true if pinned events are being monitored.
+     */
+    private boolean startPinnedEvents() {
+        if (!detectPinning) {
+            return false;
+        }
+        if (pinnedEventsStarted) {
+            return pinnedEvents != null;
+        }
+        synchronized (threadUsage) {
+            if (!pinnedEventsStarted && !isShutdown()) {
+                /*
+                 * This is normally called from a request thread. Any threads started by JFR would retain a reference
+                 * to the web application class loader.
+                 */
+                Thread currentThread = Thread.currentThread();
+                ClassLoader original = currentThread.getContextClassLoader();
+                currentThread.setContextClassLoader(getClass().getClassLoader());
+                try {
+                    RecordingStream rs = new RecordingStream();
+                    rs.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(pinnedThreshold));
+                    rs.onEvent(PINNED_EVENT, this::pinned);
+                    rs.onFlush(this::flushed);
+                    rs.startAsync();
+                    pinnedEvents = rs;
+                } catch (Throwable t) {
+                    ExceptionUtils.handleThrowable(t);
+                    // JFR may not be available or may be disabled
+                    log.warn(sm.getString("hybridThreadExecutor.jfrFailed"), t);
+                } finally {
+                    currentThread.setContextClassLoader(original);
+                }
+                pinnedEventsStarted = true;
+            }
+        }
+        return pinnedEvents != null;
+    }
+
+
+    private void pinned(RecordedEvent event) {
+        RecordedThread thread = event.getThread();
+        if (thread == null) {
+            return;
+        }
+        ThreadUsage usage = threadUsage.get(Long.valueOf(thread.getJavaThreadId()));
+        if (usage != null) {
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("hybridThreadExecutor.pinned", usage.stats.getKey(), event.getDuration()));
+            }
+            usage.stats.pinnedCount.increment();
+            checkRouting(usage.stats);
+        }
+    }
+
+
+    private void flushed() {
+        // Events for work that completed before the previous flush have been delivered
+        long previousFlush = lastFlush;
+        threadUsage.values().removeIf(usage -> usage.end != 0 && usage.end - previousFlush < 0);
+        lastFlush = System.nanoTime();
+    }
+
+
+    @Override
+    public void shutdown() {
+        shutdown.countDown();
+        platformExecutor.shutdown();
+        synchronized (threadUsage) {
+            pinnedEventsStarted = true;
+            RecordingStream rs = pinnedEvents;
+            pinnedEvents = null;
+            if (rs != null) {
+                rs.close();
+            }
+        }
+        threadUsage.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The HybridThreadExecutor does not track in-progress tasks on virtual threads so calling this method is
+     * equivalent to calling {@link #shutdown()}.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown.getCount() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The HybridThreadExecutor does not track in-progress tasks on virtual threads so this method only considers the
+     * platform threads.
+     */
+    @Override
+    public boolean isTerminated() {
+        return isShutdown() && platformExecutor.isTerminated();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The HybridThreadExecutor does not track in-progress tasks on virtual threads so this method only waits for the
+     * platform threads.
+     */
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!shutdown.await(timeout, unit)) {
+            return false;
+        }
+        return platformExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+
+    private static class ThreadUsage {
+        private final MappingStatistics stats;
+        private volatile long end;
+
+        ThreadUsage(MappingStatistics stats) {
+            this.stats = stats;
+        }
+    }
+
+
+    /**
+     * Statistics for the work performed for a single key.
+     */
+    public static class MappingStatistics {
+
+        private final String key;
+        private final LongAdder requestCount = new LongAdder();
+        private final LongAdder platformCount = new LongAdder();
+        private final LongAdder pinnedCount = new LongAdder();
+        private final LongAdder slowCount = new LongAdder();
+        private final LongAdder processingTime = new LongAdder();
+        private volatile boolean routedToPlatform = false;
+
+        MappingStatistics(String key) {
+            this.key = key;
+        }
+
+        private void recordRequest(long nanos, boolean platform) {
+            requestCount.increment();
+            if (platform) {
+                platformCount.increment();
+            }
+            processingTime.add(nanos);
+        }
+
+        /**
+         * @return the key for which these statistics are recorded
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the number of times work has been performed for this key
+         */
+        public long getRequestCount() {
+            return requestCount.sum();
+        }
+
+        /**
+         * @return the number of times work for this key has been routed to a platform thread
+         */
+        public long getPlatformCount() {
+            return platformCount.sum();
+        }
+
+        /**
+         * @return the number of times a virtual thread was detected as pinned while performing work for this key
+         */
+        public long getPinnedCount() {
+            return pinnedCount.sum();
+        }
+
+        /**
+         * @return the number of times work for this key on a virtual thread exceeded the slow threshold
+         */
+        public long getSlowCount() {
+            return slowCount.sum();
+        }
+
+        /**
+         * @return the total processing time, in milliseconds, for this key
+         */
+        public long getProcessingTime() {
+            return TimeUnit.NANOSECONDS.toMillis(processingTime.sum());
+        }
+
+        /**
+         * @return {@code true} if work for this key is routed to platform threads
+         */
+        public boolean isRoutedToPlatform() {
+            return routedToPlatform;
+        }
+
+        /**
+         * Configure whether work for this key is routed to platform threads. This allows the automatic routing
+         * decision to be overridden.
+         *
+         * @param routedToPlatform {@code true} to route work for this key to platform threads
+         */
+        public void setRoutedToPlatform(boolean routedToPlatform) {
+            this.routedToPlatform = routedToPlatform;
+        }
+    }
+}
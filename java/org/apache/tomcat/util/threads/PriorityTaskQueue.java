@@ -0,0 +1,506 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * A task queue, for use with a {@link ThreadPoolExecutor}, that holds tasks in separate priority classes. It behaves
+ * in the same way as {@link TaskQueue} with respect to thread creation and thread renewal but:
+ * <ul>
+ * <li>Tasks that implement {@link Prioritized} are queued in the priority class they return. Other tasks, and tasks
+ * that return a priority class that does not exist, are queued in the default class, class 0.</li>
+ * <li>Each priority class has a weight. When more than one class has queued tasks, tasks are taken from each class in
+ * proportion to the weights using a smooth weighted round robin.</li>
+ * <li>Each priority class may have a limit on the number of queued tasks. If the limit for a class is reached, further
+ * tasks in that class are rejected while tasks in other classes may still be queued.</li>
+ * </ul>
+ */
+public class PriorityTaskQueue extends AbstractQueue<Runnable> implements RetryableQueue<Runnable> {
+
+    protected static final StringManager sm = StringManager.getManager(PriorityTaskQueue.class);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private final ArrayDeque<Runnable>[] queues;
+    private final int[] weights;
+    private final int[] limits;
+    private final long[] currentWeights;
+    private final long[] rejectedCounts;
+    private final int capacity;
+    private int count = 0;
+
+    private volatile ThreadPoolExecutor parent = null;
+
+
+    /**
+     * Constructs a new PriorityTaskQueue.
+     *
+     * @param capacity the maximum number of tasks that may be queued across all classes
+     * @param weights  the weight of each priority class. The number of weights determines the number of classes.
+     * @param limits   the maximum number of tasks that may be queued for each priority class. A negative value means
+     *                     that there is no limit other than the overall capacity. If {@code null} or shorter than
+     *                     {@code weights}, there is no limit for the remaining classes.
+     *
+     * @throws IllegalArgumentException if the capacity is not positive, no weights are provided or any weight is not
+     *                                      positive
+     */
+    public PriorityTaskQueue(int capacity, int[] weights, int[] limits) {
+        if (capacity <= 0 || weights == null || weights.length == 0) {
+            throw new IllegalArgumentException(sm.getString("priorityTaskQueue.invalidConfig"));
+        }
+        for (int weight : weights) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException(sm.getString("priorityTaskQueue.invalidConfig"));
+            }
+        }
+        this.capacity = capacity;
+        this.weights = weights.clone();
+        this.limits = new int[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            if (limits != null && i < limits.length && limits[i] >= 0) {
+                this.limits[i] = limits[i];
+            } else {
+                this.limits[i] = Integer.MAX_VALUE;
+            }
+        }
+        @SuppressWarnings("unchecked")
+        ArrayDeque<Runnable>[] queues = (ArrayDeque<Runnable>[]) new ArrayDeque<?>[weights.length];
+        this.queues = queues;
+        for (int i = 0; i < weights.length; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+        currentWeights = new long[weights.length];
+        rejectedCounts = new long[weights.length];
+    }
+
+
+    /**
+     * Parses a comma separated list of integers, as used to configure the weights and limits of the priority classes.
+     *
+     * @param values the comma separated list
+     *
+     * @return the parsed values or {@code null} if {@code values} is {@code null} or empty
+     *
+     * @throws IllegalArgumentException if any of the values is not an integer
+     */
+    public static int[] parseValues(String values) {
+        if (values == null || values.isBlank()) {
+            return null;
+        }
+        String[] parts = values.split(",");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                result[i] = Integer.parseInt(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(sm.getString("priorityTaskQueue.invalidValue", values), e);
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Sets the parent thread pool executor for this queue.
+     *
+     * @param tp the parent executor
+     */
+    public void setParent(ThreadPoolExecutor tp) {
+        parent = tp;
+    }
+
+
+    /**
+     * Returns the number of priority classes.
+     *
+     * @return the number of priority classes
+     */
+    public int getPriorityClassCount() {
+        return queues.length;
+    }
+
+
+    /**
+     * Returns the number of tasks queued in the given priority class.
+     *
+     * @param priorityClass the priority class
+     *
+     * @return the number of queued tasks
+     */
+    public int size(int priorityClass) {
+        lock.lock();
+        try {
+            return queues[priorityClass].size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Returns the number of tasks in the given priority class that were not queued because the limit for the class,
+     * or the overall capacity, had been reached.
+     *
+     * @param priorityClass the priority class
+     *
+     * @return the number of rejected tasks
+     */
+    public long getRejectedCount(int priorityClass) {
+        lock.lock();
+        try {
+            return rejectedCounts[priorityClass];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public boolean force(Runnable o) {
+        if (parent == null || parent.isShutdown()) {
+            throw new RejectedExecutionException(sm.getString("taskQueue.notRunning"));
+        }
+        return enqueue(o); // forces the item onto the queue, to be used if the task is rejected
+    }
+
+
+    @Override
+    public boolean offer(Runnable o) {
+        // we can't do any checks
+        if (parent == null) {
+            return enqueue(o);
+        }
+        // we are maxed out on threads, simply queue the object
+        if (parent.getPoolSizeNoLock() == parent.getMaximumPoolSize()) {
+            return enqueue(o);
+        }
+        // we have idle threads, just add it to the queue
+        if (parent.getSubmittedCount() <= parent.getPoolSizeNoLock()) {
+            return enqueue(o);
+        }
+        // if we have less threads than maximum force creation of a new thread
+        if (parent.getPoolSizeNoLock() < parent.getMaximumPoolSize()) {
+            return false;
+        }
+        // if we reached here, we need to add it to the queue
+        return enqueue(o);
+    }
+
+
+    @Override
+    public boolean offer(Runnable o, long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(o);
+        int priorityClass = getPriorityClass(o);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (isFull(priorityClass)) {
+                if (nanos <= 0) {
+                    rejectedCounts[priorityClass]++;
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            insert(priorityClass, o);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public void put(Runnable o) throws InterruptedException {
+        Objects.requireNonNull(o);
+        int priorityClass = getPriorityClass(o);
+        lock.lockInterruptibly();
+        try {
+            while (isFull(priorityClass)) {
+                notFull.await();
+            }
+            insert(priorityClass, o);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private boolean enqueue(Runnable o) {
+        Objects.requireNonNull(o);
+        int priorityClass = getPriorityClass(o);
+        lock.lock();
+        try {
+            if (isFull(priorityClass)) {
+                rejectedCounts[priorityClass]++;
+                return false;
+            }
+            insert(priorityClass, o);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private int getPriorityClass(Runnable o) {
+        if (o instanceof Prioritized prioritized) {
+            int priorityClass = prioritized.getPriorityClass();
+            if (priorityClass >= 0 && priorityClass < queues.length) {
+                return priorityClass;
+            }
+        }
+        return 0;
+    }
+
+
+    private boolean isFull(int priorityClass) {
+        return count >= capacity || queues[priorityClass].size() >= limits[priorityClass];
+    }
+
+
+    private void insert(int priorityClass, Runnable o) {
+        queues[priorityClass].addLast(o);
+        count++;
+        notEmpty.signal();
+    }
+
+
+    /*
+     * Selects the next task using a smooth weighted round robin across the classes that have queued tasks.
+     */
+    private Runnable extract() {
+        if (count == 0) {
+            return null;
+        }
+        int selected = -1;
+        long total = 0;
+        for (int i = 0; i < queues.length; i++) {
+            if (!queues[i].isEmpty()) {
+                currentWeights[i] += weights[i];
+                total += weights[i];
+                if (selected == -1 || currentWeights[i] > currentWeights[selected]) {
+                    selected = i;
+                }
+            }
+        }
+        currentWeights[selected] -= total;
+        count--;
+        notFull.signal();
+        return queues[selected].pollFirst();
+    }
+
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return extract();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Runnable runnable;
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0 && nanos > 0) {
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            runnable = extract();
+        } finally {
+            lock.unlock();
+        }
+        if (runnable == null && parent != null) {
+            // the poll timed out, it gives an opportunity to stop the current
+            // thread if needed to avoid memory leaks.
+            parent.stopCurrentThreadIfNeeded();
+        }
+        return runnable;
+    }
+
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        if (parent != null && parent.currentThreadShouldBeStopped()) {
+            return poll(parent.getKeepAliveTime(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+            // yes, this may return null (in case of timeout) which normally
+            // does not occur with take()
+            // but the ThreadPoolExecutor implementation allows this
+        }
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return extract();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            for (ArrayDeque<Runnable> queue : queues) {
+                if (!queue.isEmpty()) {
+                    return queue.peekFirst();
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            for (ArrayDeque<Runnable> queue : queues) {
+                if (queue.remove(o)) {
+                    count--;
+                    notFull.signal();
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        Objects.requireNonNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        lock.lock();
+        try {
+            int n = 0;
+            Runnable r;
+            while (n < maxElements && (r = extract()) != null) {
+                c.add(r);
+                n++;
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The iterator operates on a snapshot of the queue, in priority class order.
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        List<Runnable> snapshot = new ArrayList<>();
+        lock.lock();
+        try {
+            for (ArrayDeque<Runnable> queue : queues) {
+                snapshot.addAll(queue);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return new Iterator<>() {
+            private int next = 0;
+            private Runnable last = null;
+
+            @Override
+            public boolean hasNext() {
+                return next < snapshot.size();
+            }
+
+            @Override
+            public Runnable next() {
+                if (next >= snapshot.size()) {
+                    throw new NoSuchElementException();
+                }
+                last = snapshot.get(next++);
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                PriorityTaskQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+}
@@ -0,0 +1,924 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * An alternative to {@link ThreadPoolExecutor} with {@link TaskQueue} that avoids a single, lock based queue shared by
+ * all threads.
+ * <p>
+ * The pool behaves in the same way as a {@link ThreadPoolExecutor} with a {@link TaskQueue}:
+ * <ul>
+ * <li>A new thread is started for a new task if the pool is smaller than the maximum pool size and there are no idle
+ * threads.</li>
+ * <li>Otherwise the task is queued. If the pool reached its maximum size concurrently, the task is forced onto the
+ * queue as {@link RetryableQueue#force(Object)} would do. The task is only rejected if the queue is full.</li>
+ * <li>Threads that were started before a context was stopped are renewed, by throwing a
+ * {@link StopPooledThreadException}, as described for {@link ThreadPoolExecutor#contextStopping()}.</li>
+ * </ul>
+ * <p>
+ * Idle threads are tracked in a lock-free stack. At most one idle thread at a time is woken to look for queued tasks
+ * and, once it finds one, it wakes another idle thread if further tasks are queued. Queued tasks
+ * submitted by threads that are not pool threads are held in a lock-free queue. Queued tasks submitted by pool threads,
+ * such as HTTP/2 streams dispatched by the thread processing the connection, are held in a lock-free deque owned by the
+ * submitting thread. Each pool thread processes its own deque first, then the shared queue and then attempts to steal
+ * tasks from the deques of other pool threads.
+ */
+public class WorkStealingThreadPoolExecutor extends AbstractExecutorService implements ResizableExecutor {
+
+    protected static final StringManager sm = StringManager.getManager(WorkStealingThreadPoolExecutor.class);
+
+    private static final int RUNNING = 0;
+    private static final int SHUTDOWN = 1;
+    private static final int STOP = 2;
+
+    /*
+     * Worker states used to park and wake idle workers.
+     */
+    private static final int ACTIVE = 0;
+    private static final int PARKED = 1;
+    private static final int SIGNALLED = 2;
+
+    private final ThreadFactory threadFactory;
+
+    private final Queue<Runnable> sharedQueue = new ConcurrentLinkedQueue<>();
+    private final Deque<Worker> idleWorkers = new ConcurrentLinkedDeque<>();
+    private final ThreadLocal<Worker> currentWorker = new ThreadLocal<>();
+    private final Object workersLock = new Object();
+    private volatile Worker[] workers = new Worker[0];
+
+    private final AtomicInteger runState = new AtomicInteger(RUNNING);
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private final AtomicInteger poolSize = new AtomicInteger(0);
+    private final AtomicInteger queueSize = new AtomicInteger(0);
+    private final AtomicInteger activeCount = new AtomicInteger(0);
+    private final AtomicInteger searchingCount = new AtomicInteger(0);
+    private final AtomicInteger submittedCount = new AtomicInteger(0);
+    private final LongAdder completedTaskCount = new LongAdder();
+    private volatile int largestPoolSize = 0;
+
+    private final AtomicLong lastContextStoppedTime = new AtomicLong(0L);
+    private final AtomicLong lastTimeThreadKilledItself = new AtomicLong(0L);
+
+    private volatile int corePoolSize;
+    private volatile int maximumPoolSize;
+    private volatile long keepAliveTime;
+    private volatile int queueCapacity;
+    private volatile long threadRenewalDelay = Constants.DEFAULT_THREAD_RENEWAL_DELAY;
+
+
+    /**
+     * Creates a new executor and starts the core threads.
+     *
+     * @param corePoolSize    the number of threads to keep in the pool, even if they are idle
+     * @param maximumPoolSize the maximum number of threads to allow in the pool
+     * @param keepAliveTime   when the number of threads is greater than the core, this is the maximum time that excess
+     *                            idle threads will wait for new tasks before terminating
+     * @param unit            the time unit for the {@code keepAliveTime} argument
+     * @param queueCapacity   the maximum number of tasks that may be queued
+     * @param threadFactory   the factory to use when the executor creates a new thread
+     *
+     * @throws IllegalArgumentException if one of the following holds:<br>
+     *                                      {@code corePoolSize < 0}<br>
+     *                                      {@code keepAliveTime < 0}<br>
+     *                                      {@code maximumPoolSize <= 0}<br>
+     *                                      {@code maximumPoolSize < corePoolSize}<br>
+     *                                      {@code queueCapacity < 0}
+     * @throws NullPointerException     if {@code threadFactory} is null
+     */
+    public WorkStealingThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+            int queueCapacity, ThreadFactory threadFactory) {
+        if (corePoolSize < 0 || maximumPoolSize <= 0 || maximumPoolSize < corePoolSize || keepAliveTime < 0 ||
+                queueCapacity < 0) {
+            throw new IllegalArgumentException();
+        }
+        if (threadFactory == null) {
+            throw new NullPointerException();
+        }
+        this.corePoolSize = corePoolSize;
+        this.maximumPoolSize = maximumPoolSize;
+        this.keepAliveTime = unit.toNanos(keepAliveTime);
+        this.queueCapacity = queueCapacity;
+        this.threadFactory = threadFactory;
+
+        for (int i = 0; i < corePoolSize; i++) {
+            if (!addWorker(null)) {
+                break;
+            }
+        }
+    }
+
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (runState.get() != RUNNING) {
+            throw new RejectedExecutionException(sm.getString("threadPoolExecutor.taskRejected", command, this));
+        }
+        submittedCount.incrementAndGet();
+
+        // Start a new thread unless there is, or is about to be, an idle thread
+        int size = poolSize.get();
+        if (size < maximumPoolSize && submittedCount.get() > size && addWorker(command)) {
+            return;
+        }
+
+        // Queue the task. This includes the case where the pool reached its maximum size concurrently.
+        do {
+            size = queueSize.get();
+            if (size >= queueCapacity) {
+                submittedCount.decrementAndGet();
+                throw new RejectedExecutionException(sm.getString("threadPoolExecutor.queueFull"));
+            }
+        } while (!queueSize.compareAndSet(size, size + 1));
+        Worker w = currentWorker.get();
+        if (w != null) {
+            w.deque.offerLast(command);
+        } else {
+            sharedQueue.offer(command);
+        }
+
+        // Wake an idle thread unless one is already looking for work
+        if (searchingCount.get() == 0) {
+            signal();
+        }
+        if (runState.get() == STOP && remove(command)) {
+            submittedCount.decrementAndGet();
+            throw new RejectedExecutionException(sm.getString("threadPoolExecutor.taskRejected", command, this));
+        }
+    }
+
+
+    /*
+     * Wakes an idle worker so it looks for work. Returns true if a worker was woken.
+     */
+    private boolean signal() {
+        Worker w;
+        while ((w = idleWorkers.pollFirst()) != null) {
+            w.idle.set(false);
+            searchingCount.incrementAndGet();
+            if (w.state.compareAndSet(PARKED, SIGNALLED)) {
+                LockSupport.unpark(w.thread);
+                return true;
+            }
+            searchingCount.decrementAndGet();
+        }
+        return false;
+    }
+
+
+    /*
+     * Called by a woken worker when it has found a task or is about to park again. If it was the last worker looking
+     * for work and there is still work queued, another worker is woken.
+     */
+    private void stopSearching() {
+        if (searchingCount.decrementAndGet() == 0 && queueSize.get() > 0) {
+            signal();
+        }
+    }
+
+
+    private void signalAll() {
+        for (Worker w : workers) {
+            searchingCount.incrementAndGet();
+            if (w.state.compareAndSet(PARKED, SIGNALLED)) {
+                LockSupport.unpark(w.thread);
+            } else {
+                searchingCount.decrementAndGet();
+            }
+        }
+    }
+
+
+    /*
+     * Starts a new worker, if the pool is smaller than the maximum pool size, with the given first task.
+     */
+    private boolean addWorker(Runnable firstTask) {
+        int size;
+        do {
+            size = poolSize.get();
+            int rs = runState.get();
+            if (size >= maximumPoolSize || rs >= STOP ||
+                    (rs == SHUTDOWN && (firstTask != null || queueSize.get() == 0))) {
+                return false;
+            }
+        } while (!poolSize.compareAndSet(size, size + 1));
+
+        boolean started = false;
+        Worker w = new Worker(firstTask);
+        try {
+            Thread t = threadFactory.newThread(w);
+            if (t != null) {
+                w.thread = t;
+                synchronized (workersLock) {
+                    Worker[] current = workers;
+                    Worker[] updated = Arrays.copyOf(current, current.length + 1);
+                    updated[current.length] = w;
+                    workers = updated;
+                    if (updated.length > largestPoolSize) {
+                        largestPoolSize = updated.length;
+                    }
+                }
+                t.start();
+                started = true;
+            }
+        } finally {
+            if (!started) {
+                removeWorker(w);
+                poolSize.decrementAndGet();
+                tryTerminate();
+            }
+        }
+        return started;
+    }
+
+
+    private void removeWorker(Worker w) {
+        synchronized (workersLock) {
+            Worker[] current = workers;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == w) {
+                    Worker[] updated = new Worker[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    workers = updated;
+                    break;
+                }
+            }
+        }
+    }
+
+
+    private void runWorker(Worker w) {
+        Thread wt = Thread.currentThread();
+        currentWorker.set(w);
+        Runnable task = w.firstTask;
+        w.firstTask = null;
+        boolean completedAbruptly = true;
+        try {
+            while (task != null || (task = getTask(w)) != null) {
+                // Only interrupt the thread if the pool is stopping
+                if (runState.get() >= STOP) {
+                    if (!wt.isInterrupted()) {
+                        wt.interrupt();
+                    }
+                } else if (Thread.interrupted() && runState.get() >= STOP) {
+                    wt.interrupt();
+                }
+                activeCount.incrementAndGet();
+                Throwable thrown = null;
+                try {
+                    task.run();
+                } catch (Throwable x) {
+                    thrown = x;
+                    throw x;
+                } finally {
+                    activeCount.decrementAndGet();
+                    completedTaskCount.increment();
+                    task = null;
+                    afterExecute(thrown);
+                }
+            }
+            completedAbruptly = false;
+        } finally {
+            processWorkerExit(w, completedAbruptly);
+        }
+    }
+
+
+    private void afterExecute(Throwable t) {
+        if (!(t instanceof StopPooledThreadException)) {
+            submittedCount.decrementAndGet();
+        }
+        if (t == null) {
+            stopCurrentThreadIfNeeded();
+        }
+    }
+
+
+    /*
+     * Returns the next task for the given worker or null if the worker should exit. If null is returned, the pool size
+     * has already been decremented.
+     */
+    private Runnable getTask(Worker w) {
+        boolean searching = false;
+        try {
+            while (true) {
+                int rs = runState.get();
+                if (rs >= STOP) {
+                    poolSize.decrementAndGet();
+                    return null;
+                }
+                if (poolSize.get() > maximumPoolSize && decrementPoolSize(maximumPoolSize)) {
+                    return null;
+                }
+                Runnable task = findTask(w);
+                if (task != null) {
+                    return task;
+                }
+                if (rs == SHUTDOWN) {
+                    poolSize.decrementAndGet();
+                    return null;
+                }
+                if (searching) {
+                    searching = false;
+                    stopSearching();
+                }
+
+                // Nothing to do. Publish that this worker is idle and then check again.
+                w.state.set(PARKED);
+                if (w.idle.compareAndSet(false, true)) {
+                    idleWorkers.offerFirst(w);
+                }
+                task = findTask(w);
+                if (task != null || runState.get() != RUNNING) {
+                    if (!w.state.compareAndSet(PARKED, ACTIVE)) {
+                        w.state.set(ACTIVE);
+                        searching = true;
+                    }
+                    if (task != null) {
+                        return task;
+                    }
+                    continue;
+                }
+
+                boolean renew = currentThreadShouldBeStopped();
+                boolean timed = renew || poolSize.get() > corePoolSize;
+                long deadline = System.nanoTime() + keepAliveTime;
+                while (w.state.get() == PARKED) {
+                    if (timed) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        LockSupport.parkNanos(this, remaining);
+                    } else {
+                        LockSupport.park(this);
+                    }
+                    if (Thread.interrupted() && runState.get() >= STOP) {
+                        break;
+                    }
+                }
+                if (w.state.compareAndSet(PARKED, ACTIVE)) {
+                    // Timed out (or stopping)
+                    if (runState.get() < STOP) {
+                        if (renew) {
+                            stopCurrentThreadIfNeeded();
+                        }
+                        if (decrementPoolSize(corePoolSize)) {
+                            return null;
+                        }
+                    }
+                } else {
+                    w.state.set(ACTIVE);
+                    searching = true;
+                }
+            }
+        } finally {
+            if (searching) {
+                stopSearching();
+            }
+        }
+    }
+
+
+    /*
+     * Decrements the pool size if doing so does not take it below the given minimum.
+     */
+    private boolean decrementPoolSize(int minimum) {
+        int size;
+        do {
+            size = poolSize.get();
+            if (size <= minimum) {
+                return false;
+            }
+        } while (!poolSize.compareAndSet(size, size - 1));
+        return true;
+    }
+
+
+    private Runnable findTask(Worker w) {
+        // Own tasks first
+        Runnable task = w.deque.pollFirst();
+        if (task == null) {
+            task = sharedQueue.poll();
+        }
+        if (task == null) {
+            // Steal from the opposite end to the one the owner uses
+            Worker[] ws = workers;
+            int len = ws.length;
+            if (len > 1) {
+                int start = ThreadLocalRandom.current().nextInt(len);
+                for (int i = 0; i < len && task == null; i++) {
+                    Worker victim = ws[(start + i) % len];
+                    if (victim != w) {
+                        task = victim.deque.pollLast();
+                    }
+                }
+            }
+        }
+        if (task != null) {
+            queueSize.decrementAndGet();
+        }
+        return task;
+    }
+
+
+    private void processWorkerExit(Worker w, boolean completedAbruptly) {
+        if (completedAbruptly) {
+            poolSize.decrementAndGet();
+        }
+        currentWorker.remove();
+        w.idle.set(false);
+        idleWorkers.remove(w);
+        removeWorker(w);
+
+        // Other threads need to process any remaining tasks
+        Runnable task;
+        while ((task = w.deque.pollFirst()) != null) {
+            sharedQueue.offer(task);
+        }
+
+        tryTerminate();
+
+        int rs = runState.get();
+        if (rs == RUNNING || (rs == SHUTDOWN && queueSize.get() > 0)) {
+            int min = corePoolSize;
+            if (min == 0 && queueSize.get() > 0) {
+                min = 1;
+            }
+            if (completedAbruptly || poolSize.get() < min) {
+                addWorker(null);
+            } else if (queueSize.get() > 0) {
+                signal();
+            }
+        }
+    }
+
+
+    private void tryTerminate() {
+        int rs = runState.get();
+        if (rs == RUNNING || poolSize.get() > 0 || (rs == SHUTDOWN && queueSize.get() > 0)) {
+            return;
+        }
+        synchronized (workersLock) {
+            if (workers.length > 0) {
+                return;
+            }
+        }
+        terminated.countDown();
+    }
+
+
+    /**
+     * If the current thread was started before the last time when a context was stopped, an exception is thrown so that
+     * the current thread is stopped.
+     */
+    protected void stopCurrentThreadIfNeeded() {
+        if (currentThreadShouldBeStopped()) {
+            long lastTime = lastTimeThreadKilledItself.longValue();
+            if (lastTime + threadRenewalDelay < System.currentTimeMillis()) {
+                if (lastTimeThreadKilledItself.compareAndSet(lastTime, System.currentTimeMillis() + 1)) {
+                    // OK, it's really time to dispose of this thread
+
+                    final String msg = sm.getString("threadPoolExecutor.threadStoppedToAvoidPotentialLeak",
+                            Thread.currentThread().getName());
+
+                    throw new StopPooledThreadException(msg);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Checks whether the current thread should be stopped based on the thread renewal policy and the last context stop
+     * time.
+     *
+     * @return true if the current thread should be stopped
+     */
+    protected boolean currentThreadShouldBeStopped() {
+        Thread currentThread = Thread.currentThread();
+        if (threadRenewalDelay >= 0 && currentThread instanceof TaskThread currentTaskThread) {
+            return currentTaskThread.getCreationTime() < this.lastContextStoppedTime.longValue();
+        }
+        return false;
+    }
+
+
+    /**
+     * Called when a context is stopping to trigger thread renewal for threads that were created before the context was
+     * stopped.
+     */
+    public void contextStopping() {
+        this.lastContextStoppedTime.set(System.currentTimeMillis());
+        // Wake idle threads so they wait with a time out and are renewed
+        signalAll();
+    }
+
+
+    @Override
+    public void shutdown() {
+        runState.compareAndSet(RUNNING, SHUTDOWN);
+        signalAll();
+        tryTerminate();
+    }
+
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        int rs;
+        do {
+            rs = runState.get();
+        } while (rs < STOP && !runState.compareAndSet(rs, STOP));
+        for (Worker w : workers) {
+            w.state.compareAndSet(PARKED, SIGNALLED);
+            Thread t = w.thread;
+            if (t != null && !t.isInterrupted()) {
+                try {
+                    t.interrupt();
+                } catch (SecurityException ignore) {
+                    // Ignore
+                }
+            }
+        }
+        List<Runnable> tasks = new ArrayList<>();
+        drainTo(tasks);
+        tryTerminate();
+        return tasks;
+    }
+
+
+    private void drainTo(List<Runnable> tasks) {
+        Runnable task;
+        while ((task = sharedQueue.poll()) != null) {
+            queueSize.decrementAndGet();
+            tasks.add(task);
+        }
+        for (Worker w : workers) {
+            while ((task = w.deque.pollFirst()) != null) {
+                queueSize.decrementAndGet();
+                tasks.add(task);
+            }
+        }
+    }
+
+
+    /**
+     * Removes the given task from the queues, if it is present, so that it will not be run.
+     *
+     * @param task the task to remove
+     *
+     * @return {@code true} if the task was removed
+     */
+    public boolean remove(Runnable task) {
+        boolean removed = sharedQueue.remove(task);
+        if (!removed) {
+            for (Worker w : workers) {
+                if (w.deque.remove(task)) {
+                    removed = true;
+                    break;
+                }
+            }
+        }
+        if (removed) {
+            queueSize.decrementAndGet();
+            tryTerminate();
+        }
+        return removed;
+    }
+
+
+    @Override
+    public boolean isShutdown() {
+        return runState.get() != RUNNING;
+    }
+
+
+    /**
+     * Returns true if this executor is in the process of terminating after {@link #shutdown} or {@link #shutdownNow}
+     * but has not completely terminated.
+     *
+     * @return {@code true} if terminating but not yet terminated
+     */
+    public boolean isTerminating() {
+        return isShutdown() && !isTerminated();
+    }
+
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+
+    /**
+     * Sets the core number of threads. If the new value is smaller than the current value, excess existing threads
+     * will be terminated when they next become idle. If larger, new threads will be started.
+     *
+     * @param corePoolSize the new core size
+     *
+     * @throws IllegalArgumentException if {@code corePoolSize < 0} or {@code corePoolSize} is greater than the
+     *                                      {@linkplain #getMaximumPoolSize() maximum pool size}
+     */
+    public void setCorePoolSize(int corePoolSize) {
+        if (corePoolSize < 0 || maximumPoolSize < corePoolSize) {
+            throw new IllegalArgumentException();
+        }
+        int delta = corePoolSize - this.corePoolSize;
+        this.corePoolSize = corePoolSize;
+        if (delta < 0) {
+            signalAll();
+        } else {
+            for (int i = 0; i < delta && poolSize.get() < corePoolSize; i++) {
+                if (!addWorker(null)) {
+                    break;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Returns the core number of threads.
+     *
+     * @return the core number of threads
+     */
+    public int getCorePoolSize() {
+        return corePoolSize;
+    }
+
+
+    /**
+     * Sets the maximum allowed number of threads. If the new value is smaller than the current value, excess existing
+     * threads will be terminated when they next become idle.
+     *
+     * @param maximumPoolSize the new maximum
+     *
+     * @throws IllegalArgumentException if the new maximum is less than or equal to zero, or less than the
+     *                                      {@linkplain #getCorePoolSize core pool size}
+     */
+    public void setMaximumPoolSize(int maximumPoolSize) {
+        if (maximumPoolSize <= 0 || maximumPoolSize < corePoolSize) {
+            throw new IllegalArgumentException();
+        }
+        this.maximumPoolSize = maximumPoolSize;
+        if (poolSize.get() > maximumPoolSize) {
+            signalAll();
+        }
+    }
+
+
+    /**
+     * Returns the maximum allowed number of threads.
+     *
+     * @return the maximum allowed number of threads
+     */
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+
+    /**
+     * Sets the time limit for which threads may remain idle before being terminated. If there are more than the core
+     * number of threads currently in the pool, after waiting this amount of time without processing a task, excess
+     * threads will be terminated.
+     *
+     * @param time the time to wait. A time value of zero will cause excess threads to terminate immediately after
+     *                 executing tasks.
+     * @param unit the time unit of the {@code time} argument
+     *
+     * @throws IllegalArgumentException if {@code time} less than zero
+     */
+    public void setKeepAliveTime(long time, TimeUnit unit) {
+        if (time < 0) {
+            throw new IllegalArgumentException();
+        }
+        long keepAliveTime = unit.toNanos(time);
+        long delta = keepAliveTime - this.keepAliveTime;
+        this.keepAliveTime = keepAliveTime;
+        if (delta < 0) {
+            signalAll();
+        }
+    }
+
+
+    /**
+     * Returns the thread keep-alive time, which is the amount of time that threads may remain idle before being
+     * terminated.
+     *
+     * @param unit the desired time unit of the result
+     *
+     * @return the time limit
+     */
+    public long getKeepAliveTime(TimeUnit unit) {
+        return unit.convert(keepAliveTime, TimeUnit.NANOSECONDS);
+    }
+
+
+    /**
+     * Returns the thread renewal delay.
+     *
+     * @return the thread renewal delay in milliseconds
+     */
+    public long getThreadRenewalDelay() {
+        return threadRenewalDelay;
+    }
+
+
+    /**
+     * Sets the thread renewal delay.
+     *
+     * @param threadRenewalDelay the renewal delay in milliseconds. If negative, threads are not renewed.
+     */
+    public void setThreadRenewalDelay(long threadRenewalDelay) {
+        this.threadRenewalDelay = threadRenewalDelay;
+    }
+
+
+    /**
+     * Returns the thread factory used to create new threads.
+     *
+     * @return the current thread factory
+     */
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+
+    /**
+     * Returns the maximum number of tasks that may be queued.
+     *
+     * @return the queue capacity
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+
+    /**
+     * Returns the approximate number of queued tasks.
+     *
+     * @return the number of queued tasks
+     */
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+
+    @Override
+    public int getPoolSize() {
+        return poolSize.get();
+    }
+
+
+    @Override
+    public int getMaxThreads() {
+        return maximumPoolSize;
+    }
+
+
+    @Override
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+
+    /**
+     * Returns the largest number of threads that have ever simultaneously been in the pool.
+     *
+     * @return the number of threads
+     */
+    public int getLargestPoolSize() {
+        return largestPoolSize;
+    }
+
+
+    /**
+     * Returns the approximate total number of tasks that have ever been scheduled for execution.
+     *
+     * @return the number of tasks
+     */
+    public long getTaskCount() {
+        return completedTaskCount.sum() + activeCount.get() + queueSize.get();
+    }
+
+
+    /**
+     * Returns the approximate total number of tasks that have completed execution.
+     *
+     * @return the number of tasks
+     */
+    public long getCompletedTaskCount() {
+        return completedTaskCount.sum();
+    }
+
+
+    /**
+     * Returns the number of tasks submitted but not yet finished.
+     *
+     * @return the number of tasks
+     */
+    public int getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+
+    @Override
+    public boolean resizePool(int corePoolSize, int maximumPoolSize) {
+        if (maximumPoolSize < this.corePoolSize) {
+            setCorePoolSize(corePoolSize);
+            setMaximumPoolSize(maximumPoolSize);
+        } else {
+            setMaximumPoolSize(maximumPoolSize);
+            setCorePoolSize(corePoolSize);
+        }
+        return true;
+    }
+
+
+    @Override
+    public boolean resizeQueue(int capacity) {
+        if (capacity < 0) {
+            return false;
+        }
+        queueCapacity = capacity;
+        return true;
+    }
+
+
+    @Override
+    public String toString() {
+        String runStateString = switch (runState.get()) {
+            case RUNNING -> "Running";
+            case SHUTDOWN -> isTerminated() ? "Terminated" : "Shutting down";
+            default -> isTerminated() ? "Terminated" : "Stopping";
+        };
+        return super.toString() + "[" + runStateString + ", pool size = " + poolSize.get() + ", active threads = " +
+                activeCount.get() + ", queued tasks = " + queueSize.get() + ", completed tasks = " +
+                completedTaskCount.sum() + "]";
+    }
+
+
+    private class Worker implements Runnable {
+
+        private final Deque<Runnable> deque = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger state = new AtomicInteger(ACTIVE);
+        private final AtomicBoolean idle = new AtomicBoolean(false);
+        private volatile Thread thread;
+        private Runnable firstTask;
+
+        Worker(Runnable firstTask) {
+            this.firstTask = firstTask;
+        }
+
+        @Override
+        public void run() {
+            runWorker(this);
+        }
+    }
+}
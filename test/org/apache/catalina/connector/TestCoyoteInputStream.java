@@ -52,6 +52,27 @@ public class TestCoyoteInputStream extends TomcatBaseTest {
         Assert.assertTrue(requestBody.equals(bc.toString()));
     }
 
+    @Test
+    public void testReadBuffer() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        Context root = tomcat.addContext("", TEMP_DIR);
+        Tomcat.addServlet(root, "testServlet", new ReadBufferServlet());
+        root.addServletMapping("/", "testServlet");
+
+        tomcat.start();
+
+        // Large enough to need several reads from the network
+        byte[] requestBody = new byte[256 * 1024];
+        for (int i = 0; i < requestBody.length; i++) {
+            requestBody[i] = (byte) ('A' + i % 26);
+        }
+        ByteChunk bc = new ByteChunk();
+        int rc = postUrl(requestBody, "http://localhost:" + getPort() + "/", bc, null);
+        Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+        Assert.assertEquals("OK-" + requestBody.length, bc.toString());
+    }
+
     private static final class TestServlet extends HttpServlet {
 
         private static final long serialVersionUID = 1L;
@@ -67,4 +88,31 @@ public class TestCoyoteInputStream extends TomcatBaseTest {
 
     }
 
+
+    private static final class ReadBufferServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+            CoyoteInputStream is = (CoyoteInputStream) req.getInputStream();
+            int count = 0;
+            ByteBuffer buffer;
+            while ((buffer = is.readBuffer(8192)) != null) {
+                if (!buffer.isReadOnly() || !buffer.hasRemaining() || buffer.remaining() > 8192) {
+                    resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    return;
+                }
+                while (buffer.hasRemaining()) {
+                    if (buffer.get() != (byte) ('A' + count % 26)) {
+                        resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                        return;
+                    }
+                    count++;
+                }
+            }
+            resp.setContentType("text/plain");
+            resp.getWriter().print("OK-" + count);
+        }
+    }
 }
@@ -44,6 +44,7 @@ import org.apache.catalina.Globals;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
 import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.net.TesterSupport;
 
 public class TestSendFile extends TomcatBaseTest {
 
@@ -86,6 +87,36 @@ public class TestSendFile extends TomcatBaseTest {
         }
     }
 
+    @Test
+    public void testSendFileTls() throws Exception {
+
+        Tomcat tomcat = getTomcatInstance();
+        TesterSupport.initSsl(tomcat);
+
+        Context root = tomcat.addContext("", TEMP_DIR);
+
+        // Large enough that the file is written over several passes of the Poller
+        File file = generateFile(TEMP_DIR, "-tls", EXPECTED_CONTENT_LENGTH * 50);
+        addDeleteOnTearDown(file);
+        Tomcat.addServlet(root, "servlet", new WritingServlet(file));
+        root.addServletMapping("/servlet", "servlet");
+
+        tomcat.start();
+
+        TesterSupport.configureClientSsl();
+
+        ByteChunk bc = new ByteChunk();
+        for (int i = 0; i < 2; i++) {
+            int rc = getUrl("https://localhost:" + getPort() + "/servlet", bc, null);
+            Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+            Assert.assertEquals(file.length(), bc.getLength());
+            for (int j = 0; j < bc.getLength(); j++) {
+                Assert.assertEquals('X', bc.getBuffer()[bc.getStart() + j]);
+            }
+            bc.recycle();
+        }
+    }
+
     public File generateFile(String dir, String suffix, int size) throws IOException {
         String name = "testSendFile-" + System.currentTimeMillis() + suffix + ".txt";
         File f = new File(dir, name);
@@ -0,0 +1,102 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.catalina.core;
+
+import java.io.IOException;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.descriptor.web.ContextEnvironment;
+import org.apache.tomcat.util.threads.HybridThreadExecutor;
+
+public class TestStandardWrapperValve extends TomcatBaseTest {
+
+    private static final String ENV_NAME = "TestName";
+    private static final String ENV_VALUE = "Test Value";
+
+    /*
+     * Test JNDI is available to a servlet when the mapping has been routed to a platform thread.
+     */
+    @Test
+    public void testNamingOnPlatformThread() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        Connector connector = tomcat.getConnector();
+        Assert.assertTrue(connector.setProperty("useVirtualThreads", "true"));
+        Assert.assertTrue(connector.setProperty("platformFallbackThreads", "2"));
+
+        // No file system docBase required
+        Context ctx = getProgrammaticRootContext();
+
+        // Enable JNDI - it is disabled by default
+        tomcat.enableNaming();
+
+        ContextEnvironment environment = new ContextEnvironment();
+        environment.setType(ENV_VALUE.getClass().getName());
+        environment.setName(ENV_NAME);
+        environment.setValue(ENV_VALUE);
+        ctx.getNamingResources().addEnvironment(environment);
+
+        Tomcat.addServlet(ctx, "lookup", new LookupServlet());
+        ctx.addServletMapping("/lookup", "lookup");
+
+        tomcat.start();
+
+        ByteChunk res = getUrl("http://localhost:" + getPort() + "/lookup");
+        Assert.assertEquals("true " + ENV_VALUE, res.toString());
+
+        HybridThreadExecutor executor = (HybridThreadExecutor) connector.getProtocolHandler().getExecutor();
+        executor.getMappingStatistics(":/lookup").setRoutedToPlatform(true);
+
+        res = getUrl("http://localhost:" + getPort() + "/lookup");
+        Assert.assertEquals("false " + ENV_VALUE, res.toString());
+        Assert.assertEquals(1, executor.getMappingStatistics(":/lookup").getPlatformCount());
+    }
+
+
+    private static class LookupServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+            String value;
+            try {
+                javax.naming.Context envCtx = (javax.naming.Context) new InitialContext().lookup("java:comp/env");
+                value = (String) envCtx.lookup(ENV_NAME);
+            } catch (NamingException e) {
+                value = e.toString();
+            }
+            resp.setContentType("text/plain");
+            resp.getWriter().print(Thread.currentThread().isVirtual() + " " + value);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Manager;
+import org.apache.catalina.SessionCodec;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.util.CustomObjectInputStream;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+public class TestBinarySessionCodec {
+
+    private static final Log log = LogFactory.getLog(TestBinarySessionCodec.class);
+
+    private static final Manager TEST_MANAGER;
+
+    static {
+        TEST_MANAGER = new StandardManager();
+        TEST_MANAGER.setContext(new StandardContext());
+    }
+
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        StandardSession s1 = createSession();
+
+        byte[] binary = serialize(new BinarySessionCodec(), s1);
+        byte[] java = serialize(new JavaSerializationSessionCodec(), s1);
+        Assert.assertTrue(binary.length < java.length);
+
+        validateSame(s1, deserialize(new BinarySessionCodec(), binary));
+    }
+
+
+    @Test
+    public void testCompatibility() throws Exception {
+        StandardSession s1 = createSession();
+
+        // The binary codec can read sessions written using Java serialization
+        validateSame(s1, deserialize(new BinarySessionCodec(), serialize(new JavaSerializationSessionCodec(), s1)));
+    }
+
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testJavaSerializationOnly() throws Exception {
+        // The default codec does not accept the binary encoding
+        deserialize(new JavaSerializationSessionCodec(), serialize(new BinarySessionCodec(), createSession()));
+    }
+
+
+    @Test
+    public void testTypes() throws Exception {
+        StandardSession s1 = createSession();
+        StandardSession s2 = deserialize(new BinarySessionCodec(), serialize(new BinarySessionCodec(), s1));
+
+        // Types are preserved
+        for (String name : s1.keys()) {
+            Assert.assertEquals(name, s1.getAttribute(name).getClass(), s2.getAttribute(name).getClass());
+        }
+        Assert.assertArrayEquals((byte[]) s1.getAttribute("bytes"), (byte[]) s2.getAttribute("bytes"));
+        Assert.assertEquals(List.of("b", "a", "c"), new ArrayList<>(((Map<?,?>) s2.getAttribute("linked")).keySet()));
+    }
+
+
+    @Test
+    public void testNotSerializable() throws Exception {
+        StandardSession s1 = new StandardSession(TEST_MANAGER);
+        s1.setValid(true);
+        Map<String,Object> map = new HashMap<>();
+        map.put("key", new NonSerializable());
+        s1.setAttribute("nested", map);
+        s1.setAttribute("fallback", new SerializableValue("value"));
+        s1.setAttribute("string", "value");
+
+        StandardSession s2 = deserialize(new BinarySessionCodec(), serialize(new BinarySessionCodec(), s1));
+
+        Assert.assertNull(s2.getAttribute("nested"));
+        Assert.assertEquals(new SerializableValue("value"), s2.getAttribute("fallback"));
+        Assert.assertEquals("value", s2.getAttribute("string"));
+    }
+
+
+    @Test
+    public void testCyclic() throws Exception {
+        StandardSession s1 = new StandardSession(TEST_MANAGER);
+        s1.setValid(true);
+        List<Object> cyclic = new ArrayList<>();
+        cyclic.add(cyclic);
+        cyclic.add("cyclic");
+        s1.setAttribute("cyclic", cyclic);
+
+        StandardSession s2 = deserialize(new BinarySessionCodec(), serialize(new BinarySessionCodec(), s1));
+
+        List<?> list = (List<?>) s2.getAttribute("cyclic");
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(2, list.size());
+            Assert.assertEquals("cyclic", list.get(1));
+            list = (List<?>) list.get(0);
+        }
+    }
+
+
+    @Test
+    public void testPrimitives() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new BinarySessionCodec().getObjectOutputStream(baos)) {
+            oos.writeLong(Long.MIN_VALUE);
+            oos.writeInt(42);
+            oos.writeBoolean(true);
+            oos.writeUTF("text");
+            oos.writeObject(null);
+            oos.writeDouble(1.5);
+        }
+        try (ObjectInputStream ois = new BinarySessionCodec()
+                .getObjectInputStream(new ByteArrayInputStream(baos.toByteArray()), ObjectInputStream::new)) {
+            Assert.assertEquals(Long.MIN_VALUE, ois.readLong());
+            Assert.assertEquals(42, ois.readInt());
+            Assert.assertTrue(ois.readBoolean());
+            Assert.assertEquals("text", ois.readUTF());
+            Assert.assertNull(ois.readObject());
+            Assert.assertEquals(1.5, ois.readDouble(), 0);
+        }
+    }
+
+
+    @Test
+    public void testClassNameFilter() throws Exception {
+        StandardSession s1 = new StandardSession(TEST_MANAGER);
+        s1.setValid(true);
+        s1.setAttribute("int", Integer.valueOf(1));
+        byte[] data = serialize(new BinarySessionCodec(), s1);
+
+        // The types used for the session fields are permitted
+        Pattern allowed = Pattern.compile("java\\.lang\\.(?:Boolean|Integer|Long|Number|String)");
+        validateSame(s1, deserialize(new BinarySessionCodec(), data, allowed));
+
+        // Filtered types are rejected even though they are not read using Java serialization
+        s1.setAttribute("list", new ArrayList<>(List.of("a")));
+        data = serialize(new BinarySessionCodec(), s1);
+        try {
+            deserialize(new BinarySessionCodec(), data, allowed);
+            Assert.fail();
+        } catch (InvalidClassException expected) {
+            // Expected
+        }
+        validateSame(s1, deserialize(new BinarySessionCodec(), data,
+                Pattern.compile("java\\.lang\\.(?:Boolean|Integer|Long|Number|String)|java\\.util\\.ArrayList")));
+    }
+
+
+    @Test(expected = EOFException.class)
+    public void testInvalidLength() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            dos.writeShort(BinarySessionCodec.MAGIC);
+            dos.writeByte(BinarySessionCodec.VERSION);
+            // TAG_BYTE_ARRAY with a length that is much longer than the data
+            dos.writeByte(12);
+            dos.writeInt(Integer.MAX_VALUE);
+            dos.write(new byte[100]);
+        }
+        try (ObjectInputStream ois = new BinarySessionCodec()
+                .getObjectInputStream(new ByteArrayInputStream(baos.toByteArray()), ObjectInputStream::new)) {
+            ois.readObject();
+        }
+    }
+
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testInvalidDepth() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            dos.writeShort(BinarySessionCodec.MAGIC);
+            dos.writeByte(BinarySessionCodec.VERSION);
+            // TAG_ARRAY_LIST nested far more deeply than the codec writes
+            for (int i = 0; i < 100_000; i++) {
+                dos.writeByte(13);
+                dos.writeInt(1);
+            }
+        }
+        try (ObjectInputStream ois = new BinarySessionCodec()
+                .getObjectInputStream(new ByteArrayInputStream(baos.toByteArray()), ObjectInputStream::new)) {
+            ois.readObject();
+        }
+    }
+
+
+    private static StandardSession createSession() {
+        StandardSession session = new StandardSession(TEST_MANAGER);
+        session.setValid(true);
+        session.setAttribute("string", "value");
+        session.setAttribute("longString", "x".repeat(100_000));
+        session.setAttribute("surrogate", "\uD800");
+        session.setAttribute("int", Integer.valueOf(1));
+        session.setAttribute("long", Long.valueOf(2));
+        session.setAttribute("short", Short.valueOf((short) 3));
+        session.setAttribute("byte", Byte.valueOf((byte) 4));
+        session.setAttribute("char", Character.valueOf('5'));
+        session.setAttribute("float", Float.valueOf(6.5f));
+        session.setAttribute("double", Double.valueOf(7.5));
+        session.setAttribute("boolean", Boolean.TRUE);
+        session.setAttribute("bytes", new byte[] { 8, 9 });
+        List<Object> list = new ArrayList<>();
+        list.add("a");
+        list.add(null);
+        list.add(Integer.valueOf(10));
+        session.setAttribute("list", list);
+        Map<String,Object> map = new HashMap<>();
+        map.put("list", list);
+        map.put("int", Integer.valueOf(11));
+        session.setAttribute("map", map);
+        Map<String,String> linked = new LinkedHashMap<>();
+        linked.put("b", "1");
+        linked.put("a", "2");
+        linked.put("c", "3");
+        session.setAttribute("linked", linked);
+        // Not supported by the binary encoding
+        session.setAttribute("date", new Date(12));
+        session.setAttribute("tree", new TreeMap<>(map));
+        return session;
+    }
+
+
+    private static byte[] serialize(SessionCodec codec, StandardSession session) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = codec.getObjectOutputStream(baos)) {
+            session.writeObjectData(oos);
+        }
+        return baos.toByteArray();
+    }
+
+
+    private static StandardSession deserialize(SessionCodec codec, byte[] data)
+            throws IOException, ClassNotFoundException {
+        StandardSession session = new StandardSession(TEST_MANAGER);
+        try (ObjectInputStream ois =
+                codec.getObjectInputStream(new ByteArrayInputStream(data), ObjectInputStream::new)) {
+            session.readObjectData(ois);
+        }
+        return session;
+    }
+
+
+    private static StandardSession deserialize(SessionCodec codec, byte[] data, Pattern allowedClassNamePattern)
+            throws IOException, ClassNotFoundException {
+        StandardSession session = new StandardSession(TEST_MANAGER);
+        try (ObjectInputStream ois = codec.getObjectInputStream(new ByteArrayInputStream(data),
+                is -> new CustomObjectInputStream(is, TestBinarySessionCodec.class.getClassLoader(), log,
+                        allowedClassNamePattern, false))) {
+            session.readObjectData(ois);
+        }
+        return session;
+    }
+
+
+    private static void validateSame(StandardSession s1, StandardSession s2) {
+        Assert.assertEquals(s1.getIdInternal(), s2.getIdInternal());
+        Assert.assertEquals(s1.getCreationTimeInternal(), s2.getCreationTimeInternal());
+        Assert.assertEquals(s1.getMaxInactiveInterval(), s2.getMaxInactiveInterval());
+        Assert.assertEquals(s1.keys().length, s2.keys().length);
+        for (String name : s1.keys()) {
+            Object value = s1.getAttribute(name);
+            if (value instanceof byte[] bytes) {
+                Assert.assertArrayEquals(bytes, (byte[]) s2.getAttribute(name));
+            } else {
+                Assert.assertEquals(name, value, s2.getAttribute(name));
+            }
+        }
+    }
+
+
+    private static class NonSerializable {
+    }
+
+
+    private record SerializableValue(String value) implements Serializable {
+    }
+}
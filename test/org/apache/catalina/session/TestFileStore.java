@@ -102,6 +102,25 @@ public class TestFileStore {
         Assert.assertEquals(1, fileStore.getSize());
     }
 
+    @Test
+    public void saveLoadWithSessionCodec() throws Exception {
+        StandardSession session = new StandardSession(manager);
+        session.setValid(true);
+        session.setId("codec", false);
+        session.setAttribute("attr", "value");
+
+        fileStore.setSessionCodec(new BinarySessionCodec());
+        try {
+            fileStore.save(session);
+            Assert.assertEquals("value", ((StandardSession) fileStore.load("codec")).getAttribute("attr"));
+        } finally {
+            fileStore.setSessionCodec(null);
+        }
+        // The default codec can read the session
+        Assert.assertEquals("value", ((StandardSession) fileStore.load("codec")).getAttribute("attr"));
+        fileStore.remove("codec");
+    }
+
     @Test
     public void pathTraversalSessionId() throws Exception {
         File storageDir = dir.getAbsoluteFile();
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Host;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardHost;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+
+public class TestOffHeapManager extends TomcatBaseTest {
+
+    @Test
+    public void testAttributes() throws Exception {
+        OffHeapManager mgr = createManager(-1);
+        try {
+            StandardSession session = (StandardSession) mgr.createSession(null);
+            Assert.assertTrue(session instanceof OffHeapSession);
+
+            List<String> list = new ArrayList<>();
+            list.add("a");
+            Object nonSerializable = new Object();
+            session.setAttribute("string", "value");
+            session.setAttribute("list", list);
+            session.setAttribute("nonSerializable", nonSerializable);
+            Assert.assertTrue(mgr.getOffHeapUsed() > 0);
+
+            // Outside of a request each read returns a new copy
+            Assert.assertEquals("value", session.getAttribute("string"));
+            Assert.assertEquals(list, session.getAttribute("list"));
+            Assert.assertNotSame(list, session.getAttribute("list"));
+            // Values that are not serializable are held on the heap
+            Assert.assertSame(nonSerializable, session.getAttribute("nonSerializable"));
+            Assert.assertEquals(3, session.keys().length);
+
+            // Within a request the same instance is returned and changes are written back at the end of the request
+            session.access();
+            @SuppressWarnings("unchecked")
+            List<String> cached = (List<String>) session.getAttribute("list");
+            Assert.assertSame(cached, session.getAttribute("list"));
+            cached.add("b");
+            session.endAccess();
+            Assert.assertEquals(List.of("a", "b"), session.getAttribute("list"));
+
+            // Changes outside of a request are not retained
+            @SuppressWarnings("unchecked")
+            List<String> copy = (List<String>) session.getAttribute("list");
+            copy.add("c");
+            Assert.assertEquals(List.of("a", "b"), session.getAttribute("list"));
+
+            // Replace
+            session.setAttribute("string", "other");
+            Assert.assertEquals("other", session.getAttribute("string"));
+
+            session.expire();
+            Assert.assertEquals(0, mgr.getOffHeapUsed());
+        } finally {
+            mgr.stop();
+        }
+        Assert.assertEquals(0, mgr.getOffHeapCapacity());
+    }
+
+
+    @Test
+    public void testStoreFull() throws Exception {
+        OffHeapManager mgr = createManager(0);
+        try {
+            StandardSession session = (StandardSession) mgr.createSession(null);
+            List<String> list = new ArrayList<>();
+            session.setAttribute("list", list);
+            // Held on the heap
+            Assert.assertSame(list, session.getAttribute("list"));
+            Assert.assertEquals(0, mgr.getOffHeapCapacity());
+        } finally {
+            mgr.stop();
+        }
+    }
+
+
+    @Test
+    public void testStore() {
+        OffHeapAttributeStore store = new OffHeapAttributeStore(1000, 4096);
+
+        byte[] small = new byte[100];
+        small[99] = 1;
+        long handle = store.store(small);
+        // Slab size rounded up to 1024, chunk size rounded up to 128
+        Assert.assertEquals(1024, store.getCapacity());
+        Assert.assertEquals(128, store.getUsed());
+        Assert.assertArrayEquals(small, store.read(handle, small.length));
+        Assert.assertTrue(store.matches(handle, small.length, small.clone()));
+        store.free(handle, small.length);
+        Assert.assertEquals(0, store.getUsed());
+        // Freed chunk is re-used
+        Assert.assertEquals(handle, store.store(new byte[65]));
+
+        // Larger than a slab
+        byte[] large = new byte[2000];
+        large[1999] = 1;
+        long largeHandle = store.store(large);
+        Assert.assertEquals(3024, store.getCapacity());
+        Assert.assertArrayEquals(large, store.read(largeHandle, large.length));
+        // Exceeds the maximum size
+        Assert.assertEquals(OffHeapAttributeStore.NO_HANDLE, store.store(new byte[2000]));
+        store.free(largeHandle, large.length);
+        Assert.assertEquals(1024, store.getCapacity());
+        Assert.assertNotEquals(OffHeapAttributeStore.NO_HANDLE, store.store(new byte[2000]));
+    }
+
+
+    @Test
+    public void testRequests() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        // No file system docBase required
+        Context ctx = getProgrammaticRootContext();
+        ctx.setManager(new OffHeapManager());
+
+        Tomcat.addServlet(ctx, "counter", new CounterServlet());
+        ctx.addServletMapping("/", "counter");
+        tomcat.start();
+
+        ByteChunk res = new ByteChunk();
+        Map<String,List<String>> resHeaders = new HashMap<>();
+        int rc = getUrl("http://localhost:" + getPort() + "/", res, resHeaders);
+        Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+        Assert.assertEquals("1", res.toString());
+        String cookie = resHeaders.get("Set-Cookie").get(0).split(";")[0];
+
+        Map<String,List<String>> reqHeaders = new HashMap<>();
+        reqHeaders.put("Cookie", List.of(cookie));
+        for (int i = 2; i < 5; i++) {
+            res.recycle();
+            rc = getUrl("http://localhost:" + getPort() + "/", res, reqHeaders, null);
+            Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+            Assert.assertEquals(Integer.toString(i), res.toString());
+        }
+    }
+
+
+    private static OffHeapManager createManager(long maxOffHeapSize) throws LifecycleException {
+        OffHeapManager mgr = new OffHeapManager();
+        mgr.setPathname(null);
+        mgr.setMaxOffHeapSize(maxOffHeapSize);
+        Host host = new StandardHost();
+        host.setName("unittest");
+        Context context = new StandardContext();
+        context.setPath("");
+        context.setParent(host);
+        mgr.setContext(context);
+        mgr.start();
+        return mgr;
+    }
+
+
+    private static class CounterServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            HttpSession session = req.getSession();
+            int[] count = (int[]) session.getAttribute("count");
+            if (count == null) {
+                count = new int[1];
+                session.setAttribute("count", count);
+            }
+            // Modified without calling setAttribute()
+            count[0]++;
+            resp.setContentType("text/plain");
+            resp.getWriter().print(count[0]);
+        }
+    }
+}
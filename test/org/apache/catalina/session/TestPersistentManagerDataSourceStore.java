@@ -20,6 +20,8 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import jakarta.servlet.ServletException;
@@ -144,6 +146,61 @@ public class TestPersistentManagerDataSourceStore extends TomcatBaseTest {
         store.clear();
     }
 
+    @Test
+    public void testWriteBehind() throws Exception {
+        // Setup Tomcat instance
+        Tomcat tomcat = getTomcatInstance();
+
+        // No file system docBase required
+        Context ctx = getProgrammaticRootContext();
+        ctx.setDistributable(true);
+
+        PersistentManager manager = new PersistentManager();
+        DerbyDataSourceStore store = new DerbyDataSourceStore("writebehind");
+        store.setSessionTable("tomcatsessions");
+        store.setBatchSize(10);
+        store.setFlushInterval(0);
+
+        manager.setStore(store);
+        ctx.setManager(manager);
+        tomcat.start();
+
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            Session session = manager.createSession(null);
+            ((StandardSession) session).setAttribute("index", Integer.valueOf(i));
+            ids.add(session.getIdInternal());
+            store.save(session);
+        }
+        // Queued saves are written by the utility executor once the queue reaches the batch size
+        Assert.assertEquals(15, store.getSize());
+        Assert.assertEquals(15, store.keys().length);
+
+        // Queued saves are visible and later saves replace them
+        StandardSession last = (StandardSession) manager.findSession(ids.get(14));
+        last.setAttribute("index", Integer.valueOf(-1));
+        store.save(last);
+        Assert.assertEquals(Integer.valueOf(-1), ((StandardSession) store.load(ids.get(14))).getAttribute("index"));
+        Assert.assertEquals(15, store.getSize());
+
+        // Removing a queued session
+        store.remove(ids.get(13));
+        Assert.assertNull(store.load(ids.get(13)));
+        store.flush();
+        Assert.assertEquals(14, store.getSize());
+        Assert.assertNull(store.load(ids.get(13)));
+        Assert.assertEquals(Integer.valueOf(-1), ((StandardSession) store.load(ids.get(14))).getAttribute("index"));
+
+        // Bulk load
+        manager.load();
+        Assert.assertEquals(14, manager.getActiveSessions());
+        Assert.assertEquals(Integer.valueOf(0),
+                ((StandardSession) manager.findSession(ids.get(0))).getAttribute("index"));
+
+        store.clear();
+        Assert.assertEquals(0, store.getSize());
+    }
+
     private static class DummyServlet extends HttpServlet {
 
         private static final long serialVersionUID = -3696433049266123995L;
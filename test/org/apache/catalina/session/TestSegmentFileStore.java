@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.catalina.Manager;
+import org.apache.catalina.startup.ExpandWar;
+import org.apache.tomcat.unittest.TesterContext;
+import org.apache.tomcat.unittest.TesterServletContext;
+
+public class TestSegmentFileStore {
+
+    private static final String SEGMENT_TEMPPATH = "SEGMENT_TEMP";
+    private static final String RECOVERY_TEMPPATH = "SEGMENT_RECOVERY_TEMP";
+    private static final Manager manager = new StandardManager();
+
+    private final List<SegmentFileStore> stores = new ArrayList<>();
+
+
+    @BeforeClass
+    public static void setup() {
+        TesterContext testerContext = new TesterContext();
+        testerContext.setServletContext(new TesterServletContext());
+        manager.setContext(testerContext);
+    }
+
+
+    @After
+    public void cleanup() throws Exception {
+        for (SegmentFileStore store : stores) {
+            if (store.getState().isAvailable()) {
+                store.stop();
+            }
+        }
+        ExpandWar.delete(new File(SEGMENT_TEMPPATH));
+        ExpandWar.delete(new File(RECOVERY_TEMPPATH));
+    }
+
+
+    @Test
+    public void saveLoadRemove() throws Exception {
+        SegmentFileStore store = createStore(SEGMENT_TEMPPATH);
+
+        store.save(createSession("s1", "a"));
+        store.save(createSession("s2", "b"));
+        store.save(createSession("s1", "c"));
+        Assert.assertEquals(2, store.getSize());
+        String[] keys = store.keys();
+        Arrays.sort(keys);
+        Assert.assertArrayEquals(new String[] { "s1", "s2" }, keys);
+        Assert.assertEquals("c", getValue(store, "s1"));
+        Assert.assertEquals("b", getValue(store, "s2"));
+
+        store.remove("s1");
+        Assert.assertNull(store.load("s1"));
+        Assert.assertEquals(1, store.getSize());
+
+        store.clear();
+        Assert.assertEquals(0, store.getSize());
+        Assert.assertEquals(0, countSegments(SEGMENT_TEMPPATH));
+    }
+
+
+    @Test
+    public void restart() throws Exception {
+        SegmentFileStore store = createStore(SEGMENT_TEMPPATH);
+        store.setSegmentSize(1024);
+        for (int i = 0; i < 20; i++) {
+            store.save(createSession("s" + i, Integer.toString(i)));
+        }
+        store.remove("s3");
+        StandardSession expired = createSession("expired", "x");
+        expired.setMaxInactiveInterval(1);
+        expired.lastAccessedTime = 0;
+        store.save(expired);
+        Assert.assertTrue(countSegments(SEGMENT_TEMPPATH) > 1);
+        store.stop();
+
+        // The index is rebuilt from the segment footers
+        store = createStore(SEGMENT_TEMPPATH);
+        Assert.assertEquals(20, store.getSize());
+        Assert.assertNull(store.load("s3"));
+        Assert.assertEquals("19", getValue(store, "s19"));
+        Assert.assertArrayEquals(new String[] { "expired" }, store.expiredKeys());
+
+        List<String> loaded = new ArrayList<>();
+        store.loadAll(session -> loaded.add(session.getIdInternal()));
+        Assert.assertEquals(20, loaded.size());
+        Assert.assertEquals("s0", loaded.get(0));
+    }
+
+
+    @Test
+    public void recovery() throws Exception {
+        SegmentFileStore store = createStore(SEGMENT_TEMPPATH);
+        for (int i = 0; i < 10; i++) {
+            store.save(createSession("s" + i, Integer.toString(i)));
+        }
+        store.remove("s5");
+
+        // Copy the segment without closing it to simulate a failure
+        File recoveryDir = new File(RECOVERY_TEMPPATH);
+        Assert.assertTrue(recoveryDir.mkdirs());
+        for (File segment : listSegments(SEGMENT_TEMPPATH)) {
+            Files.copy(segment.toPath(), new File(recoveryDir, segment.getName()).toPath());
+        }
+
+        SegmentFileStore recovered = createStore(RECOVERY_TEMPPATH);
+        Assert.assertEquals(9, recovered.getSize());
+        Assert.assertNull(recovered.load("s5"));
+        Assert.assertEquals("9", getValue(recovered, "s9"));
+        recovered.save(createSession("s10", "10"));
+        recovered.stop();
+
+        recovered = createStore(RECOVERY_TEMPPATH);
+        Assert.assertEquals(10, recovered.getSize());
+        Assert.assertEquals("10", getValue(recovered, "s10"));
+    }
+
+
+    @Test
+    public void compaction() throws Exception {
+        SegmentFileStore store = createStore(SEGMENT_TEMPPATH);
+        store.setSegmentSize(1024);
+        for (int i = 0; i < 10; i++) {
+            store.save(createSession("s" + i, Integer.toString(i)));
+        }
+        store.remove("s0");
+        for (int i = 0; i < 50; i++) {
+            store.save(createSession("s1", Integer.toString(i)));
+        }
+        int segments = countSegments(SEGMENT_TEMPPATH);
+
+        store.compact();
+        Assert.assertTrue(countSegments(SEGMENT_TEMPPATH) < segments);
+
+        // Every segment is eligible but the Sessions copied during compaction are not compacted again
+        store.setCompactionThreshold(0);
+        store.compact();
+        Assert.assertTrue(countSegments(SEGMENT_TEMPPATH) <= 3);
+        Assert.assertEquals(9, store.getSize());
+        Assert.assertNull(store.load("s0"));
+        Assert.assertEquals("49", getValue(store, "s1"));
+        Assert.assertEquals("9", getValue(store, "s9"));
+        store.stop();
+
+        store = createStore(SEGMENT_TEMPPATH);
+        Assert.assertEquals(9, store.getSize());
+        Assert.assertNull(store.load("s0"));
+        Assert.assertEquals("49", getValue(store, "s1"));
+    }
+
+
+    @Test
+    public void largeSession() throws Exception {
+        SegmentFileStore store = createStore(SEGMENT_TEMPPATH);
+        store.setSegmentSize(1024);
+        String large = "x".repeat(10_000);
+        store.save(createSession("large", large));
+        store.save(createSession("small", "y"));
+        Assert.assertEquals(large, getValue(store, "large"));
+        Assert.assertEquals("y", getValue(store, "small"));
+    }
+
+
+    private SegmentFileStore createStore(String directory) throws Exception {
+        SegmentFileStore store = new SegmentFileStore();
+        store.setManager(manager);
+        store.setDirectory(directory);
+        store.start();
+        stores.add(store);
+        return store;
+    }
+
+
+    private static StandardSession createSession(String id, String value) {
+        StandardSession session = new StandardSession(manager);
+        session.setValid(true);
+        session.setId(id, false);
+        session.setCreationTime(System.currentTimeMillis());
+        session.setMaxInactiveInterval(1800);
+        session.setAttribute("attr", value);
+        return session;
+    }
+
+
+    private static Object getValue(SegmentFileStore store, String id) throws Exception {
+        return ((StandardSession) store.load(id)).getAttribute("attr");
+    }
+
+
+    private static File[] listSegments(String directory) {
+        File[] files = new File(directory).listFiles((dir, name) -> name.endsWith(".seg"));
+        return files == null ? new File[0] : files;
+    }
+
+
+    private static int countSegments(String directory) {
+        return listSegments(directory).length;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Host;
+import org.apache.catalina.Manager;
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardHost;
+
+public class TestSessionExpiryWheel {
+
+    private static final Manager TEST_MANAGER;
+
+    static {
+        TEST_MANAGER = new StandardManager();
+        TEST_MANAGER.setContext(new StandardContext());
+    }
+
+    // Arbitrary start time that is not aligned with any level of the wheel
+    private static final long START = 1_700_000_123_456L;
+
+
+    @Test
+    public void testExpiryOrder() {
+        SessionExpiryWheel wheel = new SessionExpiryWheel(START);
+        Random random = new Random(42);
+
+        int count = 10000;
+        StandardSession[] sessions = new StandardSession[count];
+        for (int i = 0; i < count; i++) {
+            // Up to 3 days so every level of the wheel is used
+            sessions[i] = createSession(START - random.nextInt(1000), 1 + random.nextInt(3 * 24 * 60 * 60));
+            wheel.add(sessions[i]);
+        }
+        Assert.assertEquals(count, wheel.size());
+
+        Set<StandardSession> seen = new HashSet<>();
+        long time = START;
+        while (seen.size() < count) {
+            // Advance by irregular steps
+            time += 1 + random.nextInt(120_000);
+            List<StandardSession> due = wheel.advance(time);
+            for (StandardSession session : due) {
+                Assert.assertTrue(seen.add(session));
+                long expiry = session.getExpiryTimeInternal();
+                // Never early
+                Assert.assertTrue(expiry <= time);
+                wheel.remove(session);
+            }
+            // Never late
+            for (StandardSession session : sessions) {
+                if (!seen.contains(session)) {
+                    Assert.assertTrue(session.getExpiryTimeInternal() > time - 1000);
+                }
+            }
+        }
+        Assert.assertEquals(0, wheel.size());
+    }
+
+
+    @Test
+    public void testRemove() {
+        SessionExpiryWheel wheel = new SessionExpiryWheel(START);
+
+        StandardSession s1 = createSession(START, 10);
+        StandardSession s2 = createSession(START, 10);
+        StandardSession s3 = createSession(START, 10);
+        wheel.add(s1);
+        wheel.add(s2);
+        wheel.add(s3);
+        // Removing the middle of a slot must not lose the other sessions
+        wheel.remove(s2);
+        // Removing twice is a NO-OP
+        wheel.remove(s2);
+        Assert.assertEquals(2, wheel.size());
+
+        Assert.assertTrue(wheel.advance(START + 9_000).isEmpty());
+        List<StandardSession> due = wheel.advance(START + 11_000);
+        Assert.assertEquals(2, due.size());
+        Assert.assertTrue(due.contains(s1));
+        Assert.assertTrue(due.contains(s3));
+    }
+
+
+    @Test
+    public void testReschedule() {
+        SessionExpiryWheel wheel = new SessionExpiryWheel(START);
+
+        StandardSession session = createSession(START, 60);
+        wheel.add(session);
+
+        // Accessed later so the session is returned for checking but is still valid
+        session.setCreationTime(START + 30_000);
+        List<StandardSession> due = wheel.advance(START + 61_000);
+        Assert.assertEquals(1, due.size());
+        wheel.reschedule(session);
+
+        Assert.assertTrue(wheel.advance(START + 89_000).isEmpty());
+        Assert.assertEquals(1, wheel.advance(START + 91_000).size());
+
+        // Longer interval, re-scheduled immediately
+        session.setMaxInactiveInterval(3600);
+        wheel.reschedule(session);
+        Assert.assertTrue(wheel.advance(START + 3_629_000).isEmpty());
+        Assert.assertEquals(1, wheel.advance(START + 3_631_000).size());
+
+        // Never expires
+        session.setMaxInactiveInterval(-1);
+        wheel.reschedule(session);
+        Assert.assertTrue(wheel.advance(START + 365L * 24 * 60 * 60 * 1000).isEmpty());
+        Assert.assertEquals(1, wheel.size());
+    }
+
+
+    @Test
+    public void testBeyondRange() {
+        SessionExpiryWheel wheel = new SessionExpiryWheel(START);
+
+        // One year is beyond the range of the wheel
+        int interval = 365 * 24 * 60 * 60;
+        StandardSession session = createSession(START, interval);
+        wheel.add(session);
+
+        // Returned early for checking when the end of the range of the wheel is reached
+        long time = START;
+        List<StandardSession> due;
+        do {
+            time += 24 * 60 * 60 * 1000;
+            due = wheel.advance(time);
+        } while (due.isEmpty());
+        Assert.assertTrue(time < START + interval * 1000L);
+        Assert.assertTrue(time > START + 190L * 24 * 60 * 60 * 1000);
+
+        wheel.reschedule(session);
+        do {
+            time += 24 * 60 * 60 * 1000;
+            due = wheel.advance(time);
+        } while (due.isEmpty());
+        Assert.assertTrue(time >= START + interval * 1000L);
+    }
+
+
+    @Test
+    public void testManagerProcessExpires() throws Exception {
+        StandardManager mgr = new StandardManager();
+        mgr.setPathname(null);
+        Host host = new StandardHost();
+        host.setName("unittest");
+        Context context = new StandardContext();
+        context.setPath("");
+        context.setParent(host);
+        mgr.setContext(context);
+        mgr.start();
+
+        try {
+            long timeNow = System.currentTimeMillis();
+            Session expired = mgr.createSession(null);
+            expired.setCreationTime(timeNow - 10_000);
+            expired.setMaxInactiveInterval(5);
+            Session current = mgr.createSession(null);
+            current.setMaxInactiveInterval(3600);
+            Session never = mgr.createSession(null);
+            never.setMaxInactiveInterval(-1);
+            Assert.assertEquals(3, mgr.getActiveSessions());
+
+            // The expiry time of the expired session was in the past so it is due at the next tick
+            int count = mgr.processExpiredSessions(timeNow + 2 * SessionExpiryWheel.TICK_MILLIS);
+            Assert.assertEquals(1, count);
+            Assert.assertEquals(2, mgr.getActiveSessions());
+            Assert.assertNull(mgr.findSession(expired.getIdInternal()));
+            Assert.assertEquals(1, mgr.getExpiredSessions());
+
+            // Expired via another route so removed from the index
+            current.expire();
+            Assert.assertEquals(0, mgr.processExpiredSessions(timeNow + 7200_000));
+            Assert.assertEquals(1, mgr.getActiveSessions());
+            Assert.assertSame(never, mgr.findSession(never.getIdInternal()));
+        } finally {
+            mgr.stop();
+        }
+    }
+
+
+    private static StandardSession createSession(long lastAccessedTime, int interval) {
+        StandardSession session = new StandardSession(TEST_MANAGER);
+        session.setValid(true);
+        session.setCreationTime(lastAccessedTime);
+        session.setMaxInactiveInterval(interval);
+        return session;
+    }
+}
@@ -16,10 +16,15 @@
  */
 package org.apache.catalina.valves;
 
+import java.io.CharArrayWriter;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.junit.Assert;
 import org.junit.Assume;
@@ -28,6 +33,8 @@ import org.junit.Test;
 import org.apache.catalina.Context;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.catalina.valves.AsyncAccessLogWriter.OverflowPolicy;
+import org.apache.tomcat.util.buf.ByteChunk;
 import org.apache.tomcat.util.compat.JrePlatform;
 
 /**
@@ -227,6 +234,167 @@ public class TestAccessLogValveFile extends TomcatBaseTest {
         Assert.assertNull(valve.getEncoding());
         valve.setEncoding("UTF-16");
         Assert.assertEquals("UTF-16", valve.getEncoding());
+
+        Assert.assertFalse(valve.getAsyncWrite());
+        valve.setAsyncWrite(true);
+        Assert.assertTrue(valve.getAsyncWrite());
+
+        Assert.assertEquals(8192, valve.getAsyncWriteQueueSize());
+        valve.setAsyncWriteQueueSize(100);
+        Assert.assertEquals(100, valve.getAsyncWriteQueueSize());
+
+        Assert.assertEquals("block", valve.getAsyncWriteOverflowPolicy());
+        valve.setAsyncWriteOverflowPolicy("Drop");
+        Assert.assertEquals("drop", valve.getAsyncWriteOverflowPolicy());
+        Assert.assertEquals(0, valve.getAsyncWriteDroppedCount());
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidOverflowPolicy() {
+        AccessLogValve valve = new AccessLogValve();
+        valve.setAsyncWriteOverflowPolicy("wait");
+    }
+
+
+    @Test
+    public void testAsyncWrite() throws Exception {
+        AccessLogValve valve = createValve("access_async", "%s %U");
+        valve.setAsyncWrite(true);
+        getTomcatInstance().start();
+
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(200, getUrl("http://localhost:" + getPort() + "/" + i, new ByteChunk(), null));
+        }
+
+        // Entries are logged after the response has been sent so wait for all of them before rotating
+        File logFile = new File(logDir, "access_async.log");
+        awaitLines(logFile, 20);
+
+        File rotatedFile = new File(logDir, "access_async_rotated.log");
+        Assert.assertTrue(valve.rotate(rotatedFile.getAbsolutePath()));
+        Assert.assertEquals(200, getUrl("http://localhost:" + getPort() + "/after", new ByteChunk(), null));
+
+        // Stopping writes any queued entries
+        getTomcatInstance().stop();
+
+        List<String> lines = Files.readAllLines(rotatedFile.toPath());
+        Assert.assertEquals(20, lines.size());
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals("200 /" + i, lines.get(i));
+        }
+        Assert.assertEquals(List.of("200 /after"), Files.readAllLines(logFile.toPath()));
+    }
+
+
+    @Test
+    public void testAsyncWriteOverflow() throws Exception {
+        List<String> written = new ArrayList<>();
+        AccessLogValve valve = new AccessLogValve() {
+            @Override
+            void writeAsync(ByteBuffer[] entries, int count) {
+                for (int i = 0; i < count; i++) {
+                    written.add(StandardCharsets.UTF_8.decode(entries[i]).toString());
+                }
+            }
+        };
+        AsyncAccessLogWriter asyncWriter =
+                new AsyncAccessLogWriter(valve, "test", 4, StandardCharsets.UTF_8, OverflowPolicy.COUNT);
+
+        // The writer thread has not been started so the queue fills up
+        CharArrayWriter message = new CharArrayWriter();
+        for (int i = 0; i < 10; i++) {
+            message.reset();
+            message.append("entry-").append(Integer.toString(i)).append('\u00e9');
+            Assert.assertEquals(Boolean.valueOf(i < 4), Boolean.valueOf(asyncWriter.offer(message)));
+        }
+        Assert.assertEquals(6, asyncWriter.getDropped());
+        Assert.assertEquals(6, asyncWriter.getDroppedSinceLastCall());
+        Assert.assertEquals(0, asyncWriter.getDroppedSinceLastCall());
+
+        asyncWriter.start();
+        asyncWriter.stop();
+        Assert.assertEquals(List.of("entry-0\u00e9", "entry-1\u00e9", "entry-2\u00e9", "entry-3\u00e9"), written);
+    }
+
+
+    @Test
+    public void testAsyncWriteFailure() throws Exception {
+        List<String> written = new CopyOnWriteArrayList<>();
+        AccessLogValve valve = new AccessLogValve() {
+            @Override
+            void writeAsync(ByteBuffer[] entries, int count) {
+                String first = StandardCharsets.UTF_8.decode(entries[0]).toString();
+                if (first.equals("fail")) {
+                    throw new IllegalStateException();
+                }
+                written.add(first);
+            }
+        };
+        AsyncAccessLogWriter asyncWriter =
+                new AsyncAccessLogWriter(valve, "test", 4, StandardCharsets.UTF_8, OverflowPolicy.BLOCK);
+        asyncWriter.start();
+
+        // The writer thread carries on after a failed write
+        CharArrayWriter message = new CharArrayWriter();
+        message.append("fail");
+        Assert.assertTrue(asyncWriter.offer(message));
+        for (int i = 0; i < 100 && written.isEmpty(); i++) {
+            message.reset();
+            message.append("entry");
+            Assert.assertTrue(asyncWriter.offer(message));
+            Thread.sleep(10);
+        }
+        asyncWriter.stop();
+        Assert.assertEquals("entry", written.get(0));
+    }
+
+
+    @Test
+    public void testAsyncWriteBlockWriterNotRunning() throws Exception {
+        AccessLogValve valve = new AccessLogValve();
+        AsyncAccessLogWriter asyncWriter =
+                new AsyncAccessLogWriter(valve, "test", 2, StandardCharsets.UTF_8, OverflowPolicy.BLOCK);
+
+        // There is no writer thread to make space so the entries are discarded rather than blocking
+        CharArrayWriter message = new CharArrayWriter();
+        message.append("entry");
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(Boolean.valueOf(i < 2), Boolean.valueOf(asyncWriter.offer(message)));
+        }
+        Assert.assertEquals(2, asyncWriter.getDropped());
+    }
+
+
+    @Test
+    public void testAsyncWriteClosed() throws Exception {
+        List<String> written = new CopyOnWriteArrayList<>();
+        AccessLogValve valve = new AccessLogValve() {
+            @Override
+            void writeAsync(ByteBuffer[] entries, int count) {
+                for (int i = 0; i < count; i++) {
+                    written.add(StandardCharsets.UTF_8.decode(entries[i]).toString());
+                }
+            }
+        };
+        AsyncAccessLogWriter asyncWriter =
+                new AsyncAccessLogWriter(valve, "test", 4, StandardCharsets.UTF_8, OverflowPolicy.BLOCK);
+        asyncWriter.start();
+
+        CharArrayWriter message = new CharArrayWriter();
+        message.append("before");
+        Assert.assertTrue(asyncWriter.offer(message));
+        Assert.assertFalse(asyncWriter.isClosed());
+        asyncWriter.stop();
+        Assert.assertEquals(List.of("before"), written);
+
+        // Entries offered after the writer has stopped are rejected, not dropped, so the caller can write them
+        Assert.assertTrue(asyncWriter.isClosed());
+        message.reset();
+        message.append("after");
+        Assert.assertFalse(asyncWriter.offer(message));
+        Assert.assertEquals(0, asyncWriter.getDropped());
+        Assert.assertEquals(List.of("before"), written);
     }
 
 
@@ -273,4 +441,16 @@ public class TestAccessLogValveFile extends TomcatBaseTest {
             Thread.sleep(50);
         }
     }
+
+
+    private static void awaitLines(File file, int count) throws Exception {
+        awaitFile(file);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (Files.readAllLines(file.toPath()).size() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                Assert.fail("Timed out waiting for " + count + " lines in " + file.getName());
+            }
+            Thread.sleep(50);
+        }
+    }
 }
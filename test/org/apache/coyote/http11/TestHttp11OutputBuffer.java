@@ -17,6 +17,9 @@
 package org.apache.coyote.http11;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,7 +36,9 @@ import org.apache.catalina.Context;
 import org.apache.catalina.startup.ExpectationClient;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.coyote.Response;
 import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.http.MimeHeaders;
 
 public class TestHttp11OutputBuffer extends TomcatBaseTest {
 
@@ -86,6 +91,112 @@ public class TestHttp11OutputBuffer extends TomcatBaseTest {
     }
 
 
+    @Test
+    public void testLargeBodyWithContentLength() throws Exception {
+        doTestLargeBody(true);
+    }
+
+
+    @Test
+    public void testLargeBodyChunked() throws Exception {
+        doTestLargeBody(false);
+    }
+
+
+    @Test
+    public void testHeaderTemplate() {
+        Http11OutputBuffer outputBuffer = new Http11OutputBuffer(new Response(), 8192);
+
+        MimeHeaders headers = new MimeHeaders();
+        headers.addValue("Content-Type").setString("application/json");
+        headers.addValue("Content-Length").setLong(12);
+        headers.addValue("Date").setString("Sun, 18 Oct 2026 10:00:00 GMT");
+        headers.addValue("Server").setString("Test");
+
+        String first = writeHeaders(outputBuffer, 200, headers, true);
+        Assert.assertTrue(first.startsWith("HTTP/1.1 200 \r\nContent-Type: application/json\r\n"));
+        // The template is only created once the same headers have been seen twice
+        Assert.assertFalse(outputBuffer.sendHeadersFromTemplate(200, headers));
+        headers.getValue(3).setString("Other");
+        writeHeaders(outputBuffer, 200, headers, true);
+        headers.getValue(3).setString("Test");
+        writeHeaders(outputBuffer, 200, headers, true);
+        Assert.assertFalse(outputBuffer.sendHeadersFromTemplate(200, headers));
+        Assert.assertEquals(first, writeHeaders(outputBuffer, 200, headers, true));
+
+        // Only the variable values differ
+        headers.getValue(1).setLong(12345);
+        headers.getValue(2).setString("Sun, 18 Oct 2026 10:00:01 GMT");
+        String expected = writeHeaders(new Http11OutputBuffer(new Response(), 8192), 200, headers, false);
+        Assert.assertTrue(outputBuffer.sendHeadersFromTemplate(200, headers));
+        outputBuffer.endHeaders();
+        Assert.assertEquals(expected, getHeaderBytes(outputBuffer));
+        outputBuffer.nextRequest();
+
+        // Different status
+        Assert.assertFalse(outputBuffer.sendHeadersFromTemplate(404, headers));
+        // Different fixed value
+        headers.getValue(3).setString("Other");
+        Assert.assertFalse(outputBuffer.sendHeadersFromTemplate(200, headers));
+        // Additional header
+        headers.getValue(3).setString("Test");
+        headers.addValue("X-Test").setString("1");
+        Assert.assertFalse(outputBuffer.sendHeadersFromTemplate(200, headers));
+        Assert.assertEquals(0, outputBuffer.headerBuffer.position());
+    }
+
+
+    private static String writeHeaders(Http11OutputBuffer outputBuffer, int status, MimeHeaders headers,
+            boolean createTemplate) {
+        outputBuffer.sendStatus(status);
+        for (int i = 0; i < headers.size(); i++) {
+            outputBuffer.sendHeader(headers.getName(i), headers.getValue(i));
+        }
+        if (createTemplate) {
+            outputBuffer.createHeaderTemplate(status, headers);
+        }
+        outputBuffer.endHeaders();
+        String result = getHeaderBytes(outputBuffer);
+        outputBuffer.nextRequest();
+        return result;
+    }
+
+
+    private static String getHeaderBytes(Http11OutputBuffer outputBuffer) {
+        return new String(outputBuffer.headerBuffer.array(), 0, outputBuffer.headerBuffer.position(),
+                StandardCharsets.ISO_8859_1);
+    }
+
+
+    /*
+     * Bodies larger than the socket write buffer are written together with the headers and, if used, the chunk
+     * framing using gathering writes.
+     */
+    private void doTestLargeBody(boolean setContentLength) throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        // No file system docBase required
+        Context ctx = getProgrammaticRootContext();
+
+        LargeBodyServlet servlet = new LargeBodyServlet(setContentLength);
+        Tomcat.addServlet(ctx, "large", servlet);
+        ctx.addServletMapping("/large", "large");
+
+        tomcat.start();
+
+        for (int i = 0; i < 2; i++) {
+            Map<String, List<String>> resHeaders = new HashMap<>();
+            ByteChunk bc = new ByteChunk();
+            int rc = getUrl("http://localhost:" + getPort() + "/large", bc, resHeaders);
+
+            Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+            Assert.assertEquals(Boolean.valueOf(setContentLength),
+                    Boolean.valueOf(resHeaders.containsKey("Content-Length")));
+            Assert.assertArrayEquals(servlet.body, Arrays.copyOf(bc.getBuffer(), bc.getLength()));
+        }
+    }
+
+
     private void doTestHTTPHeaderValue(String customHeaderValue, boolean valid) throws Exception {
         Tomcat tomcat = getTomcatInstance();
 
@@ -115,6 +226,34 @@ public class TestHttp11OutputBuffer extends TomcatBaseTest {
     }
 
 
+    private static class LargeBodyServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean setContentLength;
+        private final byte[] body = new byte[256 * 1024 + 7];
+
+        LargeBodyServlet(boolean setContentLength) {
+            this.setContentLength = setContentLength;
+            for (int i = 0; i < body.length; i++) {
+                body[i] = (byte) ('A' + i % 26);
+            }
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+            resp.setContentType("application/octet-stream");
+            if (setContentLength) {
+                resp.setContentLength(body.length);
+            }
+            OutputStream os = resp.getOutputStream();
+            // A large write followed by a small one
+            os.write(body, 0, body.length - 1000);
+            os.write(body, body.length - 1000, 1000);
+        }
+    }
+
+
     private static class HeaderServlet extends HttpServlet {
 
         private static final long serialVersionUID = 1L;
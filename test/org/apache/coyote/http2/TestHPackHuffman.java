@@ -42,4 +42,90 @@ public class TestHPackHuffman {
 
         Assert.assertEquals("Value changed after encode/decode roundtrip", data, target.toString());
     }
+
+
+    @Test
+    public void testRoundTripAllCharacters() throws Exception {
+        // Padding with a short code ensures the Huffman encoding is used even for characters with long codes
+        String padding = "aaaaaaaaaaaaaaaaaaaa";
+        for (char c = 0; c < 256; c++) {
+            // Vary the bit alignment of the character
+            for (int i = 0; i < 8; i++) {
+                String data = padding.substring(i) + c + padding;
+                if (c == '\t' || c >= ' ' && c != 127) {
+                    doTestRoundTrip(data, false);
+                }
+                if (c > ' ' && c < 127 && "\"(),/:;<=>?@[\\]{}".indexOf(c) == -1 && !Character.isUpperCase(c)) {
+                    doTestRoundTrip(data, true);
+                }
+            }
+        }
+        doTestRoundTrip("", false);
+    }
+
+
+    @Test
+    public void testCachedEncodingMatches() {
+        String[] values = { "application/json", "no-cache", "x", "\u00ff\u00fe\u00fd" };
+        for (String value : values) {
+            ByteBuffer buf = ByteBuffer.allocate(64);
+            byte[] encoded = HPackHuffman.encode(value);
+            if (HPackHuffman.encode(buf, value)) {
+                buf.flip();
+                byte[] expected = new byte[buf.remaining()];
+                buf.get(expected);
+                Assert.assertArrayEquals(expected, encoded);
+            } else {
+                Assert.assertNull(encoded);
+            }
+        }
+    }
+
+
+    @Test(expected = HpackException.class)
+    public void testEosSymbol() throws Exception {
+        doTestDecode(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF });
+    }
+
+
+    @Test(expected = HpackException.class)
+    public void testTooMuchPadding() throws Exception {
+        // 'a' is 00011 so this has 11 bits of padding
+        doTestDecode(new byte[] { (byte) 0x1F, (byte) 0xFF });
+    }
+
+
+    @Test(expected = HpackException.class)
+    public void testPaddingNotEos() throws Exception {
+        doTestDecode(new byte[] { (byte) 0x18 });
+    }
+
+
+    @Test
+    public void testMaximumPadding() throws Exception {
+        Assert.assertEquals("a", doTestDecode(new byte[] { (byte) 0x1F }));
+        // A whole byte of padding is not allowed but seven bits are
+        Assert.assertEquals("aa", doTestDecode(new byte[] { (byte) 0x18, (byte) 0xFF }));
+    }
+
+
+    private void doTestRoundTrip(String data, boolean isFieldName) throws Exception {
+        ByteBuffer buf = ByteBuffer.allocate(data.length() * 4 + 8);
+        byte[] encoded = HPackHuffman.encode(data);
+        Assert.assertNotNull(encoded);
+        buf.put(encoded);
+        buf.flip();
+        // Remove the header byte
+        int length = Hpack.decodeInteger(buf, 7);
+        StringBuilder target = new StringBuilder();
+        HPackHuffman.decode(buf, length, target, isFieldName);
+        Assert.assertEquals(data, target.toString());
+    }
+
+
+    private String doTestDecode(byte[] data) throws Exception {
+        StringBuilder target = new StringBuilder();
+        HPackHuffman.decode(ByteBuffer.wrap(data), data.length, target, false);
+        return target.toString();
+    }
 }
@@ -85,6 +85,57 @@ public class TestHpack {
         Assert.assertEquals("value2", headers2.getHeader("header2"));
     }
 
+    @Test
+    public void testDecodeCachedHuffman() throws Exception {
+        MimeHeaders headers = new MimeHeaders();
+        // Name and value have cached Huffman encodings
+        headers.setValue("x-content-type-options").setString("nosniff");
+        // Value has a cached Huffman encoding
+        headers.setValue("content-type").setString("application/json");
+        // Neither are cached
+        headers.setValue("x-custom").setString("application/json-custom");
+        ByteBuffer output = ByteBuffer.allocate(512);
+        HpackEncoder encoder = new HpackEncoder();
+        encoder.encode(headers, output);
+        output.flip();
+        MimeHeaders headers2 = new MimeHeaders();
+        HpackDecoder decoder = new HpackDecoder();
+        decoder.setHeaderEmitter(new HeadersListener(headers2));
+        decoder.decode(output);
+        Assert.assertEquals("nosniff", headers2.getHeader("x-content-type-options"));
+        Assert.assertEquals("application/json", headers2.getHeader("content-type"));
+        Assert.assertEquals("application/json-custom", headers2.getHeader("x-custom"));
+    }
+
+    @Test
+    public void testDynamicTableEviction() throws Exception {
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder();
+        // Small enough that only a few entries fit and eviction runs often
+        encoder.setMaxTableSize(256);
+        ByteBuffer output = ByteBuffer.allocate(4096);
+        for (int i = 0; i < 200; i++) {
+            MimeHeaders headers = new MimeHeaders();
+            headers.setValue(":status").setString("200");
+            headers.setValue("x-request").setString("value-" + (i % 7));
+            headers.setValue("x-session").setString("session-" + (i % 3));
+            headers.setValue("etag").setString("\"" + (i % 11) + "\"");
+            headers.setValue("x-constant").setString("constant");
+            output.clear();
+            Assert.assertEquals(HpackEncoder.State.COMPLETE, encoder.encode(headers, output));
+            output.flip();
+            MimeHeaders headers2 = new MimeHeaders();
+            decoder.setHeaderEmitter(new HeadersListener(headers2));
+            decoder.decode(output);
+            Assert.assertEquals(headers.size(), headers2.size());
+            for (int j = 0; j < headers.size(); j++) {
+                String name = headers.getName(j).toString();
+                Assert.assertEquals(headers.getHeader(name), headers2.getHeader(name));
+            }
+            Assert.assertTrue(decoder.getCurrentMemorySize() <= 256);
+        }
+    }
+
     private static class HeadersListener implements HpackDecoder.HeaderEmitter {
         private final MimeHeaders headers;
 
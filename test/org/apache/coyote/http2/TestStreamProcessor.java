@@ -22,7 +22,9 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import jakarta.servlet.AsyncContext;
@@ -32,9 +34,11 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
 import org.apache.catalina.Context;
+import org.apache.catalina.Globals;
 import org.apache.catalina.Wrapper;
 import org.apache.catalina.connector.Connector;
 import org.apache.catalina.connector.ResponseFacade;
@@ -782,6 +786,76 @@ public class TestStreamProcessor extends Http2TestBase {
     }
 
 
+    @Test
+    public void testSendfile() throws Exception {
+        // HTTP/2 only uses sendfile with async IO
+        Assume.assumeTrue(useAsyncIO);
+
+        enableHttp2();
+
+        Tomcat tomcat = getTomcatInstance();
+
+        // Larger than the default frame size but smaller than the default window
+        byte[] content = new byte[40000];
+        Arrays.fill(content, (byte) 'X');
+        File file = File.createTempFile("testSendfile-", ".txt", new File(TEMP_DIR));
+        addDeleteOnTearDown(file);
+        Files.write(file.toPath(), content);
+
+        Context ctxt = getProgrammaticRootContext();
+        Tomcat.addServlet(ctxt, "simple", new SimpleServlet());
+        ctxt.addServletMapping("/simple", "simple");
+        Tomcat.addServlet(ctxt, "sendfile", new SendfileServlet(file));
+        ctxt.addServletMapping("/sendfile", "sendfile");
+
+        tomcat.start();
+
+        openClientConnection();
+        doHttpUpgrade();
+        sendClientPreface();
+        validateHttp2InitialResponse();
+
+        byte[] frameHeader = new byte[9];
+        ByteBuffer headersPayload = ByteBuffer.allocate(128);
+        buildGetRequest(frameHeader, headersPayload, null, 3, "/sendfile");
+        writeFrame(frameHeader, headersPayload);
+
+        // Headers
+        parser.readFrame();
+        // Body
+        parser.readFrame();
+        parser.readFrame();
+        parser.readFrame();
+
+        Assert.assertEquals("3-HeadersStart\n" + "3-Header-[:status]-[200]\n" +
+                "3-Header-[content-type]-[application/octet-stream]\n" + "3-Header-[content-length]-[40000]\n" +
+                "3-Header-[date]-[" + DEFAULT_DATE + "]\n" + "3-HeadersEnd\n" + "3-Body-16384\n" +
+                "3-Body-16384\n" + "3-Body-7232\n" + "3-EndOfStream\n", output.getTrace());
+    }
+
+
+    private static class SendfileServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        private final File file;
+
+        SendfileServlet(File file) {
+            this.file = file;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+            Assert.assertEquals(Boolean.TRUE, req.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR));
+            resp.setContentType("application/octet-stream");
+            resp.setContentLengthLong(file.length());
+            req.setAttribute(Globals.SENDFILE_FILENAME_ATTR, file.getAbsolutePath());
+            req.setAttribute(Globals.SENDFILE_FILE_START_ATTR, Long.valueOf(0));
+            req.setAttribute(Globals.SENDFILE_FILE_END_ATTR, Long.valueOf(file.length()));
+        }
+    }
+
+
     private static class ServerHeaderServlet extends HttpServlet {
 
         private static final long serialVersionUID = 1L;
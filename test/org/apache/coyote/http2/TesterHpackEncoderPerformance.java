@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import org.apache.tomcat.util.http.MimeHeaders;
+
+/*
+ * Encodes a series of typical response header sets with a single encoder, as happens for the streams of a single
+ * connection, to measure the cost of the dynamic table look-ups, insertions and evictions.
+ */
+public class TesterHpackEncoderPerformance {
+
+    private static final int RESPONSES = 100000;
+
+    @Test
+    public void testEncodeResponses() {
+        MimeHeaders[] headerSets = createHeaderSets();
+        ByteBuffer target = ByteBuffer.allocate(8192);
+
+        // Warm up
+        doEncodeTest(headerSets, target, RESPONSES);
+
+        for (int i = 0; i < 5; i++) {
+            System.out.println("Encode " + RESPONSES + " responses: " +
+                    doEncodeTest(headerSets, target, RESPONSES) / 1000000 + "ms");
+        }
+    }
+
+
+    @Test
+    public void testEncodeResponsesSmallTable() {
+        MimeHeaders[] headerSets = createHeaderSets();
+        ByteBuffer target = ByteBuffer.allocate(8192);
+
+        // Warm up
+        doEncodeTest(headerSets, target, RESPONSES, 512);
+
+        for (int i = 0; i < 5; i++) {
+            System.out.println("Encode " + RESPONSES + " responses (512 byte table): " +
+                    doEncodeTest(headerSets, target, RESPONSES, 512) / 1000000 + "ms");
+        }
+    }
+
+
+    private long doEncodeTest(MimeHeaders[] headerSets, ByteBuffer target, int responses) {
+        return doEncodeTest(headerSets, target, responses, -1);
+    }
+
+
+    private long doEncodeTest(MimeHeaders[] headerSets, ByteBuffer target, int responses, int tableSize) {
+        HpackEncoder encoder = new HpackEncoder();
+        if (tableSize > 0) {
+            encoder.setMaxTableSize(tableSize);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < responses; i++) {
+            target.clear();
+            encoder.encode(headerSets[i % headerSets.length], target);
+        }
+        return System.nanoTime() - start;
+    }
+
+
+    private static MimeHeaders[] createHeaderSets() {
+        MimeHeaders[] result = new MimeHeaders[64];
+        for (int i = 0; i < result.length; i++) {
+            MimeHeaders headers = new MimeHeaders();
+            headers.addValue(":status").setString(i % 16 == 0 ? "304" : "200");
+            headers.addValue("content-type").setString(
+                    i % 4 == 0 ? "text/html;charset=UTF-8" : i % 4 == 1 ? "application/json" : "image/png");
+            headers.addValue("content-length").setString(Integer.toString(1024 + i * 37));
+            headers.addValue("date").setString("Sun, 18 Oct 2026 10:15:" + (10 + i % 50) + " GMT");
+            headers.addValue("cache-control").setString(i % 2 == 0 ? "no-cache" : "max-age=3600, public");
+            headers.addValue("etag").setString("W/\"" + (1024 + i * 37) + "-1760782510000\"");
+            headers.addValue("last-modified").setString("Fri, 16 Oct 2026 08:00:00 GMT");
+            headers.addValue("vary").setString("accept-encoding");
+            headers.addValue("x-content-type-options").setString("nosniff");
+            headers.addValue("x-frame-options").setString("SAMEORIGIN");
+            headers.addValue("strict-transport-security").setString("max-age=31536000; includeSubDomains");
+            if (i % 8 == 0) {
+                headers.addValue("set-cookie").setString(
+                        "JSESSIONID=" + Integer.toHexString(i * 0x1F3A5) + "; Path=/; Secure; HttpOnly");
+            }
+            result[i] = headers;
+        }
+        return result;
+    }
+}
@@ -20,7 +20,9 @@ import java.nio.charset.CharacterCodingException;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
 
 public class TestStringCache {
@@ -41,17 +43,36 @@ public class TestStringCache {
         INPUT_INVALID.setCharset(StandardCharsets.UTF_8);
     }
 
+    private final StringCache sc = new StringCache();
+    private boolean byteEnabled;
+    private boolean charEnabled;
+
+
+    @Before
+    public void setUp() {
+        // The cache and its statistics are static so start each test with an empty cache and no statistics
+        byteEnabled = sc.getByteEnabled();
+        charEnabled = sc.getCharEnabled();
+        sc.setByteEnabled(true);
+        sc.setCharEnabled(true);
+        sc.reset();
+    }
+
+
+    @After
+    public void tearDown() {
+        sc.setByteEnabled(byteEnabled);
+        sc.setCharEnabled(charEnabled);
+        sc.reset();
+    }
+
 
     @Test
     public void testCodingErrorLookup() {
 
-        System.setProperty("tomcat.util.buf.StringCache.byte.enabled", "true");
-
         Assert.assertTrue(StringCache.byteEnabled);
-        StringCache sc = new StringCache();
-        sc.reset();
 
-        for (int i = 0; i < StringCache.trainThreshold * 2; i++) {
+        for (int i = 0; i < 100; i++) {
             for (CodingErrorAction malformedInputAction : actions) {
                 try {
                     // UTF-8 doesn't have any unmappable characters
@@ -63,7 +84,7 @@ public class TestStringCache {
             }
         }
 
-        Assert.assertNotNull(StringCache.bcCache);
+        Assert.assertTrue(sc.getHitCount() > 0);
 
         // Check the valid input is cached correctly
         for (CodingErrorAction malformedInputAction : actions) {
@@ -97,4 +118,77 @@ public class TestStringCache {
         }
 
     }
+
+
+    @Test
+    public void testSameInstance() {
+        ByteChunk bc = new ByteChunk();
+        bc.setCharset(StandardCharsets.ISO_8859_1);
+        byte[] bytes = "xxContent-Typexx".getBytes(StandardCharsets.ISO_8859_1);
+        bc.setBytes(bytes, 2, bytes.length - 4);
+
+        // The bucket is empty so the first value seen is cached
+        String first = bc.toString();
+        Assert.assertEquals("Content-Type", first);
+        Assert.assertSame(first, bc.toString());
+        Assert.assertEquals(1, sc.getHitCount());
+        Assert.assertEquals(2, sc.getAccessCount());
+        Assert.assertEquals(0.5, sc.getHitRatio(), 0.001);
+
+        // Same bytes, different charset
+        bc.setCharset(StandardCharsets.UTF_8);
+        Assert.assertNotSame(first, bc.toString());
+
+        CharChunk cc = new CharChunk();
+        char[] chars = "Content-Length".toCharArray();
+        cc.setChars(chars, 0, chars.length);
+        String c1 = cc.toString();
+        Assert.assertSame(c1, cc.toString());
+    }
+
+
+    @Test
+    public void testAdmission() {
+        int cacheSize = sc.getCacheSize();
+        try {
+            // A single bucket
+            sc.setCacheSize(4);
+
+            ByteChunk bc = new ByteChunk();
+            String[] frequent = new String[4];
+            for (int i = 0; i < 20; i++) {
+                for (int j = 0; j < frequent.length; j++) {
+                    setString(bc, "frequent-" + j);
+                    frequent[j] = bc.toString();
+                }
+            }
+            Assert.assertEquals(4, sc.getSize());
+
+            // Values that are only seen once must not displace frequently seen values
+            for (int i = 0; i < 100; i++) {
+                setString(bc, "rare-" + i);
+                bc.toString();
+                for (int j = 0; j < frequent.length; j++) {
+                    setString(bc, "frequent-" + j);
+                    Assert.assertSame(frequent[j], bc.toString());
+                }
+            }
+
+            // A value that is seen often enough is admitted
+            String popular = null;
+            for (int i = 0; i < 500; i++) {
+                setString(bc, "popular");
+                popular = bc.toString();
+            }
+            Assert.assertSame(popular, bc.toString());
+        } finally {
+            sc.setCacheSize(cacheSize);
+        }
+    }
+
+
+    private static void setString(ByteChunk bc, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+        bc.setBytes(bytes, 0, bytes.length);
+    }
 }
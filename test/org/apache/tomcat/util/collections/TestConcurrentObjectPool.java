@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestConcurrentObjectPool {
+
+    @Test
+    public void testPopEmpty() {
+        ConcurrentObjectPool<Object> pool = new ConcurrentObjectPool<>(4);
+        Assert.assertNull(pool.pop());
+    }
+
+    @Test
+    public void testPushPop() {
+        // Pool small enough that every slot is examined on each call
+        ConcurrentObjectPool<Object> pool = new ConcurrentObjectPool<>(4);
+
+        Map<Object,Object> pushed = new IdentityHashMap<>();
+        for (int i = 0; i < 4; i++) {
+            Object o = new Object();
+            Assert.assertTrue(pool.push(o));
+            pushed.put(o, o);
+        }
+        // Full
+        Assert.assertFalse(pool.push(new Object()));
+
+        for (int i = 0; i < 4; i++) {
+            Object o = pool.pop();
+            Assert.assertNotNull(o);
+            Assert.assertNotNull(pushed.remove(o));
+        }
+        Assert.assertNull(pool.pop());
+    }
+
+    @Test
+    public void testSparse() {
+        // Far more slots than are examined on each call
+        ConcurrentObjectPool<Object> pool = new ConcurrentObjectPool<>(1024);
+        for (int i = 0; i < 100; i++) {
+            Object o = new Object();
+            Assert.assertTrue(pool.push(o));
+            Assert.assertSame(o, pool.pop());
+        }
+        Assert.assertNull(pool.pop());
+    }
+
+    @Test
+    public void testClear() {
+        ConcurrentObjectPool<Object> pool = new ConcurrentObjectPool<>(3);
+        pool.push(new Object());
+        pool.push(new Object());
+        pool.clear();
+        Assert.assertNull(pool.pop());
+    }
+
+    @Test
+    public void testConcurrentUse() throws InterruptedException {
+        final ConcurrentObjectPool<Object> pool = new ConcurrentObjectPool<>(16);
+        final Map<Object,Thread> owners = new ConcurrentHashMap<>();
+        final AtomicBoolean failed = new AtomicBoolean(false);
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100000; j++) {
+                    Object o = pool.pop();
+                    if (o == null) {
+                        o = new Object();
+                    }
+                    // An object must never be handed to two threads at once
+                    if (owners.putIfAbsent(o, Thread.currentThread()) != null) {
+                        failed.set(true);
+                    }
+                    owners.remove(o);
+                    pool.push(o);
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertFalse(failed.get());
+    }
+}
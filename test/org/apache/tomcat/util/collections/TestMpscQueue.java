@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMpscQueue {
+
+    @Test
+    public void testPollEmpty() {
+        MpscQueue<Object> queue = new MpscQueue<>();
+        Assert.assertNull(queue.poll());
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testOfferPollOrder() {
+        MpscQueue<Object> queue = new MpscQueue<>();
+
+        Object o1 = new Object();
+        Object o2 = new Object();
+        Object o3 = new Object();
+        Object o4 = new Object();
+
+        queue.offer(o1);
+        queue.offer(o2);
+        queue.offer(o3);
+        queue.offer(o4);
+
+        Assert.assertEquals(4, queue.size());
+
+        Assert.assertSame(o1, queue.poll());
+        Assert.assertSame(o2, queue.poll());
+        Assert.assertSame(o3, queue.poll());
+        Assert.assertSame(o4, queue.poll());
+
+        Assert.assertNull(queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testMultipleSegments() {
+        // Small segments so the test crosses many segment boundaries
+        MpscQueue<Integer> queue = new MpscQueue<>(3);
+
+        for (int i = 0; i < 100; i++) {
+            queue.offer(Integer.valueOf(i));
+        }
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals(i, queue.poll().intValue());
+        }
+        for (int i = 100; i < 200; i++) {
+            queue.offer(Integer.valueOf(i));
+        }
+        for (int i = 50; i < 200; i++) {
+            Assert.assertEquals(i, queue.poll().intValue());
+        }
+
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void testClear() {
+        MpscQueue<Object> queue = new MpscQueue<>(2);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(new Object());
+        }
+        queue.clear();
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testOfferNull() {
+        MpscQueue<Object> queue = new MpscQueue<>();
+        queue.offer(null);
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        final int producerCount = 4;
+        final int perProducer = 100000;
+        final MpscQueue<long[]> queue = new MpscQueue<>(64);
+
+        Thread[] producers = new Thread[producerCount];
+        for (int i = 0; i < producerCount; i++) {
+            final int producer = i;
+            producers[i] = new Thread(() -> {
+                for (int j = 0; j < perProducer; j++) {
+                    queue.offer(new long[] { producer, j });
+                }
+            });
+        }
+        for (Thread producer : producers) {
+            producer.start();
+        }
+
+        // Each producer's elements must be received in order and none may be lost
+        long[] next = new long[producerCount];
+        int received = 0;
+        long deadline = System.nanoTime() + 60_000_000_000L;
+        while (received < producerCount * perProducer && System.nanoTime() < deadline) {
+            long[] element = queue.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+            int producer = (int) element[0];
+            Assert.assertEquals(next[producer], element[1]);
+            next[producer]++;
+            received++;
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        Assert.assertEquals(producerCount * perProducer, received);
+        Assert.assertNull(queue.poll());
+    }
+}
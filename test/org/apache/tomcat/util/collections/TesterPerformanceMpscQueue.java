@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+/*
+ * Compares SynchronizedQueue and MpscQueue when used as the Poller uses them: many worker threads add events while a
+ * single thread removes them. Each configuration is run several times and the first runs are treated as warm-up.
+ */
+public class TesterPerformanceMpscQueue {
+
+    private static final int[] PRODUCER_COUNTS = { 1, 4, 16 };
+    private static final int ITERATIONS = 2_000_000;
+    private static final int WARM_UP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+
+    private static final Object EVENT = new Object();
+
+
+    @Test
+    public void testSynchronizedQueue() throws InterruptedException {
+        for (int producers : PRODUCER_COUNTS) {
+            SynchronizedQueue<Object> queue = new SynchronizedQueue<>();
+            doTest("SynchronizedQueue", producers, () -> queue.poll(), (o) -> queue.offer(o));
+        }
+    }
+
+
+    @Test
+    public void testMpscQueue() throws InterruptedException {
+        for (int producers : PRODUCER_COUNTS) {
+            MpscQueue<Object> queue = new MpscQueue<>();
+            doTest("MpscQueue", producers, () -> queue.poll(), (o) -> queue.offer(o));
+        }
+    }
+
+
+    private void doTest(String name, int producerCount, Supplier<Object> poll, Consumer<Object> offer)
+            throws InterruptedException {
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int run = 0; run < WARM_UP_RUNS + MEASURED_RUNS; run++) {
+            long duration = doRun(producerCount, poll, offer);
+            if (run >= WARM_UP_RUNS) {
+                best = Math.min(best, duration);
+                total += duration;
+            }
+        }
+        long events = (long) producerCount * ITERATIONS;
+        System.out.println(name + ": producers [" + producerCount + "], best [" + best / 1_000_000 + "ms], mean [" +
+                total / MEASURED_RUNS / 1_000_000 + "ms], best [" + (best / events) + "ns/event]");
+    }
+
+
+    private long doRun(int producerCount, Supplier<Object> poll, Consumer<Object> offer) throws InterruptedException {
+        Thread[] producers = new Thread[producerCount];
+        for (int i = 0; i < producerCount; i++) {
+            producers[i] = new Thread(() -> {
+                for (int j = 0; j < ITERATIONS; j++) {
+                    offer.accept(EVENT);
+                }
+            });
+        }
+
+        long expected = (long) producerCount * ITERATIONS;
+        long start = System.nanoTime();
+        for (Thread producer : producers) {
+            producer.start();
+        }
+        long received = 0;
+        while (received < expected) {
+            if (poll.get() != null) {
+                received++;
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+        long duration = System.nanoTime() - start;
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        return duration;
+    }
+}
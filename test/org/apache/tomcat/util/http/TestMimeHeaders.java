@@ -17,8 +17,12 @@
 package org.apache.tomcat.util.http;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Assert;
@@ -118,4 +122,113 @@ public class TestMimeHeaders {
         mh.setValue(HEADER_NAME_UC_STRING).setBytes(bytes, 0, bytes.length);
         Assert.assertTrue(mh.getValue(HEADER_NAME_UC_STRING).equalsIgnoreCase(HEADER_NAME_MIXED_STRING));
         Assert.assertFalse(mh.getValue(HEADER_NAME_UC_STRING).equalsIgnoreCase("\u8a54\u8a45\u8a53\u8a54"));
-    }}
+    }
+
+
+    @Test
+    public void testIndexedLookup() {
+        MimeHeaders mh = new MimeHeaders();
+        byte[] bytes = "x-header-0x-header-1ACCEPTContent-Type".getBytes(StandardCharsets.ISO_8859_1);
+        mh.addValue(bytes, 0, 10).setString("0");
+        mh.addValue(bytes, 10, 10).setString("1");
+        mh.addValue(bytes, 20, 6).setString("accept");
+        mh.addValue(bytes, 26, 12).setString("type");
+        for (int i = 2; i < 20; i++) {
+            mh.addValue("X-Header-" + i).setString(Integer.toString(i));
+        }
+        // Duplicates
+        mh.addValue("x-header-1").setString("1b");
+        mh.addValue("X-HEADER-1").setString("1c");
+
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(Integer.toString(i), mh.getHeader("x-HEADER-" + i));
+        }
+        Assert.assertEquals("accept", mh.getHeader(HttpHeader.ACCEPT));
+        Assert.assertEquals("type", mh.getHeader(HttpHeader.CONTENT_TYPE));
+        Assert.assertNull(mh.getHeader(HttpHeader.CONTENT_LENGTH));
+        Assert.assertNull(mh.getHeader("x-header-20"));
+        Assert.assertEquals(1, mh.findHeader("x-header-1", 0));
+        Assert.assertEquals(22, mh.findHeader("x-header-1", 2));
+        Assert.assertEquals(23, mh.findHeader("x-header-1", 23));
+        Assert.assertEquals(-1, mh.findHeader("x-header-1", 24));
+
+        Enumeration<String> values = mh.values("X-Header-1");
+        Assert.assertEquals("1", values.nextElement());
+        Assert.assertEquals("1b", values.nextElement());
+        Assert.assertEquals("1c", values.nextElement());
+        Assert.assertFalse(values.hasMoreElements());
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> mh.getUniqueValue("x-header-1"));
+        Assert.assertEquals("2", mh.getUniqueValue("x-header-2").toString());
+
+        // Removal changes positions
+        mh.removeHeader("x-header-0");
+        Assert.assertEquals(0, mh.findHeader("x-header-1", 0));
+        mh.setValue("x-header-1").setString("set");
+        Assert.assertEquals(21, mh.size());
+        Assert.assertEquals("set", mh.getUniqueValue("x-header-1").toString());
+
+        // Non-ASCII names are found without the index
+        mh.addValue("x-\u00e9").setString("e");
+        Assert.assertEquals("e", mh.getHeader("X-\u00c9"));
+        Assert.assertEquals("2", mh.getHeader("x-header-2"));
+        mh.removeHeader("x-\u00e9");
+        Assert.assertEquals("19", mh.getHeader("x-header-19"));
+
+        // The index is retained across recycling
+        mh.recycle();
+        Assert.assertNull(mh.getHeader("x-header-2"));
+        mh.setValue(HttpHeader.CONTENT_LENGTH.getName()).setLong(10);
+        Assert.assertEquals("Content-Length", mh.getName(0).toString());
+        Assert.assertEquals(10, mh.getValue("content-length").getLong());
+    }
+
+
+    @Test
+    public void testIndexedRemoval() {
+        MimeHeaders mh = new MimeHeaders();
+        List<String> names = new ArrayList<>();
+        // Enough fields, with duplicates, that the index is used and many names share or collide on slots
+        for (int i = 0; i < 64; i++) {
+            String name = "x-header-" + (i % 20);
+            mh.addValue(name).setString(Integer.toString(i));
+            names.add(name);
+        }
+        Random random = new Random(42);
+        while (names.size() > 0) {
+            // Look-ups keep the index current so removals update it in place
+            for (int i = 0; i < 20; i++) {
+                String name = "x-header-" + i;
+                int expected = -1;
+                for (int j = 0; j < names.size(); j++) {
+                    if (names.get(j).equals(name)) {
+                        Assert.assertEquals(j, mh.findHeader(name, expected + 1));
+                        expected = j;
+                    }
+                }
+                Assert.assertEquals(-1, mh.findHeader(name, expected + 1));
+            }
+            int idx = random.nextInt(names.size());
+            mh.removeHeader(idx);
+            names.remove(idx);
+            Assert.assertEquals(names.size(), mh.size());
+        }
+
+        // Removing by name removes every field with that name and retains the order of the others
+        for (int i = 0; i < 30; i++) {
+            mh.addValue("x-header-" + (i % 3)).setString(Integer.toString(i));
+        }
+        Assert.assertEquals("0", mh.getHeader("x-header-0"));
+        mh.removeHeader("X-Header-1");
+        Assert.assertEquals(20, mh.size());
+        Assert.assertEquals(-1, mh.findHeader("x-header-1", 0));
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals("x-header-" + (i % 2 == 0 ? 0 : 2), mh.getName(i).toString());
+        }
+        Enumeration<String> values = mh.values("x-header-2");
+        for (int i = 2; i < 30; i += 3) {
+            Assert.assertEquals(Integer.toString(i), values.nextElement());
+        }
+        Assert.assertFalse(values.hasMoreElements());
+    }
+}
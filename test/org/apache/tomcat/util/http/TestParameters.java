@@ -252,6 +252,91 @@ public class TestParameters {
 
     }
 
+    @Test
+    public void testLazyDecoding() {
+        Parameter[] parameters = new Parameter[] { SIMPLE, SIMPLE_MULTIPLE, NO_VALUE, EMPTY_VALUE, UTF8 };
+        StringBuilder input = new StringBuilder();
+        for (Parameter parameter : parameters) {
+            input.append(parameter.toString()).append('&');
+        }
+        // Invalid %nn encoding is only found if the parameter is accessed
+        input.append("bad=%G0");
+        byte[] data = input.toString().getBytes(StandardCharsets.UTF_8);
+
+        Parameters p = new Parameters();
+        p.setCharset(StandardCharsets.UTF_8);
+        p.setLazyDecoding(true);
+        p.processParameters(data, 0, data.length);
+        Assert.assertEquals(9, p.size());
+
+        Assert.assertEquals("bar1", p.getParameter("foo1"));
+        Assert.assertArrayEquals(SIMPLE_MULTIPLE.getValues(), p.getParameterValues("foo2"));
+        Assert.assertEquals("", p.getParameter("foo3"));
+        Assert.assertEquals("", p.getParameter("foo4"));
+        Assert.assertEquals("\uffee\uffeb\uffe2", p.getParameter("\ufb6b\ufb6a\ufb72"));
+        Assert.assertNull(p.getParameter("foo5"));
+        Assert.assertNull(p.getParameterValues("foo5"));
+        Assert.assertNull(p.getDecodeFailure());
+
+        // A parameter that can't be decoded is ignored and the failure recorded
+        Assert.assertNull(p.getParameter("bad"));
+        Assert.assertNull(p.getParameterValues("bad"));
+        Assert.assertNotNull(p.getDecodeFailure());
+
+        p.recycle();
+        p.setCharset(StandardCharsets.UTF_8);
+        p.setLazyDecoding(true);
+        data = "a=1&b=2&a=3".getBytes(StandardCharsets.UTF_8);
+        p.processParameters(data, 0, data.length);
+        // Parameters added later follow the ones that have not been decoded yet
+        p.addParameter("b", "4");
+        Assert.assertArrayEquals(new String[] { "1", "3" }, p.getParameterValues("a"));
+        Assert.assertArrayEquals(new String[] { "2", "4" }, p.getParameterValues("b"));
+        Enumeration<String> names = p.getParameterNames();
+        Assert.assertEquals("a", names.nextElement());
+        Assert.assertEquals("b", names.nextElement());
+        Assert.assertFalse(names.hasMoreElements());
+    }
+
+
+    @Test
+    public void testLazyDecodingInvalidValue() {
+        Parameters p = new Parameters();
+        p.setCharset(StandardCharsets.UTF_8);
+        p.setLazyDecoding(true);
+        byte[] data = "b+c=%ZZ&a=1&d=2".getBytes(StandardCharsets.UTF_8);
+        p.processParameters(data, 0, data.length);
+
+        // Matching names must not decode the values of other parameters
+        Assert.assertEquals("1", p.getParameter("a"));
+        Assert.assertNull(p.getDecodeFailure());
+
+        Assert.assertNull(p.getParameter("b c"));
+        InvalidParameterException failure = p.getDecodeFailure();
+        Assert.assertNotNull(failure);
+
+        // The parameter that failed is dropped, as it is for eager decoding, but the others are retained
+        Enumeration<String> names = p.getParameterNames();
+        Assert.assertEquals("a", names.nextElement());
+        Assert.assertEquals("d", names.nextElement());
+        Assert.assertFalse(names.hasMoreElements());
+        Assert.assertEquals("2", p.getParameter("d"));
+        Assert.assertSame(failure, p.getDecodeFailure());
+
+        p.recycle();
+        Assert.assertNull(p.getDecodeFailure());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLazyDecodingLimit() {
+        byte[] data = "a=1&b=2&c=3".getBytes(StandardCharsets.UTF_8);
+        Parameters p = new Parameters();
+        p.setLimit(2);
+        p.setLazyDecoding(true);
+        // The limit is enforced when the parameters are located
+        p.processParameters(data, 0, data.length);
+    }
+
     private void validateParameters(Parameter[] parameters, Parameters p) {
         Enumeration<String> names = p.getParameterNames();
 
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.http.fileupload;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMultipartStream {
+
+    private static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+
+
+    @Test
+    public void testReadBodyData() throws Exception {
+        byte[][] parts = createParts();
+        for (int bufSize : new int[] { 64, 100, 4096, 32 * 1024 }) {
+            MultipartStream ms = createStream(parts, bufSize);
+            Assert.assertTrue(ms.skipPreamble());
+            for (int i = 0; i < parts.length; i++) {
+                ms.readHeaders();
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                ms.readBodyData(baos);
+                Assert.assertArrayEquals("Part [" + i + "] buffer [" + bufSize + "]", parts[i], baos.toByteArray());
+                Assert.assertEquals(i < parts.length - 1, ms.readBoundary());
+            }
+        }
+    }
+
+
+    @Test
+    public void testTransferTo() throws Exception {
+        byte[][] parts = createParts();
+        for (int bufSize : new int[] { 64, 4096 }) {
+            MultipartStream ms = createStream(parts, bufSize);
+            Assert.assertTrue(ms.skipPreamble());
+            for (int i = 0; i < parts.length; i++) {
+                ms.readHeaders();
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                try (MultipartStream.ItemInputStream is = ms.newInputStream()) {
+                    Assert.assertEquals(parts[i].length, is.transferTo(baos));
+                }
+                Assert.assertArrayEquals("Part [" + i + "] buffer [" + bufSize + "]", parts[i], baos.toByteArray());
+                Assert.assertEquals(i < parts.length - 1, ms.readBoundary());
+            }
+        }
+    }
+
+
+    @Test(expected = MultipartStream.MalformedStreamException.class)
+    public void testMissingBoundary() throws Exception {
+        byte[] body = ("--" + BOUNDARY + "\r\n\r\nno closing boundary").getBytes(StandardCharsets.ISO_8859_1);
+        MultipartStream ms = new MultipartStream(new ByteArrayInputStream(body),
+                BOUNDARY.getBytes(StandardCharsets.ISO_8859_1), 128, null);
+        Assert.assertTrue(ms.skipPreamble());
+        ms.readHeaders();
+        ms.discardBodyData();
+    }
+
+
+    private static byte[][] createParts() {
+        Random random = new Random(42);
+        byte[] almostBoundary = ("\r\n--" + BOUNDARY.substring(0, BOUNDARY.length() - 1)).getBytes(
+                StandardCharsets.ISO_8859_1);
+        byte[][] parts = new byte[6][];
+        parts[0] = new byte[0];
+        parts[1] = "value".getBytes(StandardCharsets.ISO_8859_1);
+        parts[2] = new byte[100000];
+        random.nextBytes(parts[2]);
+        // Partial matches of the boundary must be treated as data
+        parts[3] = new byte[10000];
+        random.nextBytes(parts[3]);
+        for (int i = 0; i + almostBoundary.length < parts[3].length; i += 997) {
+            System.arraycopy(almostBoundary, 0, parts[3], i, almostBoundary.length);
+        }
+        parts[4] = new byte[5000];
+        Arrays.fill(parts[4], (byte) '-');
+        parts[5] = almostBoundary;
+        return parts;
+    }
+
+
+    private static MultipartStream createStream(byte[][] parts, int bufSize) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write("preamble".getBytes(StandardCharsets.ISO_8859_1));
+        for (int i = 0; i < parts.length; i++) {
+            body.write(("\r\n--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"p" + i + "\"\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            body.write(parts[i]);
+        }
+        body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        return new MultipartStream(new ByteArrayInputStream(body.toByteArray()),
+                BOUNDARY.getBytes(StandardCharsets.ISO_8859_1), bufSize, null);
+    }
+}
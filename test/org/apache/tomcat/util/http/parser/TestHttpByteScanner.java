@@ -0,0 +1,101 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestHttpByteScanner {
+
+    private static final HttpByteScanner BYTE_WISE = new HttpByteScanner();
+    private static final HttpByteScanner SCANNER = HttpByteScanner.getInstance();
+
+
+    @Test
+    public void testEveryByte() {
+        for (int i = 0; i < 256; i++) {
+            byte b = (byte) i;
+            Assert.assertEquals(HttpParser.isToken(i), HttpByteScanner.isToken(b));
+            Assert.assertEquals(HttpParser.isAbsolutePath(i), HttpByteScanner.isPathAndQuery(b));
+            Assert.assertEquals(i != 0x7F && (i > 0x1F), HttpByteScanner.isFieldContent(b));
+
+            // Place the byte in every position of a long run of valid bytes
+            for (int pos = 0; pos < 100; pos++) {
+                byte[] bytes = new byte[200];
+                Arrays.fill(bytes, (byte) 'a');
+                bytes[pos] = b;
+                doTest(bytes, 0, 150);
+                doTest(bytes, pos, 150);
+            }
+        }
+    }
+
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(42);
+        // Mostly valid bytes with the occasional invalid one
+        byte[] valid = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-._~%/".getBytes(
+                StandardCharsets.ISO_8859_1);
+        byte[] bytes = new byte[4096];
+        for (int i = 0; i < bytes.length; i++) {
+            if (random.nextInt(50) == 0) {
+                bytes[i] = (byte) random.nextInt(256);
+            } else {
+                bytes[i] = valid[random.nextInt(valid.length)];
+            }
+        }
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(bytes.length);
+            int end = start + random.nextInt(bytes.length - start + 1);
+            doTest(bytes, start, end);
+        }
+    }
+
+
+    @Test
+    public void testEmptyRange() {
+        byte[] bytes = "GET / HTTP/1.1".getBytes(StandardCharsets.ISO_8859_1);
+        Assert.assertEquals(3, SCANNER.skipToken(bytes, 3, 3));
+        Assert.assertEquals(3, SCANNER.skipRequestTarget(bytes, 3, 3));
+        Assert.assertEquals(3, SCANNER.skipFieldContent(bytes, 3, 3));
+    }
+
+
+    @Test
+    public void testRequestLine() {
+        byte[] bytes = "GET /foo/bar?a=b HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+        Assert.assertEquals(3, SCANNER.skipToken(bytes, 0, bytes.length));
+        Assert.assertEquals(12, SCANNER.skipRequestTarget(bytes, 4, bytes.length));
+        Assert.assertEquals(25, SCANNER.skipFieldContent(bytes, 0, bytes.length));
+        // Range ends before the delimiter
+        Assert.assertEquals(2, SCANNER.skipToken(bytes, 0, 2));
+    }
+
+
+    private static void doTest(byte[] bytes, int start, int end) {
+        Assert.assertEquals(BYTE_WISE.skipToken(bytes, start, end), SCANNER.skipToken(bytes, start, end));
+        Assert.assertEquals(BYTE_WISE.skipRequestTarget(bytes, start, end),
+                SCANNER.skipRequestTarget(bytes, start, end));
+        Assert.assertEquals(BYTE_WISE.skipFieldContent(bytes, start, end),
+                SCANNER.skipFieldContent(bytes, start, end));
+    }
+}
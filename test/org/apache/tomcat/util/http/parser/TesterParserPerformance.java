@@ -16,6 +16,7 @@
  */
 package org.apache.tomcat.util.http.parser;
 
+import java.nio.charset.StandardCharsets;
 import java.util.BitSet;
 
 import org.junit.Test;
@@ -86,6 +87,64 @@ public class TesterParserPerformance {
     }
 
 
+    @Test
+    public void testByteScanner() {
+        HttpByteScanner byteWise = new HttpByteScanner();
+        HttpByteScanner scanner = HttpByteScanner.getInstance();
+
+        // Typical small GET request. The array is larger than the request as it would be for a socket buffer.
+        byte[] request = new byte[8192];
+        byte[] requestBytes = ("GET /examples/servlets/servlet/RequestParamExample?firstname=Apache&lastname=Tomcat " +
+                "HTTP/1.1\r\n" +
+                "Host: localhost:8080\r\n" +
+                "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0\r\n" +
+                "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n" +
+                "Accept-Language: en-GB,en;q=0.5\r\n" +
+                "Accept-Encoding: gzip, deflate, br, zstd\r\n" +
+                "Connection: keep-alive\r\n" +
+                "Cookie: JSESSIONID=0123456789ABCDEF0123456789ABCDEF; theme=dark; tracking=abcdefghijklmnopqrst\r\n" +
+                "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        System.arraycopy(requestBytes, 0, request, 0, requestBytes.length);
+
+        int count = 200000;
+        int loops = 5;
+
+        // Warm up
+        doScanTest(byteWise, request, requestBytes.length, count);
+        doScanTest(scanner, request, requestBytes.length, count);
+
+        System.out.println("Scanner: " + scanner);
+        for (int i = 0; i < loops; i++) {
+            System.out.println("Byte-wise: " + doScanTest(byteWise, request, requestBytes.length, count) + "ns");
+            System.out.println("Scanner  : " + doScanTest(scanner, request, requestBytes.length, count) + "ns");
+        }
+    }
+
+
+    /*
+     * Scans the request in the same way as the request line and header parsing, skipping the delimiters that would be
+     * handled by the byte-wise parsing loops.
+     */
+    private long doScanTest(HttpByteScanner scanner, byte[] request, int length, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            // Method, request target and protocol
+            int pos = scanner.skipToken(request, 0, length) + 1;
+            pos = scanner.skipRequestTarget(request, pos, length);
+            while (request[pos] != ' ') {
+                pos = scanner.skipRequestTarget(request, pos + 1, length);
+            }
+            pos = scanner.skipFieldContent(request, pos, length) + 2;
+            // Headers
+            while (request[pos] != '\r') {
+                pos = scanner.skipToken(request, pos, length) + 2;
+                pos = scanner.skipFieldContent(request, pos, length) + 2;
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+
     private interface Lookup {
         boolean doLookup(int i);
     }
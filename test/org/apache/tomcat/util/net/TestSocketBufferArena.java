@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSocketBufferArena {
+
+    @Test
+    public void testSizeClasses() {
+        SocketBufferArena arena = new SocketBufferArena(false, -1);
+
+        Assert.assertEquals(1024, arena.allocate(1).capacity());
+        Assert.assertEquals(1024, arena.allocate(1024).capacity());
+        Assert.assertEquals(2048, arena.allocate(1025).capacity());
+        Assert.assertEquals(8192, arena.allocate(8192).capacity());
+        Assert.assertEquals(32768, arena.allocate(16709).capacity());
+        // Larger than the largest size class
+        Assert.assertEquals(SocketBufferArena.MAX_CLASS_SIZE + 1,
+                arena.allocate(SocketBufferArena.MAX_CLASS_SIZE + 1).capacity());
+    }
+
+
+    @Test
+    public void testReuse() {
+        SocketBufferArena arena = new SocketBufferArena(true, -1);
+
+        ByteBuffer buffer = arena.allocate(8192);
+        Assert.assertTrue(buffer.isDirect());
+        buffer.put((byte) 'A');
+        arena.release(buffer);
+
+        ByteBuffer reused = arena.allocate(5000);
+        Assert.assertSame(buffer, reused);
+        // Buffers are always cleared before they are re-used
+        Assert.assertEquals(0, reused.position());
+        Assert.assertEquals(reused.capacity(), reused.limit());
+        arena.release(reused);
+        arena.clear();
+    }
+
+
+    @Test
+    public void testStatistics() {
+        SocketBufferArena arena = new SocketBufferArena(false, 4096);
+
+        ByteBuffer b1 = arena.allocate(2048);
+        ByteBuffer b2 = arena.allocate(1024);
+        Assert.assertEquals(3072, arena.getBytesInUse());
+        Assert.assertEquals(3072, arena.getHighWaterMark());
+
+        // Would exceed the limit
+        Assert.assertNull(arena.allocate(2048));
+        Assert.assertEquals(1, arena.getAllocationFailures());
+        Assert.assertEquals(3072, arena.getBytesInUse());
+
+        arena.release(b1);
+        Assert.assertEquals(1024, arena.getBytesInUse());
+        ByteBuffer b3 = arena.allocate(2048);
+        Assert.assertNotNull(b3);
+
+        arena.release(b2);
+        arena.release(b3);
+        Assert.assertEquals(0, arena.getBytesInUse());
+        Assert.assertEquals(3072, arena.getHighWaterMark());
+        Assert.assertEquals(1, arena.getAllocationFailures());
+    }
+
+
+    @Test
+    public void testHandlerBorrowsOnDemand() {
+        SocketBufferArena arena = new SocketBufferArena(false, -1);
+        SocketBufferHandler sbh = new SocketBufferHandler(8192, 8192, arena);
+
+        Assert.assertTrue(sbh.isReadBufferEmpty());
+        Assert.assertTrue(sbh.isWriteBufferEmpty());
+        Assert.assertTrue(sbh.isWriteBufferWritable());
+        Assert.assertEquals(0, arena.getBytesInUse());
+
+        sbh.configureReadBufferForRead();
+        Assert.assertEquals(0, arena.getBytesInUse());
+        // A buffer obtained in read mode must be empty
+        Assert.assertEquals(0, sbh.getReadBuffer().remaining());
+        Assert.assertEquals(8192, arena.getBytesInUse());
+
+        sbh.configureWriteBufferForWrite();
+        sbh.getWriteBuffer().put(getBytes("ABC"));
+        Assert.assertEquals(16384, arena.getBytesInUse());
+
+        // Write buffer is not empty so only the read buffer is released
+        sbh.releaseIdleBuffers();
+        Assert.assertEquals(8192, arena.getBytesInUse());
+
+        sbh.configureWriteBufferForRead();
+        sbh.getWriteBuffer().get(new byte[3]);
+        sbh.releaseIdleBuffers();
+        Assert.assertEquals(0, arena.getBytesInUse());
+        Assert.assertTrue(sbh.isWriteBufferEmpty());
+
+        // Buffers obtained after a release are in write mode
+        sbh.configureWriteBufferForWrite();
+        Assert.assertEquals(8192, sbh.getWriteBuffer().remaining());
+        sbh.free();
+        Assert.assertEquals(0, arena.getBytesInUse());
+    }
+
+
+    @Test
+    public void testHandlerUnReadWhenNotAllocated() {
+        SocketBufferArena arena = new SocketBufferArena(false, -1);
+        SocketBufferHandler sbh = new SocketBufferHandler(8192, 8192, arena);
+
+        sbh.unReadReadBuffer(ByteBuffer.wrap(getBytes("WXYZ")));
+
+        sbh.configureReadBufferForRead();
+        ByteBuffer bb = sbh.getReadBuffer();
+        byte[] result = new byte[bb.remaining()];
+        bb.get(result);
+        Assert.assertEquals("WXYZ", new String(result, StandardCharsets.UTF_8));
+    }
+
+
+    @Test
+    public void testHandlerExpand() {
+        SocketBufferArena arena = new SocketBufferArena(false, -1);
+        SocketBufferHandler sbh = new SocketBufferHandler(8192, 8192, arena);
+
+        // Not allocated yet so only the size changes
+        sbh.expand(16709);
+        Assert.assertEquals(0, arena.getBytesInUse());
+        Assert.assertEquals(32768, sbh.getWriteBuffer().capacity());
+
+        sbh.configureReadBufferForWrite();
+        sbh.getReadBuffer().put(getBytes("ABC"));
+        sbh.expand(40000);
+        // Both buffers have been allocated so both are replaced
+        Assert.assertEquals(65536 * 2, arena.getBytesInUse());
+        sbh.expand(65536 * 2);
+        sbh.configureReadBufferForRead();
+        ByteBuffer bb = sbh.getReadBuffer();
+        Assert.assertEquals(65536 * 2, bb.capacity());
+        byte[] result = new byte[bb.remaining()];
+        bb.get(result);
+        Assert.assertEquals("ABC", new String(result, StandardCharsets.UTF_8));
+
+        sbh.reset();
+        Assert.assertEquals(0, arena.getBytesInUse());
+    }
+
+
+    @Test
+    public void testHandlerFallback() {
+        SocketBufferArena arena = new SocketBufferArena(true, 8192);
+        SocketBufferHandler sbh = new SocketBufferHandler(8192, 8192, arena);
+
+        Assert.assertTrue(sbh.getReadBuffer().isDirect());
+        // The limit has been reached so a heap buffer is used
+        Assert.assertFalse(sbh.getWriteBuffer().isDirect());
+        Assert.assertEquals(1, arena.getAllocationFailures());
+
+        sbh.free();
+        Assert.assertEquals(0, arena.getBytesInUse());
+        arena.clear();
+    }
+
+
+    private static byte[] getBytes(String input) {
+        return input.getBytes(StandardCharsets.UTF_8);
+    }
+}
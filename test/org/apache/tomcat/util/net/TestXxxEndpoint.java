@@ -28,9 +28,11 @@ import java.nio.channels.SocketChannel;
 import org.junit.Assert;
 import org.junit.Test;
 
+import org.apache.catalina.Context;
 import org.apache.catalina.connector.Connector;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
 
 /**
  * Test case for the Endpoint implementations. The testing framework will ensure
@@ -87,6 +89,46 @@ public class TestXxxEndpoint extends TomcatBaseTest {
         tomcat.getConnector().start();
     }
 
+    @Test
+    public void testMultiplePollers() throws Exception {
+        doTestMultiplePollers(false);
+    }
+
+    @Test
+    public void testAcceptorPerPoller() throws Exception {
+        doTestMultiplePollers(true);
+    }
+
+    private void doTestMultiplePollers(boolean acceptorPerPoller) throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector c = tomcat.getConnector();
+
+        if (!c.getProtocolHandlerClassName().contains("NioProtocol")) {
+            // Only the NIO connector supports multiple pollers
+            return;
+        }
+
+        Assert.assertTrue(c.setProperty("pollerThreadCount", "4"));
+        Assert.assertTrue(c.setProperty("acceptorPerPoller", Boolean.toString(acceptorPerPoller)));
+
+        Context ctx = getProgrammaticRootContext();
+        Tomcat.addServlet(ctx, "hello", new HelloWorldServlet());
+        ctx.addServletMapping("/", "hello");
+
+        tomcat.start();
+
+        for (int i = 0; i < 2; i++) {
+            // Enough connections that every poller should be used
+            for (int j = 0; j < 16; j++) {
+                ByteChunk bc = getUrl("http://localhost:" + getPort() + "/");
+                Assert.assertEquals(HelloWorldServlet.RESPONSE_TEXT, bc.toString());
+            }
+            // The pollers and acceptors must stop and restart cleanly
+            c.stop();
+            c.start();
+        }
+    }
+
     @Test
     public void testUnixDomainSocket() throws Exception {
         Tomcat tomcat = getTomcatInstance();
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.coyote.http11.Http11NioProtocol;
+
+/*
+ * Compares the throughput of the NIO and io_uring connectors using the same load as
+ * TesterNioEndpointPollerPerformance. The io_uring classes are only compiled when building with Java 22 or later so
+ * they are only referenced by name. It is excluded from the standard test run due to the name starting Tester...
+ */
+@RunWith(Parameterized.class)
+public class TesterIoUringEndpointPerformance extends TomcatBaseTest {
+
+    private static final String IO_URING_PROTOCOL = "org.apache.coyote.http11.Http11IoUringProtocol";
+
+    @Parameterized.Parameters(name = "{index}: protocol[{0}]")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameterSets = new ArrayList<>();
+        parameterSets.add(new Object[] { Http11NioProtocol.class.getName() });
+        parameterSets.add(new Object[] { IO_URING_PROTOCOL });
+        return parameterSets;
+    }
+
+    @Parameter(0)
+    public String protocol;
+
+
+    @Override
+    protected String getProtocol() {
+        return protocol;
+    }
+
+
+    @Test
+    public void testThroughput() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        Assert.assertTrue(connector.setProperty("maxConnections", "-1"));
+        Assert.assertTrue(connector.setProperty("maxKeepAliveRequests", "-1"));
+        Assert.assertTrue(connector.setProperty("maxThreads", "200"));
+
+        // No file system docBase required
+        Context ctx = getProgrammaticRootContext();
+        Tomcat.addServlet(ctx, "hello", new HelloWorldServlet());
+        ctx.addServletMapping("/", "hello");
+
+        tomcat.start();
+        // The NIO connector is used if io_uring is not supported
+        Assume.assumeTrue(protocol.equals(connector.getProtocolHandler().getClass().getName()));
+
+        int clientThreads = TesterNioEndpointPollerPerformance.CLIENT_THREADS;
+        AtomicLong failures = new AtomicLong();
+        CountDownLatch connected = new CountDownLatch(clientThreads);
+        CountDownLatch go = new CountDownLatch(1);
+
+        Thread[] threads = new Thread[clientThreads];
+        for (int i = 0; i < clientThreads; i++) {
+            threads[i] = new TesterNioEndpointPollerPerformance.ClientThread(getPort(), connected, go, failures);
+            threads[i].start();
+        }
+
+        connected.await();
+        long start = System.nanoTime();
+        go.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long duration = System.nanoTime() - start;
+
+        long requests = (long) clientThreads * TesterNioEndpointPollerPerformance.REQUESTS_PER_THREAD;
+        System.out.println("Protocol [" + protocol + "], connections [" +
+                (clientThreads * TesterNioEndpointPollerPerformance.CONNECTIONS_PER_THREAD) + "]: " + requests +
+                " requests in " + (duration / 1_000_000) + "ms, " + (requests * 1_000_000_000L / duration) +
+                " requests/s");
+
+        Assert.assertEquals(0, failures.get());
+    }
+}
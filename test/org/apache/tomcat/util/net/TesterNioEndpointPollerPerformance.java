@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+
+/*
+ * Load test for the NIO connector with a varying number of pollers. A large number of keep-alive connections are opened
+ * and each client thread then sends requests round-robin over its connections. The test prints the throughput for each
+ * configuration so the scaling with the poller count can be compared. It is excluded from the standard test run due to
+ * the name starting Tester...
+ */
+@RunWith(Parameterized.class)
+public class TesterNioEndpointPollerPerformance extends TomcatBaseTest {
+
+    static final int CLIENT_THREADS = Runtime.getRuntime().availableProcessors();
+    static final int CONNECTIONS_PER_THREAD = 250;
+    static final int REQUESTS_PER_THREAD = 100_000;
+
+    private static final byte[] REQUEST =
+            "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    @Parameterized.Parameters(name = "{index}: pollers[{0}], acceptorPerPoller[{1}]")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameterSets = new ArrayList<>();
+        for (Integer pollerCount : new Integer[] { Integer.valueOf(1), Integer.valueOf(2), Integer.valueOf(4),
+                Integer.valueOf(8) }) {
+            parameterSets.add(new Object[] { pollerCount, Boolean.FALSE });
+            if (pollerCount.intValue() > 1) {
+                parameterSets.add(new Object[] { pollerCount, Boolean.TRUE });
+            }
+        }
+        return parameterSets;
+    }
+
+    @Parameter(0)
+    public int pollerCount;
+
+    @Parameter(1)
+    public boolean acceptorPerPoller;
+
+
+    @Test
+    public void testThroughput() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        Assert.assertTrue(connector.setProperty("pollerThreadCount", Integer.toString(pollerCount)));
+        Assert.assertTrue(connector.setProperty("acceptorPerPoller", Boolean.toString(acceptorPerPoller)));
+        Assert.assertTrue(connector.setProperty("maxConnections", "-1"));
+        Assert.assertTrue(connector.setProperty("maxKeepAliveRequests", "-1"));
+        Assert.assertTrue(connector.setProperty("maxThreads", "200"));
+
+        // No file system docBase required
+        Context ctx = getProgrammaticRootContext();
+        Tomcat.addServlet(ctx, "hello", new HelloWorldServlet());
+        ctx.addServletMapping("/", "hello");
+
+        tomcat.start();
+
+        AtomicLong failures = new AtomicLong();
+        CountDownLatch connected = new CountDownLatch(CLIENT_THREADS);
+        CountDownLatch go = new CountDownLatch(1);
+
+        ClientThread[] threads = new ClientThread[CLIENT_THREADS];
+        for (int i = 0; i < CLIENT_THREADS; i++) {
+            threads[i] = new ClientThread(getPort(), connected, go, failures);
+            threads[i].start();
+        }
+
+        connected.await();
+        long start = System.nanoTime();
+        go.countDown();
+
+        for (ClientThread thread : threads) {
+            thread.join();
+        }
+        long duration = System.nanoTime() - start;
+
+        long requests = (long) CLIENT_THREADS * REQUESTS_PER_THREAD;
+        System.out.println("Pollers [" + pollerCount + "], acceptorPerPoller [" + acceptorPerPoller +
+                "], connections [" + (CLIENT_THREADS * CONNECTIONS_PER_THREAD) + "]: " + requests + " requests in " +
+                (duration / 1_000_000) + "ms, " + (requests * 1_000_000_000L / duration) + " requests/s");
+
+        Assert.assertEquals(0, failures.get());
+    }
+
+
+    static class ClientThread extends Thread {
+
+        private final int port;
+        private final CountDownLatch connected;
+        private final CountDownLatch go;
+        private final AtomicLong failures;
+
+        ClientThread(int port, CountDownLatch connected, CountDownLatch go, AtomicLong failures) {
+            this.port = port;
+            this.connected = connected;
+            this.go = go;
+            this.failures = failures;
+        }
+
+        @Override
+        public void run() {
+            Socket[] sockets = new Socket[CONNECTIONS_PER_THREAD];
+            InputStream[] inputs = new InputStream[CONNECTIONS_PER_THREAD];
+            OutputStream[] outputs = new OutputStream[CONNECTIONS_PER_THREAD];
+            try {
+                for (int i = 0; i < CONNECTIONS_PER_THREAD; i++) {
+                    sockets[i] = new Socket("localhost", port);
+                    sockets[i].setTcpNoDelay(true);
+                    inputs[i] = new BufferedInputStream(sockets[i].getInputStream());
+                    outputs[i] = sockets[i].getOutputStream();
+                }
+                connected.countDown();
+                go.await();
+                for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                    int index = i % CONNECTIONS_PER_THREAD;
+                    outputs[index].write(REQUEST);
+                    outputs[index].flush();
+                    readResponse(inputs[index]);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                failures.incrementAndGet();
+                connected.countDown();
+            } finally {
+                for (Socket socket : sockets) {
+                    if (socket != null) {
+                        try {
+                            socket.close();
+                        } catch (IOException ignore) {
+                            // Ignore
+                        }
+                    }
+                }
+            }
+        }
+
+        private static void readResponse(InputStream is) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int contentLength = -1;
+            boolean statusLine = true;
+            while (true) {
+                int b = is.read();
+                if (b == -1) {
+                    throw new IOException("Unexpected end of stream");
+                }
+                if (b == '\n') {
+                    if (line.isEmpty()) {
+                        break;
+                    }
+                    String header = line.toString();
+                    if (statusLine) {
+                        if (!header.startsWith("HTTP/1.1 200")) {
+                            throw new IOException("Unexpected status line [" + header + "]");
+                        }
+                        statusLine = false;
+                    } else if (header.regionMatches(true, 0, "content-length:", 0, 15)) {
+                        contentLength = Integer.parseInt(header.substring(15).trim());
+                    }
+                    line.setLength(0);
+                } else if (b != '\r') {
+                    line.append((char) b);
+                }
+            }
+            if (contentLength < 0) {
+                throw new IOException("No content length");
+            }
+            for (int i = 0; i < contentLength; i++) {
+                if (is.read() == -1) {
+                    throw new IOException("Unexpected end of stream");
+                }
+            }
+        }
+    }
+}
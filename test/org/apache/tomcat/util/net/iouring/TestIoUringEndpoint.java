@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net.iouring;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.servlets.DefaultServlet;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+
+/*
+ * The io_uring classes are only compiled when building with Java 22 or later so they are only referenced by name.
+ */
+public class TestIoUringEndpoint extends TomcatBaseTest {
+
+    private static final String PROTOCOL = "org.apache.coyote.http11.Http11IoUringProtocol";
+
+
+    @Override
+    protected String getProtocol() {
+        return PROTOCOL;
+    }
+
+
+    @Test
+    public void testGetAndPost() throws Exception {
+        Tomcat tomcat = startTomcat();
+
+        ByteChunk bc = getUrl("http://localhost:" + getPort() + "/hello");
+        Assert.assertEquals(HelloWorldServlet.RESPONSE_TEXT, bc.toString());
+
+        byte[] body = new byte[100_000];
+        new Random(1).nextBytes(body);
+        bc = new ByteChunk();
+        int rc = postUrl(body, "http://localhost:" + getPort() + "/echo", bc, null);
+        Assert.assertEquals(200, rc);
+        Assert.assertArrayEquals(body, Arrays.copyOf(bc.getBuffer(), bc.getLength()));
+
+        tomcat.stop();
+    }
+
+
+    @Test
+    public void testKeepAliveAndPipelining() throws Exception {
+        startTomcat();
+
+        String request = "GET /hello HTTP/1.1\r\nHost: localhost\r\n\r\n";
+        try (Socket socket = new Socket("localhost", getPort())) {
+            OutputStream os = socket.getOutputStream();
+            InputStream is = socket.getInputStream();
+            for (int i = 0; i < 5; i++) {
+                os.write(request.getBytes(StandardCharsets.ISO_8859_1));
+                os.flush();
+                assertResponses(is, 1);
+            }
+            // Two requests in a single packet
+            os.write((request + request).getBytes(StandardCharsets.ISO_8859_1));
+            os.flush();
+            assertResponses(is, 2);
+        }
+    }
+
+
+    @Test
+    public void testSendfile() throws Exception {
+        File docBase = new File(getTemporaryDirectory(), "iouring");
+        Assert.assertTrue(docBase.isDirectory() || docBase.mkdirs());
+        addDeleteOnTearDown(docBase);
+        // Several times the size of the pipe used by sendfile
+        byte[] content = new byte[1024 * 1024 + 17];
+        new Random(2).nextBytes(content);
+        Files.write(new File(docBase, "large.bin").toPath(), content);
+
+        Tomcat tomcat = getTomcatInstance();
+        Context ctx = tomcat.addContext("", docBase.getAbsolutePath());
+        Tomcat.addServlet(ctx, "default", new DefaultServlet());
+        ctx.addServletMapping("/", "default");
+        tomcat.start();
+        Assume.assumeTrue(isIoUring(tomcat.getConnector()));
+
+        for (int i = 0; i < 3; i++) {
+            ByteChunk bc = new ByteChunk();
+            int rc = getUrl("http://localhost:" + getPort() + "/large.bin", bc, null);
+            Assert.assertEquals(200, rc);
+            Assert.assertEquals(content.length, bc.getLength());
+            Assert.assertArrayEquals(content, Arrays.copyOf(bc.getBuffer(), bc.getLength()));
+        }
+    }
+
+
+    @Test
+    public void testRestart() throws Exception {
+        Tomcat tomcat = startTomcat();
+        Connector connector = tomcat.getConnector();
+
+        Assert.assertEquals(HelloWorldServlet.RESPONSE_TEXT,
+                getUrl("http://localhost:" + getPort() + "/hello").toString());
+        connector.stop();
+        connector.start();
+        Assert.assertEquals(HelloWorldServlet.RESPONSE_TEXT,
+                getUrl("http://localhost:" + getPort() + "/hello").toString());
+    }
+
+
+    private Tomcat startTomcat() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        // No file system docBase required
+        Context ctx = getProgrammaticRootContext();
+        Tomcat.addServlet(ctx, "hello", new HelloWorldServlet());
+        ctx.addServletMapping("/hello", "hello");
+        Tomcat.addServlet(ctx, "echo", new EchoBodyServlet());
+        ctx.addServletMapping("/echo", "echo");
+        tomcat.start();
+        // The NIO connector is used if io_uring is not supported
+        Assume.assumeTrue(isIoUring(tomcat.getConnector()));
+        return tomcat;
+    }
+
+
+    private static boolean isIoUring(Connector connector) {
+        return PROTOCOL.equals(connector.getProtocolHandler().getClass().getName());
+    }
+
+
+    private static void assertResponses(InputStream is, int count) throws Exception {
+        String expectedBody = HelloWorldServlet.RESPONSE_TEXT;
+        for (int i = 0; i < count; i++) {
+            StringBuilder headers = new StringBuilder();
+            while (!headers.toString().endsWith("\r\n\r\n")) {
+                int b = is.read();
+                Assert.assertNotEquals(-1, b);
+                headers.append((char) b);
+            }
+            Assert.assertTrue(headers.toString(), headers.toString().startsWith("HTTP/1.1 200"));
+            byte[] body = is.readNBytes(expectedBody.getBytes(StandardCharsets.ISO_8859_1).length);
+            Assert.assertEquals(expectedBody, new String(body, StandardCharsets.ISO_8859_1));
+        }
+    }
+}
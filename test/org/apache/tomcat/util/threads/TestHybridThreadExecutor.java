@@ -0,0 +1,146 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestHybridThreadExecutor {
+
+    private static final String KEY = "/test:/pinned";
+
+    private HybridThreadExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new HybridThreadExecutor("test-", 2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+
+    @Test
+    public void testPlatformCaller() throws Exception {
+        Assert.assertFalse(executor.call(KEY, () -> Boolean.valueOf(Thread.currentThread().isVirtual())).booleanValue());
+        Assert.assertEquals(1, executor.getMappingStatistics(KEY).getRequestCount());
+        Assert.assertEquals(0, executor.getMappingStatistics(KEY).getPlatformCount());
+    }
+
+
+    @Test
+    public void testManualRouting() throws Exception {
+        executor.setDetectPinning(false);
+        Assert.assertTrue(callOnVirtualThread(() -> Boolean.valueOf(Thread.currentThread().isVirtual())).booleanValue());
+
+        executor.getMappingStatistics(KEY).setRoutedToPlatform(true);
+        ClassLoader cl = new ClassLoader() {
+        };
+        // Binding the platform thread is the responsibility of the work
+        Assert.assertNotSame(cl, callOnVirtualThread(() -> {
+            Assert.assertFalse(Thread.currentThread().isVirtual());
+            return Thread.currentThread().getContextClassLoader();
+        }, cl));
+        Assert.assertEquals(2, executor.getMappingStatistics(KEY).getRequestCount());
+        Assert.assertEquals(1, executor.getMappingStatistics(KEY).getPlatformCount());
+    }
+
+
+    @Test
+    public void testExceptionOnPlatformThread() throws Exception {
+        executor.setDetectPinning(false);
+        callOnVirtualThread(() -> null);
+        executor.getMappingStatistics(KEY).setRoutedToPlatform(true);
+        try {
+            callOnVirtualThread(() -> {
+                throw new IOException("test");
+            });
+            Assert.fail();
+        } catch (ExecutionException e) {
+            // The exception thrown by the task is not wrapped by call()
+            Assert.assertEquals(IOException.class, e.getCause().getClass());
+        }
+    }
+
+
+    @Test
+    public void testSlowThreshold() throws Exception {
+        executor.setDetectPinning(false);
+        executor.setSlowThreshold(10);
+        executor.setRoutingThreshold(2);
+
+        for (int i = 0; i < 2; i++) {
+            Assert.assertTrue(callOnVirtualThread(() -> {
+                Thread.sleep(50);
+                return Boolean.valueOf(Thread.currentThread().isVirtual());
+            }).booleanValue());
+        }
+        Assert.assertEquals(2, executor.getMappingStatistics(KEY).getSlowCount());
+        Assert.assertTrue(executor.getMappingStatistics(KEY).isRoutedToPlatform());
+        Assert.assertFalse(callOnVirtualThread(() -> Boolean.valueOf(Thread.currentThread().isVirtual())).booleanValue());
+    }
+
+
+    @Test
+    public void testPinningDetected() throws Exception {
+        Object lock = new Object();
+        Callable<Boolean> pinning = () -> {
+            synchronized (lock) {
+                // Blocking while holding a monitor pins the carrier thread
+                Thread.sleep(100);
+            }
+            return Boolean.valueOf(Thread.currentThread().isVirtual());
+        };
+
+        Assert.assertTrue(callOnVirtualThread(pinning).booleanValue());
+
+        // JFR events are delivered asynchronously
+        int count = 0;
+        while (!executor.getMappingStatistics(KEY).isRoutedToPlatform() && count < 100) {
+            Thread.sleep(100);
+            count++;
+        }
+        Assert.assertEquals(1, executor.getMappingStatistics(KEY).getPinnedCount());
+        Assert.assertTrue(executor.getMappingStatistics(KEY).isRoutedToPlatform());
+
+        Assert.assertFalse(callOnVirtualThread(pinning).booleanValue());
+        Assert.assertEquals(1, executor.getMappingStatistics(KEY).getPinnedCount());
+    }
+
+
+    private <T> T callOnVirtualThread(Callable<T> task) throws Exception {
+        return callOnVirtualThread(task, Thread.currentThread().getContextClassLoader());
+    }
+
+
+    private <T> T callOnVirtualThread(Callable<T> task, ClassLoader cl) throws Exception {
+        Future<T> future = executor.submit(() -> {
+            Thread.currentThread().setContextClassLoader(cl);
+            return executor.call(KEY, task);
+        });
+        return future.get();
+    }
+}
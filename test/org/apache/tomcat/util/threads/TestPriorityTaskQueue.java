@@ -0,0 +1,159 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestPriorityTaskQueue {
+
+    @Test
+    public void testWeightedOrder() {
+        PriorityTaskQueue queue = new PriorityTaskQueue(100, new int[] { 3, 1 }, null);
+        for (int i = 0; i < 4; i++) {
+            queue.offer(new Task(1, null));
+            queue.offer(new Task(0, null));
+        }
+        Assert.assertEquals(8, queue.size());
+        Assert.assertEquals(4, queue.size(0));
+        Assert.assertEquals(4, queue.size(1));
+
+        int[] expected = new int[] { 0, 0, 1, 0, 0, 1, 1, 1 };
+        for (int priorityClass : expected) {
+            Assert.assertEquals(priorityClass, ((Task) queue.poll()).getPriorityClass());
+        }
+        Assert.assertNull(queue.poll());
+    }
+
+
+    @Test
+    public void testClassLimit() {
+        PriorityTaskQueue queue = new PriorityTaskQueue(3, new int[] { 1, 1 }, new int[] { -1, 1 });
+
+        Assert.assertTrue(queue.offer(new Task(1, null)));
+        Assert.assertFalse(queue.offer(new Task(1, null)));
+        Assert.assertEquals(1, queue.getRejectedCount(1));
+
+        // The limit for one class does not affect the other
+        Assert.assertTrue(queue.offer(new Task(0, null)));
+        Assert.assertTrue(queue.offer(new Task(0, null)));
+        // Overall capacity reached
+        Assert.assertFalse(queue.offer(new Task(0, null)));
+        Assert.assertEquals(1, queue.getRejectedCount(0));
+        Assert.assertEquals(0, queue.remainingCapacity());
+    }
+
+
+    @Test
+    public void testUnknownClass() {
+        PriorityTaskQueue queue = new PriorityTaskQueue(10, new int[] { 1, 1 }, null);
+
+        queue.offer(new Task(5, null));
+        queue.offer(new Task(-1, null));
+        queue.offer(() -> {});
+        Assert.assertEquals(3, queue.size(0));
+        Assert.assertEquals(0, queue.size(1));
+    }
+
+
+    @Test
+    public void testParseValues() {
+        Assert.assertNull(PriorityTaskQueue.parseValues(null));
+        Assert.assertNull(PriorityTaskQueue.parseValues(" "));
+        Assert.assertArrayEquals(new int[] { 8, 1, -1 }, PriorityTaskQueue.parseValues("8, 1,-1"));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWeight() {
+        new PriorityTaskQueue(10, new int[] { 1, 0 }, null);
+    }
+
+
+    @Test
+    public void testExecutor() throws Exception {
+        PriorityTaskQueue queue = new PriorityTaskQueue(100, new int[] { 10, 1 }, null);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, queue);
+        queue.setParent(executor);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch block = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(9);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        try {
+            // Occupy the only thread so the remaining tasks are queued
+            executor.execute(() -> {
+                started.countDown();
+                try {
+                    block.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 4; i++) {
+                executor.execute(new Task(1, () -> {
+                    order.add(Integer.valueOf(1));
+                    done.countDown();
+                }));
+            }
+            for (int i = 0; i < 5; i++) {
+                executor.execute(new Task(0, () -> {
+                    order.add(Integer.valueOf(0));
+                    done.countDown();
+                }));
+            }
+            block.countDown();
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // All the tasks of class 0 were executed before all but one of the tasks of class 1
+        Assert.assertEquals(List.of(Integer.valueOf(0), Integer.valueOf(0), Integer.valueOf(0), Integer.valueOf(0),
+                Integer.valueOf(0), Integer.valueOf(1), Integer.valueOf(1), Integer.valueOf(1), Integer.valueOf(1)),
+                order);
+    }
+
+
+    private static class Task implements Runnable, Prioritized {
+
+        private final int priorityClass;
+        private final Runnable runnable;
+
+        Task(int priorityClass, Runnable runnable) {
+            this.priorityClass = priorityClass;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+
+        @Override
+        public int getPriorityClass() {
+            return priorityClass;
+        }
+    }
+}
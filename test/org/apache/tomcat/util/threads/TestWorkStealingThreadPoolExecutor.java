@@ -0,0 +1,273 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestWorkStealingThreadPoolExecutor {
+
+    @Test
+    public void testGrowBeforeQueue() throws Exception {
+        WorkStealingThreadPoolExecutor executor = createExecutor(0, 4, 0);
+        CountDownLatch block = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(4);
+        try {
+            for (int i = 0; i < 4; i++) {
+                executor.execute(() -> {
+                    started.countDown();
+                    await(block);
+                });
+            }
+            // Each task should have been given a new thread rather than being queued
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(4, executor.getPoolSize());
+            Assert.assertEquals(0, executor.getQueueSize());
+
+            // The pool is at its maximum size so this task is queued
+            executor.execute(() -> {
+            });
+            Assert.assertEquals(4, executor.getPoolSize());
+            Assert.assertEquals(1, executor.getQueueSize());
+            Assert.assertEquals(5, executor.getSubmittedCount());
+        } finally {
+            block.countDown();
+        }
+        waitForSubmittedCount(executor, 0);
+        Assert.assertEquals(0, executor.getQueueSize());
+        Assert.assertEquals(5, executor.getCompletedTaskCount());
+        shutdown(executor);
+    }
+
+
+    @Test
+    public void testIdleThreadReused() throws Exception {
+        WorkStealingThreadPoolExecutor executor = createExecutor(1, 4, 0);
+        AtomicInteger count = new AtomicInteger();
+        for (int i = 0; i < 100; i++) {
+            executor.execute(count::incrementAndGet);
+            waitForSubmittedCount(executor, 0);
+        }
+        Assert.assertEquals(100, count.get());
+        // An idle thread was always available
+        Assert.assertEquals(1, executor.getLargestPoolSize());
+        shutdown(executor);
+    }
+
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testQueueFull() throws Exception {
+        WorkStealingThreadPoolExecutor executor = createExecutor(0, 1, 1);
+        CountDownLatch block = new CountDownLatch(1);
+        try {
+            executor.execute(() -> await(block));
+            executor.execute(() -> {
+            });
+            executor.execute(() -> {
+            });
+        } finally {
+            Assert.assertEquals(2, executor.getSubmittedCount());
+            block.countDown();
+            shutdown(executor);
+        }
+    }
+
+
+    @Test
+    public void testWorkStealing() throws Exception {
+        WorkStealingThreadPoolExecutor executor = createExecutor(2, 2, 0);
+        CountDownLatch blockOther = new CountDownLatch(1);
+        CountDownLatch blockOwner = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(10);
+        AtomicInteger stolen = new AtomicInteger();
+        // Occupy one thread
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            await(blockOther);
+        });
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        executor.execute(() -> {
+            Thread owner = Thread.currentThread();
+            // The pool is full so these tasks are queued for the current thread
+            for (int i = 0; i < 10; i++) {
+                executor.execute(() -> {
+                    if (Thread.currentThread() != owner) {
+                        stolen.incrementAndGet();
+                    }
+                    done.countDown();
+                });
+            }
+            await(blockOwner);
+        });
+        // Both threads are blocked so nothing can run yet
+        Thread.sleep(100);
+        Assert.assertEquals(10, done.getCount());
+        Assert.assertEquals(10, executor.getQueueSize());
+
+        // The owner is still blocked so the other thread has to steal the tasks
+        blockOther.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(10, stolen.get());
+        blockOwner.countDown();
+        shutdown(executor);
+    }
+
+
+    @Test
+    public void testIdleThreadsTimeout() throws Exception {
+        WorkStealingThreadPoolExecutor executor = createExecutor(1, 4, 0);
+        executor.setKeepAliveTime(100, TimeUnit.MILLISECONDS);
+        CountDownLatch block = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(() -> await(block));
+        }
+        Assert.assertEquals(4, executor.getPoolSize());
+        block.countDown();
+
+        int count = 0;
+        while (executor.getPoolSize() > 1 && count < 100) {
+            Thread.sleep(100);
+            count++;
+        }
+        Assert.assertEquals(1, executor.getPoolSize());
+        shutdown(executor);
+    }
+
+
+    @Test
+    public void testThreadRenewal() throws Exception {
+        WorkStealingThreadPoolExecutor executor = createExecutor(2, 2, 0);
+        executor.setThreadRenewalDelay(0);
+        executor.setKeepAliveTime(100, TimeUnit.MILLISECONDS);
+        TaskThread[] original = getThreads(executor, 2);
+
+        // Ensure the threads are older than the context stop time
+        Thread.sleep(10);
+        executor.contextStopping();
+
+        int count = 0;
+        TaskThread[] renewed;
+        do {
+            Thread.sleep(100);
+            renewed = getThreads(executor, 2);
+            count++;
+        } while ((renewed[0].getCreationTime() <= original[1].getCreationTime() ||
+                renewed[1].getCreationTime() <= original[1].getCreationTime()) && count < 100);
+
+        for (TaskThread renewedThread : renewed) {
+            for (TaskThread originalThread : original) {
+                Assert.assertNotSame(originalThread, renewedThread);
+            }
+        }
+        Assert.assertEquals(2, executor.getPoolSize());
+        shutdown(executor);
+    }
+
+
+    @Test
+    public void testShutdownNow() throws Exception {
+        WorkStealingThreadPoolExecutor executor = createExecutor(0, 1, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger interrupted = new AtomicInteger();
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(60000);
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+            }
+        });
+        Runnable queued = () -> {
+        };
+        executor.execute(queued);
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        List<Runnable> remaining = executor.shutdownNow();
+        Assert.assertEquals(1, remaining.size());
+        Assert.assertSame(queued, remaining.get(0));
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, interrupted.get());
+        Assert.assertEquals(0, executor.getPoolSize());
+    }
+
+
+    private static WorkStealingThreadPoolExecutor createExecutor(int core, int max, int queueCapacity) {
+        if (queueCapacity == 0) {
+            queueCapacity = Integer.MAX_VALUE;
+        }
+        return new WorkStealingThreadPoolExecutor(core, max, 60, TimeUnit.SECONDS, queueCapacity,
+                new TaskThreadFactory("test-", true, Thread.NORM_PRIORITY));
+    }
+
+
+    private static TaskThread[] getThreads(WorkStealingThreadPoolExecutor executor, int count)
+            throws InterruptedException {
+        // Run a task on each thread at the same time to identify the threads
+        TaskThread[] threads = new TaskThread[count];
+        CountDownLatch latch = new CountDownLatch(count);
+        AtomicInteger index = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            executor.execute(() -> {
+                threads[index.getAndIncrement()] = (TaskThread) Thread.currentThread();
+                latch.countDown();
+                await(latch);
+            });
+        }
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        waitForSubmittedCount(executor, 0);
+        if (threads[0].getCreationTime() > threads[1].getCreationTime()) {
+            TaskThread t = threads[0];
+            threads[0] = threads[1];
+            threads[1] = t;
+        }
+        return threads;
+    }
+
+
+    private static void waitForSubmittedCount(WorkStealingThreadPoolExecutor executor, int expected)
+            throws InterruptedException {
+        int count = 0;
+        while (executor.getSubmittedCount() != expected && count < 1000) {
+            Thread.sleep(10);
+            count++;
+        }
+        Assert.assertEquals(expected, executor.getSubmittedCount());
+    }
+
+
+    private static void shutdown(WorkStealingThreadPoolExecutor executor) throws InterruptedException {
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, executor.getPoolSize());
+    }
+
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
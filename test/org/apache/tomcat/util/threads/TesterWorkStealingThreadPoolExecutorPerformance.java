@@ -0,0 +1,117 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import org.apache.tomcat.unittest.TesterThreadedPerformance;
+
+/*
+ * This is an absolute performance test. There is no benefit it running it as part of a standard test run so it is
+ * excluded due to the name starting Tester...
+ *
+ * The differences are only expected to be significant on systems with many cores (32+).
+ */
+public class TesterWorkStealingThreadPoolExecutorPerformance {
+
+    private static final int ITERATIONS = 1000000;
+
+    @Test
+    public void testThreadPoolExecutor() throws Exception {
+        doTest(() -> {
+            TaskQueue taskqueue = new TaskQueue();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(getPoolSize(), getPoolSize(), 60, TimeUnit.SECONDS,
+                    taskqueue, new TaskThreadFactory("tpe-", true, Thread.NORM_PRIORITY));
+            taskqueue.setParent(executor);
+            return executor;
+        });
+    }
+
+
+    @Test
+    public void testWorkStealingThreadPoolExecutor() throws Exception {
+        doTest(() -> new WorkStealingThreadPoolExecutor(getPoolSize(), getPoolSize(), 60, TimeUnit.SECONDS,
+                Integer.MAX_VALUE, new TaskThreadFactory("wstpe-", true, Thread.NORM_PRIORITY)));
+    }
+
+
+    private static int getPoolSize() {
+        return Math.max(32, Runtime.getRuntime().availableProcessors());
+    }
+
+
+    private void doTest(Supplier<ExecutorService> executorSupplier) throws Exception {
+        for (int submitters = 1; submitters <= getPoolSize(); submitters *= 2) {
+            ExecutorService executor = executorSupplier.get();
+            LongAdder completed = new LongAdder();
+            TesterThreadedPerformance test = new TesterThreadedPerformance(submitters, ITERATIONS / submitters,
+                    new TestInstanceSupplier(executor, completed));
+            long start = System.nanoTime();
+            test.doTest();
+            long expected = (long) submitters * (ITERATIONS / submitters);
+            while (completed.sum() < expected) {
+                Thread.onSpinWait();
+            }
+            long duration = System.nanoTime() - start;
+            System.out.println(executor.getClass().getSimpleName() + ": " + submitters +
+                    " submitting threads completed " + expected + " tasks in " + duration + "ns");
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+
+    private static class TestInstanceSupplier implements Supplier<IntConsumer> {
+
+        private final ExecutorService executor;
+        private final LongAdder completed;
+
+        TestInstanceSupplier(ExecutorService executor, LongAdder completed) {
+            this.executor = executor;
+            this.completed = completed;
+        }
+
+
+        @Override
+        public IntConsumer get() {
+            return new TestInstance(executor, completed);
+        }
+    }
+
+
+    private static class TestInstance implements IntConsumer {
+
+        private final ExecutorService executor;
+        private final LongAdder completed;
+
+        TestInstance(ExecutorService executor, LongAdder completed) {
+            this.executor = executor;
+            this.completed = completed;
+        }
+
+        @Override
+        public void accept(int value) {
+            executor.execute(completed::increment);
+        }
+    }
+}